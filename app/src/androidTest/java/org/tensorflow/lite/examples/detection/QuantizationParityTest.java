@@ -0,0 +1,266 @@
+package org.tensorflow.lite.examples.detection;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assume.assumeTrue;
+
+import android.content.res.AssetManager;
+import android.graphics.RectF;
+import android.util.Log;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.tensorflow.lite.examples.detection.env.FusedPreprocessor;
+import org.tensorflow.lite.examples.detection.replay.FrameReader;
+import org.tensorflow.lite.examples.detection.replay.RecordedFrame;
+import org.tensorflow.lite.examples.detection.replay.ReplayRunner;
+import org.tensorflow.lite.examples.detection.tflite.Classifier;
+import org.tensorflow.lite.examples.detection.tflite.Classifier.Recognition;
+import org.tensorflow.lite.examples.detection.tflite.InterpreterConfig;
+import org.tensorflow.lite.examples.detection.tflite.RecognitionList;
+import org.tensorflow.lite.examples.detection.tflite.TFLiteObjectDetectionAPIModel;
+import org.tensorflow.lite.examples.detection.tracking.ObjectTracker;
+
+/**
+ * Runs the float model and its int8 conversion over the same recorded camera frames and reports how
+ * far the quantized detections drift: recall and precision of the float detections, their IoU and
+ * their score change. Frames are the {@code *.pjrf} recordings of a {@link
+ * org.tensorflow.lite.examples.detection.replay.FrameRecorder} in this test's assets, sampled into
+ * the model input as the app does. Skipped unless both models are in the app's assets and at least
+ * one recording is in the test's; neither is checked in.
+ */
+@RunWith(AndroidJUnit4.class)
+public class QuantizationParityTest {
+  private static final String TAG = "QuantizationParity";
+  private static final int MODEL_INPUT_SIZE = 300;
+  private static final String FLOAT_MODEL_FILE = "tflite_graph.tflite";
+  private static final String QUANTIZED_MODEL_FILE = "tflite_graph_int8.tflite";
+  private static final String LABELS_FILE = "file:///android_asset/labelmap.txt";
+  private static final String RECORDING_SUFFIX = ".pjrf";
+  // The sensor orientation the app samples frames with.
+  private static final int ROTATION = -90;
+  // NUM_DETECTIONS of the detector.
+  private static final int RESULT_CAPACITY = 10;
+  private static final float MINIMUM_CONFIDENCE = 0.5f;
+  // Same object in both results.
+  private static final float MATCH_IOU = 0.5f;
+  // Quantization may cost a little, not a missed pill.
+  private static final float MINIMUM_RECALL = 0.9f;
+  private static final float MINIMUM_MEAN_IOU = 0.8f;
+
+  private AssetManager assetManager;
+  private Classifier floatDetector;
+  private Classifier quantizedDetector;
+
+  @Before
+  public void setUp() throws IOException {
+    assetManager = InstrumentationRegistry.getInstrumentation().getContext().getAssets();
+    final AssetManager appAssets =
+        InstrumentationRegistry.getInstrumentation().getTargetContext().getAssets();
+    final List<String> models = Arrays.asList(appAssets.list(""));
+    assumeTrue(models.contains(FLOAT_MODEL_FILE) && models.contains(QUANTIZED_MODEL_FILE));
+    assumeTrue(!recordingAssets().isEmpty());
+    floatDetector =
+        TFLiteObjectDetectionAPIModel.create(
+            appAssets,
+            FLOAT_MODEL_FILE,
+            LABELS_FILE,
+            MODEL_INPUT_SIZE,
+            InterpreterConfig.DEFAULT);
+    quantizedDetector =
+        TFLiteObjectDetectionAPIModel.create(
+            appAssets,
+            QUANTIZED_MODEL_FILE,
+            LABELS_FILE,
+            MODEL_INPUT_SIZE,
+            InterpreterConfig.DEFAULT);
+    assertThat(floatDetector.getInputFormat().isQuantized()).isFalse();
+    assertThat(quantizedDetector.getInputFormat().isQuantized()).isTrue();
+  }
+
+  @After
+  public void tearDown() {
+    if (floatDetector != null) {
+      floatDetector.close();
+    }
+    if (quantizedDetector != null) {
+      quantizedDetector.close();
+    }
+  }
+
+  @Test
+  public void quantizedDetectionsStayCloseToFloat() throws IOException {
+    final Parity parity = new Parity();
+    final RecognitionList floatResults = new RecognitionList(RESULT_CAPACITY);
+    final RecognitionList quantizedResults = new RecognitionList(RESULT_CAPACITY);
+    final RecordedFrame frame = new RecordedFrame();
+    for (final String recording : recordingAssets()) {
+      try (FrameReader reader = new FrameReader(assetManager.open(recording))) {
+        final FusedPreprocessor floatPreprocessor = preprocessor(floatDetector, reader);
+        final FusedPreprocessor quantizedPreprocessor = preprocessor(quantizedDetector, reader);
+        while (reader.next(frame)) {
+          floatDetector.recognizeImage(process(floatPreprocessor, frame), floatResults);
+          quantizedDetector.recognizeImage(
+              process(quantizedPreprocessor, frame), quantizedResults);
+          parity.add(confident(floatResults), confident(quantizedResults));
+        }
+      }
+      Log.i(TAG, recording + ": " + parity);
+    }
+    Log.i(TAG, parity.toString());
+    Log.i(TAG, "float:\n" + floatDetector.getStatString());
+    Log.i(TAG, "quantized:\n" + quantizedDetector.getStatString());
+
+    assertThat(parity.recall()).isAtLeast(MINIMUM_RECALL);
+    assertThat(parity.meanIou()).isAtLeast(MINIMUM_MEAN_IOU);
+  }
+
+  private List<String> recordingAssets() throws IOException {
+    final List<String> recordings = new ArrayList<>();
+    for (final String name : assetManager.list("")) {
+      if (name.endsWith(RECORDING_SUFFIX)) {
+        recordings.add(name);
+      }
+    }
+    return recordings;
+  }
+
+  /** A preprocessor in the input format of {@code detector} for the frames of {@code reader}. */
+  private static FusedPreprocessor preprocessor(
+      final Classifier detector, final FrameReader reader) {
+    final FusedPreprocessor preprocessor =
+        new FusedPreprocessor(MODEL_INPUT_SIZE, detector.getInputFormat());
+    preprocessor.setTransform(
+        ReplayRunner.inputToFrame(
+            reader.getWidth(), reader.getHeight(), MODEL_INPUT_SIZE, ROTATION),
+        reader.getWidth(),
+        reader.getHeight());
+    return preprocessor;
+  }
+
+  private static ByteBuffer process(
+      final FusedPreprocessor preprocessor, final RecordedFrame frame) {
+    if (frame.getFormat() == RecordedFrame.NV21) {
+      return preprocessor.processNV21(frame.getPlane(0), frame.getWidth(), frame.getHeight());
+    }
+    return preprocessor.processYUV420(
+        frame.getPlane(0),
+        frame.getPlane(1),
+        frame.getPlane(2),
+        frame.getYRowStride(),
+        frame.getUvRowStride(),
+        frame.getUvPixelStride());
+  }
+
+  /** Copies of the confident results, which outlive the detector's reused containers. */
+  private static List<Recognition> confident(final RecognitionList results) {
+    final List<Recognition> copies = new ArrayList<>();
+    for (final Recognition result : results) {
+      if (result.getConfidence() >= MINIMUM_CONFIDENCE) {
+        copies.add(
+            new Recognition(
+                result.getId(),
+                result.getTitle(),
+                result.getConfidence(),
+                new RectF(result.getLocation())));
+      }
+    }
+    return copies;
+  }
+
+  /**
+   * Matches every quantized detection greedily to the unmatched float detection of the same title
+   * with the highest IoU, and accumulates over frames.
+   */
+  private static final class Parity {
+    private int frames;
+    private int floatCount;
+    private int quantizedCount;
+    private int matched;
+    private double iouSum;
+    private double scoreDeltaSum;
+    private final float[] first = new float[4];
+    private final float[] second = new float[4];
+
+    void add(final List<Recognition> expected, final List<Recognition> actual) {
+      ++frames;
+      floatCount += expected.size();
+      quantizedCount += actual.size();
+      final boolean[] taken = new boolean[expected.size()];
+      for (final Recognition result : actual) {
+        int best = -1;
+        float bestIou = MATCH_IOU;
+        for (int i = 0; i < expected.size(); ++i) {
+          final Recognition candidate = expected.get(i);
+          if (taken[i] || !candidate.getTitle().equals(result.getTitle())) {
+            continue;
+          }
+          final float iou = iou(candidate.getLocation(), result.getLocation());
+          if (iou >= bestIou) {
+            best = i;
+            bestIou = iou;
+          }
+        }
+        if (best >= 0) {
+          taken[best] = true;
+          ++matched;
+          iouSum += bestIou;
+          scoreDeltaSum += result.getConfidence() - expected.get(best).getConfidence();
+        }
+      }
+    }
+
+    /** Share of float detections the quantized model found too; 1 without any. */
+    float recall() {
+      return floatCount == 0 ? 1f : (float) matched / floatCount;
+    }
+
+    float precision() {
+      return quantizedCount == 0 ? 1f : (float) matched / quantizedCount;
+    }
+
+    float meanIou() {
+      return matched == 0 ? (floatCount == 0 ? 1f : 0f) : (float) (iouSum / matched);
+    }
+
+    float meanScoreDelta() {
+      return matched == 0 ? 0f : (float) (scoreDeltaSum / matched);
+    }
+
+    @Override
+    public String toString() {
+      return String.format(
+          Locale.US,
+          "%d frames, %d float / %d quantized detections, recall %.3f precision %.3f"
+              + " mean IoU %.3f mean score delta %+.3f",
+          frames,
+          floatCount,
+          quantizedCount,
+          recall(),
+          precision(),
+          meanIou(),
+          meanScoreDelta());
+    }
+
+    /** IoU of two detections, whose boxes come mirrored on x with left above right. */
+    private float iou(final RectF a, final RectF b) {
+      first[0] = a.left;
+      first[1] = a.top;
+      first[2] = a.right;
+      first[3] = a.bottom;
+      second[0] = b.left;
+      second[1] = b.top;
+      second[2] = b.right;
+      second[3] = b.bottom;
+      return ObjectTracker.unorderedIou(first, second);
+    }
+  }
+}
@@ -54,10 +54,22 @@ import android.widget.Toast;
 
 import com.google.android.material.bottomsheet.BottomSheetBehavior;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 
+import org.tensorflow.lite.examples.detection.env.FrameMetrics;
+import org.tensorflow.lite.examples.detection.env.FusedPreprocessor;
 import org.tensorflow.lite.examples.detection.env.ImageUtils;
 import org.tensorflow.lite.examples.detection.env.Logger;
+import org.tensorflow.lite.examples.detection.judge.JudgementEngine;
+import org.tensorflow.lite.examples.detection.pipeline.FrameExchanger;
+import org.tensorflow.lite.examples.detection.pipeline.InferenceScheduler;
+import org.tensorflow.lite.examples.detection.replay.FrameRecorder;
+import org.tensorflow.lite.examples.detection.replay.RecordedFrame;
 
 // extends: AppCompatActivity is the father class; CameraActivity is the son class
 public abstract class CameraActivity extends AppCompatActivity
@@ -69,6 +81,9 @@ public abstract class CameraActivity extends AppCompatActivity
     private static final Logger LOGGER = new Logger();
 
     private static final int PERMISSIONS_REQUEST = 1;
+    // Dumps every camera frame to the app's external files dir for ReplayRunner. Costs a frame
+    // copy on the camera thread and a lot of storage; for collecting regression recordings only.
+    private static final boolean RECORD_FRAMES = false;
 
     private static final String PERMISSION_CAMERA = Manifest.permission.CAMERA;
     private static final String PERMISSION_SD = Manifest.permission.WRITE_EXTERNAL_STORAGE;
@@ -80,12 +95,30 @@ public abstract class CameraActivity extends AppCompatActivity
     private Handler handler;
     private HandlerThread handlerThread;
     private boolean useCamera2API;
-    private boolean isProcessingFrame = false;
-    private byte[][] yuvBytes = new byte[3][];  // YUV Y-流明, U-色度, V-浓度
-    private int[] rgbBytes = null;              // RGB
-    private int yRowStride;
-    private Runnable postInferenceCallback;
-    private Runnable imageConverter;
+    private final FrameMetrics frameMetrics = new FrameMetrics();
+    // Open while RECORD_FRAMES recording is running; started on the first frame of a session.
+    private volatile FrameRecorder frameRecorder;
+    // Latest camera frame not yet taken by processing (YUV Y-流明, U-色度, V-浓度). A frame that is
+    // replaced before it was taken goes straight back to the camera, so the camera callback never
+    // waits for processing and processing always starts on the freshest frame.
+    private final FrameExchanger<CameraFrame> frameExchanger =
+            new FrameExchanger<>(
+                    new FrameExchanger.Recycler<CameraFrame>() {
+                        @Override
+                        public void recycle(final CameraFrame frame) {
+                            frameMetrics.onFrameDropped();
+                            frame.release();
+                        }
+                    });
+    private final Executor backgroundExecutor =
+            new Executor() {
+                @Override
+                public void execute(final Runnable command) {
+                    if (!postInBackground(command)) {
+                        throw new RejectedExecutionException("Inference thread is not running");
+                    }
+                }
+            };
 
     private LinearLayout bottomSheetLayout,ll_medic_box_area,ll_pill_area;
     private LinearLayout gestureLayout;
@@ -96,8 +129,21 @@ public abstract class CameraActivity extends AppCompatActivity
     private ImageView plusImageView, minusImageView;
     private SwitchCompat apiSwitchCompat;
     private TextView threadsTextView;
-    private int count;
-    private int count_neg;
+    // Advances the judging step from the detections; its events update the prompts on the UI thread.
+    private final JudgementEngine judgementEngine =
+            new JudgementEngine(
+                    new Executor() {
+                        @Override
+                        public void execute(final Runnable command) {
+                            runOnUiThread(command);
+                        }
+                    },
+                    new JudgementEngine.Listener() {
+                        @Override
+                        public void onStageChanged(final JudgementEngine.StageEvent event) {
+                            showStage(event);
+                        }
+                    });
 
     @Override
     // onCreate initial activity
@@ -192,18 +238,130 @@ public abstract class CameraActivity extends AppCompatActivity
 //    minusImageView.setOnClickListener(this);
     }
 
-    protected int[] getRgbBytes() {
-        imageConverter.run();
-        return rgbBytes;
+    /**
+     * Returns the recorder of this session, opening a recording in the external files dir on the
+     * first call. Null if it could not be opened.
+     */
+    private synchronized FrameRecorder startFrameRecording(final int format) {
+        if (frameRecorder == null) {
+            final String name = "frames-" + System.currentTimeMillis() + ".pjrf";
+            final File file = new File(getExternalFilesDir(null), name);
+            try {
+                frameRecorder =
+                        new FrameRecorder(
+                                new FileOutputStream(file), format, previewWidth, previewHeight);
+                LOGGER.i("Recording frames to %s", file);
+            } catch (final IOException e) {
+                LOGGER.e(e, "Cannot record frames to %s", file);
+            }
+        }
+        return frameRecorder;
+    }
+
+    private synchronized void stopFrameRecording() {
+        if (frameRecorder == null) {
+            return;
+        }
+        try {
+            frameRecorder.close();
+            LOGGER.i(
+                    "Recorded %d frames, dropped %d",
+                    frameRecorder.getRecordedFrames(), frameRecorder.getDroppedFrames());
+        } catch (final IOException e) {
+            LOGGER.e(e, "Frame recording failed");
+        }
+        frameRecorder = null;
+    }
+
+    /**
+     * Latency histograms of the frame processing, shared with subclasses. Camera frames that were
+     * replaced by a newer one before processing took them are counted as dropped.
+     */
+    protected FrameMetrics getFrameMetrics() {
+        return frameMetrics;
+    }
+
+    /**
+     * Takes the most recent camera frame that has not been processed yet, or null if there is none.
+     * The caller owns the frame and must {@link CameraFrame#release()} it. Safe to call from any
+     * thread.
+     */
+    protected CameraFrame takeLatestFrame() {
+        return frameExchanger.poll();
+    }
+
+    /**
+     * Exposes the planes of {@code frame} in {@code planes} for {@link #convertFrame}, {@link
+     * #preprocessFrame} and {@link #shouldInfer}. An NV21 preview buffer is read in place, so it is
+     * only valid until the frame is released. The direct plane buffers of a Camera2 image are
+     * copied into arrays reused by {@code planes}, together with the strides of that image. In
+     * YuvConversionBenchmark, converting from direct buffers is slower than from arrays and no
+     * faster than copying into arrays first.
+     */
+    protected void readFrame(final CameraFrame frame, final FramePlanes planes) {
+        if (frame.image != null) {
+            final Plane[] imagePlanes = frame.image.getPlanes();
+            planes.nv21 = null;
+            for (int i = 0; i < 3; ++i) {
+                final ByteBuffer buffer = imagePlanes[i].getBuffer().duplicate();
+                buffer.rewind();
+                if (planes.yuv[i] == null || planes.yuv[i].length != buffer.remaining()) {
+                    planes.yuv[i] = new byte[buffer.remaining()];
+                }
+                buffer.get(planes.yuv[i]);
+            }
+            planes.yRowStride = imagePlanes[0].getRowStride();
+            planes.uvRowStride = imagePlanes[1].getRowStride();
+            planes.uvPixelStride = imagePlanes[1].getPixelStride();
+        } else {
+            planes.nv21 = frame.nv21;
+            planes.yRowStride = previewWidth;
+        }
     }
 
-    // 流明stride
-    protected int getLuminanceStride() {
-        return yRowStride;  // 这里的 Y 指的是流明
+    /** Converts planes filled by {@link #readFrame} to ARGB8888. Safe to call from any thread. */
+    protected void convertFrame(final FramePlanes planes, final int[] argb) {
+        if (planes.nv21 != null) {
+            ImageUtils.convertYUV420SPToARGB8888(planes.nv21, previewWidth, previewHeight, argb);
+        } else {
+            ImageUtils.convertYUV420ToARGB8888(
+                    planes.yuv[0], planes.yuv[1], planes.yuv[2], previewWidth, previewHeight,
+                    planes.yRowStride, planes.uvRowStride, planes.uvPixelStride, argb);
+        }
     }
 
-    protected byte[] getLuminance() {
-        return yuvBytes[0];
+    /**
+     * Samples planes filled by {@link #readFrame} straight into a model input buffer, skipping the
+     * ARGB conversion. Safe to call from any thread that owns {@code preprocessor}.
+     */
+    protected ByteBuffer preprocessFrame(
+            final FusedPreprocessor preprocessor, final FramePlanes planes) {
+        if (planes.nv21 != null) {
+            return preprocessor.processNV21(planes.nv21, previewWidth, previewHeight);
+        }
+        return preprocessor.processYUV420(
+                planes.yuv[0], planes.yuv[1], planes.yuv[2],
+                planes.yRowStride, planes.uvRowStride, planes.uvPixelStride);
+    }
+
+    /** Asks {@code scheduler} whether the luminance of planes from {@link #readFrame} moved. */
+    protected boolean shouldInfer(final InferenceScheduler scheduler, final FramePlanes planes) {
+        if (planes.nv21 != null) {
+            return scheduler.shouldInfer(
+                    planes.nv21, previewWidth, previewHeight, planes.yRowStride);
+        }
+        return scheduler.shouldInfer(
+                planes.yuv[0], previewWidth, previewHeight, planes.yRowStride);
+    }
+
+    /**
+     * Number of Camera2 images the reader may hand out at once: the one waiting in the frame
+     * exchanger, the ones still being processed and the one being delivered. Subclasses that hold
+     * frames across a deeper pipeline override this; images past the limit are dropped by the
+     * camera instead of stalling it.
+     */
+    protected int getMaxCameraImages() {
+        return 3;
     }
 
     /**
@@ -211,82 +369,55 @@ public abstract class CameraActivity extends AppCompatActivity
      */
     @Override
     public void onPreviewFrame(final byte[] bytes, final Camera camera) {
-        if (isProcessingFrame) {
-            LOGGER.w("Dropping frame!");
-            return;
-        }
-
         try {
             // Initialize the storage bitmaps once when the resolution is known. 一旦确定分辨率，初始化位图结构
-            if (rgbBytes == null) {
+            if (previewWidth == 0 || previewHeight == 0) {
                 Camera.Size previewSize = camera.getParameters().getPreviewSize();
                 previewHeight = previewSize.height;
                 previewWidth = previewSize.width;
-                rgbBytes = new int[previewWidth * previewHeight];
                 onPreviewSizeChosen(new Size(previewSize.width, previewSize.height), 90);
             }
         } catch (final Exception e) {
             LOGGER.e(e, "Exception!");
+            camera.addCallbackBuffer(bytes);
             return;
         }
 
-        isProcessingFrame = true;
-        yuvBytes[0] = bytes;
-        yRowStride = previewWidth;
-
-        imageConverter =
-                new Runnable() {
-                    @Override
-                    public void run() {
-                        ImageUtils.convertYUV420SPToARGB8888(bytes, previewWidth, previewHeight, rgbBytes);
-                    }
-                };
-
-        postInferenceCallback =
-                new Runnable() {
-                    @Override
-                    public void run() {
-                        camera.addCallbackBuffer(bytes);
-                        isProcessingFrame = false;
-                    }
-                };
-
-        if(count<=15){
-            if(processImage(0) == 0){
-
-                LOGGER.d("onPreviewFrame " + "=======检测药盒=========");
-                count++;
+        final long captureNanos = System.nanoTime();
+        if (RECORD_FRAMES) {
+            final FrameRecorder recorder = startFrameRecording(RecordedFrame.NV21);
+            if (recorder != null) {
+                recorder.recordNV21(captureNanos, bytes, previewWidth);
             }
-        }else if(count>15 &&count<=30 ){
-            tv_display_content.setText("药盒认证成功\n请平放药盒，打开仓盖\n取出药片后关闭仓盖\n请右手捏持药品\n在屏幕右下圆形区域展示药品\n等待检测...");
-            LOGGER.d("onPreviewFrame " + "=======检测药盒完毕=========");
-            ll_medic_box_area.setVisibility(View.GONE);
-            ll_pill_area.setVisibility(View.VISIBLE);
-            if(processImage(1) == 0){
-                LOGGER.d("onPreviewFrame " + "=======检测药片=========");
-                count++;
-            }
-        }else if(count>30 &&count<=45){
-            ll_medic_box_area.setVisibility(View.GONE);
-            ll_pill_area.setVisibility(View.GONE);
-            LOGGER.d("onPreviewFrame " + "=======检测药片完毕=========");
-            tv_display_content.setText("手持药品检测成功\n请面向屏幕，将药品放在舌尖\n张嘴并保持动作等待检测...");
-            if(processImage(2) == 0){
-                LOGGER.d("onPreviewFrame " + "=======检测口含药片=========");
-                count++;
-            }
-        }else if(count>45){
-            tv_display_content.setText("口中药品检测成功\n请喝水送服药品后\n张嘴并保持动作等待检测...");
-            if(processImage(2) == 1){
-                count_neg ++;
-            };//,本次服药已完成，请遵医嘱坚持正确服药。祝您健康！
-            if(count_neg > 60){
-                tv_display_content.setText("本次服药已完成\n请遵医嘱坚持正确服药\n祝您健康！");
-            }
-            LOGGER.d("onPreviewFrame " + "=======检测完毕=========");
         }
+        frameExchanger.offer(new CameraFrame(bytes, camera, null, captureNanos));
 
+        processImage(judgementEngine.getStage().objectToDetect());
+    }
 
+    /** Shows the prompt for the judging step just entered. */
+    private void showStage(final JudgementEngine.StageEvent event) {
+        LOGGER.d("Judgement " + event);
+        switch (event.getStage()) {
+            case HAND_PILL:
+                tv_display_content.setText("药盒认证成功\n请平放药盒，打开仓盖\n取出药片后关闭仓盖\n请右手捏持药品\n在屏幕右下圆形区域展示药品\n等待检测...");
+                ll_medic_box_area.setVisibility(View.GONE);
+                ll_pill_area.setVisibility(View.VISIBLE);
+                break;
+            case MOUTH_PILL:
+                ll_medic_box_area.setVisibility(View.GONE);
+                ll_pill_area.setVisibility(View.GONE);
+                tv_display_content.setText("手持药品检测成功\n请面向屏幕，将药品放在舌尖\n张嘴并保持动作等待检测...");
+                break;
+            case SWALLOW:
+                tv_display_content.setText("口中药品检测成功\n请喝水送服药品后\n张嘴并保持动作等待检测...");
+                break;
+            case DONE:
+                tv_display_content.setText("本次服药已完成\n请遵医嘱坚持正确服药\n祝您健康！");
+                break;
+            default:
+                break;
+        }
     }
 
     /**
@@ -298,9 +429,6 @@ public abstract class CameraActivity extends AppCompatActivity
         if (previewWidth == 0 || previewHeight == 0) {
             return;
         }
-        if (rgbBytes == null) {
-            rgbBytes = new int[previewWidth * previewHeight];
-        }
         try {
             final Image image = reader.acquireLatestImage();
 
@@ -308,45 +436,21 @@ public abstract class CameraActivity extends AppCompatActivity
                 return;
             }
 
-            if (isProcessingFrame) {
-                image.close();
-                return;
-            }
-            isProcessingFrame = true;
             Trace.beginSection("imageAvailable");
-            final Plane[] planes = image.getPlanes();
-            fillBytes(planes, yuvBytes);
-            yRowStride = planes[0].getRowStride();
-            final int uvRowStride = planes[1].getRowStride();
-            final int uvPixelStride = planes[1].getPixelStride();
-            // 这里在转换image吗？ 把YUV转成ARGB？
-            imageConverter =
-                    new Runnable() {
-                        @Override
-                        public void run() {
-                            ImageUtils.convertYUV420ToARGB8888(
-                                    yuvBytes[0],
-                                    yuvBytes[1],
-                                    yuvBytes[2],
-                                    previewWidth,
-                                    previewHeight,
-                                    yRowStride,
-                                    uvRowStride,
-                                    uvPixelStride,
-                                    rgbBytes);
-                        }
-                    };
-
-            postInferenceCallback =
-                    new Runnable() {
-                        @Override
-                        public void run() {
-                            image.close();
-                            isProcessingFrame = false;
-                        }
-                    };
+            final long captureNanos = System.nanoTime();
+            if (RECORD_FRAMES) {
+                final FrameRecorder recorder = startFrameRecording(RecordedFrame.YUV_420_888);
+                if (recorder != null) {
+                    final Plane[] planes = image.getPlanes();
+                    recorder.recordYUV420(
+                            captureNanos, planes[0].getBuffer(), planes[1].getBuffer(),
+                            planes[2].getBuffer(), planes[0].getRowStride(),
+                            planes[1].getRowStride(), planes[1].getPixelStride());
+                }
+            }
+            frameExchanger.offer(new CameraFrame(null, null, image, captureNanos));
 
-//            processImage(0);
+            processImage(judgementEngine.getStage().objectToDetect());
         } catch (final Exception e) {
             LOGGER.e(e, "Exception!");
             Trace.endSection();
@@ -375,6 +479,9 @@ public abstract class CameraActivity extends AppCompatActivity
     @Override
     public synchronized void onPause() {
         LOGGER.d("onPause " + this);
+        // Hand the waiting frame back before the camera is closed.
+        frameExchanger.clear();
+        stopFrameRecording();
 
         handlerThread.quitSafely();
         try {
@@ -401,9 +508,19 @@ public abstract class CameraActivity extends AppCompatActivity
     }
 
     protected synchronized void runInBackground(final Runnable r) {
-        if (handler != null) {
-            handler.post(r);
-        }
+        postInBackground(r);
+    }
+
+    private synchronized boolean postInBackground(final Runnable r) {
+        return handler != null && handler.post(r);
+    }
+
+    /**
+     * The inference thread as an {@link Executor}, for work that has to stay serialized with
+     * {@link #runInBackground}. Rejects tasks while the activity is paused.
+     */
+    protected Executor getBackgroundExecutor() {
+        return backgroundExecutor;
     }
 
     @Override
@@ -518,7 +635,8 @@ public abstract class CameraActivity extends AppCompatActivity
                             },
                             this,
                             getLayoutId(),
-                            getDesiredPreviewFrameSize());
+                            getDesiredPreviewFrameSize(),
+                            getMaxCameraImages());
 
             camera2Fragment.setCamera(cameraId);
             fragment = camera2Fragment;
@@ -530,29 +648,10 @@ public abstract class CameraActivity extends AppCompatActivity
         getFragmentManager().beginTransaction().replace(R.id.container, fragment).commit();
     }
 
-    protected void fillBytes(final Plane[] planes, final byte[][] yuvBytes) {
-        // Because of the variable row stride it's not possible to know in
-        // advance the actual necessary dimensions of the yuv planes.
-        for (int i = 0; i < planes.length; ++i) {
-            final ByteBuffer buffer = planes[i].getBuffer();
-            if (yuvBytes[i] == null) {
-                LOGGER.d("Initializing buffer %d at size %d", i, buffer.capacity());
-                yuvBytes[i] = new byte[buffer.capacity()];
-            }
-            buffer.get(yuvBytes[i]);
-        }
-    }
-
     public boolean isDebug() {
         return debug;
     }
 
-    protected void readyForNextImage() {
-        if (postInferenceCallback != null) {
-            postInferenceCallback.run();
-        }
-    }
-
     // 获取屏幕方向
     protected int getScreenOrientation() {
         int a = ((WindowManager) getSystemService(Context.WINDOW_SERVICE)).getDefaultDisplay().getRotation();
@@ -616,8 +715,17 @@ public abstract class CameraActivity extends AppCompatActivity
         inferenceTimeTextView.setText(inferenceTime);
     }
 
+    /**
+     * Judges the steps of taking a dose. Subclasses feed it what each processed frame saw; the
+     * current stage decides what {@link #processImage} looks for.
+     */
+    protected JudgementEngine getJudgementEngine() {
+        return judgementEngine;
+    }
+
     // 所以下面全都是在声明而已？
-    protected abstract int processImage(int obj_to_detect);
+    /** Queues the latest camera frame for detection. obj_to_detect: 0 药盒; 1 手持药丸; 2 嘴含药丸. */
+    protected abstract void processImage(int obj_to_detect);
 
     protected abstract void onPreviewSizeChosen(final Size size, final int rotation);
 
@@ -628,4 +736,61 @@ public abstract class CameraActivity extends AppCompatActivity
     protected abstract void setNumThreads(int numThreads);
 
     protected abstract void setUseNNAPI(boolean isChecked);
+
+    /**
+     * A frame still owned by the camera: an NV21 preview buffer of android.hardware.Camera or a
+     * YUV_420_888 {@link Image}. It must be released exactly once, after which the camera may
+     * overwrite its data.
+     */
+    protected static final class CameraFrame {
+        private final byte[] nv21;
+        private final Camera camera;
+        private final Image image;
+        private final long captureNanos;
+
+        private CameraFrame(
+                final byte[] nv21, final Camera camera, final Image image, final long captureNanos) {
+            this.nv21 = nv21;
+            this.camera = camera;
+            this.image = image;
+            this.captureNanos = captureNanos;
+        }
+
+        /**
+         * When the camera delivered the frame, on the {@link System#nanoTime} clock. Frames may
+         * wait in the exchanger and the pipeline, so this is earlier than when they are processed;
+         * recordings carry the same stamp.
+         */
+        public long getCaptureNanos() {
+            return captureNanos;
+        }
+
+        /** Returns the preview buffer to the camera, or closes the image. Safe from any thread. */
+        public void release() {
+            if (image != null) {
+                image.close();
+                return;
+            }
+            try {
+                camera.addCallbackBuffer(nv21);
+            } catch (final RuntimeException e) {
+                // The camera was released while the frame was being processed.
+                LOGGER.d("Dropping buffer of released camera");
+            }
+        }
+    }
+
+    /**
+     * The planes of one camera frame as {@link #readFrame} exposes them: the NV21 preview buffer of
+     * android.hardware.Camera, or copies of the planes of a YUV_420_888 image with its strides. The
+     * strides travel with the frame, since frames in flight may come from different images. Reused
+     * across frames; owned by one pipeline slot.
+     */
+    protected static final class FramePlanes {
+        private byte[] nv21;
+        private final byte[][] yuv = new byte[3][];
+        private int yRowStride;
+        private int uvRowStride;
+        private int uvPixelStride;
+    }
 }
@@ -90,6 +90,8 @@ public class CameraConnectionFragment extends Fragment {
   private final OnImageAvailableListener imageListener;
   /** The input size in pixels desired by TensorFlow (width and height of a square bitmap). */
   private final Size inputSize;
+  /** How many preview images processing may hold at once, plus the one being delivered. */
+  private final int maxImages;
   /** The layout identifier to inflate for this Fragment. */
   private final int layout;
 
@@ -190,11 +192,13 @@ public class CameraConnectionFragment extends Fragment {
       final ConnectionCallback connectionCallback,
       final OnImageAvailableListener imageListener,
       final int layout,
-      final Size inputSize) {
+      final Size inputSize,
+      final int maxImages) {
     this.cameraConnectionCallback = connectionCallback;
     this.imageListener = imageListener;
     this.layout = layout;
     this.inputSize = inputSize;
+    this.maxImages = maxImages;
   }
 
   /**
@@ -251,8 +255,9 @@ public class CameraConnectionFragment extends Fragment {
       final ConnectionCallback callback,
       final OnImageAvailableListener imageListener,
       final int layout,
-      final Size inputSize) {
-    return new CameraConnectionFragment(callback, imageListener, layout, inputSize);
+      final Size inputSize,
+      final int maxImages) {
+    return new CameraConnectionFragment(callback, imageListener, layout, inputSize, maxImages);
   }
 
   /**
@@ -435,10 +440,11 @@ public class CameraConnectionFragment extends Fragment {
 
       LOGGER.i("Opening camera preview: " + previewSize.getWidth() + "x" + previewSize.getHeight());
 
-      // Create the reader for the preview frames.
+      // Create the reader for the preview frames. Processing reads the images in place and holds
+      // them until it is done with them, so the reader has to hand out as many as it may hold.
       previewReader =
           ImageReader.newInstance(
-              previewSize.getWidth(), previewSize.getHeight(), ImageFormat.YUV_420_888, 2);
+              previewSize.getWidth(), previewSize.getHeight(), ImageFormat.YUV_420_888, maxImages);
 
       previewReader.setOnImageAvailableListener(imageListener, backgroundHandler);
       previewRequestBuilder.addTarget(previewReader.getSurface());
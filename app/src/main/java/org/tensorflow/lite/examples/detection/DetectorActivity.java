@@ -17,11 +17,8 @@
 package org.tensorflow.lite.examples.detection;
 
 import android.content.Context;
-import android.graphics.Bitmap;
-import android.graphics.Bitmap.Config;
 import android.graphics.Canvas;
 import android.graphics.Color;
-import android.graphics.Matrix;
 import android.graphics.Paint;
 import android.graphics.Paint.Style;
 import android.graphics.RectF;
@@ -36,17 +33,32 @@ import android.widget.TextView;
 import android.widget.Toast;
 
 import java.io.IOException;
-import java.util.LinkedList;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.List;
 
 import org.tensorflow.lite.examples.detection.customview.OverlayView;
 import org.tensorflow.lite.examples.detection.customview.OverlayView.DrawCallback;
+import org.tensorflow.lite.examples.detection.env.Affine;
 import org.tensorflow.lite.examples.detection.env.BorderedText;
-import org.tensorflow.lite.examples.detection.env.ImageUtils;
+import org.tensorflow.lite.examples.detection.env.CoordinateSpaces;
+import org.tensorflow.lite.examples.detection.env.FusedPreprocessor;
+import org.tensorflow.lite.examples.detection.env.InputFormat;
+import org.tensorflow.lite.examples.detection.env.LatencyHistogram;
 import org.tensorflow.lite.examples.detection.env.Logger;
+import org.tensorflow.lite.examples.detection.env.Resampler;
+import org.tensorflow.lite.examples.detection.env.RoiSampler;
+import org.tensorflow.lite.examples.detection.judge.Observation;
+import org.tensorflow.lite.examples.detection.pipeline.FramePipeline;
+import org.tensorflow.lite.examples.detection.pipeline.InferenceScheduler;
+import org.tensorflow.lite.examples.detection.pipeline.PipelineFrame;
 import org.tensorflow.lite.examples.detection.tflite.Classifier;
+import org.tensorflow.lite.examples.detection.tflite.DetectorRegistry;
+import org.tensorflow.lite.examples.detection.tflite.LabelMap;
+import org.tensorflow.lite.examples.detection.tflite.RecognitionList;
 import org.tensorflow.lite.examples.detection.tflite.TFLiteObjectDetectionAPIModel;
 import org.tensorflow.lite.examples.detection.tracking.MultiBoxTracker;
+import org.tensorflow.lite.examples.detection.tracking.RoiPredictor;
 
 /**
  * An activity that uses a TensorFlowMultiBoxDetector and ObjectTracker to detect and then track
@@ -57,37 +69,92 @@ public class DetectorActivity extends CameraActivity implements OnImageAvailable
 
     // Configuration values for the prepackaged SSD model.
     private static final int TF_OD_API_INPUT_SIZE = 300;
-    private static final boolean TF_OD_API_IS_QUANTIZED = false;//true;
     private static final String TF_OD_API_MODEL_FILE = "tflite_graph.tflite";
     private static final String TF_OD_API_LABELS_FILE = "file:///android_asset/labelmap.txt";
+    // Frame and hand crop are recognized as one batch of two.
+    public static final DetectorRegistry.Spec DETECTOR_SPEC =
+            new DetectorRegistry.Spec(
+                    TF_OD_API_MODEL_FILE,
+                    TF_OD_API_LABELS_FILE,
+                    TF_OD_API_INPUT_SIZE,
+                    2);
     private static final DetectorMode MODE = DetectorMode.TF_OD_API;
     // Minimum detection confidence to track a detection.
     private static final float MINIMUM_CONFIDENCE_TF_OD_API = 0.5f;
-    private static final boolean MAINTAIN_ASPECT = false;
     private static final Size DESIRED_PREVIEW_SIZE = new Size(640, 480);
-    private static final boolean SAVE_PREVIEW_BITMAP = true;
     private static final float TEXT_SIZE_DIP = 10;
+    // Frames in flight between the camera and the tracker: one inferring, one being prepared.
+    private static final int PIPELINE_SLOTS = 2;
+    // Log the frame timing histograms every this many frames.
+    private static final int STATS_LOG_INTERVAL = 100;
+    // While the mouth is tracked, the full frame is detected on every this many inference frames;
+    // the frames in between only run the crops, the mouth crop at its predicted position.
+    private static final int FULL_FRAME_INTERVAL = 3;
+    // The fixed hand-pill region of the frame, in frame pixels: left, top, width, height.
+    private static final float[] HAND_REGION = {60, 10, 120, 100};
+    // Nearest neighbour, as the bitmap crops the detector was validated on. BILINEAR smooths the
+    // upscaled crops but costs several times more per crop (ResamplerBenchmark.handCrop) and its
+    // effect on detection is unmeasured.
+    private static final Resampler.Filter CROP_FILTER = Resampler.Filter.NEAREST;
     OverlayView trackingOverlay;
     private Integer sensorOrientation;
 
+    // Leased while resumed. The detector is only touched from the inference thread.
+    private DetectorRegistry.Lease detectorLease;
     private Classifier detector;
+    // Input format of the leased detector, which the preprocess stage writes. Null until it is
+    // loaded; whether it is quantized depends on the model file.
+    private volatile InputFormat detectorInputFormat;
 
     private long lastProcessingTimeMs;
-    private Bitmap rgbFrameBitmap = null;
-    private Bitmap croppedBitmap = null;
-    private Bitmap cropCopyBitmap = null;
-
-    private Bitmap pillfaceBitmap;
-    private Bitmap pillHandBitmap;
-    private Bitmap pillMouthBitmap;
-//  private Bitmap Medbox;
-
-    private boolean computingDetection = false;
+    // Conversion, preprocessing and end-to-end latency are kept by the pipeline's own stats.
+    private final LatencyHistogram inferFrameHistogram = getFrameMetrics().histogram("infer.frame");
+    private final LatencyHistogram inferFrameHandHistogram =
+            getFrameMetrics().histogram("infer.frame+hand");
+    private final LatencyHistogram inferMouthHistogram = getFrameMetrics().histogram("infer.mouth");
+    private final LatencyHistogram inferHandHistogram = getFrameMetrics().histogram("infer.hand");
+    private final LatencyHistogram postprocessHistogram = getFrameMetrics().histogram("postprocess");
+    private final LatencyHistogram overlayDrawHistogram = getFrameMetrics().histogram("overlay_draw");
+    // Time from the preview starting to the first tracked result, recorded once per activity.
+    private final LatencyHistogram firstResultHistogram = getFrameMetrics().histogram("first_result");
+    private volatile long previewStartNanos;
+    private FramePipeline<DetectionFrame> framePipeline;
+    // Only used from the convert stage.
+    private final InferenceScheduler inferenceScheduler = new InferenceScheduler();
+    private int lastScheduledObject = -1;
+    private int framesSinceFullFrame;
+    private final RoiPredictor mouthRoiPredictor =
+            new RoiPredictor(TF_OD_API_INPUT_SIZE, TF_OD_API_INPUT_SIZE);
+
+    // The mouth crop is sampled from the ARGB frame into mouthInput on the inference thread.
+    private RoiSampler mouthSampler;
+    private ByteBuffer mouthInput;
+
+    // Result containers reused for every frame. Only touched from the inference thread.
+    private final RecognitionList frameResults =
+            new RecognitionList(TFLiteObjectDetectionAPIModel.NUM_DETECTIONS);
+    private final RecognitionList mouthResults =
+            new RecognitionList(TFLiteObjectDetectionAPIModel.NUM_DETECTIONS);
+    private final RecognitionList handResults =
+            new RecognitionList(TFLiteObjectDetectionAPIModel.NUM_DETECTIONS);
+    // Frame and hand crop are recognized together when the hand crop is active; the detector runs
+    // them as one batch if that is faster here, see its batch_batched and batch_serial stats.
+    private final ByteBuffer[] batchInputs = new ByteBuffer[2];
+    private final RecognitionList[] batchResults = {frameResults, handResults};
+    private final List<Classifier.Recognition> mappedRecognitions = new ArrayList<>();
+    private final List<Classifier.Recognition> mappedRecognitions_handpill = new ArrayList<>();
+    private final List<Classifier.Recognition> mappedRecognitions_mouthpill = new ArrayList<>();
 
     private long timestamp = 0;
 
-    private Matrix frameToCropTransform;
-    private Matrix cropToFrameTransform;
+    // Frame, model input, detection and canvas coordinates of the chosen preview size.
+    private CoordinateSpaces coordinateSpaces;
+    // The mouth detection mapped to the frame, on the inference thread.
+    private final float[] mouthRegion = new float[4];
+    // Locations of the detections being filtered, and of the mouth whose crop was inferred, on
+    // the inference thread.
+    private final RectF resultLocation = new RectF();
+    private final RectF mouthLocation = new RectF();
 
     private MultiBoxTracker tracker;
 
@@ -96,11 +163,8 @@ public class DetectorActivity extends CameraActivity implements OnImageAvailable
     private int detectedface = 0;
     private int facethreshold = 10;
     private boolean showdetecttabletmsg = true;//this varaible is to control whether to show the tablet-detect hint, only show it for once after 10 faces detected
-    private int detectedpillhand = -1;
-    private int detectedpillmouth = -1;
-    private int detectedmedbox = -1;
-
-    RectF screen_pos = new RectF();
+    // What the current inference frame saw, for the judgement; only touched on the inference thread.
+    private final Observation observation = new Observation();
 
     @Override
     public void onPreviewSizeChosen(final Size size, final int rotation) {
@@ -112,27 +176,8 @@ public class DetectorActivity extends CameraActivity implements OnImageAvailable
 
         tracker = new MultiBoxTracker(this);
 
-        int cropSize = TF_OD_API_INPUT_SIZE;
-
-        try {
-            detector =
-                    TFLiteObjectDetectionAPIModel.create(
-                            getAssets(),
-                            TF_OD_API_MODEL_FILE,
-                            TF_OD_API_LABELS_FILE,
-                            TF_OD_API_INPUT_SIZE,
-                            TF_OD_API_IS_QUANTIZED);
-
-            cropSize = TF_OD_API_INPUT_SIZE;
-        } catch (final IOException e) {
-            e.printStackTrace();
-            LOGGER.e(e, "Exception initializing classifier!");
-            Toast toast =
-                    Toast.makeText(
-                            getApplicationContext(), "Classifier could not be initialized", Toast.LENGTH_SHORT);
-            toast.show();
-            finish();
-        }
+        final int cropSize = TF_OD_API_INPUT_SIZE;
+        previewStartNanos = System.nanoTime();
 
         previewWidth = size.getWidth();
         previewHeight = size.getHeight();
@@ -141,259 +186,514 @@ public class DetectorActivity extends CameraActivity implements OnImageAvailable
         LOGGER.i("Camera orientation relative to screen canvas: %d", sensorOrientation);
 
         LOGGER.i("Initializing at size %dx%d", previewWidth, previewHeight);
-        rgbFrameBitmap = Bitmap.createBitmap(previewWidth, previewHeight, Config.ARGB_8888);
-        croppedBitmap = Bitmap.createBitmap(cropSize, cropSize, Config.ARGB_8888);
-        pillMouthBitmap = Bitmap.createBitmap(cropSize, cropSize, Config.ARGB_8888);
 
-
-        frameToCropTransform =
-                ImageUtils.getTransformationMatrix(
-                        previewWidth, previewHeight,
-                        cropSize, cropSize,
-                        sensorOrientation, MAINTAIN_ASPECT);
-        cropToFrameTransform = new Matrix();
-//    cropToFrameTransform = frameToCropTransform;
-        frameToCropTransform.invert(cropToFrameTransform);
+        // The front camera's preview is mirrored.
+        coordinateSpaces =
+                new CoordinateSpaces(previewWidth, previewHeight, cropSize, sensorOrientation, true);
+
+        // The full-frame model input is sampled straight from the YUV frame through the map from
+        // input to frame instead of being drawn into an intermediate bitmap.
+        final float[] inputToFrame = new float[Affine.SIZE];
+        coordinateSpaces.getInputToFrame(inputToFrame);
+        // Starts out as float input; the preprocess stage switches to the detector's format.
+        final FusedPreprocessor framePreprocessor =
+                new FusedPreprocessor(
+                        cropSize,
+                        InputFormat.floats(
+                                TFLiteObjectDetectionAPIModel.IMAGE_MEAN,
+                                TFLiteObjectDetectionAPIModel.IMAGE_STD));
+        framePreprocessor.setTransform(inputToFrame, previewWidth, previewHeight);
+
+        // Camera frames are copied into a slot and released right away; conversion, preprocessing
+        // and inference of consecutive frames then overlap on their own threads. Inference stays
+        // on the inference handler thread so it remains serialized with setNumThreads/setUseNNAPI.
+        final List<DetectionFrame> frames = new ArrayList<>();
+        for (int i = 0; i < PIPELINE_SLOTS; ++i) {
+            frames.add(
+                    new DetectionFrame(
+                            previewWidth,
+                            previewHeight,
+                            i == 0 ? framePreprocessor : framePreprocessor.newSibling()));
+        }
+        framePipeline =
+                new FramePipeline<>("detector", frames)
+                        .addStage(
+                                "convert",
+                                new FramePipeline.Stage<DetectionFrame>() {
+                                    @Override
+                                    public void process(final DetectionFrame frame) {
+                                        convertStage(frame);
+                                    }
+                                })
+                        .addStage(
+                                "preprocess",
+                                new FramePipeline.Stage<DetectionFrame>() {
+                                    @Override
+                                    public void process(final DetectionFrame frame) {
+                                        preprocessStage(frame);
+                                    }
+                                })
+                        .addStage(
+                                "infer",
+                                getBackgroundExecutor(),
+                                new FramePipeline.Stage<DetectionFrame>() {
+                                    @Override
+                                    public void process(final DetectionFrame frame) {
+                                        inferStage(frame);
+                                    }
+                                })
+                        .start();
 
         trackingOverlay = (OverlayView) findViewById(R.id.tracking_overlay);
         trackingOverlay.addCallback(
                 new DrawCallback() {
                     @Override
                     public void drawCallback(final Canvas canvas) {
-                        tracker.draw(canvas, screen_pos);
-                        screen_pos = null;
+                        final long drawStartNanos = System.nanoTime();
+                        tracker.draw(canvas);
                         if (isDebug()) {
                             tracker.drawDebug(canvas);
                         }
+                        overlayDrawHistogram.recordNanos(System.nanoTime() - drawStartNanos);
                     }
                 });
 
-        tracker.setFrameConfiguration(previewWidth, previewHeight, sensorOrientation);
+        tracker.setFrameConfiguration(coordinateSpaces);
+        tracker.setHandRegion(HAND_REGION[0], HAND_REGION[1], HAND_REGION[2], HAND_REGION[3]);
     }
 
     @Override
-    protected int processImage(final int obj_to_detect) {
+    protected void processImage(final int obj_to_detect) {
         //obj_to_detect  0 检测药盒; 1 检测手持药丸; 2 检测嘴含药丸
         ++timestamp;
         final long currTimestamp = timestamp;
         trackingOverlay.postInvalidate();
 
-        int tmpstatus = -1;
-        // No mutex needed as this method is not reentrant.
-        if (computingDetection) {
-            readyForNextImage();
-            return 3;
-        }
-        computingDetection = true;
-        LOGGER.i("Preparing image " + currTimestamp + " for detection in bg thread.");
-
-        rgbFrameBitmap.setPixels(getRgbBytes(), 0, previewWidth, 0, 0, previewWidth, previewHeight);
-        if (detectedface > facethreshold - 1) {
-            pillHandBitmap = Bitmap.createBitmap(rgbFrameBitmap, 60, 10, 120, 100, null, false);
-            pillHandBitmap = adjustPhotoRotation(pillHandBitmap, sensorOrientation);
+        final DetectionFrame frame = framePipeline.acquireFrame();
+        if (frame == null) {
+            // Every slot is still in flight. The camera frame stays in the exchanger until a newer
+            // one replaces it.
+            return;
         }
-//    Medbox = Bitmap.createBitmap(rgbFrameBitmap, 60, 130, 150, 300, null, false);
-//    Medbox = adjustPhotoRotation(Medbox, sensorOrientation);
-//    int a = rgbFrameBitmap.getPixel(100, 100);
-//    int b = submaprgbFrameBitmap.getPixel(100, 100);
-
+        LOGGER.i("Preparing image " + currTimestamp + " for detection in the pipeline.");
 
-        readyForNextImage();
+        // The slot picks up the freshest camera frame once the convert stage gets to it.
+        frame.timestamp = currTimestamp;
+        frame.objToDetect = obj_to_detect;
+        frame.handCropped = detectedface > facethreshold - 1;
+        framePipeline.submit(frame);
+    }
 
-        final Canvas canvas = new Canvas(croppedBitmap);
-        canvas.drawBitmap(rgbFrameBitmap, frameToCropTransform, null);
+    /** Pipeline stage: motion gate and YUV to ARGB. */
+    private void convertStage(final DetectionFrame frame) {
+        final CameraFrame cameraFrame = takeLatestFrame();
+        if (cameraFrame == null) {
+            // An earlier slot already took the latest camera frame.
+            frame.skip();
+            return;
+        }
+        frame.cameraFrame = cameraFrame;
+        frame.takenNanos = cameraFrame.getCaptureNanos();
+        readFrame(cameraFrame, frame.planes);
+        final boolean objectChanged = frame.objToDetect != lastScheduledObject;
+        if (objectChanged) {
+            // A new judging step looks for different objects; don't rely on the old results.
+            lastScheduledObject = frame.objToDetect;
+            inferenceScheduler.requestInference();
+        }
+        if (!shouldInfer(inferenceScheduler, frame.planes)) {
+            // Scene unchanged since the last inference: the judgement and the tracker keep the last
+            // results, and the camera frame goes straight back.
+            frame.skip();
+            return;
+        }
+        // The mouth region is predicted for the time the frame was taken, the clock the tracks are
+        // dated on.
+        frame.fullFrame =
+                objectChanged
+                        || ++framesSinceFullFrame >= FULL_FRAME_INTERVAL
+                        || !tracker.predictRoi(
+                                mouthRoiPredictor, LabelMap.MOUTH, frame.takenNanos,
+                                frame.mouthRoi);
+        if (frame.fullFrame) {
+            framesSinceFullFrame = 0;
+        }
+        // The crops are sampled from the ARGB frame later; no bitmap is drawn from it.
+        convertFrame(frame.planes, frame.rgbBytes);
+    }
 
-//    final Canvas canvasPH = new Canvas(pillHandBitmap);
-//    canvasPH.drawBitmap(submaprgbFrameBitmap, frameToCropTransformPH, null);
-//    // For examining the actual TF input.
-        if (SAVE_PREVIEW_BITMAP && detectedface > facethreshold) {
-            ImageUtils.saveBitmap(pillHandBitmap);
-            int a = 0;
+    /**
+     * Pipeline stage: model input straight from the YUV planes and the hand crop from the ARGB
+     * frame, in the detector's format.
+     */
+    private void preprocessStage(final DetectionFrame frame) {
+        final InputFormat format = detectorInputFormat;
+        if (format == null) {
+            // Still loading; the input could not be written in the right format yet.
+            frame.skip();
+            return;
+        }
+        if (frame.handCropped) {
+            if (frame.handSampler == null || !format.equals(frame.handSampler.getInputFormat())) {
+                frame.handSampler =
+                        new RoiSampler(
+                                TF_OD_API_INPUT_SIZE, sensorOrientation, format, CROP_FILTER);
+                frame.handInput = frame.handSampler.createInputBuffer();
+            }
+            frame.handSampler.sample(
+                    frame.rgbBytes, previewWidth, previewHeight,
+                    HAND_REGION[0], HAND_REGION[1], HAND_REGION[2], HAND_REGION[3],
+                    frame.handInput);
+        }
+        if (!frame.fullFrame) {
+            // Only the crops are detected, from the ARGB frame.
+            frame.releaseCameraFrame();
+            return;
         }
-        if (detectedface > facethreshold - 1) {
-            int width = pillHandBitmap.getWidth();
-            int height = pillHandBitmap.getHeight();
-            Matrix matrixPH = new Matrix();
-            matrixPH.preScale(300 / 100f, 300 / 120f);
-            pillHandBitmap = Bitmap.createBitmap(pillHandBitmap, 0, 0, width, height, matrixPH, false);
-//      System.out.println("********" + pillHandBitmap.getHeight() + "********" + pillHandBitmap.getWidth());
+        if (!format.equals(frame.preprocessor.getInputFormat())) {
+            frame.preprocessor = frame.preprocessor.newSibling(format);
         }
+        frame.frameInput = preprocessFrame(frame.preprocessor, frame.planes);
+        // Last stage reading the camera planes.
+        frame.releaseCameraFrame();
+    }
 
-//    int width = Medbox.getWidth();
-//    int height = Medbox.getHeight();
-//    Matrix matrixPH = new Matrix();
-//    matrixPH.preScale(300 / 300f, 300 / 150f);
-//    Medbox = Bitmap.createBitmap(Medbox, 0, 0, width, height, matrixPH, false);
-//    System.out.println("********" + Medbox.getHeight() + "********" + Medbox.getWidth());
+    /**
+     * Switches to a newly installed model version if its detector has been loaded and warmed up,
+     * between two frames so none of them waits for it.
+     */
+    private void swapDetector() {
+        final Classifier swapped = detectorLease.pollSwap();
+        if (swapped == null) {
+            return;
+        }
+        detector = swapped;
+        final InputFormat format = swapped.getInputFormat();
+        if (!format.equals(detectorInputFormat)) {
+            detectorInputFormat = format;
+            LOGGER.i("Detector input: %s", format);
+        }
+    }
 
-        runInBackground(
-                new Runnable() {
-                    @Override
-                    public void run() {
-                        LOGGER.i("Running detection on image " + currTimestamp);
-                        final long startTime = SystemClock.uptimeMillis();
-                        final List<Classifier.Recognition> results = detector.recognizeImage(croppedBitmap);
+    /** Pipeline stage: detection, crop detection and tracking, on the inference thread. */
+    private void inferStage(final DetectionFrame frame) {
+        swapDetector();
+        final InputFormat format = detectorInputFormat;
+        if ((frame.fullFrame && !format.equals(frame.preprocessor.getInputFormat()))
+                || (frame.handCropped && !format.equals(frame.handSampler.getInputFormat()))) {
+            // Prepared for the model that was just swapped out.
+            frame.skip();
+            return;
+        }
+        if (!frame.fullFrame) {
+            inferCrops(frame);
+            return;
+        }
+        LOGGER.i("Running detection on image " + frame.timestamp);
+        final long startTime = SystemClock.uptimeMillis();
+        final long inferStartNanos = System.nanoTime();
+        final RecognitionList results = frameResults;
+        if (frame.handCropped) {
+            batchInputs[0] = frame.frameInput;
+            batchInputs[1] = frame.handInput;
+            detector.recognizeImages(batchInputs, 2, batchResults);
+            inferFrameHandHistogram.recordNanos(System.nanoTime() - inferStartNanos);
+        } else {
+            detector.recognizeImage(frame.frameInput, results);
+            inferFrameHistogram.recordNanos(System.nanoTime() - inferStartNanos);
+        }
+        final long postprocessStartNanos = System.nanoTime();
+        long mouthNanos = 0;
 
 //            final List<Classifier.Recognition> results_medbox = detector.recognizeImage(croppedBitmap);
 //            System.out.println("********" + resultsPH);
-                        lastProcessingTimeMs = SystemClock.uptimeMillis() - startTime;
-                        cropCopyBitmap = Bitmap.createBitmap(croppedBitmap);
-                        float minimumConfidence = MINIMUM_CONFIDENCE_TF_OD_API;
-                        switch (MODE) {
-                            case TF_OD_API:
-                                minimumConfidence = MINIMUM_CONFIDENCE_TF_OD_API;
-                                break;
-                        }
+        lastProcessingTimeMs = SystemClock.uptimeMillis() - startTime;
+        float minimumConfidence = MINIMUM_CONFIDENCE_TF_OD_API;
+        switch (MODE) {
+            case TF_OD_API:
+                minimumConfidence = MINIMUM_CONFIDENCE_TF_OD_API;
+                break;
+        }
 
-                        final List<Classifier.Recognition> mappedRecognitions =
-                                new LinkedList<Classifier.Recognition>();
-                        final List<Classifier.Recognition> mappedRecognitions_handpill =
-                                new LinkedList<Classifier.Recognition>();
-                        final List<Classifier.Recognition> mappedRecognitions_mouthpill =
-                                new LinkedList<Classifier.Recognition>();
-
-                        for (final Classifier.Recognition result : results) {
-                            final RectF location = result.getLocation();
-//              final RectF location2 = result.getLocation();
-                            boolean hasface = false;
-                            if (location != null && result.getConfidence() >= minimumConfidence && result.getTitle().equals("face")) {
-                                hasface = true;
-//                cropToFrameTransform.mapRect(location);
-                                get_face_img(location);
-                                result.setLocation(location);
-                                mappedRecognitions.add(result);
-                            } else if (location != null && result.getConfidence() >= minimumConfidence && result.getTitle().equals("medbox")) {
-//                cropToFrameTransform.mapRect(location);
-                                result.setLocation(location);
-                                mappedRecognitions.add(result);
-                                if (obj_to_detect == 0) {
-                                    detectedmedbox = 0;
-                                }
-
-                            } else if (location != null && result.getConfidence() >= minimumConfidence && result.getTitle().equals("hand")) {
-//                cropToFrameTransform.mapRect(location);
-//                                result.setLocation(location);
-//                                mappedRecognitions.add(result);
-                            } else if (location != null && result.getConfidence() >= minimumConfidence && result.getTitle().equals("mouth")) {
-//                cropToFrameTransform.mapRect(location);
-                                detectedpillmouth = 1;
-                                result.setLocation(location);
-                                mappedRecognitions.add(result);
-                                screen_pos = result.getLocation();
-//                screen_pos = new RectF(location2.left, location2.top, location2.right, location2.bottom);
-                                get_mouth_img(location);
-//                System.out.println("********########" + pillMouthBitmap.getWidth());
-                                final List<Classifier.Recognition> results_mouth = detector.recognizeImage(pillMouthBitmap);
-                                for (final Classifier.Recognition mouth_pill_result : results_mouth) {
-                                    final RectF location_mouth_pill = mouth_pill_result.getLocation();
-                                    System.out.println("********########" + mouth_pill_result + "********########" + location_mouth_pill + "********########" + mouth_pill_result.getConfidence() + "********########" + mouth_pill_result);
-                                    if (location_mouth_pill != null && mouth_pill_result.getConfidence() >= minimumConfidence && mouth_pill_result.getTitle().equals("tablet")) {
-//                    System.out.println("********########" + pillMouthBitmap.getWidth());
-                                        float pill_width = Math.abs(mouth_pill_result.getLocation().right - mouth_pill_result.getLocation().left);
-                                        float pill_height = Math.abs(mouth_pill_result.getLocation().bottom - mouth_pill_result.getLocation().top);
-                                        if (pill_width <= 150 && pill_height <= 150){
-                                            mouth_pill_result.setLocation(location_mouth_pill);
-                                            mappedRecognitions_mouthpill.add(mouth_pill_result);
-                                            if (obj_to_detect == 2) {
-                                                detectedpillmouth = 0;
-                                            }
-                                        }
-                                    }
-                                }
-                            }
+        mappedRecognitions.clear();
+        mappedRecognitions_handpill.clear();
+        mappedRecognitions_mouthpill.clear();
+        float medboxConfidence = 0f;
+        boolean mouthInferred = false;
 
-                            if (hasface && detectedface < facethreshold + 1) {
-                                detectedface += 1;
-                            }
-                        }
+        for (int i = 0; i < results.size(); ++i) {
+            final Classifier.Recognition result = results.get(i);
+            if (result.getConfidence() < minimumConfidence) {
+                continue;
+            }
+            boolean hasface = false;
+            switch (result.getClassId()) {
+                case LabelMap.FACE:
+                    hasface = true;
+                    mappedRecognitions.add(result);
+                    break;
+                case LabelMap.MEDBOX:
+                    mappedRecognitions.add(result);
+                    medboxConfidence = Math.max(medboxConfidence, result.getConfidence());
+                    break;
+                case LabelMap.MOUTH: {
+                    result.getLocation(resultLocation);
+                    mappedRecognitions.add(result);
+                    if (sampleMouth(frame, resultLocation)) {
+                        mouthInferred = true;
+                        mouthLocation.set(resultLocation);
+                        mouthNanos += detectMouthPills(minimumConfidence);
+                    }
+                    break;
+                }
+                default:
+                    // Hands are only used through the hand crop.
+                    break;
+            }
+
+            if (hasface && detectedface < facethreshold + 1) {
+                detectedface += 1;
+            }
+        }
 
-                        if (detectedface > facethreshold) {
-                            if (showdetecttabletmsg) {
+        if (frame.handCropped && detectedface > facethreshold) {
+            if (showdetecttabletmsg) {
 //                                Toast toast = Toast.makeText(getApplicationContext(), "face detected, now detect tablet, please place the pill in the red box", Toast.LENGTH_SHORT);
 //                                toast.show();
-                                showdetecttabletmsg = false;
-                            }
-                            final List<Classifier.Recognition> resultsPH = detector.recognizeImage(pillHandBitmap);
-                            for (final Classifier.Recognition resultPH : resultsPH) {
-                                RectF locationPH = resultPH.getLocation();
-                                if (locationPH != null && resultPH.getConfidence() >= minimumConfidence && resultPH.getTitle().equals("tablet")) {
-                                    float pill_width = Math.abs(resultPH.getLocation().right - resultPH.getLocation().left);
-                                    float pill_height = Math.abs(resultPH.getLocation().bottom - resultPH.getLocation().top);
-                                    System.out.println("********########" + pill_width + ",        " + pill_height);
-                                    if (pill_width <= 150 && pill_height <= 150){
-                                        resultPH.setLocation(locationPH);
-                                        mappedRecognitions_handpill.add(resultPH);
-                                        if (obj_to_detect == 1) {
-                                            detectedpillhand = 0;
-                                        }
-                                    }
-                                }
-                            }
-                        }
-                        tracker.trackResults(mappedRecognitions, mappedRecognitions_mouthpill, mappedRecognitions_handpill, currTimestamp);
-                        trackingOverlay.postInvalidate();
-                        computingDetection = false;
-                        runOnUiThread(
-                                new Runnable() {
-                                    @Override
-                                    public void run() {
+                showdetecttabletmsg = false;
+            }
+            collectHandPills(minimumConfidence);
+        }
+        tracker.trackResults(
+                mappedRecognitions, mappedRecognitions_mouthpill, mappedRecognitions_handpill,
+                mouthInferred ? mouthLocation : null, frame.timestamp, frame.takenNanos);
+        judge(frame, medboxConfidence, mouthInferred);
+        if (firstResultHistogram.getCount() == 0) {
+            final long firstResultNanos = System.nanoTime() - previewStartNanos;
+            firstResultHistogram.recordNanos(firstResultNanos);
+            LOGGER.i("First result %d ms after the preview started", firstResultNanos / 1000000);
+        }
+        // Result filtering, crops and tracking, without the mouth crop inference.
+        postprocessHistogram.recordNanos(System.nanoTime() - postprocessStartNanos - mouthNanos);
+        trackingOverlay.postInvalidate();
+        runOnUiThread(
+                new Runnable() {
+                    @Override
+                    public void run() {
 //                    showFrameInfo(previewWidth + "x" + previewHeight);
-//                    showCropInfo(cropCopyBitmap.getWidth() + "x" + cropCopyBitmap.getHeight());
+//                    showCropInfo(TF_OD_API_INPUT_SIZE + "x" + TF_OD_API_INPUT_SIZE);
 //                    showInference(lastProcessingTimeMs + "ms");
-                                    }
-                                });
                     }
                 });
-        if (obj_to_detect == 0) {
-            tmpstatus = detectedmedbox;
-        } else if (obj_to_detect == 1) {
-            tmpstatus = detectedpillhand;
-        } else if (obj_to_detect == 2) {
-            tmpstatus = detectedpillmouth;
+        if (frame.getSequence() % STATS_LOG_INTERVAL == 0) {
+            LOGGER.i("Frame stats:\n%s", getStatString());
         }
+    }
 
-        return tmpstatus;
+    /**
+     * Inference on a frame between full-frame detections: the hand crop, and the mouth crop at the
+     * region predicted from the mouth's track. Full-frame tracks are left to coast.
+     */
+    private void inferCrops(final DetectionFrame frame) {
+        LOGGER.i("Running crop detection on image " + frame.timestamp);
+        final float minimumConfidence = MINIMUM_CONFIDENCE_TF_OD_API;
+        long inferNanos = 0;
+        mappedRecognitions_handpill.clear();
+        mappedRecognitions_mouthpill.clear();
+        if (frame.handCropped) {
+            final long handStartNanos = System.nanoTime();
+            detector.recognizeImage(frame.handInput, handResults);
+            inferNanos = System.nanoTime() - handStartNanos;
+            inferHandHistogram.recordNanos(inferNanos);
+        }
+        final long postprocessStartNanos = System.nanoTime();
+        final boolean mouthInferred = sampleMouth(frame, frame.mouthRoi);
+        final long mouthNanos = mouthInferred ? detectMouthPills(minimumConfidence) : 0;
+        if (frame.handCropped && detectedface > facethreshold) {
+            collectHandPills(minimumConfidence);
+        }
+        // Mouth pills are mapped to the frame through the region they were cropped from.
+        tracker.trackResults(
+                null, mappedRecognitions_mouthpill, mappedRecognitions_handpill,
+                frame.mouthRoi, frame.timestamp, frame.takenNanos);
+        // The medicine box is only looked for in the full frame.
+        judge(frame, Observation.UNSEEN, mouthInferred);
+        postprocessHistogram.recordNanos(System.nanoTime() - postprocessStartNanos - mouthNanos);
+        lastProcessingTimeMs = (inferNanos + mouthNanos) / 1000000;
+        trackingOverlay.postInvalidate();
+        if (frame.getSequence() % STATS_LOG_INTERVAL == 0) {
+            LOGGER.i("Frame stats:\n%s", getStatString());
+        }
     }
 
-    private void get_face_img(RectF location) {
-        int y = (int) ((300f - location.left) * (480 / 300f));
-        int x = (int) ((300f - location.bottom) * (640 / 300f));
-        int width = (int) ((location.bottom - location.top) * (640 / 300f));
-        int height = (int) ((location.left - location.right) * (480 / 300f));
-        if (x <= 1) x = 1;
-        if (x > width - 1) x = width - 1;
-        if (y <= 1) y = 1;
-        if (y > height - 1) y = height - 1;
-        pillfaceBitmap = Bitmap.createBitmap(rgbFrameBitmap, x, y, width, height, null, false);
-        pillfaceBitmap = adjustPhotoRotation(pillfaceBitmap, sensorOrientation);
-//    ImageUtils.saveBitmap(pillMouthBitmap);
-        int mouth_width = pillfaceBitmap.getWidth();
-        int mouth_height = pillfaceBitmap.getHeight();
-        Matrix matrixPH = new Matrix();
-        matrixPH.preScale(300f / mouth_width, 300f / mouth_height);
-        pillfaceBitmap = Bitmap.createBitmap(pillfaceBitmap, 0, 0, mouth_width, mouth_height, matrixPH, false);
-//        ImageUtils.saveBitmap(pillfaceBitmap);
-//    System.out.println("********" + pillMouthBitmap.getHeight() + "********" + pillMouthBitmap.getWidth());
-//    screen_pos = new RectF(x, 480f - y - height, x + width, 480f - y);
+    /**
+     * Runs the detector on {@link #mouthInput} and adds the tablets found in it to
+     * mappedRecognitions_mouthpill.
+     *
+     * @return nanoseconds spent in inference.
+     */
+    private long detectMouthPills(final float minimumConfidence) {
+        final RecognitionList results_mouth = mouthResults;
+        final long mouthStartNanos = System.nanoTime();
+        detector.recognizeImage(mouthInput, results_mouth);
+        final long mouthInferNanos = System.nanoTime() - mouthStartNanos;
+        inferMouthHistogram.recordNanos(mouthInferNanos);
+        for (int j = 0; j < results_mouth.size(); ++j) {
+            final Classifier.Recognition mouth_pill_result = results_mouth.get(j);
+            if (mouth_pill_result.getClassId() == LabelMap.TABLET
+                    && mouth_pill_result.getConfidence() >= minimumConfidence) {
+                final RectF location_mouth_pill = resultLocation;
+                mouth_pill_result.getLocation(location_mouth_pill);
+                float pill_width = Math.abs(location_mouth_pill.right - location_mouth_pill.left);
+                float pill_height = Math.abs(location_mouth_pill.bottom - location_mouth_pill.top);
+                if (pill_width <= 150 && pill_height <= 150){
+                    mappedRecognitions_mouthpill.add(mouth_pill_result);
+                }
+            }
+        }
+        return mouthInferNanos;
     }
 
-    private void get_mouth_img(RectF location) {
-        int y = (int) ((300f - location.left) * (480 / 300f));
-        int x = (int) ((300f - location.bottom) * (640 / 300f));
-        int width = (int) ((location.bottom - location.top) * (640 / 300f));
-        int height = (int) ((location.left - location.right) * (480 / 300f));
-        pillMouthBitmap = Bitmap.createBitmap(rgbFrameBitmap, x, y, width, height, null, false);
-        pillMouthBitmap = adjustPhotoRotation(pillMouthBitmap, sensorOrientation);
-//    ImageUtils.saveBitmap(pillMouthBitmap);
-        int mouth_width = pillMouthBitmap.getWidth();
-        int mouth_height = pillMouthBitmap.getHeight();
-        Matrix matrixPH = new Matrix();
-        matrixPH.preScale(300f / mouth_width, 300f / mouth_height);
-        pillMouthBitmap = Bitmap.createBitmap(pillMouthBitmap, 0, 0, mouth_width, mouth_height, matrixPH, false);
-//    ImageUtils.saveBitmap(pillMouthBitmap);
-//        cnt_mouth += 1;
-//    System.out.println("********" + pillMouthBitmap.getHeight() + "********" + pillMouthBitmap.getWidth());
-//    screen_pos = new RectF(x, 480f - y - height, x + width, 480f - y);
+    /**
+     * Passes what the frame saw to the judgement: the medicine box as given, the tablets collected
+     * in mappedRecognitions_handpill and mappedRecognitions_mouthpill. The hand crop counts only
+     * if it was detected, the mouth crop only if {@code mouthInferred}; otherwise no tablet in it
+     * would read as swallowed.
+     */
+    private void judge(
+            final DetectionFrame frame, final float medboxConfidence, final boolean mouthInferred) {
+        observation.reset();
+        observation.setMedbox(medboxConfidence);
+        if (mouthInferred) {
+            observation.setMouthPill(maxConfidence(mappedRecognitions_mouthpill), true);
+        }
+        if (frame.handCropped && detectedface > facethreshold) {
+            observation.setHandPill(maxConfidence(mappedRecognitions_handpill));
+        }
+        getJudgementEngine().onObservation(frame.takenNanos, observation);
+    }
+
+    /** Highest confidence in {@code recognitions}, 0 if there are none. */
+    private static float maxConfidence(final List<Classifier.Recognition> recognitions) {
+        float confidence = 0f;
+        for (final Classifier.Recognition recognition : recognitions) {
+            confidence = Math.max(confidence, recognition.getConfidence());
+        }
+        return confidence;
+    }
+
+    /** Adds the tablets the detector found in the hand crop to mappedRecognitions_handpill. */
+    private void collectHandPills(final float minimumConfidence) {
+        final RecognitionList resultsPH = handResults;
+        for (int i = 0; i < resultsPH.size(); ++i) {
+            final Classifier.Recognition resultPH = resultsPH.get(i);
+            if (resultPH.getClassId() == LabelMap.TABLET
+                    && resultPH.getConfidence() >= minimumConfidence) {
+                final RectF locationPH = resultLocation;
+                resultPH.getLocation(locationPH);
+                float pill_width = Math.abs(locationPH.right - locationPH.left);
+                float pill_height = Math.abs(locationPH.bottom - locationPH.top);
+                if (pill_width <= 150 && pill_height <= 150){
+                    mappedRecognitions_handpill.add(resultPH);
+                }
+            }
+        }
+    }
+
+    /**
+     * Dumps the frame timing: pipeline throughput, end-to-end and per-stage latency, the latency of
+     * every inference call, post-processing and overlay drawing, dropped frames and the detector's
+     * own preprocess/inference/decode split.
+     */
+    protected String getStatString() {
+        return framePipeline.getStatString()
+                + "\n" + inferenceScheduler
+                + "\n" + getFrameMetrics().getStatString()
+                + "\n" + detector.getStatString();
+    }
+
+    /**
+     * Samples the frame region under {@code location}, a detection in model input coordinates,
+     * into {@link #mouthInput}, turned upright and stretched to the model input.
+     *
+     * @return false if the region is empty and nothing was sampled.
+     */
+    private boolean sampleMouth(final DetectionFrame frame, final RectF location) {
+        if (mouthSampler == null || !detectorInputFormat.equals(mouthSampler.getInputFormat())) {
+            mouthSampler =
+                    new RoiSampler(
+                            TF_OD_API_INPUT_SIZE,
+                            sensorOrientation,
+                            detectorInputFormat,
+                            CROP_FILTER);
+            mouthInput = mouthSampler.createInputBuffer();
+        }
+        mouthRegion[0] = location.left;
+        mouthRegion[1] = location.top;
+        mouthRegion[2] = location.right;
+        mouthRegion[3] = location.bottom;
+        coordinateSpaces.detectionsToFrame(mouthRegion, 0, 1);
+        final float width = mouthRegion[2] - mouthRegion[0];
+        final float height = mouthRegion[3] - mouthRegion[1];
+        if (!(width > 0f && height > 0f)) {
+            return false;
+        }
+        mouthSampler.sample(
+                frame.rgbBytes, previewWidth, previewHeight,
+                mouthRegion[0], mouthRegion[1], width, height, mouthInput);
+        return true;
+    }
+
+    @Override
+    public synchronized void onResume() {
+        super.onResume();
+        // The detector was preloaded when the process started, or released by the previous screen.
+        // Wait for it on the inference thread, ahead of any frame, so the camera callback is not
+        // held up; frames arriving meanwhile are dropped by the pipeline.
+        final DetectorRegistry.Lease lease =
+                ExampleApplication.getDetectorRegistry(this).acquire(DETECTOR_SPEC);
+        detectorLease = lease;
+        runInBackground(
+                () -> {
+                    final long waitStartNanos = System.nanoTime();
+                    try {
+                        detector = lease.await();
+                        detectorInputFormat = detector.getInputFormat();
+                        LOGGER.i("Detector input: %s", detectorInputFormat);
+                        LOGGER.i("Detector ready after waiting %d ms",
+                                (System.nanoTime() - waitStartNanos) / 1000000);
+                    } catch (final IOException | RuntimeException e) {
+                        LOGGER.e(e, "Exception initializing classifier!");
+                        runOnUiThread(
+                                () -> {
+                                    Toast.makeText(
+                                            getApplicationContext(),
+                                            "Classifier could not be initialized",
+                                            Toast.LENGTH_SHORT)
+                                            .show();
+                                    finish();
+                                });
+                    }
+                });
+    }
+
+    @Override
+    public synchronized void onPause() {
+        // Stops the inference thread, so nothing uses the detector any more.
+        super.onPause();
+        detector = null;
+        if (detectorLease != null) {
+            detectorLease.release();
+            detectorLease = null;
+        }
+    }
+
+    @Override
+    public synchronized void onDestroy() {
+        if (framePipeline != null) {
+            framePipeline.shutdown();
+        }
+        super.onDestroy();
     }
 
     @Override
@@ -406,6 +706,13 @@ public class DetectorActivity extends CameraActivity implements OnImageAvailable
         return DESIRED_PREVIEW_SIZE;
     }
 
+    @Override
+    protected int getMaxCameraImages() {
+        // Every slot may hold an image, plus the one waiting in the exchanger and the one the
+        // camera is delivering.
+        return PIPELINE_SLOTS + 2;
+    }
+
     // Which detection model to use: by default uses Tensorflow Object Detection API frozen
     // checkpoints.
     private enum DetectorMode {
@@ -422,18 +729,43 @@ public class DetectorActivity extends CameraActivity implements OnImageAvailable
         runInBackground(() -> detector.setNumThreads(numThreads));
     }
 
-    public static Bitmap adjustPhotoRotation(Bitmap bitmap, int degree) {
-        if (bitmap != null) {
-            Matrix m = new Matrix();
-            try {
-                m.setRotate(degree, bitmap.getWidth() / 2, bitmap.getHeight() / 2);//90就是我们需要选择的90度
-                Bitmap bmp2 = Bitmap.createBitmap(bitmap, 0, 0, bitmap.getWidth(), bitmap.getHeight(), m, true);
-                bitmap.recycle();
-                bitmap = bmp2;
-            } catch (Exception ex) {
-                System.out.print("创建图片失败！" + ex);
+    /** Pipeline slot: one camera frame and everything derived from it. */
+    private static final class DetectionFrame extends PipelineFrame {
+        final FramePlanes planes = new FramePlanes();
+        // Held from the convert stage until the planes are no longer read.
+        CameraFrame cameraFrame;
+        final int[] rgbBytes;
+        // Replaced by the preprocess stage when the detector's input format differs.
+        FusedPreprocessor preprocessor;
+        ByteBuffer frameInput;
+        // The hand crop, written by the preprocess stage in the sampler's format.
+        RoiSampler handSampler;
+        ByteBuffer handInput;
+        boolean handCropped;
+        // False if only the crops are detected, the mouth crop at mouthRoi.
+        boolean fullFrame;
+        final RectF mouthRoi = new RectF();
+        int objToDetect;
+        long timestamp;
+        // When the camera delivered the frame; see CameraFrame#getCaptureNanos.
+        long takenNanos;
+
+        DetectionFrame(final int width, final int height, final FusedPreprocessor preprocessor) {
+            rgbBytes = new int[width * height];
+            this.preprocessor = preprocessor;
+        }
+
+        void releaseCameraFrame() {
+            if (cameraFrame != null) {
+                cameraFrame.release();
+                cameraFrame = null;
             }
         }
-        return bitmap;
+
+        @Override
+        protected void onRecycled() {
+            // A failed stage must not leak the camera buffer.
+            releaseCameraFrame();
+        }
     }
 }
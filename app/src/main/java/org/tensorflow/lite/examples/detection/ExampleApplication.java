@@ -1,16 +1,63 @@
-
 package org.tensorflow.lite.examples.detection;
 
 import android.app.Application;
+import android.content.Context;
 
 import com.baidu.idl.face.platform.LivenessTypeEnum;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
 
+import org.tensorflow.lite.examples.detection.tflite.DetectorRegistry;
+import org.tensorflow.lite.examples.detection.tflite.ModelStore;
+
 public class ExampleApplication extends Application {
 
     public static List<LivenessTypeEnum> livenessList = new ArrayList<LivenessTypeEnum>();
     public static boolean isLivenessRandom = false;
 
+    private ModelStore modelStore;
+    private DetectorRegistry detectorRegistry;
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        // The face check runs first, so the detector is usually loaded and warmed up by the time
+        // DetectorActivity leases it.
+        getDetectorRegistry(this).preload(DetectorActivity.DETECTOR_SPEC);
+    }
+
+    @Override
+    public void onTrimMemory(final int level) {
+        super.onTrimMemory(level);
+        getDetectorRegistry(this).trimMemory(level);
+    }
+
+    /** The detectors shared by every screen of the process. */
+    public static DetectorRegistry getDetectorRegistry(final Context context) {
+        final ExampleApplication application = (ExampleApplication) context.getApplicationContext();
+        synchronized (application) {
+            if (application.detectorRegistry == null) {
+                application.detectorRegistry =
+                        new DetectorRegistry(application, getModelStore(application));
+            }
+            return application.detectorRegistry;
+        }
+    }
+
+    /**
+     * Model versions rolled out after the APK, in app-private storage. Installing one swaps it
+     * into the running detectors.
+     */
+    public static ModelStore getModelStore(final Context context) {
+        final ExampleApplication application = (ExampleApplication) context.getApplicationContext();
+        synchronized (application) {
+            if (application.modelStore == null) {
+                application.modelStore =
+                        new ModelStore(new File(application.getFilesDir(), "models"));
+            }
+            return application.modelStore;
+        }
+    }
 }
@@ -38,6 +38,9 @@ import org.tensorflow.lite.examples.detection.env.Logger;
 
 public class LegacyCameraConnectionFragment extends Fragment {
   private static final Logger LOGGER = new Logger();
+  // Preview buffers handed to the camera for setPreviewCallbackWithBuffer(): one waiting for
+  // processing, up to two held by the frame pipeline and one for the camera to fill.
+  private static final int CALLBACK_BUFFERS = 4;
   /** Conversion from screen rotation to JPEG orientation. */
   private static final SparseIntArray ORIENTATIONS = new SparseIntArray();
 
@@ -178,7 +181,9 @@ public class LegacyCameraConnectionFragment extends Fragment {
 
     camera.setPreviewCallbackWithBuffer(imageListener);
     Camera.Size s = camera.getParameters().getPreviewSize();
-    camera.addCallbackBuffer(new byte[ImageUtils.getYUVByteSize(s.height, s.width)]);
+    for (int i = 0; i < CALLBACK_BUFFERS; ++i) {
+      camera.addCallbackBuffer(new byte[ImageUtils.getYUVByteSize(s.height, s.width)]);
+    }
 
     textureView.setAspectRatio(s.height, s.width);
 
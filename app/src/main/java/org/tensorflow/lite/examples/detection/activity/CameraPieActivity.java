@@ -204,6 +204,7 @@ public abstract class CameraPieActivity extends AppCompatActivity
   public void onPreviewFrame(final byte[] bytes, final Camera camera) {
     if (isProcessingFrame) {
       LOGGER.w("Dropping frame!");
+      camera.addCallbackBuffer(bytes);
       return;
     }
 
@@ -472,7 +473,9 @@ public abstract class CameraPieActivity extends AppCompatActivity
               },
               this,
               getLayoutId(),
-              getDesiredPreviewFrameSize());
+              getDesiredPreviewFrameSize(),
+              // The image being processed and the one being delivered.
+              2);
 
       camera2Fragment.setCamera(cameraId);
       fragment = camera2Fragment;
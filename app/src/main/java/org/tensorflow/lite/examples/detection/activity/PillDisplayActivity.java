@@ -28,13 +28,16 @@ import android.util.TypedValue;
 import android.widget.Toast;
 
 import org.tensorflow.lite.examples.detection.CameraActivity;
+import org.tensorflow.lite.examples.detection.DetectorActivity;
+import org.tensorflow.lite.examples.detection.ExampleApplication;
 import org.tensorflow.lite.examples.detection.R;
 import org.tensorflow.lite.examples.detection.customview.OverlayView;
 import org.tensorflow.lite.examples.detection.env.BorderedText;
+import org.tensorflow.lite.examples.detection.env.CoordinateSpaces;
 import org.tensorflow.lite.examples.detection.env.ImageUtils;
 import org.tensorflow.lite.examples.detection.env.Logger;
 import org.tensorflow.lite.examples.detection.tflite.Classifier;
-import org.tensorflow.lite.examples.detection.tflite.TFLiteObjectDetectionAPIModel;
+import org.tensorflow.lite.examples.detection.tflite.DetectorRegistry;
 import org.tensorflow.lite.examples.detection.tracking.MultiBoxTracker;
 
 import java.io.IOException;
@@ -50,9 +53,6 @@ public class PillDisplayActivity extends CameraPieActivity implements OnImageAva
 
   // Configuration values for the prepackaged SSD model.
   private static final int TF_OD_API_INPUT_SIZE = 300;
-  private static final boolean TF_OD_API_IS_QUANTIZED = false;//true;
-  private static final String TF_OD_API_MODEL_FILE = "tflite_graph.tflite";
-  private static final String TF_OD_API_LABELS_FILE = "file:///android_asset/labelmap.txt";
   private static final DetectorMode MODE = DetectorMode.TF_OD_API;
   // Minimum detection confidence to track a detection.
   private static final float MINIMUM_CONFIDENCE_TF_OD_API = 0.8f;
@@ -63,6 +63,9 @@ public class PillDisplayActivity extends CameraPieActivity implements OnImageAva
   OverlayView trackingOverlay;
   private Integer sensorOrientation;
 
+  // Shared with DetectorActivity through the registry, leased while resumed. The detector is only
+  // touched from the inference thread.
+  private DetectorRegistry.Lease detectorLease;
   private Classifier detector;
 
   private long lastProcessingTimeMs;
@@ -107,26 +110,6 @@ public class PillDisplayActivity extends CameraPieActivity implements OnImageAva
 
     int cropSize = TF_OD_API_INPUT_SIZE;
 
-    try {
-      detector =
-          TFLiteObjectDetectionAPIModel.create(
-              getAssets(),
-              TF_OD_API_MODEL_FILE,
-              TF_OD_API_LABELS_FILE,
-              TF_OD_API_INPUT_SIZE,
-              TF_OD_API_IS_QUANTIZED);
-
-      cropSize = TF_OD_API_INPUT_SIZE;
-    } catch (final IOException e) {
-      e.printStackTrace();
-      LOGGER.e(e, "Exception initializing classifier!");
-      Toast toast =
-          Toast.makeText(
-              getApplicationContext(), "Classifier could not be initialized", Toast.LENGTH_SHORT);
-      toast.show();
-      finish();
-    }
-
     previewWidth = size.getWidth();
     previewHeight = size.getHeight();
 
@@ -161,13 +144,15 @@ public class PillDisplayActivity extends CameraPieActivity implements OnImageAva
 //          }
 //        });
 
-    tracker.setFrameConfiguration(previewWidth, previewHeight, sensorOrientation);
+    tracker.setFrameConfiguration(
+        new CoordinateSpaces(previewWidth, previewHeight, cropSize, sensorOrientation, true));
   }
 
   @Override
   protected void processImage() {
     ++timestamp;
     final long currTimestamp = timestamp;
+    final long takenNanos = System.nanoTime();
     trackingOverlay.postInvalidate();
 
     // No mutex needed as this method is not reentrant.
@@ -309,7 +294,7 @@ public class PillDisplayActivity extends CameraPieActivity implements OnImageAva
                 }
               }
             }
-            tracker.trackResults(mappedRecognitions, mappedRecognitions_mouthpill, mappedRecognitions_handpill, currTimestamp);
+            tracker.trackResults(mappedRecognitions, mappedRecognitions_mouthpill, mappedRecognitions_handpill, null, currTimestamp, takenNanos);
             trackingOverlay.postInvalidate();
             computingDetection = false;
             runOnUiThread(
@@ -362,6 +347,42 @@ public class PillDisplayActivity extends CameraPieActivity implements OnImageAva
 //    screen_pos = new RectF(x, 480f - y - height, x + width, 480f - y);
   }
 
+  @Override
+  public synchronized void onResume() {
+    super.onResume();
+    final DetectorRegistry.Lease lease =
+        ExampleApplication.getDetectorRegistry(this).acquire(DetectorActivity.DETECTOR_SPEC);
+    detectorLease = lease;
+    runInBackground(
+        () -> {
+          try {
+            detector = lease.await();
+          } catch (final IOException | RuntimeException e) {
+            LOGGER.e(e, "Exception initializing classifier!");
+            runOnUiThread(
+                () -> {
+                  Toast.makeText(
+                          getApplicationContext(),
+                          "Classifier could not be initialized",
+                          Toast.LENGTH_SHORT)
+                      .show();
+                  finish();
+                });
+          }
+        });
+  }
+
+  @Override
+  public synchronized void onPause() {
+    // Stops the inference thread, so nothing uses the detector any more.
+    super.onPause();
+    detector = null;
+    if (detectorLease != null) {
+      detectorLease.release();
+      detectorLease = null;
+    }
+  }
+
   @Override
   protected int getLayoutId() {
     return R.layout.tfe_od_camera_connection_fragment_tracking;
@@ -19,12 +19,15 @@ import android.content.Context;
 import android.graphics.Canvas;
 import android.util.AttributeSet;
 import android.view.View;
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.List;
 
-/** A simple View providing a render callback to other classes. */
+/**
+ * A simple View providing a render callback to other classes. Callbacks are added and run on the
+ * UI thread; they must not block it, so whatever they draw is handed to them without a lock.
+ */
 public class OverlayView extends View {
-  private final List<DrawCallback> callbacks = new LinkedList<DrawCallback>();
+  private final List<DrawCallback> callbacks = new ArrayList<DrawCallback>();
 
   public OverlayView(final Context context, final AttributeSet attrs) {
     super(context, attrs);
@@ -35,9 +38,9 @@ public class OverlayView extends View {
   }
 
   @Override
-  public synchronized void draw(final Canvas canvas) {
-    for (final DrawCallback callback : callbacks) {
-      callback.drawCallback(canvas);
+  public void draw(final Canvas canvas) {
+    for (int i = 0; i < callbacks.size(); ++i) {
+      callbacks.get(i).drawCallback(canvas);
     }
   }
 
@@ -0,0 +1,165 @@
+package org.tensorflow.lite.examples.detection.env;
+
+/**
+ * Affine maps of the plane as six floats {@code a, b, c, d, e, f}: the point {@code x, y} maps to
+ * {@code a * x + b * y + c, d * x + e * y + f}. That is the order of the first six values of
+ * {@code Matrix#getValues}, and what {@link FusedPreprocessor#setTransform} takes.
+ *
+ * <p>Maps live in caller-owned arrays, so a chain is composed once and then applied to batches of
+ * points or boxes without allocating.
+ */
+public final class Affine {
+  /** Number of values in a map. */
+  public static final int SIZE = 6;
+
+  private Affine() {}
+
+  /** Returns a new identity map. */
+  public static float[] identity() {
+    return new float[] {1f, 0f, 0f, 0f, 1f, 0f};
+  }
+
+  /**
+   * Sets {@code out} to {@code first} followed by {@code second}. {@code out} may be either of
+   * them.
+   */
+  public static void concat(final float[] first, final float[] second, final float[] out) {
+    final float a = second[0] * first[0] + second[1] * first[3];
+    final float b = second[0] * first[1] + second[1] * first[4];
+    final float c = second[0] * first[2] + second[1] * first[5] + second[2];
+    final float d = second[3] * first[0] + second[4] * first[3];
+    final float e = second[3] * first[1] + second[4] * first[4];
+    final float f = second[3] * first[2] + second[4] * first[5] + second[5];
+    out[0] = a;
+    out[1] = b;
+    out[2] = c;
+    out[3] = d;
+    out[4] = e;
+    out[5] = f;
+  }
+
+  /**
+   * Sets {@code out}, which may be {@code m}, to the inverse of {@code m}.
+   *
+   * @return false if {@code m} cannot be inverted; {@code out} is then unchanged.
+   */
+  public static boolean invert(final float[] m, final float[] out) {
+    final float determinant = m[0] * m[4] - m[1] * m[3];
+    if (determinant == 0f) {
+      return false;
+    }
+    final float a = m[4] / determinant;
+    final float b = -m[1] / determinant;
+    final float d = -m[3] / determinant;
+    final float e = m[0] / determinant;
+    final float c = -(a * m[2] + b * m[5]);
+    final float f = -(d * m[2] + e * m[5]);
+    out[0] = a;
+    out[1] = b;
+    out[2] = c;
+    out[3] = d;
+    out[4] = e;
+    out[5] = f;
+    return true;
+  }
+
+  /** Maps {@code count} points stored as x, y pairs from {@code offset} in place. */
+  public static void mapPoints(
+      final float[] m, final float[] points, final int offset, final int count) {
+    final int end = offset + 2 * count;
+    for (int i = offset; i < end; i += 2) {
+      final float x = points[i];
+      final float y = points[i + 1];
+      points[i] = m[0] * x + m[1] * y + m[2];
+      points[i + 1] = m[3] * x + m[4] * y + m[5];
+    }
+  }
+
+  /**
+   * Maps {@code count} boxes stored as left, top, right, bottom from {@code offset} in place, to
+   * the bounds of their images with left below right and top below bottom. The sides of a box may
+   * come in either order, as detections mirrored on x do.
+   */
+  public static void mapRects(
+      final float[] m, final float[] rects, final int offset, final int count) {
+    final float absA = Math.abs(m[0]);
+    final float absB = Math.abs(m[1]);
+    final float absD = Math.abs(m[3]);
+    final float absE = Math.abs(m[4]);
+    final int end = offset + 4 * count;
+    for (int i = offset; i < end; i += 4) {
+      // The image of a box is bounded by the image of its centre plus the mapped half extents.
+      final float centerX = (rects[i] + rects[i + 2]) * 0.5f;
+      final float centerY = (rects[i + 1] + rects[i + 3]) * 0.5f;
+      final float halfWidth = Math.abs(rects[i + 2] - rects[i]) * 0.5f;
+      final float halfHeight = Math.abs(rects[i + 3] - rects[i + 1]) * 0.5f;
+      final float x = m[0] * centerX + m[1] * centerY + m[2];
+      final float y = m[3] * centerX + m[4] * centerY + m[5];
+      final float extentX = absA * halfWidth + absB * halfHeight;
+      final float extentY = absD * halfWidth + absE * halfHeight;
+      rects[i] = x - extentX;
+      rects[i + 1] = y - extentY;
+      rects[i + 2] = x + extentX;
+      rects[i + 3] = y + extentY;
+    }
+  }
+
+  /**
+   * Sets {@code out} to the map that turns a {@code srcWidth x srcHeight} image by {@code
+   * rotation} degrees about its centre and scales it to {@code dstWidth x dstHeight}, the map
+   * {@link ImageUtils#getTransformationMatrix} builds.
+   *
+   * @param maintainAspectRatio scale both axes by the larger factor, so the destination is filled
+   *     and some of the source may fall off its edges.
+   */
+  public static void rotateAndFit(
+      final int srcWidth,
+      final int srcHeight,
+      final int dstWidth,
+      final int dstHeight,
+      final int rotation,
+      final boolean maintainAspectRatio,
+      final float[] out) {
+    final boolean transpose = (Math.abs(rotation) + 90) % 180 == 0;
+    final int inWidth = transpose ? srcHeight : srcWidth;
+    final int inHeight = transpose ? srcWidth : srcHeight;
+    float scaleX = 1f;
+    float scaleY = 1f;
+    if (inWidth != dstWidth || inHeight != dstHeight) {
+      scaleX = dstWidth / (float) inWidth;
+      scaleY = dstHeight / (float) inHeight;
+      if (maintainAspectRatio) {
+        scaleX = scaleY = Math.max(scaleX, scaleY);
+      }
+    }
+    if (rotation == 0) {
+      out[0] = scaleX;
+      out[1] = 0f;
+      out[2] = 0f;
+      out[3] = 0f;
+      out[4] = scaleY;
+      out[5] = 0f;
+      return;
+    }
+    final double radians = Math.toRadians(rotation);
+    float cos = (float) Math.cos(radians);
+    float sin = (float) Math.sin(radians);
+    if (rotation % 90 == 0) {
+      cos = Math.round(cos);
+      sin = Math.round(sin);
+    }
+    // Centre the source on the origin, rotate, scale and move the origin to the destination centre.
+    final float a = scaleX * cos;
+    final float b = -scaleX * sin;
+    final float d = scaleY * sin;
+    final float e = scaleY * cos;
+    final float halfWidth = srcWidth / 2f;
+    final float halfHeight = srcHeight / 2f;
+    out[0] = a;
+    out[1] = b;
+    out[2] = dstWidth / 2f - a * halfWidth - b * halfHeight;
+    out[3] = d;
+    out[4] = e;
+    out[5] = dstHeight / 2f - d * halfWidth - e * halfHeight;
+  }
+}
@@ -0,0 +1,170 @@
+package org.tensorflow.lite.examples.detection.env;
+
+/**
+ * The coordinate spaces of one preview configuration and the {@link Affine} maps between them,
+ * computed once when the preview size is chosen:
+ *
+ * <ul>
+ *   <li>frame: pixels of the camera frame;
+ *   <li>input: the model input, the frame turned by {@code rotation} degrees and stretched to
+ *       {@code inputSize} square;
+ *   <li>detection: boxes as {@code DetectionDecoder} reports them, input coordinates mirrored on x;
+ *   <li>preview: the frame as the user sees it, mirrored on y for the front camera;
+ *   <li>canvas: the overlay, on which the preview is turned upright and fitted.
+ * </ul>
+ *
+ * <p>A region of the frame sampled into the model input the same way, like the mouth and hand
+ * crops, has input and detection spaces of its own; see {@link #regionDetectionToFrame}.
+ *
+ * <p>Immutable, so it can be shared between the inference and drawing threads. Maps are copied
+ * into caller-owned arrays.
+ */
+public final class CoordinateSpaces {
+  private final int frameWidth;
+  private final int frameHeight;
+  private final int inputSize;
+  private final int rotation;
+  private final boolean mirrorPreview;
+  private final float[] detectionToInput;
+  private final float[] inputToFrame = new float[Affine.SIZE];
+  private final float[] detectionToFrame = new float[Affine.SIZE];
+  private final float[] frameToPreview;
+
+  /**
+   * @param rotation degrees the frame is turned by to be upright, a multiple of 90, as passed to
+   *     {@code Matrix#setRotate}.
+   * @param mirrorPreview whether the preview shows the frame mirrored, as for a front camera.
+   */
+  public CoordinateSpaces(
+      final int frameWidth,
+      final int frameHeight,
+      final int inputSize,
+      final int rotation,
+      final boolean mirrorPreview) {
+    if (rotation % 90 != 0) {
+      throw new IllegalArgumentException("Rotation must be a multiple of 90: " + rotation);
+    }
+    this.frameWidth = frameWidth;
+    this.frameHeight = frameHeight;
+    this.inputSize = inputSize;
+    this.rotation = rotation;
+    this.mirrorPreview = mirrorPreview;
+    detectionToInput = new float[] {-1f, 0f, inputSize, 0f, 1f, 0f};
+    inputToRegion(0, 0, frameWidth, frameHeight, inputSize, rotation, inputToFrame);
+    Affine.concat(detectionToInput, inputToFrame, detectionToFrame);
+    frameToPreview =
+        mirrorPreview ? new float[] {1f, 0f, 0f, 0f, -1f, frameHeight} : Affine.identity();
+  }
+
+  public int getFrameWidth() {
+    return frameWidth;
+  }
+
+  public int getFrameHeight() {
+    return frameHeight;
+  }
+
+  public int getInputSize() {
+    return inputSize;
+  }
+
+  public int getRotation() {
+    return rotation;
+  }
+
+  public boolean isPreviewMirrored() {
+    return mirrorPreview;
+  }
+
+  /** Copies the map from model input to frame coordinates into {@code out}. */
+  public void getInputToFrame(final float[] out) {
+    System.arraycopy(inputToFrame, 0, out, 0, Affine.SIZE);
+  }
+
+  /** Copies the map from full-frame detections to frame coordinates into {@code out}. */
+  public void getDetectionToFrame(final float[] out) {
+    System.arraycopy(detectionToFrame, 0, out, 0, Affine.SIZE);
+  }
+
+  /** Copies the map from frame to preview coordinates into {@code out}. */
+  public void getFrameToPreview(final float[] out) {
+    System.arraycopy(frameToPreview, 0, out, 0, Affine.SIZE);
+  }
+
+  /**
+   * Maps {@code count} full-frame detections, stored as left, top, right, bottom from {@code
+   * offset}, to their bounds in frame coordinates in place.
+   */
+  public void detectionsToFrame(final float[] rects, final int offset, final int count) {
+    Affine.mapRects(detectionToFrame, rects, offset, count);
+  }
+
+  /**
+   * Sets {@code out} to the map from detections in the region {@code left, top, width, height} of
+   * the frame, sampled into the model input like the full frame, to frame coordinates.
+   */
+  public void regionDetectionToFrame(
+      final float left,
+      final float top,
+      final float width,
+      final float height,
+      final float[] out) {
+    inputToRegion(left, top, width, height, inputSize, rotation, out);
+    Affine.concat(detectionToInput, out, out);
+  }
+
+  /**
+   * Sets {@code out} to the map from frame coordinates to a {@code canvasWidth x canvasHeight}
+   * overlay, on which the preview is turned upright and scaled to fit from the top left corner.
+   */
+  public void getFrameToCanvas(final int canvasWidth, final int canvasHeight, final float[] out) {
+    final boolean transpose = (Math.abs(rotation) + 90) % 180 == 0;
+    final int uprightWidth = transpose ? frameHeight : frameWidth;
+    final int uprightHeight = transpose ? frameWidth : frameHeight;
+    final float multiplier =
+        Math.min(canvasWidth / (float) uprightWidth, canvasHeight / (float) uprightHeight);
+    Affine.rotateAndFit(
+        frameWidth,
+        frameHeight,
+        (int) (multiplier * uprightWidth),
+        (int) (multiplier * uprightHeight),
+        rotation,
+        false,
+        out);
+    Affine.concat(frameToPreview, out, out);
+  }
+
+  /**
+   * Sets {@code out} to the map from model input to frame coordinates for the region {@code left,
+   * top, width, height}: the region is turned by {@code rotation} degrees about its centre and
+   * stretched to {@code inputSize} square.
+   */
+  public static void inputToRegion(
+      final float left,
+      final float top,
+      final float width,
+      final float height,
+      final int inputSize,
+      final int rotation,
+      final float[] out) {
+    final boolean transpose = (Math.abs(rotation) + 90) % 180 == 0;
+    // Input pixels per frame pixel along the input axes.
+    final float scaleX = inputSize / (transpose ? height : width);
+    final float scaleY = inputSize / (transpose ? width : height);
+    final double radians = Math.toRadians(rotation);
+    final float cos = (float) Math.round(Math.cos(radians));
+    final float sin = (float) Math.round(Math.sin(radians));
+    // frame = R^T * ((input - inputSize / 2) / scale) + region centre.
+    final float a = cos / scaleX;
+    final float b = sin / scaleY;
+    final float d = -sin / scaleX;
+    final float e = cos / scaleY;
+    final float half = inputSize / 2f;
+    out[0] = a;
+    out[1] = b;
+    out[2] = left + width / 2f - (a + b) * half;
+    out[3] = d;
+    out[4] = e;
+    out[5] = top + height / 2f - (d + e) * half;
+  }
+}
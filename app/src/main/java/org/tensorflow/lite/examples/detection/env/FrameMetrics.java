@@ -0,0 +1,60 @@
+package org.tensorflow.lite.examples.detection.env;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A named set of {@link LatencyHistogram}s plus a dropped frame counter, dumped as one string.
+ *
+ * <p>Look histograms up once with {@link #histogram(String)} and keep the reference; recording into
+ * them is lock-free. Histograms are listed in the order they were first requested.
+ */
+public final class FrameMetrics {
+  private final List<LatencyHistogram> histograms = new ArrayList<>();
+  private final AtomicLong droppedFrames = new AtomicLong();
+
+  /** Returns the histogram called {@code name}, creating it on first use. */
+  public synchronized LatencyHistogram histogram(final String name) {
+    for (final LatencyHistogram histogram : histograms) {
+      if (histogram.getName().equals(name)) {
+        return histogram;
+      }
+    }
+    final LatencyHistogram histogram = new LatencyHistogram(name);
+    histograms.add(histogram);
+    return histogram;
+  }
+
+  /** Counts a camera frame that was never processed. */
+  public void onFrameDropped() {
+    droppedFrames.incrementAndGet();
+  }
+
+  public long getDroppedFrames() {
+    return droppedFrames.get();
+  }
+
+  public synchronized void reset() {
+    for (final LatencyHistogram histogram : histograms) {
+      histogram.reset();
+    }
+    droppedFrames.set(0);
+  }
+
+  /** One line per histogram with its percentiles, then the dropped frame count if there are any. */
+  public synchronized String getStatString() {
+    final StringBuilder sb = new StringBuilder();
+    for (final LatencyHistogram histogram : histograms) {
+      if (sb.length() > 0) {
+        sb.append('\n');
+      }
+      sb.append(histogram);
+    }
+    final long dropped = droppedFrames.get();
+    if (dropped > 0) {
+      sb.append("\ndropped frames: ").append(dropped);
+    }
+    return sb.toString();
+  }
+}
@@ -0,0 +1,254 @@
+package org.tensorflow.lite.examples.detection.env;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+/**
+ * Builds the detector input tensor straight from a YUV camera frame.
+ *
+ * <p>Replaces the chain of full-frame ARGB conversion, {@code Bitmap.setPixels}, drawing the frame
+ * through the frame-to-crop matrix and {@code Bitmap.getPixels}. For every model input pixel the
+ * source frame position is computed once per transform; each frame then only converts the sampled
+ * YUV values and writes normalized floats (or quantized bytes) into a direct buffer that can be
+ * handed to the interpreter as-is. Quantized bytes are collected in an array and copied into the
+ * buffer in one bulk put.
+ *
+ * <p>Sampling is nearest-neighbour through the pixel centre, matching {@code Canvas.drawBitmap}
+ * with a null paint. Not thread-safe: one instance per producer thread.
+ */
+public final class FusedPreprocessor {
+  private final int inputSize;
+  private final InputFormat format;
+  private final ByteBuffer inputBuffer;
+  private final FloatBuffer floatView;
+  // Channel value to normalized float, float formats only.
+  private final float[] normalized;
+  // Channel value to quantized byte, and the bytes of one frame, quantized formats only.
+  private final byte[] quantized;
+  private final byte[] quantizedPixels;
+  // Shared with siblings, see newSibling().
+  private final Sampling sampling;
+
+  /**
+   * @param inputSize width and height of the square model input.
+   * @param isQuantized write raw uint8 channels instead of normalized floats.
+   * @param imageMean mean subtracted from each channel of a float model input.
+   * @param imageStd divisor applied to each channel of a float model input.
+   */
+  public FusedPreprocessor(
+      final int inputSize, final boolean isQuantized, final float imageMean, final float imageStd) {
+    this(
+        inputSize,
+        isQuantized
+            ? InputFormat.quantized(imageMean, imageStd, 0f, 0, false)
+            : InputFormat.floats(imageMean, imageStd));
+  }
+
+  /**
+   * @param inputSize width and height of the square model input.
+   * @param format how the model wants its channels, see {@code Classifier#getInputFormat()}.
+   */
+  public FusedPreprocessor(final int inputSize, final InputFormat format) {
+    this(inputSize, format, new Sampling(inputSize * inputSize));
+  }
+
+  private FusedPreprocessor(
+      final int inputSize, final InputFormat format, final Sampling sampling) {
+    this.inputSize = inputSize;
+    this.format = format;
+    this.sampling = sampling;
+    inputBuffer =
+        ByteBuffer.allocateDirect(inputSize * inputSize * 3 * format.getBytesPerChannel());
+    inputBuffer.order(ByteOrder.nativeOrder());
+    if (format.isQuantized()) {
+      normalized = null;
+      floatView = null;
+      quantized = format.byteTable();
+      quantizedPixels = new byte[inputSize * inputSize * 3];
+    } else {
+      normalized = format.floatTable();
+      floatView = inputBuffer.asFloatBuffer();
+      quantized = null;
+      quantizedPixels = null;
+    }
+  }
+
+  /**
+   * Creates a preprocessor with its own input buffer that shares this instance's sampling tables,
+   * so that several frames can be in flight without duplicating the per-pixel lookup. A later
+   * {@link #setTransform} on either instance applies to both; siblings may process frames
+   * concurrently as long as no transform is being set at the same time.
+   */
+  public FusedPreprocessor newSibling() {
+    return newSibling(format);
+  }
+
+  /** Like {@link #newSibling()}, writing the input in another format. */
+  public FusedPreprocessor newSibling(final InputFormat format) {
+    return new FusedPreprocessor(inputSize, format, sampling);
+  }
+
+  /**
+   * Sets the mapping from model input coordinates to frame coordinates, typically the inverse of the
+   * frame-to-crop matrix.
+   *
+   * @param inputToFrame the first six values of a 3x3 affine matrix in {@code
+   *     android.graphics.Matrix#getValues} order: scaleX, skewX, transX, skewY, scaleY, transY.
+   * @param frameWidth width of the frames that will be passed in.
+   * @param frameHeight height of the frames that will be passed in.
+   */
+  public void setTransform(final float[] inputToFrame, final int frameWidth, final int frameHeight) {
+    final float a = inputToFrame[0];
+    final float b = inputToFrame[1];
+    final float c = inputToFrame[2];
+    final float d = inputToFrame[3];
+    final float e = inputToFrame[4];
+    final float f = inputToFrame[5];
+    final int[] srcX = sampling.srcX;
+    final int[] srcY = sampling.srcY;
+    for (int y = 0; y < inputSize; ++y) {
+      final float cy = y + 0.5f;
+      for (int x = 0; x < inputSize; ++x) {
+        final float cx = x + 0.5f;
+        final int i = y * inputSize + x;
+        srcX[i] = clamp((int) Math.floor(a * cx + b * cy + c), frameWidth - 1);
+        srcY[i] = clamp((int) Math.floor(d * cx + e * cy + f), frameHeight - 1);
+      }
+    }
+    sampling.hasTransform = true;
+  }
+
+  private static int clamp(final int value, final int max) {
+    return value < 0 ? 0 : (value > max ? max : value);
+  }
+
+  /** Returns the input tensor size this instance was built for. */
+  public int getInputSize() {
+    return inputSize;
+  }
+
+  public InputFormat getInputFormat() {
+    return format;
+  }
+
+  /**
+   * Samples an NV21 frame into the model input.
+   *
+   * @return the filled input buffer, rewound and ready to be passed to the interpreter.
+   */
+  public ByteBuffer processNV21(final byte[] nv21, final int width, final int height) {
+    checkTransform();
+    final int[] srcX = sampling.srcX;
+    final int[] srcY = sampling.srcY;
+    final int frameSize = width * height;
+    final int count = inputSize * inputSize;
+    for (int i = 0; i < count; ++i) {
+      final int x = srcX[i];
+      final int y = srcY[i];
+      final int uvp = frameSize + (y >> 1) * width + (x & ~1);
+      write(i, YuvToRgbConverter.toArgb(nv21[y * width + x], 0xff & nv21[uvp + 1], 0xff & nv21[uvp]));
+    }
+    return finish();
+  }
+
+  /**
+   * Samples a YUV_420_888 frame (separate planes with arbitrary strides) into the model input.
+   *
+   * @return the filled input buffer, rewound and ready to be passed to the interpreter.
+   */
+  public ByteBuffer processYUV420(
+      final byte[] yData,
+      final byte[] uData,
+      final byte[] vData,
+      final int yRowStride,
+      final int uvRowStride,
+      final int uvPixelStride) {
+    checkTransform();
+    final int[] srcX = sampling.srcX;
+    final int[] srcY = sampling.srcY;
+    final int count = inputSize * inputSize;
+    for (int i = 0; i < count; ++i) {
+      final int x = srcX[i];
+      final int y = srcY[i];
+      final int uvOffset = (y >> 1) * uvRowStride + (x >> 1) * uvPixelStride;
+      write(
+          i,
+          YuvToRgbConverter.toArgb(
+              yData[y * yRowStride + x], 0xff & uData[uvOffset], 0xff & vData[uvOffset]));
+    }
+    return finish();
+  }
+
+  /**
+   * Samples a YUV_420_888 frame read in place from its plane buffers, e.g. those of an {@code
+   * android.media.Image}, into the model input. Only absolute gets are used, so the buffers'
+   * positions are left alone.
+   *
+   * @return the filled input buffer, rewound and ready to be passed to the interpreter.
+   */
+  public ByteBuffer processYUV420(
+      final ByteBuffer yData,
+      final ByteBuffer uData,
+      final ByteBuffer vData,
+      final int yRowStride,
+      final int uvRowStride,
+      final int uvPixelStride) {
+    checkTransform();
+    final int[] srcX = sampling.srcX;
+    final int[] srcY = sampling.srcY;
+    final int count = inputSize * inputSize;
+    for (int i = 0; i < count; ++i) {
+      final int x = srcX[i];
+      final int y = srcY[i];
+      final int uvOffset = (y >> 1) * uvRowStride + (x >> 1) * uvPixelStride;
+      write(
+          i,
+          YuvToRgbConverter.toArgb(
+              yData.get(y * yRowStride + x),
+              0xff & uData.get(uvOffset),
+              0xff & vData.get(uvOffset)));
+    }
+    return finish();
+  }
+
+  private ByteBuffer finish() {
+    inputBuffer.rewind();
+    if (quantizedPixels != null) {
+      inputBuffer.put(quantizedPixels);
+      inputBuffer.rewind();
+    }
+    return inputBuffer;
+  }
+
+  private void write(final int pixel, final int argb) {
+    final int base = pixel * 3;
+    if (quantizedPixels != null) {
+      quantizedPixels[base] = quantized[(argb >> 16) & 0xFF];
+      quantizedPixels[base + 1] = quantized[(argb >> 8) & 0xFF];
+      quantizedPixels[base + 2] = quantized[argb & 0xFF];
+    } else {
+      floatView.put(base, normalized[(argb >> 16) & 0xFF]);
+      floatView.put(base + 1, normalized[(argb >> 8) & 0xFF]);
+      floatView.put(base + 2, normalized[argb & 0xFF]);
+    }
+  }
+
+  private void checkTransform() {
+    if (!sampling.hasTransform) {
+      throw new IllegalStateException("setTransform() must be called before processing frames");
+    }
+  }
+
+  // Source frame column and row for each model input pixel, row-major.
+  private static final class Sampling {
+    final int[] srcX;
+    final int[] srcY;
+    volatile boolean hasTransform;
+
+    Sampling(final int pixels) {
+      srcX = new int[pixels];
+      srcY = new int[pixels];
+    }
+  }
+}
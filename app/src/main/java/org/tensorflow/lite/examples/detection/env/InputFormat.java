@@ -0,0 +1,140 @@
+package org.tensorflow.lite.examples.detection.env;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * How a model wants its input channels written: normalized floats, or bytes quantized with the
+ * scale and zero point of its input tensor.
+ *
+ * <p>Either way an 8-bit channel value maps to one of 256 outputs, so both are precomputed into a
+ * table once and every pixel is a lookup. A quantized value is {@code round(((c - mean) / std) /
+ * scale) + zeroPoint}, clamped to the range of uint8 or int8; a model without quantization
+ * parameters (scale 0) gets the raw channel value, shifted by 128 for int8. Immutable.
+ */
+public final class InputFormat {
+  private final float imageMean;
+  private final float imageStd;
+  private final boolean quantized;
+  private final float scale;
+  private final int zeroPoint;
+  private final boolean signed;
+  // Normalized value of each channel value, float models only.
+  private final float[] floatTable;
+  // Quantized byte of each channel value, quantized models only.
+  private final byte[] byteTable;
+
+  private InputFormat(
+      final float imageMean,
+      final float imageStd,
+      final boolean quantized,
+      final float scale,
+      final int zeroPoint,
+      final boolean signed) {
+    this.imageMean = imageMean;
+    this.imageStd = imageStd;
+    this.quantized = quantized;
+    this.scale = scale;
+    this.zeroPoint = zeroPoint;
+    this.signed = signed;
+    if (quantized) {
+      floatTable = null;
+      byteTable = new byte[256];
+      final int min = signed ? -128 : 0;
+      final int max = signed ? 127 : 255;
+      for (int c = 0; c < 256; ++c) {
+        final int q;
+        if (scale > 0) {
+          q = Math.round((c - imageMean) / imageStd / scale) + zeroPoint;
+        } else {
+          q = signed ? c - 128 : c;
+        }
+        byteTable[c] = (byte) Math.max(min, Math.min(max, q));
+      }
+    } else {
+      byteTable = null;
+      floatTable = new float[256];
+      for (int c = 0; c < 256; ++c) {
+        floatTable[c] = (c - imageMean) / imageStd;
+      }
+    }
+  }
+
+  /** Float input: each channel becomes {@code (c - imageMean) / imageStd}. */
+  public static InputFormat floats(final float imageMean, final float imageStd) {
+    return new InputFormat(imageMean, imageStd, false, 0f, 0, false);
+  }
+
+  /**
+   * Quantized input, one byte per channel.
+   *
+   * @param imageMean mean the float model was trained with, applied before quantizing.
+   * @param imageStd divisor the float model was trained with, applied before quantizing.
+   * @param scale quantization scale of the input tensor, or 0 to write raw channel values.
+   * @param zeroPoint quantization zero point of the input tensor.
+   * @param signed true for an int8 input tensor, false for uint8.
+   */
+  public static InputFormat quantized(
+      final float imageMean,
+      final float imageStd,
+      final float scale,
+      final int zeroPoint,
+      final boolean signed) {
+    return new InputFormat(imageMean, imageStd, true, scale, zeroPoint, signed);
+  }
+
+  public boolean isQuantized() {
+    return quantized;
+  }
+
+  public int getBytesPerChannel() {
+    return quantized ? 1 : 4;
+  }
+
+  /** Normalized value of channel value {@code c}, 0-255. Float formats only. */
+  public float normalize(final int c) {
+    return floatTable[c];
+  }
+
+  /** Quantized byte of channel value {@code c}, 0-255. Quantized formats only. */
+  public byte quantize(final int c) {
+    return byteTable[c];
+  }
+
+  float[] floatTable() {
+    return floatTable;
+  }
+
+  byte[] byteTable() {
+    return byteTable;
+  }
+
+  @Override
+  public boolean equals(final Object o) {
+    if (!(o instanceof InputFormat)) {
+      return false;
+    }
+    final InputFormat other = (InputFormat) o;
+    return quantized == other.quantized
+        && signed == other.signed
+        && zeroPoint == other.zeroPoint
+        && Float.compare(scale, other.scale) == 0
+        && Float.compare(imageMean, other.imageMean) == 0
+        && Float.compare(imageStd, other.imageStd) == 0;
+  }
+
+  @Override
+  public int hashCode() {
+    return Arrays.hashCode(
+        new Object[] {quantized, signed, zeroPoint, scale, imageMean, imageStd});
+  }
+
+  @Override
+  public String toString() {
+    if (!quantized) {
+      return String.format(Locale.US, "float32 (c - %.1f) / %.1f", imageMean, imageStd);
+    }
+    return String.format(
+        Locale.US, "%s scale %g zero point %d", signed ? "int8" : "uint8", scale, zeroPoint);
+  }
+}
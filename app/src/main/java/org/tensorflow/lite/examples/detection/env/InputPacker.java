@@ -0,0 +1,98 @@
+package org.tensorflow.lite.examples.detection.env;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+
+/**
+ * Packs ARGB pixels, as read from a {@code Bitmap}, into a model input buffer.
+ *
+ * <p>The float/quantized decision is made once per image rather than per pixel, and each channel
+ * is one lookup in the {@link InputFormat} table. Floats are written through a {@link FloatBuffer}
+ * view at absolute indices, so there is no bounds-checked, position-advancing {@code putFloat} per
+ * channel; quantized bytes are collected in an array and copied in one bulk put. The view of the
+ * last buffer packed into is kept, since callers alternate between a few long-lived buffers. Not
+ * thread-safe.
+ */
+public final class InputPacker {
+  private final int pixels;
+  private final InputFormat format;
+  // Channel value to normalized float, float formats only.
+  private final float[] normalized;
+  // Channel value to quantized byte, and the bytes of one image, quantized formats only.
+  private final byte[] quantized;
+  private final byte[] quantizedPixels;
+  private ByteBuffer viewedBuffer;
+  private FloatBuffer floatView;
+
+  /**
+   * @param pixels number of pixels of one input image.
+   * @param format how the model wants its channels.
+   */
+  public InputPacker(final int pixels, final InputFormat format) {
+    this.pixels = pixels;
+    this.format = format;
+    if (format.isQuantized()) {
+      normalized = null;
+      quantized = format.byteTable();
+      quantizedPixels = new byte[pixels * 3];
+    } else {
+      normalized = format.floatTable();
+      quantized = null;
+      quantizedPixels = null;
+    }
+  }
+
+  public InputFormat getInputFormat() {
+    return format;
+  }
+
+  /**
+   * Writes the first {@code pixels} entries of {@code argb} into {@code input} from its start, as
+   * RGB channels, and leaves it rewound.
+   *
+   * @param input a buffer of at least {@code pixels * 3} channels in the packer's format, in
+   *     native byte order for floats.
+   */
+  public void pack(final int[] argb, final ByteBuffer input) {
+    if (quantizedPixels != null) {
+      packQuantized(argb, input);
+    } else {
+      packFloats(argb, floatView(input));
+      input.rewind();
+    }
+  }
+
+  private void packQuantized(final int[] argb, final ByteBuffer input) {
+    final byte[] table = quantized;
+    final byte[] out = quantizedPixels;
+    for (int i = 0, base = 0; i < pixels; ++i, base += 3) {
+      final int pixel = argb[i];
+      out[base] = table[(pixel >> 16) & 0xFF];
+      out[base + 1] = table[(pixel >> 8) & 0xFF];
+      out[base + 2] = table[pixel & 0xFF];
+    }
+    input.rewind();
+    input.put(out);
+    input.rewind();
+  }
+
+  private void packFloats(final int[] argb, final FloatBuffer out) {
+    final float[] table = normalized;
+    for (int i = 0, base = 0; i < pixels; ++i, base += 3) {
+      final int pixel = argb[i];
+      out.put(base, table[(pixel >> 16) & 0xFF]);
+      out.put(base + 1, table[(pixel >> 8) & 0xFF]);
+      out.put(base + 2, table[pixel & 0xFF]);
+    }
+  }
+
+  private FloatBuffer floatView(final ByteBuffer input) {
+    if (input != viewedBuffer) {
+      // A view starts at the buffer's position; take it from the start.
+      input.rewind();
+      floatView = input.asFloatBuffer();
+      viewedBuffer = input;
+    }
+    return floatView;
+  }
+}
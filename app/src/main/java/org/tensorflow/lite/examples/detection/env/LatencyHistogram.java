@@ -0,0 +1,132 @@
+package org.tensorflow.lite.examples.detection.env;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed-size latency histogram in the style of HdrHistogram.
+ *
+ * <p>Samples are kept in microseconds. Values below 128 us are counted exactly; above that every
+ * power of two is split into 64 linear buckets, so any reported percentile is within 1/64 (about
+ * 1.6%) of the true sample. Recording is lock-free and allocation-free, and may happen on any
+ * thread concurrently with reads; a read taken while samples are being recorded is approximate.
+ */
+public final class LatencyHistogram {
+  private static final int SUB_BUCKET_BITS = 6;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  // Samples above (128 << MAX_SHIFT) us, a bit over two minutes, are clamped.
+  private static final int MAX_SHIFT = 20;
+  static final int BUCKET_COUNT = SUB_BUCKETS * MAX_SHIFT + 2 * SUB_BUCKETS;
+
+  private final String name;
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+  private final AtomicLong totalCount = new AtomicLong();
+  private final AtomicLong totalMicros = new AtomicLong();
+  private final AtomicLong maxMicros = new AtomicLong();
+
+  public LatencyHistogram(final String name) {
+    this.name = name;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  /** Records one sample measured with {@link System#nanoTime()}. */
+  public void recordNanos(final long nanos) {
+    recordMicros(nanos / 1000);
+  }
+
+  public void recordMicros(final long micros) {
+    final long value = micros < 0 ? 0 : micros;
+    counts.incrementAndGet(bucketIndex(value));
+    totalCount.incrementAndGet();
+    totalMicros.addAndGet(value);
+    long max = maxMicros.get();
+    while (value > max && !maxMicros.compareAndSet(max, value)) {
+      max = maxMicros.get();
+    }
+  }
+
+  public long getCount() {
+    return totalCount.get();
+  }
+
+  public float getMeanMs() {
+    final long count = totalCount.get();
+    return count == 0 ? 0f : totalMicros.get() / 1000f / count;
+  }
+
+  public float getMaxMs() {
+    return maxMicros.get() / 1000f;
+  }
+
+  /**
+   * Returns the smallest value that at least {@code percentile} percent of the samples are less
+   * than or equal to, in milliseconds, or 0 if nothing was recorded.
+   */
+  public float getPercentileMs(final double percentile) {
+    long total = 0;
+    for (int i = 0; i < BUCKET_COUNT; ++i) {
+      total += counts.get(i);
+    }
+    if (total == 0) {
+      return 0f;
+    }
+    final long target = Math.max(1, (long) Math.ceil(Math.min(percentile, 100.0) / 100.0 * total));
+    long seen = 0;
+    for (int i = 0; i < BUCKET_COUNT; ++i) {
+      seen += counts.get(i);
+      if (seen >= target) {
+        return Math.min(highestEquivalentValue(i), maxMicros.get()) / 1000f;
+      }
+    }
+    return getMaxMs();
+  }
+
+  public void reset() {
+    for (int i = 0; i < BUCKET_COUNT; ++i) {
+      counts.set(i, 0);
+    }
+    totalCount.set(0);
+    totalMicros.set(0);
+    maxMicros.set(0);
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        Locale.US,
+        "%s: n=%d p50=%.2f p95=%.2f p99=%.2f max=%.2f mean=%.2f ms",
+        name,
+        getCount(),
+        getPercentileMs(50),
+        getPercentileMs(95),
+        getPercentileMs(99),
+        getMaxMs(),
+        getMeanMs());
+  }
+
+  static int bucketIndex(final long micros) {
+    if (micros < 2 * SUB_BUCKETS) {
+      return (int) micros;
+    }
+    // Shift that brings the value into [SUB_BUCKETS, 2 * SUB_BUCKETS).
+    final int shift = 63 - Long.numberOfLeadingZeros(micros) - SUB_BUCKET_BITS;
+    if (shift > MAX_SHIFT) {
+      return BUCKET_COUNT - 1;
+    }
+    return SUB_BUCKETS * shift + (int) (micros >> shift);
+  }
+
+  /** Largest value that maps to bucket {@code index}. */
+  static long highestEquivalentValue(final int index) {
+    if (index < 2 * SUB_BUCKETS) {
+      return index;
+    }
+    final int shift = index / SUB_BUCKETS - 1;
+    final long subBucket = index - SUB_BUCKETS * shift;
+    return ((subBucket + 1) << shift) - 1;
+  }
+}
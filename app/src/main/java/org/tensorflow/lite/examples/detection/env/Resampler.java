@@ -0,0 +1,543 @@
+package org.tensorflow.lite.examples.detection.env;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Resamples a region of an image to a fixed output size, optionally turned by a quarter turn:
+ * nearest-neighbour, bilinear or area averaging.
+ *
+ * <p>Plain Java over {@code int[]} ARGB frames and {@code byte[]} single-channel planes, so it
+ * runs the same in the app and on the JVM without {@code android.graphics}. The filter is
+ * separable: for every output column and every output row a table lists the source pixels it
+ * reads and their 12-bit fixed-point weights, computed once per region. An output row first blends
+ * its source rows into a scratch row, then blends that row horizontally; nearest-neighbour skips
+ * the blending and copies. The turn is a permutation of the output positions, so it costs
+ * nothing. Output rows are split into bands resampled in parallel on a fork-join pool, each band
+ * with a scratch row that is kept for the next image. Not thread-safe: one instance per producer
+ * thread.
+ */
+public final class Resampler {
+  /** How an output pixel is computed from the source pixels under it. */
+  public enum Filter {
+    /** The source pixel under the output pixel centre, like drawing a bitmap without a paint. */
+    NEAREST,
+    /** Linear interpolation between the source pixels around the output pixel centre. */
+    BILINEAR,
+    /** Mean of the source pixels the output pixel covers, weighted by the area covered. */
+    AREA
+  }
+
+  private static final int WEIGHT_BITS = 12;
+  private static final int ONE = 1 << WEIGHT_BITS;
+  // Fraction bits of the scratch row between the vertical and the horizontal pass, which keeps
+  // the horizontal sums of 8-bit channels within an int.
+  private static final int SCRATCH_BITS = 8;
+  private static final int VERTICAL_SHIFT = WEIGHT_BITS - SCRATCH_BITS;
+  private static final int VERTICAL_ROUND = 1 << (VERTICAL_SHIFT - 1);
+  private static final int HORIZONTAL_SHIFT = WEIGHT_BITS + SCRATCH_BITS;
+  private static final int HORIZONTAL_ROUND = 1 << (HORIZONTAL_SHIFT - 1);
+  // Output rows per fork-join leaf.
+  private static final int DEFAULT_BAND_ROWS = 64;
+
+  private final int outWidth;
+  private final int outHeight;
+  private final Filter filter;
+  private final ForkJoinPool pool;
+  private final int bandRows;
+  // Taps of the output columns and rows before the turn, i.e. along the source axes.
+  private final Axis columns = new Axis();
+  private final Axis rows = new Axis();
+  // Scratch row of each band, grown on demand.
+  private final int[][] scratch;
+  // Output index of the first unturned pixel and the steps along an unturned row and column.
+  private int outBase;
+  private int outColumnStep;
+  private int outRowStep;
+
+  /** Creates a resampler that runs on the pool shared with {@link YuvToRgbConverter}. */
+  public Resampler(final int outWidth, final int outHeight, final Filter filter) {
+    this(outWidth, outHeight, filter, YuvToRgbConverter.getSharedPool(), DEFAULT_BAND_ROWS);
+  }
+
+  /**
+   * @param pool pool the row bands run on, or null to resample on the calling thread only.
+   * @param bandRows number of output rows each parallel task resamples.
+   */
+  public Resampler(
+      final int outWidth,
+      final int outHeight,
+      final Filter filter,
+      final ForkJoinPool pool,
+      final int bandRows) {
+    if (outWidth < 1 || outHeight < 1) {
+      throw new IllegalArgumentException("Empty output: " + outWidth + "x" + outHeight);
+    }
+    if (bandRows < 1) {
+      throw new IllegalArgumentException("bandRows must be positive: " + bandRows);
+    }
+    this.outWidth = outWidth;
+    this.outHeight = outHeight;
+    this.filter = filter;
+    this.pool = pool;
+    this.bandRows = bandRows;
+    scratch = new int[(Math.max(outWidth, outHeight) + bandRows - 1) / bandRows][];
+  }
+
+  public int getOutWidth() {
+    return outWidth;
+  }
+
+  public int getOutHeight() {
+    return outHeight;
+  }
+
+  public Filter getFilter() {
+    return filter;
+  }
+
+  /**
+   * Resamples the region {@code left, top, width, height} of an ARGB frame into {@code out},
+   * turned by {@code rotation} degrees. Source positions outside the frame are clamped to its
+   * edge. The output is opaque.
+   *
+   * @param argb the frame, row-major with a stride of {@code srcWidth}.
+   * @param rotation a multiple of 90, in the sense of {@code Matrix#setRotate}.
+   * @param out {@code outWidth * outHeight} pixels, row-major.
+   */
+  public void resample(
+      final int[] argb,
+      final int srcWidth,
+      final int srcHeight,
+      final float left,
+      final float top,
+      final float width,
+      final float height,
+      final int rotation,
+      final int[] out) {
+    final int scaledHeight = prepare(srcWidth, srcHeight, left, top, width, height, rotation);
+    run(
+        new RowKernel() {
+          @Override
+          public void resampleRows(final int band, final int rowStart, final int rowEnd) {
+            if (filter == Filter.NEAREST) {
+              copyArgbRows(argb, srcWidth, out, rowStart, rowEnd);
+            } else if (filter == Filter.BILINEAR) {
+              lerpArgbRows(argb, srcWidth, out, band, rowStart, rowEnd);
+            } else {
+              blendArgbRows(argb, srcWidth, out, band, rowStart, rowEnd);
+            }
+          }
+        },
+        scaledHeight);
+  }
+
+  /**
+   * Resamples the region {@code left, top, width, height} of a single-channel plane, such as the
+   * luma plane of a camera frame, into {@code out}, turned by {@code rotation} degrees.
+   *
+   * @param rowStride bytes from one row of {@code plane} to the next.
+   * @param rotation a multiple of 90, in the sense of {@code Matrix#setRotate}.
+   * @param out {@code outWidth * outHeight} samples, row-major.
+   */
+  public void resample(
+      final byte[] plane,
+      final int srcWidth,
+      final int srcHeight,
+      final int rowStride,
+      final float left,
+      final float top,
+      final float width,
+      final float height,
+      final int rotation,
+      final byte[] out) {
+    final int scaledHeight = prepare(srcWidth, srcHeight, left, top, width, height, rotation);
+    run(
+        new RowKernel() {
+          @Override
+          public void resampleRows(final int band, final int rowStart, final int rowEnd) {
+            if (filter == Filter.NEAREST) {
+              copyPlaneRows(plane, rowStride, out, rowStart, rowEnd);
+            } else {
+              blendPlaneRows(plane, rowStride, out, band, rowStart, rowEnd);
+            }
+          }
+        },
+        scaledHeight);
+  }
+
+  /**
+   * Computes the tap tables of the region and the output permutation of the turn.
+   *
+   * @return the number of output rows before the turn.
+   */
+  private int prepare(
+      final int srcWidth,
+      final int srcHeight,
+      final float left,
+      final float top,
+      final float width,
+      final float height,
+      final int rotation) {
+    if (!(width > 0f && height > 0f)) {
+      throw new IllegalArgumentException("Empty region: " + width + "x" + height);
+    }
+    if (rotation % 90 != 0) {
+      throw new IllegalArgumentException("Rotation must be a multiple of 90: " + rotation);
+    }
+    final int turn = ((rotation % 360) + 360) % 360;
+    final boolean transpose = turn == 90 || turn == 270;
+    // The region scaled to the output before it is turned.
+    final int scaledWidth = transpose ? outHeight : outWidth;
+    final int scaledHeight = transpose ? outWidth : outHeight;
+    columns.compute(filter, scaledWidth, left, width, srcWidth);
+    rows.compute(filter, scaledHeight, top, height, srcHeight);
+    switch (turn) {
+      case 0:
+        outBase = 0;
+        outColumnStep = 1;
+        outRowStep = outWidth;
+        break;
+      case 90:
+        // Unturned column x becomes output row x, unturned row y output column h - 1 - y.
+        outBase = scaledHeight - 1;
+        outColumnStep = outWidth;
+        outRowStep = -1;
+        break;
+      case 180:
+        outBase = (scaledHeight - 1) * outWidth + scaledWidth - 1;
+        outColumnStep = -1;
+        outRowStep = -outWidth;
+        break;
+      default:
+        // Unturned column x becomes output row w - 1 - x, unturned row y output column y.
+        outBase = (scaledWidth - 1) * outWidth;
+        outColumnStep = -outWidth;
+        outRowStep = 1;
+        break;
+    }
+    return scaledHeight;
+  }
+
+  private void run(final RowKernel kernel, final int scaledHeight) {
+    final int bands = (scaledHeight + bandRows - 1) / bandRows;
+    if (pool == null || bands == 1) {
+      for (int band = 0; band < bands; ++band) {
+        kernel.resampleRows(
+            band, band * bandRows, Math.min(scaledHeight, (band + 1) * bandRows));
+      }
+    } else {
+      pool.invoke(new BandTask(kernel, 0, bands, bandRows, scaledHeight));
+    }
+  }
+
+  private void copyArgbRows(
+      final int[] argb, final int stride, final int[] out, final int rowStart, final int rowEnd) {
+    final int[] columnStart = columns.start;
+    final int[] columnIndex = columns.index;
+    final int scaledWidth = columns.count;
+    for (int y = rowStart; y < rowEnd; ++y) {
+      final int rowOffset = rows.index[rows.start[y]] * stride;
+      int o = outBase + y * outRowStep;
+      for (int x = 0; x < scaledWidth; ++x, o += outColumnStep) {
+        out[o] = argb[rowOffset + columnIndex[columnStart[x]]] | 0xff000000;
+      }
+    }
+  }
+
+  private void copyPlaneRows(
+      final byte[] plane, final int stride, final byte[] out, final int rowStart, final int rowEnd) {
+    final int[] columnStart = columns.start;
+    final int[] columnIndex = columns.index;
+    final int scaledWidth = columns.count;
+    for (int y = rowStart; y < rowEnd; ++y) {
+      final int rowOffset = rows.index[rows.start[y]] * stride;
+      int o = outBase + y * outRowStep;
+      for (int x = 0; x < scaledWidth; ++x, o += outColumnStep) {
+        out[o] = plane[rowOffset + columnIndex[columnStart[x]]];
+      }
+    }
+  }
+
+  /** Bilinear, where the taps of position {@code i} are {@code 2 * i} and {@code 2 * i + 1}. */
+  private void lerpArgbRows(
+      final int[] argb,
+      final int stride,
+      final int[] out,
+      final int band,
+      final int rowStart,
+      final int rowEnd) {
+    final int first = columns.min;
+    final int span = columns.max - first + 1;
+    final int[] acc = scratch(band, span * 3);
+    final int[] columnIndex = columns.index;
+    final int[] columnWeight = columns.weight;
+    final int scaledWidth = columns.count;
+    for (int y = rowStart; y < rowEnd; ++y) {
+      // a + (b - a) * w: one multiply per channel.
+      final int w = rows.weight[2 * y + 1];
+      final int above = rows.index[2 * y] * stride + first;
+      final int below = rows.index[2 * y + 1] * stride + first;
+      for (int c = 0, k = 0; c < span; ++c, k += 3) {
+        final int p = argb[above + c];
+        final int q = argb[below + c];
+        final int pr = (p >> 16) & 0xff;
+        final int pg = (p >> 8) & 0xff;
+        final int pb = p & 0xff;
+        acc[k] = ((pr << WEIGHT_BITS) + (((q >> 16) & 0xff) - pr) * w + VERTICAL_ROUND)
+            >> VERTICAL_SHIFT;
+        acc[k + 1] = ((pg << WEIGHT_BITS) + (((q >> 8) & 0xff) - pg) * w + VERTICAL_ROUND)
+            >> VERTICAL_SHIFT;
+        acc[k + 2] = ((pb << WEIGHT_BITS) + ((q & 0xff) - pb) * w + VERTICAL_ROUND)
+            >> VERTICAL_SHIFT;
+      }
+      int o = outBase + y * outRowStep;
+      for (int x = 0, t = 0; x < scaledWidth; ++x, t += 2, o += outColumnStep) {
+        final int wx = columnWeight[t + 1];
+        final int k0 = (columnIndex[t] - first) * 3;
+        final int k1 = (columnIndex[t + 1] - first) * 3;
+        final int r = (acc[k0] << WEIGHT_BITS) + (acc[k1] - acc[k0]) * wx + HORIZONTAL_ROUND;
+        final int g =
+            (acc[k0 + 1] << WEIGHT_BITS) + (acc[k1 + 1] - acc[k0 + 1]) * wx + HORIZONTAL_ROUND;
+        final int b =
+            (acc[k0 + 2] << WEIGHT_BITS) + (acc[k1 + 2] - acc[k0 + 2]) * wx + HORIZONTAL_ROUND;
+        out[o] =
+            0xff000000
+                | ((r >> HORIZONTAL_SHIFT) << 16)
+                | ((g >> HORIZONTAL_SHIFT) << 8)
+                | (b >> HORIZONTAL_SHIFT);
+      }
+    }
+  }
+
+  private void blendArgbRows(
+      final int[] argb,
+      final int stride,
+      final int[] out,
+      final int band,
+      final int rowStart,
+      final int rowEnd) {
+    final int first = columns.min;
+    final int span = columns.max - first + 1;
+    final int[] acc = scratch(band, span * 3);
+    final int[] columnStart = columns.start;
+    final int[] columnIndex = columns.index;
+    final int[] columnWeight = columns.weight;
+    final int scaledWidth = columns.count;
+    for (int y = rowStart; y < rowEnd; ++y) {
+      // Vertical pass over the source columns any output column reads.
+      Arrays.fill(acc, 0, span * 3, 0);
+      for (int t = rows.start[y]; t < rows.start[y + 1]; ++t) {
+        final int w = rows.weight[t];
+        final int offset = rows.index[t] * stride + first;
+        for (int c = 0, k = 0; c < span; ++c, k += 3) {
+          final int pixel = argb[offset + c];
+          acc[k] += w * ((pixel >> 16) & 0xff);
+          acc[k + 1] += w * ((pixel >> 8) & 0xff);
+          acc[k + 2] += w * (pixel & 0xff);
+        }
+      }
+      for (int k = 0; k < span * 3; ++k) {
+        acc[k] = (acc[k] + VERTICAL_ROUND) >> VERTICAL_SHIFT;
+      }
+      // Horizontal pass.
+      int o = outBase + y * outRowStep;
+      for (int x = 0; x < scaledWidth; ++x, o += outColumnStep) {
+        int r = HORIZONTAL_ROUND;
+        int g = HORIZONTAL_ROUND;
+        int b = HORIZONTAL_ROUND;
+        for (int t = columnStart[x]; t < columnStart[x + 1]; ++t) {
+          final int w = columnWeight[t];
+          final int k = (columnIndex[t] - first) * 3;
+          r += w * acc[k];
+          g += w * acc[k + 1];
+          b += w * acc[k + 2];
+        }
+        out[o] =
+            0xff000000
+                | ((r >> HORIZONTAL_SHIFT) << 16)
+                | ((g >> HORIZONTAL_SHIFT) << 8)
+                | (b >> HORIZONTAL_SHIFT);
+      }
+    }
+  }
+
+  private void blendPlaneRows(
+      final byte[] plane,
+      final int stride,
+      final byte[] out,
+      final int band,
+      final int rowStart,
+      final int rowEnd) {
+    final int first = columns.min;
+    final int span = columns.max - first + 1;
+    final int[] acc = scratch(band, span);
+    final int[] columnStart = columns.start;
+    final int[] columnIndex = columns.index;
+    final int[] columnWeight = columns.weight;
+    final int scaledWidth = columns.count;
+    for (int y = rowStart; y < rowEnd; ++y) {
+      Arrays.fill(acc, 0, span, 0);
+      for (int t = rows.start[y]; t < rows.start[y + 1]; ++t) {
+        final int w = rows.weight[t];
+        final int offset = rows.index[t] * stride + first;
+        for (int c = 0; c < span; ++c) {
+          acc[c] += w * (plane[offset + c] & 0xff);
+        }
+      }
+      for (int c = 0; c < span; ++c) {
+        acc[c] = (acc[c] + VERTICAL_ROUND) >> VERTICAL_SHIFT;
+      }
+      int o = outBase + y * outRowStep;
+      for (int x = 0; x < scaledWidth; ++x, o += outColumnStep) {
+        int v = HORIZONTAL_ROUND;
+        for (int t = columnStart[x]; t < columnStart[x + 1]; ++t) {
+          v += columnWeight[t] * acc[columnIndex[t] - first];
+        }
+        out[o] = (byte) (v >> HORIZONTAL_SHIFT);
+      }
+    }
+  }
+
+  private int[] scratch(final int band, final int size) {
+    int[] row = scratch[band];
+    if (row == null || row.length < size) {
+      row = new int[size];
+      scratch[band] = row;
+    }
+    return row;
+  }
+
+  /**
+   * Source taps of every output position along one axis: output {@code i} reads source {@code
+   * index[t]} with weight {@code weight[t]} for {@code start[i] <= t < start[i + 1]}. The weights
+   * of a position sum to {@link #ONE}.
+   */
+  private static final class Axis {
+    int count;
+    int[] start = new int[1];
+    int[] index = new int[16];
+    int[] weight = new int[16];
+    // Lowest and highest source index of any tap.
+    int min;
+    int max;
+    private int taps;
+
+    void compute(
+        final Filter filter, final int n, final float origin, final float extent, final int limit) {
+      count = n;
+      if (start.length < n + 1) {
+        start = new int[n + 1];
+      }
+      taps = 0;
+      min = Integer.MAX_VALUE;
+      max = Integer.MIN_VALUE;
+      final float scale = extent / n;
+      for (int i = 0; i < n; ++i) {
+        start[i] = taps;
+        switch (filter) {
+          case NEAREST:
+            add((int) Math.floor(origin + (i + 0.5f) * scale), ONE, limit);
+            break;
+          case BILINEAR:
+            {
+              final float centre = origin + (i + 0.5f) * scale - 0.5f;
+              final int below = (int) Math.floor(centre);
+              final int above = Math.round((centre - below) * ONE);
+              // Always two taps, even of weight 0, for the bilinear loops.
+              add(below, ONE - above, limit);
+              add(below + 1, above, limit);
+              break;
+            }
+          case AREA:
+            addArea(origin + i * scale, scale, limit);
+            break;
+        }
+      }
+      start[n] = taps;
+    }
+
+    /** Adds the source pixels overlapping {@code [from, from + length)}, by overlap. */
+    private void addArea(final float from, final float length, final int limit) {
+      final float to = from + length;
+      final int first = taps;
+      int total = 0;
+      int largest = first;
+      int largestWeight = 0;
+      for (int p = (int) Math.floor(from); p < to; ++p) {
+        final float overlap = Math.min(to, p + 1) - Math.max(from, p);
+        final int w = Math.round(overlap / length * ONE);
+        if (w == 0) {
+          continue;
+        }
+        add(p, w, limit);
+        total += w;
+        if (w > largestWeight) {
+          largest = taps - 1;
+          largestWeight = w;
+        }
+      }
+      if (taps == first) {
+        // Narrower than a rounding step: the pixel under the start.
+        add((int) Math.floor(from), ONE, limit);
+      } else {
+        // Rounding leftovers go to the heaviest tap.
+        weight[largest] += ONE - total;
+      }
+    }
+
+    private void add(final int source, final int w, final int limit) {
+      if (taps == index.length) {
+        index = Arrays.copyOf(index, taps * 2);
+        weight = Arrays.copyOf(weight, taps * 2);
+      }
+      final int clamped = source < 0 ? 0 : (source >= limit ? limit - 1 : source);
+      index[taps] = clamped;
+      weight[taps] = w;
+      ++taps;
+      min = Math.min(min, clamped);
+      max = Math.max(max, clamped);
+    }
+  }
+
+  private interface RowKernel {
+    void resampleRows(int band, int rowStart, int rowEnd);
+  }
+
+  // Fork/join tasks are serializable by inheritance only; these are never serialized.
+  @SuppressWarnings("serial")
+  private static final class BandTask extends RecursiveAction {
+    private final RowKernel kernel;
+    private final int bandStart;
+    private final int bandEnd;
+    private final int bandRows;
+    private final int rowCount;
+
+    BandTask(
+        final RowKernel kernel,
+        final int bandStart,
+        final int bandEnd,
+        final int bandRows,
+        final int rowCount) {
+      this.kernel = kernel;
+      this.bandStart = bandStart;
+      this.bandEnd = bandEnd;
+      this.bandRows = bandRows;
+      this.rowCount = rowCount;
+    }
+
+    @Override
+    protected void compute() {
+      if (bandEnd - bandStart == 1) {
+        kernel.resampleRows(
+            bandStart, bandStart * bandRows, Math.min(rowCount, bandEnd * bandRows));
+        return;
+      }
+      final int mid = (bandStart + bandEnd) >>> 1;
+      invokeAll(
+          new BandTask(kernel, bandStart, mid, bandRows, rowCount),
+          new BandTask(kernel, mid, bandEnd, bandRows, rowCount));
+    }
+  }
+}
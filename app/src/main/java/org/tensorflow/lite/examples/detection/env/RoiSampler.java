@@ -0,0 +1,90 @@
+package org.tensorflow.lite.examples.detection.env;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Samples a region of an ARGB frame into a square model input: crop, rotation and stretch to the
+ * input size in one pass of a {@link Resampler}.
+ *
+ * <p>Replaces {@code Bitmap.createBitmap} of the region, rotating that bitmap into another one and
+ * scaling it into a third, followed by {@code getPixels} and packing. Each input pixel is computed
+ * from the frame pixels under it; positions outside the frame are clamped to its edge. The input
+ * is written in the detector's {@link InputFormat} into a caller-owned buffer, so nothing is
+ * allocated per region. Not thread-safe: one instance per thread.
+ */
+public final class RoiSampler {
+  private final int inputSize;
+  private final int rotation;
+  private final Resampler resampler;
+  private final InputPacker packer;
+  // The sampled region, one input image of ARGB pixels.
+  private final int[] pixels;
+
+  /** Creates a sampler that reads the frame pixel under each input pixel centre. */
+  public RoiSampler(final int inputSize, final int rotation, final InputFormat format) {
+    this(inputSize, rotation, format, Resampler.Filter.NEAREST);
+  }
+
+  /**
+   * @param inputSize width and height of the square model input.
+   * @param rotation degrees the region is turned by before it is stretched to the input, a
+   *     multiple of 90, as passed to {@code Matrix#setRotate}.
+   * @param format how the model wants its channels.
+   * @param filter how an input pixel is computed from the frame pixels under it.
+   */
+  public RoiSampler(
+      final int inputSize,
+      final int rotation,
+      final InputFormat format,
+      final Resampler.Filter filter) {
+    if (rotation % 90 != 0) {
+      throw new IllegalArgumentException("Rotation must be a multiple of 90: " + rotation);
+    }
+    this.inputSize = inputSize;
+    this.rotation = rotation;
+    resampler = new Resampler(inputSize, inputSize, filter);
+    packer = new InputPacker(inputSize * inputSize, format);
+    pixels = new int[inputSize * inputSize];
+  }
+
+  public InputFormat getInputFormat() {
+    return packer.getInputFormat();
+  }
+
+  public Resampler.Filter getFilter() {
+    return resampler.getFilter();
+  }
+
+  /** Allocates a direct buffer for one input in this sampler's format. */
+  public ByteBuffer createInputBuffer() {
+    final ByteBuffer buffer =
+        ByteBuffer.allocateDirect(
+            inputSize * inputSize * 3 * packer.getInputFormat().getBytesPerChannel());
+    buffer.order(ByteOrder.nativeOrder());
+    return buffer;
+  }
+
+  /**
+   * Writes the region {@code left, top, width, height} of {@code argb}, in frame pixels, into
+   * {@code input} and leaves it rewound.
+   *
+   * @param argb the frame, row-major with a stride of {@code frameWidth}.
+   * @param width width of the region, positive.
+   * @param height height of the region, positive.
+   * @param input a buffer from {@link #createInputBuffer}.
+   */
+  public void sample(
+      final int[] argb,
+      final int frameWidth,
+      final int frameHeight,
+      final float left,
+      final float top,
+      final float width,
+      final float height,
+      final ByteBuffer input) {
+    resampler.resample(
+        argb, frameWidth, frameHeight, left, top, width, height, rotation, pixels);
+    packer.pack(pixels, input);
+  }
+}
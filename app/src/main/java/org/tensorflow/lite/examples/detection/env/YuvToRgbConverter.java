@@ -0,0 +1,329 @@
+package org.tensorflow.lite.examples.detection.env;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Fixed-point YUV420 to ARGB8888 converter.
+ *
+ * <p>Pixels are converted in 2x2 blocks so that every chroma sample is loaded and weighted once for
+ * the four luma samples it covers, and the luma term comes from a 256-entry table instead of a
+ * per-pixel multiply and clamp. Frames taller than one band are split into bands of rows that are
+ * converted in parallel on a fork-join pool. The output is bit-identical to the original per-pixel
+ * {@code YUV2RGB} routine.
+ *
+ * <p>YUV_420_888 planes can also be read in place from the direct buffers of an {@code
+ * android.media.Image}, without copying them into arrays first. Only absolute gets are used, so
+ * the buffers' positions are left alone and bands may read them concurrently.
+ */
+public final class YuvToRgbConverter {
+  // This value is 2 ^ 18 - 1, and is used to clamp the RGB values before their ranges
+  // are normalized to eight bits.
+  static final int kMaxChannelValue = 262143;
+
+  // Rows per fork-join leaf. Kept even so a 2x2 block never straddles two bands.
+  private static final int DEFAULT_BAND_ROWS = 64;
+
+  // 1192 * max(y - 16, 0) for every possible luma byte.
+  private static final int[] LUMA_TABLE = new int[256];
+
+  static {
+    for (int y = 0; y < 256; ++y) {
+      LUMA_TABLE[y] = 1192 * Math.max(y - 16, 0);
+    }
+  }
+
+  private static ForkJoinPool sharedPool;
+
+  private final ForkJoinPool pool;
+  private final int bandRows;
+
+  /** Creates a converter that runs on a process-wide pool sized to the number of cores. */
+  public YuvToRgbConverter() {
+    this(getSharedPool(), DEFAULT_BAND_ROWS);
+  }
+
+  /**
+   * Creates a converter with an explicit pool and band size.
+   *
+   * @param pool pool the row bands run on, or null to convert on the calling thread only.
+   * @param bandRows number of rows each parallel task converts. Rounded up to an even number.
+   */
+  public YuvToRgbConverter(final ForkJoinPool pool, final int bandRows) {
+    if (bandRows < 1) {
+      throw new IllegalArgumentException("bandRows must be positive: " + bandRows);
+    }
+    this.pool = pool;
+    this.bandRows = (bandRows + 1) & ~1;
+  }
+
+  // ForkJoinPool.commonPool() needs API 24, so keep our own pool for minSdkVersion 21. Shared
+  // with Resampler.
+  static synchronized ForkJoinPool getSharedPool() {
+    if (sharedPool == null) {
+      sharedPool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+    }
+    return sharedPool;
+  }
+
+  /**
+   * Converts an NV21 (YUV420SP, interleaved V/U) frame as delivered by android.hardware.Camera.
+   */
+  public void convertYUV420SP(
+      final byte[] input, final int width, final int height, final int[] output) {
+    run(
+        new RowKernel() {
+          @Override
+          public void convertRows(final int rowStart, final int rowEnd) {
+            convertYUV420SPRows(input, width, height, output, rowStart, rowEnd);
+          }
+        },
+        height);
+  }
+
+  /** Converts a planar/semi-planar YUV_420_888 frame as delivered by android.media.Image. */
+  public void convertYUV420(
+      final byte[] yData,
+      final byte[] uData,
+      final byte[] vData,
+      final int width,
+      final int height,
+      final int yRowStride,
+      final int uvRowStride,
+      final int uvPixelStride,
+      final int[] out) {
+    run(
+        new RowKernel() {
+          @Override
+          public void convertRows(final int rowStart, final int rowEnd) {
+            convertYUV420Rows(
+                yData, uData, vData, width, height, yRowStride, uvRowStride, uvPixelStride, out,
+                rowStart, rowEnd);
+          }
+        },
+        height);
+  }
+
+  /**
+   * Converts a YUV_420_888 frame read in place from its plane buffers, e.g. those of an {@code
+   * android.media.Image}. Same layout as {@link #convertYUV420(byte[], byte[], byte[], int, int,
+   * int, int, int, int[])}, indexed from each buffer's start.
+   */
+  public void convertYUV420(
+      final ByteBuffer yData,
+      final ByteBuffer uData,
+      final ByteBuffer vData,
+      final int width,
+      final int height,
+      final int yRowStride,
+      final int uvRowStride,
+      final int uvPixelStride,
+      final int[] out) {
+    run(
+        new RowKernel() {
+          @Override
+          public void convertRows(final int rowStart, final int rowEnd) {
+            convertYUV420Rows(
+                yData, uData, vData, width, height, yRowStride, uvRowStride, uvPixelStride, out,
+                rowStart, rowEnd);
+          }
+        },
+        height);
+  }
+
+  private void run(final RowKernel kernel, final int height) {
+    if (pool == null || height <= bandRows) {
+      kernel.convertRows(0, height);
+    } else {
+      pool.invoke(new BandTask(kernel, 0, height, bandRows));
+    }
+  }
+
+  static void convertYUV420SPRows(
+      final byte[] input,
+      final int width,
+      final int height,
+      final int[] output,
+      final int rowStart,
+      final int rowEnd) {
+    final int frameSize = width * height;
+    final int evenWidth = width & ~1;
+    for (int j = rowStart; j < rowEnd; j += 2) {
+      final int uvRow = frameSize + (j >> 1) * width;
+      final int yp0 = j * width;
+      final int yp1 = yp0 + width;
+      final boolean secondRow = j + 1 < rowEnd;
+
+      int i = 0;
+      for (; i < evenWidth; i += 2) {
+        final int v = (0xff & input[uvRow + i]) - 128;
+        final int u = (0xff & input[uvRow + i + 1]) - 128;
+        final int rv = 1634 * v;
+        final int guv = -833 * v - 400 * u;
+        final int bu = 2066 * u;
+
+        output[yp0 + i] = pack(LUMA_TABLE[0xff & input[yp0 + i]], rv, guv, bu);
+        output[yp0 + i + 1] = pack(LUMA_TABLE[0xff & input[yp0 + i + 1]], rv, guv, bu);
+        if (secondRow) {
+          output[yp1 + i] = pack(LUMA_TABLE[0xff & input[yp1 + i]], rv, guv, bu);
+          output[yp1 + i + 1] = pack(LUMA_TABLE[0xff & input[yp1 + i + 1]], rv, guv, bu);
+        }
+      }
+      if (i < width) {
+        // Odd width: the last column still owns a full chroma pair.
+        final int v = (0xff & input[uvRow + i]) - 128;
+        final int u = (0xff & input[uvRow + i + 1]) - 128;
+        final int rv = 1634 * v;
+        final int guv = -833 * v - 400 * u;
+        final int bu = 2066 * u;
+        output[yp0 + i] = pack(LUMA_TABLE[0xff & input[yp0 + i]], rv, guv, bu);
+        if (secondRow) {
+          output[yp1 + i] = pack(LUMA_TABLE[0xff & input[yp1 + i]], rv, guv, bu);
+        }
+      }
+    }
+  }
+
+  static void convertYUV420Rows(
+      final byte[] yData,
+      final byte[] uData,
+      final byte[] vData,
+      final int width,
+      final int height,
+      final int yRowStride,
+      final int uvRowStride,
+      final int uvPixelStride,
+      final int[] out,
+      final int rowStart,
+      final int rowEnd) {
+    for (int j = rowStart; j < rowEnd; j += 2) {
+      final int pY0 = yRowStride * j;
+      final int pY1 = pY0 + yRowStride;
+      final int pUV = uvRowStride * (j >> 1);
+      final int op0 = j * width;
+      final int op1 = op0 + width;
+      final boolean secondRow = j + 1 < rowEnd;
+
+      for (int i = 0; i < width; i += 2) {
+        final int uvOffset = pUV + (i >> 1) * uvPixelStride;
+        final int u = (0xff & uData[uvOffset]) - 128;
+        final int v = (0xff & vData[uvOffset]) - 128;
+        final int rv = 1634 * v;
+        final int guv = -833 * v - 400 * u;
+        final int bu = 2066 * u;
+        final boolean secondColumn = i + 1 < width;
+
+        out[op0 + i] = pack(LUMA_TABLE[0xff & yData[pY0 + i]], rv, guv, bu);
+        if (secondColumn) {
+          out[op0 + i + 1] = pack(LUMA_TABLE[0xff & yData[pY0 + i + 1]], rv, guv, bu);
+        }
+        if (secondRow) {
+          out[op1 + i] = pack(LUMA_TABLE[0xff & yData[pY1 + i]], rv, guv, bu);
+          if (secondColumn) {
+            out[op1 + i + 1] = pack(LUMA_TABLE[0xff & yData[pY1 + i + 1]], rv, guv, bu);
+          }
+        }
+      }
+    }
+  }
+
+  static void convertYUV420Rows(
+      final ByteBuffer yData,
+      final ByteBuffer uData,
+      final ByteBuffer vData,
+      final int width,
+      final int height,
+      final int yRowStride,
+      final int uvRowStride,
+      final int uvPixelStride,
+      final int[] out,
+      final int rowStart,
+      final int rowEnd) {
+    for (int j = rowStart; j < rowEnd; j += 2) {
+      final int pY0 = yRowStride * j;
+      final int pY1 = pY0 + yRowStride;
+      final int pUV = uvRowStride * (j >> 1);
+      final int op0 = j * width;
+      final int op1 = op0 + width;
+      final boolean secondRow = j + 1 < rowEnd;
+
+      for (int i = 0; i < width; i += 2) {
+        final int uvOffset = pUV + (i >> 1) * uvPixelStride;
+        final int u = (0xff & uData.get(uvOffset)) - 128;
+        final int v = (0xff & vData.get(uvOffset)) - 128;
+        final int rv = 1634 * v;
+        final int guv = -833 * v - 400 * u;
+        final int bu = 2066 * u;
+        final boolean secondColumn = i + 1 < width;
+
+        out[op0 + i] = pack(LUMA_TABLE[0xff & yData.get(pY0 + i)], rv, guv, bu);
+        if (secondColumn) {
+          out[op0 + i + 1] = pack(LUMA_TABLE[0xff & yData.get(pY0 + i + 1)], rv, guv, bu);
+        }
+        if (secondRow) {
+          out[op1 + i] = pack(LUMA_TABLE[0xff & yData.get(pY1 + i)], rv, guv, bu);
+          if (secondColumn) {
+            out[op1 + i + 1] = pack(LUMA_TABLE[0xff & yData.get(pY1 + i + 1)], rv, guv, bu);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Converts a single sample. {@code u} and {@code v} are the raw chroma bytes (0-255). Used by
+   * callers that sample sparse pixels instead of converting whole frames.
+   */
+  static int toArgb(final int y, final int u, final int v) {
+    final int uc = u - 128;
+    final int vc = v - 128;
+    return pack(LUMA_TABLE[y & 0xff], 1634 * vc, -833 * vc - 400 * uc, 2066 * uc);
+  }
+
+  private static int pack(final int y1192, final int rv, final int guv, final int bu) {
+    int r = y1192 + rv;
+    int g = y1192 + guv;
+    int b = y1192 + bu;
+
+    // Clipping RGB values to be inside boundaries [ 0 , kMaxChannelValue ]
+    r = r > kMaxChannelValue ? kMaxChannelValue : (r < 0 ? 0 : r);
+    g = g > kMaxChannelValue ? kMaxChannelValue : (g < 0 ? 0 : g);
+    b = b > kMaxChannelValue ? kMaxChannelValue : (b < 0 ? 0 : b);
+
+    return 0xff000000 | ((r << 6) & 0xff0000) | ((g >> 2) & 0xff00) | ((b >> 10) & 0xff);
+  }
+
+  /** Converts the half-open row range [rowStart, rowEnd). rowStart is always even. */
+  private interface RowKernel {
+    void convertRows(int rowStart, int rowEnd);
+  }
+
+  // Fork/join tasks are serializable by inheritance only; these are never serialized.
+  @SuppressWarnings("serial")
+  private static final class BandTask extends RecursiveAction {
+    private final RowKernel kernel;
+    private final int rowStart;
+    private final int rowEnd;
+    private final int bandRows;
+
+    BandTask(final RowKernel kernel, final int rowStart, final int rowEnd, final int bandRows) {
+      this.kernel = kernel;
+      this.rowStart = rowStart;
+      this.rowEnd = rowEnd;
+      this.bandRows = bandRows;
+    }
+
+    @Override
+    protected void compute() {
+      if (rowEnd - rowStart <= bandRows) {
+        kernel.convertRows(rowStart, rowEnd);
+        return;
+      }
+      final int mid = rowStart + (((rowEnd - rowStart) / 2 + 1) & ~1);
+      invokeAll(
+          new BandTask(kernel, rowStart, mid, bandRows),
+          new BandTask(kernel, mid, rowEnd, bandRows));
+    }
+  }
+}
@@ -0,0 +1,61 @@
+package org.tensorflow.lite.examples.detection.judge;
+
+import java.util.ArrayDeque;
+
+/**
+ * Time-decayed evidence for one stage of the judgement.
+ *
+ * <p>The score is an exponential moving average of the evidence over time rather than over
+ * samples: a sample moves the score towards its value by {@code 1 - exp(-dt / tau)}, {@code dt}
+ * being the time since the previous sample. Evidence held for the same wall-clock time therefore
+ * gives the same score at any frame rate. {@code dt} is capped, so that after a long gap one sample
+ * cannot make the whole score; and the rule also wants a minimum number of positive samples in a
+ * sliding window, so that a single lucky frame on a slow device is not enough either.
+ */
+final class EvidenceAccumulator {
+  // Longest time one sample stands for.
+  static final float MAX_SAMPLE_SECONDS = 0.5f;
+  // Evidence at which a sample counts as positive.
+  static final float POSITIVE = 0.5f;
+
+  private final JudgementEngine.Rule rule;
+  private final ArrayDeque<Long> positives = new ArrayDeque<>();
+  private float score;
+  private long lastNanos;
+  private boolean started;
+
+  EvidenceAccumulator(final JudgementEngine.Rule rule) {
+    this.rule = rule;
+  }
+
+  /** Adds a sample of {@code evidence}, 0-1, taken at {@code nanos}. */
+  void add(final long nanos, final float evidence) {
+    if (started) {
+      final float seconds = Math.min(MAX_SAMPLE_SECONDS, Math.max(0, nanos - lastNanos) / 1e9f);
+      final float alpha = 1f - (float) Math.exp(-seconds / rule.timeConstantSeconds);
+      score += alpha * (evidence - score);
+    }
+    started = true;
+    lastNanos = nanos;
+    if (evidence >= POSITIVE) {
+      positives.addLast(nanos);
+    }
+    final long windowStart = nanos - (long) (rule.windowSeconds * 1e9);
+    while (!positives.isEmpty() && positives.peekFirst() < windowStart) {
+      positives.removeFirst();
+    }
+  }
+
+  /** Whether the evidence so far passes the rule. */
+  boolean isSatisfied() {
+    return score >= rule.threshold && positives.size() >= rule.minPositives;
+  }
+
+  float getScore() {
+    return score;
+  }
+
+  int getPositiveCount() {
+    return positives.size();
+  }
+}
@@ -0,0 +1,229 @@
+package org.tensorflow.lite.examples.detection.judge;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * Judges the steps of taking a dose: the medicine box is shown, a tablet is held in the hand, put
+ * in the mouth, and swallowed.
+ *
+ * <p>The current stage collects evidence from every {@link Observation} in an {@link
+ * EvidenceAccumulator} and advances once its {@link Rule} is met. Evidence is weighted by the time
+ * it covers, not counted per frame, so a stage takes about the same wall-clock time on a fast and a
+ * slow device. Transitions are reported as {@link StageEvent}s to a {@link Listener} through an
+ * executor, e.g. one that posts to the UI thread. Thread-safe.
+ */
+public final class JudgementEngine {
+  /** A step of the judgement, in order. */
+  public enum Stage {
+    /** Looking for the medicine box. */
+    MEDBOX(0),
+    /** Looking for a tablet held up in the hand crop. */
+    HAND_PILL(1),
+    /** Looking for the tablet on the tongue. */
+    MOUTH_PILL(2),
+    /** Looking for the open mouth without the tablet. */
+    SWALLOW(2),
+    /** Dose taken; nothing left to judge. */
+    DONE(2);
+
+    private final int objectToDetect;
+
+    Stage(final int objectToDetect) {
+      this.objectToDetect = objectToDetect;
+    }
+
+    /** What the detector looks for in this stage, as passed to {@code processImage}. */
+    public int objectToDetect() {
+      return objectToDetect;
+    }
+
+    /** The stage after this one; DONE stays DONE. */
+    public Stage next() {
+      return this == DONE ? DONE : values()[ordinal() + 1];
+    }
+
+    /** Evidence for this stage in {@code observation}, 0-1, or UNSEEN if it says nothing. */
+    float evidence(final Observation observation) {
+      switch (this) {
+        case MEDBOX:
+          return observation.medbox;
+        case HAND_PILL:
+          return observation.handPill;
+        case MOUTH_PILL:
+          return observation.mouthPill;
+        case SWALLOW:
+          if (!observation.mouthVisible || observation.mouthPill == Observation.UNSEEN) {
+            return Observation.UNSEEN;
+          }
+          return observation.mouthPill > 0 ? 0f : 1f;
+        default:
+          return Observation.UNSEEN;
+      }
+    }
+  }
+
+  /** When a stage is passed. */
+  public static final class Rule {
+    final float timeConstantSeconds;
+    final float threshold;
+    final int minPositives;
+    final float windowSeconds;
+
+    /**
+     * @param timeConstantSeconds how fast the score follows the evidence; it takes about this long
+     *     of steady evidence to get two thirds of the way.
+     * @param threshold score, 0-1, the stage needs.
+     * @param minPositives positive samples the stage also needs within the last {@code
+     *     windowSeconds}.
+     * @param windowSeconds length of that window.
+     */
+    public Rule(
+        final float timeConstantSeconds,
+        final float threshold,
+        final int minPositives,
+        final float windowSeconds) {
+      if (timeConstantSeconds <= 0 || windowSeconds <= 0) {
+        throw new IllegalArgumentException("Time constant and window must be positive");
+      }
+      this.timeConstantSeconds = timeConstantSeconds;
+      this.threshold = threshold;
+      this.minPositives = minPositives;
+      this.windowSeconds = windowSeconds;
+    }
+
+    @Override
+    public String toString() {
+      return String.format(
+          "tau %.1fs, score >= %.2f, %d positives in %.1fs",
+          timeConstantSeconds, threshold, minPositives, windowSeconds);
+    }
+  }
+
+  /** A transition from one stage to the next. */
+  public static final class StageEvent {
+    private final Stage previous;
+    private final Stage stage;
+    private final long nanos;
+
+    StageEvent(final Stage previous, final Stage stage, final long nanos) {
+      this.previous = previous;
+      this.stage = stage;
+      this.nanos = nanos;
+    }
+
+    public Stage getPrevious() {
+      return previous;
+    }
+
+    public Stage getStage() {
+      return stage;
+    }
+
+    /** Time of the observation that completed the previous stage. */
+    public long getNanos() {
+      return nanos;
+    }
+
+    @Override
+    public String toString() {
+      return previous + " -> " + stage + " at " + nanos / 1000000 + " ms";
+    }
+  }
+
+  /** Receives the transitions, on the engine's executor. */
+  public interface Listener {
+    void onStageChanged(StageEvent event);
+  }
+
+  /** Default rules: about a second of steady detections, a few seconds for the swallow check. */
+  public static Map<Stage, Rule> defaultRules() {
+    final Map<Stage, Rule> rules = new EnumMap<>(Stage.class);
+    rules.put(Stage.MEDBOX, new Rule(1f, 0.5f, 3, 2f));
+    rules.put(Stage.HAND_PILL, new Rule(1f, 0.5f, 3, 2f));
+    rules.put(Stage.MOUTH_PILL, new Rule(1f, 0.5f, 3, 2f));
+    // The old check wanted 60 frames of an empty mouth; a few seconds at any frame rate.
+    rules.put(Stage.SWALLOW, new Rule(3f, 0.5f, 6, 4f));
+    return rules;
+  }
+
+  private final Map<Stage, Rule> rules;
+  private final Executor executor;
+  private final Listener listener;
+  private Stage stage = Stage.MEDBOX;
+  private EvidenceAccumulator accumulator;
+
+  public JudgementEngine(final Executor executor, final Listener listener) {
+    this(defaultRules(), executor, listener);
+  }
+
+  /** @param rules a rule for every stage before DONE. */
+  public JudgementEngine(
+      final Map<Stage, Rule> rules, final Executor executor, final Listener listener) {
+    for (final Stage stage : Stage.values()) {
+      if (stage != Stage.DONE && !rules.containsKey(stage)) {
+        throw new IllegalArgumentException("No rule for " + stage);
+      }
+    }
+    this.rules = new EnumMap<>(rules);
+    this.executor = executor;
+    this.listener = listener;
+    accumulator = new EvidenceAccumulator(this.rules.get(stage));
+  }
+
+  public synchronized Stage getStage() {
+    return stage;
+  }
+
+  /**
+   * Adds what one inference frame saw.
+   *
+   * @param nanos when the frame was taken, on a monotonic clock such as {@link System#nanoTime()}.
+   * @param observation not retained.
+   */
+  public void onObservation(final long nanos, final Observation observation) {
+    final StageEvent event;
+    synchronized (this) {
+      if (stage == Stage.DONE) {
+        return;
+      }
+      final float evidence = stage.evidence(observation);
+      if (evidence == Observation.UNSEEN) {
+        return;
+      }
+      accumulator.add(nanos, evidence);
+      if (!accumulator.isSatisfied()) {
+        return;
+      }
+      event = new StageEvent(stage, stage.next(), nanos);
+      enter(event.getStage());
+    }
+    dispatch(event);
+  }
+
+  /** Starts over from the medicine box. Not reported to the listener. */
+  public synchronized void reset() {
+    enter(Stage.MEDBOX);
+  }
+
+  private void enter(final Stage next) {
+    stage = next;
+    accumulator = next == Stage.DONE ? null : new EvidenceAccumulator(rules.get(next));
+  }
+
+  private void dispatch(final StageEvent event) {
+    executor.execute(
+        new Runnable() {
+          @Override
+          public void run() {
+            listener.onStageChanged(event);
+          }
+        });
+  }
+
+  @Override
+  public synchronized String toString() {
+    return "Judgement: " + stage + (accumulator == null ? "" : " " + rules.get(stage));
+  }
+}
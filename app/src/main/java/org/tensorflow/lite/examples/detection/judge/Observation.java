@@ -0,0 +1,56 @@
+package org.tensorflow.lite.examples.detection.judge;
+
+/**
+ * What one inference frame saw of the objects the judgement cares about.
+ *
+ * <p>Each value is the confidence of the best matching detection, 0 if the detector looked and
+ * found nothing, or {@link #UNSEEN} if that detector did not run on the frame, e.g. the full-frame
+ * detector on a frame where only the crops were detected. Mutable, so the inference thread can
+ * reuse one instance; {@link JudgementEngine#onObservation} does not retain it.
+ */
+public final class Observation {
+  /** The detector that would have seen it did not run. */
+  public static final float UNSEEN = -1f;
+
+  float medbox;
+  float handPill;
+  float mouthPill;
+  boolean mouthVisible;
+
+  public Observation() {
+    reset();
+  }
+
+  /** Marks everything unseen, for the next frame. */
+  public Observation reset() {
+    medbox = UNSEEN;
+    handPill = UNSEEN;
+    mouthPill = UNSEEN;
+    mouthVisible = false;
+    return this;
+  }
+
+  /** Medicine box in the full frame. */
+  public Observation setMedbox(final float confidence) {
+    medbox = confidence;
+    return this;
+  }
+
+  /** Tablet in the hand crop. */
+  public Observation setHandPill(final float confidence) {
+    handPill = confidence;
+    return this;
+  }
+
+  /**
+   * Tablet in the mouth crop.
+   *
+   * @param mouthVisible whether there was a mouth to crop, detected or tracked. Without one the
+   *     tablet is reported as 0 but says nothing about whether it was swallowed.
+   */
+  public Observation setMouthPill(final float confidence, final boolean mouthVisible) {
+    mouthPill = confidence;
+    this.mouthVisible = mouthVisible;
+    return this;
+  }
+}
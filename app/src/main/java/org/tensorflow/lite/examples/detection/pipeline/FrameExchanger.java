@@ -0,0 +1,65 @@
+package org.tensorflow.lite.examples.detection.pipeline;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Lock-free single-slot hand-off where the latest frame wins.
+ *
+ * <p>The producer publishes every frame with {@link #offer}, which never blocks: a frame that was
+ * published earlier and not yet taken is swapped out and handed to the {@link Recycler}, e.g. to
+ * return its buffer to the camera. The consumer takes the freshest frame with {@link #poll} when
+ * it is ready for one. Every offered frame is therefore either taken exactly once or recycled
+ * exactly once, from whichever thread replaced or cleared it.
+ */
+public final class FrameExchanger<T> {
+  /** Gives a frame that will never be consumed back to its owner. Must be thread-safe. */
+  public interface Recycler<T> {
+    void recycle(T frame);
+  }
+
+  private final AtomicReference<T> slot = new AtomicReference<>();
+  private final Recycler<T> recycler;
+  private final AtomicLong offered = new AtomicLong();
+  private final AtomicLong superseded = new AtomicLong();
+
+  public FrameExchanger(final Recycler<T> recycler) {
+    this.recycler = recycler;
+  }
+
+  /** Publishes {@code frame}, recycling the unconsumed frame it replaces, if any. */
+  public void offer(final T frame) {
+    if (frame == null) {
+      throw new NullPointerException("frame");
+    }
+    offered.incrementAndGet();
+    final T stale = slot.getAndSet(frame);
+    if (stale != null) {
+      superseded.incrementAndGet();
+      recycler.recycle(stale);
+    }
+  }
+
+  /** Takes the most recently offered frame, or returns null if there is none waiting. */
+  public T poll() {
+    return slot.getAndSet(null);
+  }
+
+  /** Recycles the waiting frame, if any. Call when the consumer shuts down. */
+  public void clear() {
+    final T stale = slot.getAndSet(null);
+    if (stale != null) {
+      recycler.recycle(stale);
+    }
+  }
+
+  /** Number of frames offered so far. */
+  public long getOfferedCount() {
+    return offered.get();
+  }
+
+  /** Number of frames recycled because a newer one arrived before they were taken. */
+  public long getSupersededCount() {
+    return superseded.get();
+  }
+}
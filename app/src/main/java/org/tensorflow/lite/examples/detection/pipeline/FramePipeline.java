@@ -0,0 +1,203 @@
+package org.tensorflow.lite.examples.detection.pipeline;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import org.tensorflow.lite.examples.detection.env.Logger;
+
+/**
+ * Bounded multi-stage frame pipeline.
+ *
+ * <p>Each stage runs on its own single-threaded executor, so while one frame is being inferred the
+ * next one can already be converted and preprocessed. Frames live in a fixed set of slots that
+ * are recycled once the last stage is done; with two slots the pipeline is double buffered. A
+ * producer that finds no free slot drops its frame instead of blocking the camera.
+ *
+ * <p>Typical use from the camera callback:
+ *
+ * <pre>
+ *   final Frame frame = pipeline.acquireFrame();
+ *   if (frame != null) {
+ *     fill in per-frame parameters;
+ *     pipeline.submit(frame);
+ *   }
+ * </pre>
+ *
+ * The first stage can then take the camera data itself, e.g. the freshest frame from a {@link
+ * FrameExchanger}, and {@link PipelineFrame#skip()} the slot if there is none. Frames pass every
+ * stage in submission order.
+ */
+public final class FramePipeline<T extends PipelineFrame> {
+  private static final Logger LOGGER = new Logger();
+
+  /** One processing step. Called on the stage's thread, one frame at a time. */
+  public interface Stage<T> {
+    void process(T frame);
+  }
+
+  private final String name;
+  private final BlockingQueue<T> freeFrames;
+  private final List<String> stageNames = new ArrayList<>();
+  private final List<Stage<T>> stages = new ArrayList<>();
+  private final List<Executor> executors = new ArrayList<>();
+  private final List<ExecutorService> ownedExecutors = new ArrayList<>();
+  private PipelineStats stats;
+  private long nextSequence;
+
+  /**
+   * @param name prefix for the stage thread names.
+   * @param frames the slots frames are processed in; their number bounds the frames in flight.
+   */
+  public FramePipeline(final String name, final List<T> frames) {
+    if (frames.isEmpty()) {
+      throw new IllegalArgumentException("A pipeline needs at least one frame slot");
+    }
+    this.name = name;
+    freeFrames = new ArrayBlockingQueue<>(frames.size());
+    for (final T frame : frames) {
+      frame.task =
+          new Runnable() {
+            @Override
+            public void run() {
+              runStage(frame);
+            }
+          };
+      freeFrames.add(frame);
+    }
+  }
+
+  /** Appends a stage that runs on a thread owned by the pipeline. */
+  public FramePipeline<T> addStage(final String stageName, final Stage<T> stage) {
+    final ExecutorService executor =
+        Executors.newSingleThreadExecutor(
+            new ThreadFactory() {
+              @Override
+              public Thread newThread(final Runnable r) {
+                return new Thread(r, name + "-" + stageName);
+              }
+            });
+    ownedExecutors.add(executor);
+    return addStage(stageName, executor, stage);
+  }
+
+  /**
+   * Appends a stage that runs on {@code executor}, e.g. an existing handler thread that other work
+   * must stay serialized with. The executor must run tasks one at a time and in order.
+   */
+  public FramePipeline<T> addStage(
+      final String stageName, final Executor executor, final Stage<T> stage) {
+    if (stats != null) {
+      throw new IllegalStateException("Stages must be added before start()");
+    }
+    stageNames.add(stageName);
+    stages.add(stage);
+    executors.add(executor);
+    return this;
+  }
+
+  /** Freezes the stage list. Must be called once before frames are acquired. */
+  public FramePipeline<T> start() {
+    if (stages.isEmpty()) {
+      throw new IllegalStateException("A pipeline needs at least one stage");
+    }
+    stats = new PipelineStats(stageNames.toArray(new String[0]));
+    return this;
+  }
+
+  /**
+   * Takes a free slot for a new frame and stamps its capture time.
+   *
+   * @return the slot, or null if every slot is still in flight and the frame should be dropped.
+   */
+  public T acquireFrame() {
+    if (stats == null) {
+      throw new IllegalStateException("start() has not been called");
+    }
+    final T frame = freeFrames.poll();
+    if (frame == null) {
+      stats.onDropped();
+      return null;
+    }
+    frame.captureNanos = System.nanoTime();
+    frame.stage = 0;
+    frame.skipped = false;
+    return frame;
+  }
+
+  /** Returns a slot acquired with {@link #acquireFrame()} without processing it. */
+  public void recycleFrame(final T frame) {
+    frame.onRecycled();
+    freeFrames.offer(frame);
+  }
+
+  /** Hands a filled slot to the first stage. Must only be called from the producer thread. */
+  public void submit(final T frame) {
+    frame.sequence = nextSequence++;
+    dispatch(frame);
+  }
+
+  public PipelineStats getStats() {
+    return stats;
+  }
+
+  public String getStatString() {
+    return stats == null ? "" : stats.getStatString();
+  }
+
+  /** Stops the threads owned by the pipeline. Frames still in flight are abandoned. */
+  public void shutdown() {
+    for (final ExecutorService executor : ownedExecutors) {
+      executor.shutdownNow();
+    }
+  }
+
+  private void dispatch(final T frame) {
+    if (frame.stage == stages.size()) {
+      stats.onCompleted(frame.captureNanos, System.nanoTime());
+      recycleFrame(frame);
+      return;
+    }
+    try {
+      executors.get(frame.stage).execute(frame.task);
+    } catch (final RejectedExecutionException e) {
+      // The stage thread is gone (shut down or paused); give the slot back.
+      stats.onDropped();
+      recycleFrame(frame);
+    }
+  }
+
+  private void runStage(final T frame) {
+    final int stage = frame.stage;
+    final long start = System.nanoTime();
+    boolean processed = false;
+    try {
+      stages.get(stage).process(frame);
+      processed = true;
+    } catch (final RuntimeException e) {
+      LOGGER.e(e, "Stage %s failed on frame %d", stageNames.get(stage), frame.sequence);
+    } finally {
+      stats.onStageDone(stage, System.nanoTime() - start);
+      // Also on an Error, which propagates: a lost slot would stall the pipeline for good.
+      if (!processed) {
+        stats.onFailed();
+        recycleFrame(frame);
+      }
+    }
+    if (!processed) {
+      return;
+    }
+    if (frame.skipped) {
+      stats.onSkipped();
+      recycleFrame(frame);
+      return;
+    }
+    frame.stage = stage + 1;
+    dispatch(frame);
+  }
+}
@@ -0,0 +1,172 @@
+package org.tensorflow.lite.examples.detection.pipeline;
+
+import java.nio.ByteBuffer;
+import java.util.Locale;
+
+/**
+ * Decides per camera frame whether inference has to run, based on how much the scene moved.
+ *
+ * <p>The motion score is the mean absolute luminance difference between the frame and the last
+ * frame that was inferred, sampled on a sparse grid of the Y plane, so it costs a few thousand byte
+ * reads per frame. Comparing against the last inferred frame rather than the previous one lets slow
+ * drift add up until it is large enough to matter.
+ *
+ * <p>While the score is above the threshold every frame is inferred. While the scene is static the
+ * number of skipped frames between inferences doubles, up to a limit, so results are still
+ * refreshed periodically; the first moving frame resets it. Not thread-safe: use it from the one
+ * thread that sees the frames.
+ */
+public final class InferenceScheduler {
+  public static final int DEFAULT_GRID_STEP = 8;
+  // Mean luminance change, out of 255, that counts as motion. Sensor noise stays well below it.
+  public static final float DEFAULT_MOTION_THRESHOLD = 5f;
+  public static final int DEFAULT_MAX_SKIPPED_FRAMES = 8;
+
+  private final int gridStep;
+  private final float motionThreshold;
+  private final int maxSkippedFrames;
+
+  // Grid samples of the last inferred frame and of the frame being scored.
+  private byte[] reference;
+  private byte[] current;
+  private int referenceWidth;
+  private int referenceHeight;
+  private boolean forceNext = true;
+
+  private int skipBudget;
+  private int skippedSinceInference;
+  private float lastMotionScore;
+  private long inferredFrames;
+  private long skippedFrames;
+
+  public InferenceScheduler() {
+    this(DEFAULT_GRID_STEP, DEFAULT_MOTION_THRESHOLD, DEFAULT_MAX_SKIPPED_FRAMES);
+  }
+
+  /**
+   * @param gridStep distance in pixels between luminance samples, in both directions.
+   * @param motionThreshold mean absolute luminance difference at which a frame counts as moving.
+   * @param maxSkippedFrames most frames skipped in a row while the scene is static.
+   */
+  public InferenceScheduler(
+      final int gridStep, final float motionThreshold, final int maxSkippedFrames) {
+    if (gridStep < 1 || maxSkippedFrames < 0) {
+      throw new IllegalArgumentException(
+          "Invalid scheduler parameters: " + gridStep + ", " + maxSkippedFrames);
+    }
+    this.gridStep = gridStep;
+    this.motionThreshold = motionThreshold;
+    this.maxSkippedFrames = maxSkippedFrames;
+  }
+
+  /** Makes the next frame run inference regardless of motion, e.g. when the task changes. */
+  public void requestInference() {
+    forceNext = true;
+  }
+
+  /**
+   * Scores the luminance plane of a frame and decides whether to run inference on it.
+   *
+   * @param luminance Y plane, one byte per pixel.
+   * @param rowStride distance in bytes between the starts of two rows of {@code luminance}.
+   * @return true to run inference, false to keep the previous results.
+   */
+  public boolean shouldInfer(
+      final byte[] luminance, final int width, final int height, final int rowStride) {
+    resize(width, height);
+    int i = 0;
+    for (int y = 0; y < height; y += gridStep) {
+      final int row = y * rowStride;
+      for (int x = 0; x < width; x += gridStep) {
+        current[i++] = luminance[row + x];
+      }
+    }
+    return decide();
+  }
+
+  /**
+   * Same as {@link #shouldInfer(byte[], int, int, int)} for a Y plane read in place from its
+   * buffer, e.g. that of an {@code android.media.Image}. The buffer's position is left alone.
+   */
+  public boolean shouldInfer(
+      final ByteBuffer luminance, final int width, final int height, final int rowStride) {
+    resize(width, height);
+    int i = 0;
+    for (int y = 0; y < height; y += gridStep) {
+      final int row = y * rowStride;
+      for (int x = 0; x < width; x += gridStep) {
+        current[i++] = luminance.get(row + x);
+      }
+    }
+    return decide();
+  }
+
+  private void resize(final int width, final int height) {
+    if (reference == null || width != referenceWidth || height != referenceHeight) {
+      final int columns = (width + gridStep - 1) / gridStep;
+      final int rows = (height + gridStep - 1) / gridStep;
+      reference = new byte[columns * rows];
+      current = new byte[columns * rows];
+      referenceWidth = width;
+      referenceHeight = height;
+      forceNext = true;
+    }
+  }
+
+  /** Decides on the grid samples in {@link #current}. */
+  private boolean decide() {
+    lastMotionScore = forceNext ? Float.POSITIVE_INFINITY : score();
+    final boolean moving = lastMotionScore >= motionThreshold;
+    if (moving) {
+      skipBudget = 0;
+    } else if (skippedSinceInference < skipBudget) {
+      ++skippedSinceInference;
+      ++skippedFrames;
+      return false;
+    } else {
+      // Static, but due for a refresh: back off further before the next one.
+      skipBudget = Math.min(skipBudget == 0 ? 1 : skipBudget * 2, maxSkippedFrames);
+    }
+
+    forceNext = false;
+    skippedSinceInference = 0;
+    ++inferredFrames;
+    // The inferred frame becomes the reference.
+    final byte[] inferred = current;
+    current = reference;
+    reference = inferred;
+    return true;
+  }
+
+  private float score() {
+    long sum = 0;
+    for (int i = 0; i < current.length; ++i) {
+      sum += Math.abs((current[i] & 0xFF) - (reference[i] & 0xFF));
+    }
+    return (float) sum / current.length;
+  }
+
+  /** Motion score of the last frame, infinite if inference was forced. */
+  public float getLastMotionScore() {
+    return lastMotionScore;
+  }
+
+  public long getInferredFrames() {
+    return inferredFrames;
+  }
+
+  public long getSkippedFrames() {
+    return skippedFrames;
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        Locale.US,
+        "scheduler: %d inferred, %d skipped, last motion %.1f, skipping up to %d",
+        inferredFrames,
+        skippedFrames,
+        lastMotionScore,
+        skipBudget);
+  }
+}
@@ -0,0 +1,41 @@
+package org.tensorflow.lite.examples.detection.pipeline;
+
+/**
+ * Base class for the reusable frame slots that travel through a {@link FramePipeline}.
+ *
+ * <p>Subclasses hold the per-frame buffers (camera planes, converted pixels, model inputs). A slot
+ * is owned by exactly one stage at a time, so stages may read and write its fields without
+ * synchronization; the hand-off between stage threads publishes the writes.
+ */
+public class PipelineFrame {
+  // Pipeline bookkeeping, only touched by FramePipeline.
+  long sequence;
+  long captureNanos;
+  int stage;
+  boolean skipped;
+  Runnable task;
+
+  /** Monotonic number of this frame in submission order. */
+  public long getSequence() {
+    return sequence;
+  }
+
+  /** {@link System#nanoTime()} at which the producer acquired this slot for the frame. */
+  public long getCaptureNanos() {
+    return captureNanos;
+  }
+
+  /**
+   * Ends this frame after the current stage returns, e.g. because there turned out to be nothing
+   * to process. The remaining stages are not run and the slot is recycled.
+   */
+  public void skip() {
+    skipped = true;
+  }
+
+  /**
+   * Called on the releasing thread whenever the slot goes back to the free pool, whether the frame
+   * completed, was skipped or failed. Override to release resources the slot still holds.
+   */
+  protected void onRecycled() {}
+}
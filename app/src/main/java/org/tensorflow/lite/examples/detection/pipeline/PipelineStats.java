@@ -0,0 +1,136 @@
+package org.tensorflow.lite.examples.detection.pipeline;
+
+import java.util.Locale;
+import org.tensorflow.lite.examples.detection.env.LatencyHistogram;
+
+/**
+ * Throughput and latency counters of a {@link FramePipeline}.
+ *
+ * <p>Latency is measured end to end, from the moment the producer acquires a slot until the last
+ * stage has finished with it. Throughput is the completion rate over the most recent frames. Both
+ * the end-to-end latency and the time spent in every stage are kept as {@link LatencyHistogram}s.
+ */
+public final class PipelineStats {
+  // Number of recent completions the throughput is averaged over.
+  private static final int THROUGHPUT_WINDOW = 32;
+
+  private final LatencyHistogram[] stageHistograms;
+  private final LatencyHistogram latencyHistogram = new LatencyHistogram("end_to_end");
+  private final long[] completionNanos = new long[THROUGHPUT_WINDOW];
+
+  private long completedFrames;
+  private long droppedFrames;
+  private long failedFrames;
+  private long skippedFrames;
+  private long lastLatencyNanos;
+
+  PipelineStats(final String[] stageNames) {
+    stageHistograms = new LatencyHistogram[stageNames.length];
+    for (int i = 0; i < stageNames.length; ++i) {
+      stageHistograms[i] = new LatencyHistogram(stageNames[i]);
+    }
+  }
+
+  void onStageDone(final int stage, final long nanos) {
+    stageHistograms[stage].recordNanos(nanos);
+  }
+
+  synchronized void onCompleted(final long captureNanos, final long nowNanos) {
+    final long latency = nowNanos - captureNanos;
+    completionNanos[(int) (completedFrames % THROUGHPUT_WINDOW)] = nowNanos;
+    ++completedFrames;
+    lastLatencyNanos = latency;
+    latencyHistogram.recordNanos(latency);
+  }
+
+  synchronized void onDropped() {
+    ++droppedFrames;
+  }
+
+  synchronized void onFailed() {
+    ++failedFrames;
+  }
+
+  synchronized void onSkipped() {
+    ++skippedFrames;
+  }
+
+  public synchronized long getCompletedFrames() {
+    return completedFrames;
+  }
+
+  /** Frames rejected because every slot was still in flight, or the pipeline was shut down. */
+  public synchronized long getDroppedFrames() {
+    return droppedFrames;
+  }
+
+  /** Frames abandoned because a stage threw. */
+  public synchronized long getFailedFrames() {
+    return failedFrames;
+  }
+
+  /** Frames a stage ended early with {@link PipelineFrame#skip()}. */
+  public synchronized long getSkippedFrames() {
+    return skippedFrames;
+  }
+
+  /** Completed frames per second over the last few completions, 0 until two frames finished. */
+  public synchronized float getThroughputFps() {
+    final int samples = (int) Math.min(completedFrames, THROUGHPUT_WINDOW);
+    if (samples < 2) {
+      return 0f;
+    }
+    final long newest = completionNanos[(int) ((completedFrames - 1) % THROUGHPUT_WINDOW)];
+    final long oldest = completionNanos[(int) ((completedFrames - samples) % THROUGHPUT_WINDOW)];
+    if (newest == oldest) {
+      return 0f;
+    }
+    return (samples - 1) * 1e9f / (newest - oldest);
+  }
+
+  public float getMeanLatencyMs() {
+    return latencyHistogram.getMeanMs();
+  }
+
+  public synchronized float getLastLatencyMs() {
+    return lastLatencyNanos / 1e6f;
+  }
+
+  public float getMaxLatencyMs() {
+    return latencyHistogram.getMaxMs();
+  }
+
+  /** End-to-end latency of completed frames. */
+  public LatencyHistogram getLatencyHistogram() {
+    return latencyHistogram;
+  }
+
+  /** Time spent inside {@code stage} by every frame that reached it. */
+  public LatencyHistogram getStageHistogram(final int stage) {
+    return stageHistograms[stage];
+  }
+
+  /** Mean time per frame that reached {@code stage}, in milliseconds. */
+  public float getMeanStageMs(final int stage) {
+    return stageHistograms[stage].getMeanMs();
+  }
+
+  public synchronized String getStatString() {
+    final StringBuilder sb =
+        new StringBuilder(
+            String.format(
+                Locale.US,
+                "%.1f fps, last latency %.1f ms, %d done, %d dropped, %d skipped, %d failed\n",
+                getThroughputFps(),
+                getLastLatencyMs(),
+                completedFrames,
+                droppedFrames,
+                skippedFrames,
+                failedFrames));
+    sb.append(latencyHistogram);
+    for (final LatencyHistogram stage : stageHistograms) {
+      sb.append('\n').append(stage);
+    }
+    return sb.toString();
+  }
+}
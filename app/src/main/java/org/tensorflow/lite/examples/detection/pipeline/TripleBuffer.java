@@ -0,0 +1,62 @@
+package org.tensorflow.lite.examples.detection.pipeline;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Lock-free hand-off of the latest state between one producer and one consumer, through three
+ * reused buffers.
+ *
+ * <p>The producer fills its back buffer and {@link #publish}es it; the consumer reads the freshest
+ * published buffer with {@link #latest}. That is double buffering with a spare: the third buffer
+ * sits between the two sides, so the producer never waits for the consumer to finish reading and
+ * the consumer never sees a buffer that is being written. Neither side allocates or locks; a
+ * buffer is only touched by the side that currently owns it, and the atomic swap in between
+ * orders the writes before the reads.
+ */
+public final class TripleBuffer<T> {
+  private static final int INDEX = 3;
+  // Set on the middle index while it holds a buffer the consumer has not taken yet.
+  private static final int FRESH = 4;
+
+  private final Object[] buffers;
+  private final AtomicInteger middle = new AtomicInteger(1);
+  // Owned by the producer.
+  private int back = 0;
+  // Owned by the consumer.
+  private int front = 2;
+
+  /** Creates a buffer of three distinct, equally initialized instances. */
+  public TripleBuffer(final T first, final T second, final T third) {
+    if (first == second || second == third || first == third) {
+      throw new IllegalArgumentException("Buffers must be distinct");
+    }
+    buffers = new Object[] {first, second, third};
+  }
+
+  /** The producer's buffer, to fill before the next {@link #publish}. */
+  @SuppressWarnings("unchecked")
+  public T getBack() {
+    return (T) buffers[back];
+  }
+
+  /**
+   * Producer: publishes the back buffer, replacing a published one the consumer has not taken, and
+   * returns the new back buffer. Its contents are stale and must be overwritten.
+   */
+  public T publish() {
+    back = middle.getAndSet(back | FRESH) & INDEX;
+    return getBack();
+  }
+
+  /**
+   * Consumer: returns the most recently published buffer, which stays valid until the next call.
+   * Before anything is published, this is the third constructor argument.
+   */
+  @SuppressWarnings("unchecked")
+  public T latest() {
+    if ((middle.get() & FRESH) != 0) {
+      front = middle.getAndSet(front) & INDEX;
+    }
+    return (T) buffers[front];
+  }
+}
@@ -0,0 +1,93 @@
+package org.tensorflow.lite.examples.detection.replay;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.InflaterInputStream;
+
+/** Reads back the frames written by a {@link FrameRecorder}, in order. */
+public final class FrameReader implements Closeable {
+  private final DataInputStream in;
+  private final int format;
+  private final int width;
+  private final int height;
+
+  /**
+   * Reads the header.
+   *
+   * @throws IOException if {@code stream} is not a frame recording.
+   */
+  public FrameReader(final InputStream stream) throws IOException {
+    if (new DataInputStream(stream).readInt() != FrameRecorder.MAGIC) {
+      throw new IOException("Not a frame recording");
+    }
+    in = new DataInputStream(new BufferedInputStream(new InflaterInputStream(stream), 1 << 16));
+    final int version = in.readInt();
+    if (version != FrameRecorder.VERSION) {
+      throw new IOException("Unsupported frame recording version " + version);
+    }
+    format = in.readInt();
+    width = in.readInt();
+    height = in.readInt();
+    try {
+      RecordedFrame.planeCount(format);
+    } catch (final IllegalArgumentException e) {
+      throw new IOException(e.getMessage());
+    }
+  }
+
+  /** {@link RecordedFrame#NV21} or {@link RecordedFrame#YUV_420_888}. */
+  public int getFormat() {
+    return format;
+  }
+
+  public int getWidth() {
+    return width;
+  }
+
+  public int getHeight() {
+    return height;
+  }
+
+  /**
+   * Reads the next frame into {@code frame}.
+   *
+   * @return false at the end of the recording.
+   * @throws EOFException if the recording ends inside a frame, e.g. the app was killed.
+   */
+  public boolean next(final RecordedFrame frame) throws IOException {
+    // A clean end is only allowed between frames.
+    in.mark(1);
+    if (in.read() < 0) {
+      return false;
+    }
+    in.reset();
+    frame.timestampNanos = in.readLong();
+    frame.format = format;
+    frame.width = width;
+    frame.height = height;
+    frame.yRowStride = in.readInt();
+    frame.uvRowStride = in.readInt();
+    frame.uvPixelStride = in.readInt();
+    for (int i = 0; i < RecordedFrame.planeCount(format); ++i) {
+      final int length = in.readInt();
+      if (length < 0) {
+        throw new IOException("Corrupt plane length " + length);
+      }
+      if (frame.planes[i] == null || frame.planes[i].length < length) {
+        frame.planes[i] = new byte[length];
+      }
+      in.readFully(frame.planes[i], 0, length);
+      frame.planeLengths[i] = length;
+    }
+    return true;
+  }
+
+  @Override
+  public void close() throws IOException {
+    in.close();
+  }
+}
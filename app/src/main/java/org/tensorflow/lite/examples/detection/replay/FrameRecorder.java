@@ -0,0 +1,213 @@
+package org.tensorflow.lite.examples.detection.replay;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Writes raw camera frames with their timestamps, for {@link FrameReader} and {@link ReplayRunner}.
+ *
+ * <p>The stream starts with {@link #MAGIC}, uncompressed, followed by a deflated body: version,
+ * format, width and height as ints, then for every frame its timestamp as a long, the Y row stride,
+ * UV row stride and UV pixel stride as ints, and each plane as an int length and its bytes. A
+ * frame is copied on the calling thread and written on the recorder's own thread, so the camera
+ * callback only pays for the copy; when the writer falls {@link #MAX_PENDING_FRAMES} behind,
+ * frames are dropped and counted instead of queued.
+ */
+public final class FrameRecorder implements Closeable {
+  /** "PJRF". */
+  static final int MAGIC = 0x504a5246;
+  static final int VERSION = 1;
+  /** Frames copied but not yet written before new ones are dropped. */
+  static final int MAX_PENDING_FRAMES = 4;
+
+  private final int format;
+  private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+  private final DataOutputStream out;
+  private final ThreadPoolExecutor writer;
+  private final AtomicLong recordedFrames = new AtomicLong();
+  private final AtomicLong droppedFrames = new AtomicLong();
+  private volatile IOException writeError;
+  private volatile boolean closed;
+
+  /**
+   * Writes the header; frames follow with {@link #recordNV21} or {@link #recordYUV420}.
+   *
+   * @param format {@link RecordedFrame#NV21} or {@link RecordedFrame#YUV_420_888}.
+   */
+  public FrameRecorder(
+      final OutputStream stream, final int format, final int width, final int height)
+      throws IOException {
+    RecordedFrame.planeCount(format);
+    this.format = format;
+    new DataOutputStream(stream).writeInt(MAGIC);
+    out =
+        new DataOutputStream(
+            new BufferedOutputStream(new DeflaterOutputStream(stream, deflater), 1 << 16));
+    out.writeInt(VERSION);
+    out.writeInt(format);
+    out.writeInt(width);
+    out.writeInt(height);
+    writer =
+        new ThreadPoolExecutor(
+            1,
+            1,
+            0L,
+            TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<Runnable>(MAX_PENDING_FRAMES),
+            new ThreadFactory() {
+              @Override
+              public Thread newThread(final Runnable runnable) {
+                return new Thread(runnable, "frame-recorder");
+              }
+            });
+  }
+
+  /**
+   * Records an NV21 preview buffer. The buffer may be handed back to the camera as soon as this
+   * returns.
+   *
+   * @return false if the frame was dropped.
+   */
+  public boolean recordNV21(final long timestampNanos, final byte[] nv21, final int width) {
+    checkFormat(RecordedFrame.NV21);
+    return submit(timestampNanos, width, 0, 0, new byte[][] {nv21.clone()});
+  }
+
+  /**
+   * Records the planes of a YUV_420_888 image, from their current position to their limit, which
+   * are left unchanged. The image may be closed as soon as this returns.
+   *
+   * @return false if the frame was dropped.
+   */
+  public boolean recordYUV420(
+      final long timestampNanos,
+      final ByteBuffer y,
+      final ByteBuffer u,
+      final ByteBuffer v,
+      final int yRowStride,
+      final int uvRowStride,
+      final int uvPixelStride) {
+    checkFormat(RecordedFrame.YUV_420_888);
+    return submit(
+        timestampNanos,
+        yRowStride,
+        uvRowStride,
+        uvPixelStride,
+        new byte[][] {copy(y), copy(u), copy(v)});
+  }
+
+  private boolean submit(
+      final long timestampNanos,
+      final int yRowStride,
+      final int uvRowStride,
+      final int uvPixelStride,
+      final byte[][] planes) {
+    if (closed || writeError != null) {
+      return false;
+    }
+    try {
+      writer.execute(
+          new Runnable() {
+            @Override
+            public void run() {
+              write(timestampNanos, yRowStride, uvRowStride, uvPixelStride, planes);
+            }
+          });
+      return true;
+    } catch (final RejectedExecutionException e) {
+      // Queue full, or closed concurrently.
+      droppedFrames.incrementAndGet();
+      return false;
+    }
+  }
+
+  // Writer thread only.
+  private void write(
+      final long timestampNanos,
+      final int yRowStride,
+      final int uvRowStride,
+      final int uvPixelStride,
+      final byte[][] planes) {
+    if (writeError != null) {
+      return;
+    }
+    try {
+      out.writeLong(timestampNanos);
+      out.writeInt(yRowStride);
+      out.writeInt(uvRowStride);
+      out.writeInt(uvPixelStride);
+      for (final byte[] plane : planes) {
+        out.writeInt(plane.length);
+        out.write(plane);
+      }
+      recordedFrames.incrementAndGet();
+    } catch (final IOException e) {
+      writeError = e;
+    }
+  }
+
+  private void checkFormat(final int expected) {
+    if (format != expected) {
+      throw new IllegalStateException("Recording format is " + format + ", not " + expected);
+    }
+  }
+
+  private static byte[] copy(final ByteBuffer buffer) {
+    final byte[] bytes = new byte[buffer.remaining()];
+    buffer.duplicate().get(bytes);
+    return bytes;
+  }
+
+  /** Frames written so far. */
+  public long getRecordedFrames() {
+    return recordedFrames.get();
+  }
+
+  /** Frames dropped because the writer was behind. */
+  public long getDroppedFrames() {
+    return droppedFrames.get();
+  }
+
+  /**
+   * Writes the frames still queued and closes the stream.
+   *
+   * @throws IOException the first error writing a frame, or closing.
+   */
+  @Override
+  public synchronized void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    writer.shutdown();
+    try {
+      writer.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    try {
+      out.close();
+    } catch (final IOException e) {
+      if (writeError == null) {
+        writeError = e;
+      }
+    }
+    // Not ended by the stream, since it was passed in.
+    deflater.end();
+    if (writeError != null) {
+      throw writeError;
+    }
+  }
+}
@@ -0,0 +1,77 @@
+package org.tensorflow.lite.examples.detection.replay;
+
+/**
+ * One camera frame of a recording, as {@link FrameReader#next} fills it.
+ *
+ * <p>An {@link #NV21} frame has its whole buffer in plane 0. A {@link #YUV_420_888} frame has the
+ * Y, U and V planes of the {@code android.media.Image} with their strides, the chroma planes
+ * sharing one row and pixel stride. Reused from frame to frame; the plane arrays are reallocated
+ * only when a frame needs larger ones, so they may be longer than the data.
+ */
+public final class RecordedFrame {
+  /** Frame from {@code android.hardware.Camera}: one NV21 buffer. */
+  public static final int NV21 = 1;
+  /** Frame from an {@code ImageReader}: three planes with strides. */
+  public static final int YUV_420_888 = 2;
+
+  final byte[][] planes = new byte[3][];
+  final int[] planeLengths = new int[3];
+  int format;
+  int width;
+  int height;
+  long timestampNanos;
+  int yRowStride;
+  int uvRowStride;
+  int uvPixelStride;
+
+  public int getFormat() {
+    return format;
+  }
+
+  public int getWidth() {
+    return width;
+  }
+
+  public int getHeight() {
+    return height;
+  }
+
+  /** When the frame arrived, on the recording device's {@code System.nanoTime()} clock. */
+  public long getTimestampNanos() {
+    return timestampNanos;
+  }
+
+  /** Plane {@code index}; only the first {@link #getPlaneLength} bytes belong to the frame. */
+  public byte[] getPlane(final int index) {
+    return planes[index];
+  }
+
+  public int getPlaneLength(final int index) {
+    return planeLengths[index];
+  }
+
+  /** Row stride of the Y plane; the width for NV21. */
+  public int getYRowStride() {
+    return yRowStride;
+  }
+
+  public int getUvRowStride() {
+    return uvRowStride;
+  }
+
+  public int getUvPixelStride() {
+    return uvPixelStride;
+  }
+
+  /** Plane count of {@code format}. */
+  static int planeCount(final int format) {
+    switch (format) {
+      case NV21:
+        return 1;
+      case YUV_420_888:
+        return 3;
+      default:
+        throw new IllegalArgumentException("Unknown frame format " + format);
+    }
+  }
+}
@@ -0,0 +1,132 @@
+package org.tensorflow.lite.examples.detection.replay;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.tensorflow.lite.examples.detection.env.FrameMetrics;
+import org.tensorflow.lite.examples.detection.judge.JudgementEngine;
+
+/** What a {@link ReplayRunner} run measured and judged. */
+public final class ReplayReport {
+  /** Timing and judgement of one replayed frame. */
+  public static final class FrameResult {
+    private final int index;
+    private final long timestampNanos;
+    private final long convertNanos;
+    private final long preprocessNanos;
+    private final long inferNanos;
+    private final long totalNanos;
+    private final JudgementEngine.Stage stage;
+
+    FrameResult(
+        final int index,
+        final long timestampNanos,
+        final long convertNanos,
+        final long preprocessNanos,
+        final long inferNanos,
+        final long totalNanos,
+        final JudgementEngine.Stage stage) {
+      this.index = index;
+      this.timestampNanos = timestampNanos;
+      this.convertNanos = convertNanos;
+      this.preprocessNanos = preprocessNanos;
+      this.inferNanos = inferNanos;
+      this.totalNanos = totalNanos;
+      this.stage = stage;
+    }
+
+    /** Position in the recording, from 0. */
+    public int getIndex() {
+      return index;
+    }
+
+    /** Recorded arrival time. */
+    public long getTimestampNanos() {
+      return timestampNanos;
+    }
+
+    public long getConvertNanos() {
+      return convertNanos;
+    }
+
+    public long getPreprocessNanos() {
+      return preprocessNanos;
+    }
+
+    public long getInferNanos() {
+      return inferNanos;
+    }
+
+    /** Whole frame, including the judgement. */
+    public long getTotalNanos() {
+      return totalNanos;
+    }
+
+    /** Stage after the frame was judged. */
+    public JudgementEngine.Stage getStage() {
+      return stage;
+    }
+
+    @Override
+    public String toString() {
+      return String.format(
+          "#%d at %d ms: convert %.2f ms, preprocess %.2f ms, infer %.2f ms, total %.2f ms, %s",
+          index,
+          timestampNanos / 1000000,
+          convertNanos / 1e6f,
+          preprocessNanos / 1e6f,
+          inferNanos / 1e6f,
+          totalNanos / 1e6f,
+          stage);
+    }
+  }
+
+  private final List<FrameResult> frames = new ArrayList<>();
+  private final List<JudgementEngine.StageEvent> events = new ArrayList<>();
+  private final FrameMetrics metrics;
+  private JudgementEngine.Stage finalStage = JudgementEngine.Stage.MEDBOX;
+
+  ReplayReport(final FrameMetrics metrics) {
+    this.metrics = metrics;
+  }
+
+  void add(final FrameResult frame) {
+    frames.add(frame);
+    finalStage = frame.getStage();
+  }
+
+  void add(final JudgementEngine.StageEvent event) {
+    events.add(event);
+  }
+
+  /** Every replayed frame, in order. */
+  public List<FrameResult> getFrames() {
+    return Collections.unmodifiableList(frames);
+  }
+
+  /** Stage transitions, at the recorded times. */
+  public List<JudgementEngine.StageEvent> getEvents() {
+    return Collections.unmodifiableList(events);
+  }
+
+  /** Stage after the last frame. */
+  public JudgementEngine.Stage getFinalStage() {
+    return finalStage;
+  }
+
+  /** Latency histograms of the replayed stages and whole frames. */
+  public FrameMetrics getMetrics() {
+    return metrics;
+  }
+
+  @Override
+  public String toString() {
+    final StringBuilder sb = new StringBuilder();
+    sb.append(frames.size()).append(" frames, judged ").append(finalStage);
+    for (final JudgementEngine.StageEvent event : events) {
+      sb.append('\n').append(event);
+    }
+    sb.append('\n').append(metrics.getStatString());
+    return sb.toString();
+  }
+}
@@ -0,0 +1,179 @@
+package org.tensorflow.lite.examples.detection.replay;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Executor;
+import org.tensorflow.lite.examples.detection.env.CoordinateSpaces;
+import org.tensorflow.lite.examples.detection.env.FrameMetrics;
+import org.tensorflow.lite.examples.detection.env.FusedPreprocessor;
+import org.tensorflow.lite.examples.detection.env.LatencyHistogram;
+import org.tensorflow.lite.examples.detection.env.YuvToRgbConverter;
+import org.tensorflow.lite.examples.detection.judge.JudgementEngine;
+import org.tensorflow.lite.examples.detection.judge.Observation;
+import org.tensorflow.lite.examples.detection.tflite.Classifier;
+import org.tensorflow.lite.examples.detection.tflite.LabelMap;
+import org.tensorflow.lite.examples.detection.tflite.RecognitionList;
+
+/**
+ * Runs recorded camera frames through the pill-judging pipeline on the calling thread: ARGB
+ * conversion, model input straight from the YUV planes, detection and the judgement, timing every
+ * step. Needs no device, so recordings made with a {@link FrameRecorder} can be replayed on the
+ * JVM against any {@link Classifier}, e.g. a fake that returns scripted detections.
+ *
+ * <p>The judgement runs at the recorded timestamps, so its result does not depend on how fast the
+ * replay runs. Only the full frame is detected: the hand and mouth crops are cut from bitmaps in
+ * the app. Detections are judged by class instead: a {@link LabelMap#TABLET} is held in the hand,
+ * and also in the mouth if the frame has a {@link LabelMap#MOUTH}.
+ */
+public final class ReplayRunner {
+  // NUM_DETECTIONS of the app's detector; a fake may return fewer.
+  private static final int RESULT_CAPACITY = 10;
+  private static final Executor DIRECT =
+      new Executor() {
+        @Override
+        public void execute(final Runnable command) {
+          command.run();
+        }
+      };
+
+  private final Classifier detector;
+  private final int inputSize;
+  private final int rotation;
+  private final float minimumConfidence;
+  private final YuvToRgbConverter converter = new YuvToRgbConverter();
+
+  /**
+   * @param detector detects on the model input. Only {@link Classifier#getInputFormat()} and
+   *     {@link Classifier#recognizeImage(ByteBuffer, RecognitionList)} are used.
+   * @param inputSize width and height of the square model input.
+   * @param rotation degrees the frames are rotated by on their way into the model, a multiple of
+   *     90, as the app's sensor orientation.
+   * @param minimumConfidence detections below it are ignored.
+   */
+  public ReplayRunner(
+      final Classifier detector,
+      final int inputSize,
+      final int rotation,
+      final float minimumConfidence) {
+    if (rotation % 90 != 0) {
+      throw new IllegalArgumentException("Rotation must be a multiple of 90: " + rotation);
+    }
+    this.detector = detector;
+    this.inputSize = inputSize;
+    this.rotation = rotation;
+    this.minimumConfidence = minimumConfidence;
+  }
+
+  /** Replays every frame of {@code reader}, which is left open. */
+  public ReplayReport run(final FrameReader reader) throws IOException {
+    final int width = reader.getWidth();
+    final int height = reader.getHeight();
+    final FrameMetrics metrics = new FrameMetrics();
+    final LatencyHistogram convertHistogram = metrics.histogram("replay.convert");
+    final LatencyHistogram preprocessHistogram = metrics.histogram("replay.preprocess");
+    final LatencyHistogram inferHistogram = metrics.histogram("replay.infer");
+    final LatencyHistogram frameHistogram = metrics.histogram("replay.frame");
+    final ReplayReport report = new ReplayReport(metrics);
+    final JudgementEngine engine =
+        new JudgementEngine(
+            DIRECT,
+            new JudgementEngine.Listener() {
+              @Override
+              public void onStageChanged(final JudgementEngine.StageEvent event) {
+                report.add(event);
+              }
+            });
+    final FusedPreprocessor preprocessor =
+        new FusedPreprocessor(inputSize, detector.getInputFormat());
+    preprocessor.setTransform(inputToFrame(width, height, inputSize, rotation), width, height);
+    final int[] argb = new int[width * height];
+    final RecognitionList results = new RecognitionList(RESULT_CAPACITY);
+    final Observation observation = new Observation();
+    final RecordedFrame frame = new RecordedFrame();
+
+    for (int index = 0; reader.next(frame); ++index) {
+      final long startNanos = System.nanoTime();
+      final boolean nv21 = frame.format == RecordedFrame.NV21;
+      // The app needs the ARGB frame for its crops, so it is part of the cost.
+      if (nv21) {
+        converter.convertYUV420SP(frame.planes[0], width, height, argb);
+      } else {
+        converter.convertYUV420(
+            frame.planes[0], frame.planes[1], frame.planes[2], width, height,
+            frame.yRowStride, frame.uvRowStride, frame.uvPixelStride, argb);
+      }
+      final long convertedNanos = System.nanoTime();
+      final ByteBuffer input =
+          nv21
+              ? preprocessor.processNV21(frame.planes[0], width, height)
+              : preprocessor.processYUV420(
+                  frame.planes[0], frame.planes[1], frame.planes[2],
+                  frame.yRowStride, frame.uvRowStride, frame.uvPixelStride);
+      final long preprocessedNanos = System.nanoTime();
+      detector.recognizeImage(input, results);
+      final long inferredNanos = System.nanoTime();
+      observe(results, minimumConfidence, observation);
+      engine.onObservation(frame.timestampNanos, observation);
+      final long endNanos = System.nanoTime();
+
+      convertHistogram.recordNanos(convertedNanos - startNanos);
+      preprocessHistogram.recordNanos(preprocessedNanos - convertedNanos);
+      inferHistogram.recordNanos(inferredNanos - preprocessedNanos);
+      frameHistogram.recordNanos(endNanos - startNanos);
+      report.add(
+          new ReplayReport.FrameResult(
+              index,
+              frame.timestampNanos,
+              convertedNanos - startNanos,
+              preprocessedNanos - convertedNanos,
+              inferredNanos - preprocessedNanos,
+              endNanos - startNanos,
+              engine.getStage()));
+    }
+    return report;
+  }
+
+  /** Fills {@code observation} from the full-frame detections, see the class comment. */
+  static void observe(
+      final RecognitionList results, final float minimumConfidence, final Observation observation) {
+    float medbox = 0f;
+    float tablet = 0f;
+    boolean mouth = false;
+    for (int i = 0; i < results.size(); ++i) {
+      final Classifier.Recognition result = results.get(i);
+      if (result.getConfidence() < minimumConfidence) {
+        continue;
+      }
+      switch (result.getClassId()) {
+        case LabelMap.MEDBOX:
+          medbox = Math.max(medbox, result.getConfidence());
+          break;
+        case LabelMap.TABLET:
+          tablet = Math.max(tablet, result.getConfidence());
+          break;
+        case LabelMap.MOUTH:
+          mouth = true;
+          break;
+        default:
+          break;
+      }
+    }
+    observation
+        .reset()
+        .setMedbox(medbox)
+        .setHandPill(tablet)
+        .setMouthPill(mouth ? tablet : 0f, mouth);
+  }
+
+  /**
+   * Values of the affine map from model input to frame coordinates, in the order {@link
+   * FusedPreprocessor#setTransform} takes them: the inverse of the app's frame-to-crop matrix, a
+   * rotation by {@code rotation} degrees about the frame centre and a stretch to the input size.
+   */
+  public static float[] inputToFrame(
+      final int frameWidth, final int frameHeight, final int inputSize, final int rotation) {
+    final float[] values = new float[6];
+    CoordinateSpaces.inputToRegion(0, 0, frameWidth, frameHeight, inputSize, rotation, values);
+    return values;
+  }
+}
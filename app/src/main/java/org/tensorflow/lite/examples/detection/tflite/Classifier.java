@@ -17,45 +17,125 @@ package org.tensorflow.lite.examples.detection.tflite;
 
 import android.graphics.Bitmap;
 import android.graphics.RectF;
+import java.nio.ByteBuffer;
 import java.util.List;
+import org.tensorflow.lite.examples.detection.env.FrameMetrics;
+import org.tensorflow.lite.examples.detection.env.InputFormat;
 
 /** Generic interface for interacting with different recognition engines. */
 public interface Classifier {
   List<Recognition> recognizeImage(Bitmap bitmap);
 
+  /**
+   * Runs recognition on an input tensor that was already filled in the model's layout, for example
+   * by {@link org.tensorflow.lite.examples.detection.env.FusedPreprocessor}.
+   */
+  List<Recognition> recognizeImage(ByteBuffer input);
+
+  /**
+   * Allocation-free variant of {@link #recognizeImage(Bitmap)}: results are written into {@code
+   * results}, which is cleared first.
+   */
+  void recognizeImage(Bitmap bitmap, RecognitionList results);
+
+  /**
+   * Allocation-free variant of {@link #recognizeImage(ByteBuffer)}: results are written into {@code
+   * results}, which is cleared first.
+   */
+  void recognizeImage(ByteBuffer input, RecognitionList results);
+
+  /**
+   * Recognizes several pre-filled inputs, e.g. the full frame and crops of it, in one interpreter
+   * invocation where the model supports it. {@code results[i]} receives the detections of {@code
+   * inputs[i]}. Falls back to one invocation per input if the model rejects a larger batch, or if
+   * that measures faster on this device.
+   *
+   * @param count number of leading entries of {@code inputs} and {@code results} to use.
+   */
+  void recognizeImages(ByteBuffer[] inputs, int count, RecognitionList[] results);
+
+  /**
+   * How the model wants its input channels, read from its input tensor: normalized floats or
+   * quantized bytes. Buffers filled elsewhere, e.g. by a {@link
+   * org.tensorflow.lite.examples.detection.env.FusedPreprocessor}, must use it.
+   */
+  InputFormat getInputFormat();
+
+  /** Allocates a direct buffer laid out as one input image for this model. */
+  ByteBuffer createInputBuffer();
+
+  /** Packs a bitmap of the model input size into {@code input} in the model's layout. */
+  void fillInput(Bitmap bitmap, ByteBuffer input);
+
+  /** Periodically logs {@link #getStatString()} while enabled. */
   void enableStatLogging(final boolean debug);
 
+  /** Latency percentiles of preprocessing, inference and post-processing. */
   String getStatString();
 
+  /** The histograms behind {@link #getStatString()}. */
+  FrameMetrics getMetrics();
+
   void close();
 
   void setNumThreads(int num_threads);
 
   void setUseNNAPI(boolean isChecked);
 
-  /** An immutable result returned by a Classifier describing what was recognized. */
+  /** Rebuilds the interpreter with the given backend and thread count. */
+  void setInterpreterConfig(InterpreterConfig config);
+
+  /** The config the interpreter currently runs with. */
+  InterpreterConfig getInterpreterConfig();
+
+  /**
+   * A result returned by a Classifier describing what was recognized. Instances handed out through a
+   * {@link RecognitionList} are reused by the next recognition call.
+   */
   public class Recognition {
     /**
      * A unique identifier for what has been recognized. Specific to the class, not the instance of
      * the object.
      */
-    private final String id;
+    private String id;
 
     /** Display name for the recognition. */
-    private final String title;
+    private String title;
+
+    /** What was recognized as a {@link LabelMap} class id, for dispatching without the title. */
+    private int classId;
 
     /**
      * A sortable score for how good the recognition is relative to others. Higher should be better.
      */
-    private final Float confidence;
+    private float confidence;
 
     /** Optional location within the source image for the location of the recognized object. */
     private RectF location;
 
     public Recognition(
-        final String id, final String title, final Float confidence, final RectF location) {
+        final String id, final String title, final float confidence, final RectF location) {
+      this(id, title, LabelMap.classIdOf(title), confidence, location);
+    }
+
+    public Recognition(
+        final String id,
+        final String title,
+        final int classId,
+        final float confidence,
+        final RectF location) {
+      reset(id, title, classId, confidence, location);
+    }
+
+    void reset(
+        final String id,
+        final String title,
+        final int classId,
+        final float confidence,
+        final RectF location) {
       this.id = id;
       this.title = title;
+      this.classId = classId;
       this.confidence = confidence;
       this.location = location;
     }
@@ -68,7 +148,12 @@ public interface Classifier {
       return title;
     }
 
-    public Float getConfidence() {
+    /** One of the {@link LabelMap} class ids, {@link LabelMap#UNKNOWN} for other objects. */
+    public int getClassId() {
+      return classId;
+    }
+
+    public float getConfidence() {
       return confidence;
     }
 
@@ -76,6 +161,23 @@ public interface Classifier {
       return new RectF(location);
     }
 
+    /**
+     * Copies the location into {@code out} without allocating, for loops over every detection of
+     * a frame.
+     *
+     * @return false if there is no location; {@code out} is then unchanged.
+     */
+    public boolean getLocation(final RectF out) {
+      if (location == null) {
+        return false;
+      }
+      out.left = location.left;
+      out.top = location.top;
+      out.right = location.right;
+      out.bottom = location.bottom;
+      return true;
+    }
+
     public void setLocation(RectF location) {
       this.location = location;
     }
@@ -91,9 +193,7 @@ public interface Classifier {
         resultString += title + " ";
       }
 
-      if (confidence != null) {
-        resultString += String.format("(%.1f%%) ", confidence * 100.0f);
-      }
+      resultString += String.format("(%.1f%%) ", confidence * 100.0f);
 
       if (location != null) {
         resultString += location + " ";
@@ -0,0 +1,58 @@
+package org.tensorflow.lite.examples.detection.tflite;
+
+/**
+ * Turns the raw outputs of an SSD detection model into {@link Classifier.Recognition}s. Kept apart
+ * from {@link TFLiteObjectDetectionAPIModel} so it runs, and is measured, without an interpreter.
+ */
+public final class DetectionDecoder {
+  // Recognition ids, built once instead of concatenating "" + i per detection.
+  private static final String[] DETECTION_IDS = new String[64];
+
+  static {
+    for (int i = 0; i < DETECTION_IDS.length; ++i) {
+      DETECTION_IDS[i] = Integer.toString(i);
+    }
+  }
+
+  private DetectionDecoder() {}
+
+  /**
+   * Converts raw SSD outputs of a single image into {@code results}, overwriting its pooled
+   * entries. Allocation-free for up to 64 detections.
+   */
+  public static void decode(
+      final float[][] locations,
+      final float[] classes,
+      final float[] scores,
+      final float numDetections,
+      final LabelMap labels,
+      final int inputSize,
+      final RecognitionList results) {
+    results.clear();
+    // Show the best detections.
+    // after scaling them back to the input size.
+
+    // You need to use the number of detections from the output and not the NUM_DETECTONS variable declared on top
+    // because on some models, they don't always output the same total number of detections
+    // For example, your model's NUM_DETECTIONS = 20, but sometimes it only outputs 16 predictions
+    // If you don't use the output's numDetections, you'll get nonsensical data
+    final int numDetectionsOutput =
+        Math.min(Math.min(locations.length, results.capacity()), (int) numDetections);
+    for (int i = 0; i < numDetectionsOutput; ++i) {
+      // SSD Mobilenet V1 Model assumes class 0 is background class
+      // in label file and class labels start from 1 to number_of_classes+1,
+      // while outputClasses correspond to class index from 0 to number_of_classes
+      final int labelOffset = 0;
+      final int label = (int) classes[i] + labelOffset;
+      results.add(
+          i < DETECTION_IDS.length ? DETECTION_IDS[i] : Integer.toString(i),
+          labels.getLabel(label),
+          labels.getClassId(label),
+          scores[i],
+          (1 - locations[i][1]) * inputSize,
+          locations[i][0] * inputSize,
+          (1 - locations[i][3]) * inputSize,
+          locations[i][2] * inputSize);
+    }
+  }
+}
@@ -0,0 +1,137 @@
+package org.tensorflow.lite.examples.detection.tflite;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import org.tensorflow.lite.examples.detection.env.Logger;
+
+/**
+ * Builds a {@link Classifier} on a background thread and warms it up before handing it out.
+ *
+ * <p>Loading the labels and the model, building the interpreter and the first runs, which allocate
+ * the tensors and prepare the kernels, all happen here instead of on the first camera frame. Start
+ * the loader as early as possible, e.g. when the application starts, and {@link #await()} it where
+ * the detector is first needed.
+ */
+public final class DetectorLoader {
+  private static final Logger LOGGER = new Logger();
+
+  /** Creates the detector, on the loader thread. */
+  public interface Factory {
+    Classifier create() throws IOException;
+  }
+
+  // Runs at every batch size the detector is used with. The first run allocates, the second
+  // settles the caches.
+  private static final int WARMUP_RUNS = 2;
+
+  private final FutureTask<Classifier> task;
+  private final int maxBatchSize;
+  private volatile long loadMs = -1;
+  private volatile long warmupMs = -1;
+
+  /**
+   * @param maxBatchSize the largest batch later passed to {@link Classifier#recognizeImages}, so
+   *     that its tensors are allocated during warm-up as well. 1 if only single images are run.
+   */
+  public DetectorLoader(final Factory factory, final int maxBatchSize) {
+    if (maxBatchSize < 1) {
+      throw new IllegalArgumentException("Invalid batch size " + maxBatchSize);
+    }
+    this.maxBatchSize = maxBatchSize;
+    this.task =
+        new FutureTask<>(
+            new Callable<Classifier>() {
+              @Override
+              public Classifier call() throws IOException {
+                return load(factory);
+              }
+            });
+  }
+
+  /**
+   * Starts loading on a new thread. Call once. The thread keeps the default priority: a first
+   * launch may tune the interpreter on it, and a background priority would skew that benchmark.
+   */
+  public DetectorLoader start() {
+    new Thread(task, "DetectorLoader").start();
+    return this;
+  }
+
+  /** The detector, once loaded and warmed up. */
+  public Future<Classifier> getFuture() {
+    return task;
+  }
+
+  public boolean isDone() {
+    return task.isDone();
+  }
+
+  /**
+   * Blocks until the detector is ready and returns it.
+   *
+   * @throws IOException if the model or labels could not be loaded, or the wait was interrupted.
+   */
+  public Classifier await() throws IOException {
+    try {
+      return task.get();
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while loading the detector", e);
+    } catch (final ExecutionException e) {
+      final Throwable cause = e.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      }
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      throw new IOException("Detector failed to load", cause);
+    }
+  }
+
+  /** Milliseconds spent creating the detector, -1 until it is done. */
+  public long getLoadMs() {
+    return loadMs;
+  }
+
+  /** Milliseconds spent in warm-up inference, -1 until it is done. */
+  public long getWarmupMs() {
+    return warmupMs;
+  }
+
+  private Classifier load(final Factory factory) throws IOException {
+    final long startNanos = System.nanoTime();
+    final Classifier detector = factory.create();
+    final long createdNanos = System.nanoTime();
+    loadMs = (createdNanos - startNanos) / 1000000;
+    warmUp(detector, maxBatchSize);
+    warmupMs = (System.nanoTime() - createdNanos) / 1000000;
+    LOGGER.i("Detector loaded in %d ms, warmed up in %d ms", loadMs, warmupMs);
+    return detector;
+  }
+
+  /**
+   * Runs blank inputs through {@code detector} at batch size {@code maxBatchSize} and 1, so that
+   * the tensors of both are allocated, and clears the latency it recorded meanwhile.
+   */
+  static void warmUp(final Classifier detector, final int maxBatchSize) {
+    final ByteBuffer input = detector.createInputBuffer();
+    final ByteBuffer[] inputs = new ByteBuffer[maxBatchSize];
+    final RecognitionList[] results = new RecognitionList[maxBatchSize];
+    for (int i = 0; i < maxBatchSize; ++i) {
+      inputs[i] = input;
+      results[i] = new RecognitionList(TFLiteObjectDetectionAPIModel.NUM_DETECTIONS);
+    }
+    for (int run = 0; run < WARMUP_RUNS; ++run) {
+      if (maxBatchSize > 1) {
+        detector.recognizeImages(inputs, maxBatchSize, results);
+      }
+      detector.recognizeImage(input, results[0]);
+    }
+    detector.getMetrics().reset();
+  }
+}
@@ -0,0 +1,419 @@
+package org.tensorflow.lite.examples.detection.tflite;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import org.tensorflow.lite.examples.detection.env.Logger;
+
+/**
+ * Process-wide pool of loaded, warmed-up detectors, so that screens share them instead of each
+ * loading the model again.
+ *
+ * <p>A screen {@link #acquire(Spec) leases} a detector for a {@link Spec} when it resumes and
+ * {@link Lease#release() releases} it when it pauses. A lease is exclusive, since a detector is not
+ * thread-safe: a released detector goes back to the pool and the next lease of the same spec gets
+ * it without reloading, while a second concurrent lease loads another instance. Released detectors
+ * stay loaded until {@link #trimMemory(int)} reports memory pressure, which closes them.
+ *
+ * <p>Models come from the {@link ModelStore} if it has a version of the spec's model file, from
+ * the APK assets otherwise. When a new version is installed, idle detectors of the old one are
+ * closed and every lease starts loading and warming up the new one in the background; the
+ * leaseholder switches over between frames with {@link Lease#pollSwap()}.
+ *
+ * <p>All methods are thread-safe.
+ */
+public final class DetectorRegistry {
+  private static final Logger LOGGER = new Logger();
+
+  /** Builds a detector for a spec, on a loader thread. */
+  interface Factory {
+    Classifier create(Spec spec) throws IOException;
+  }
+
+  /**
+   * Identifies a detector: the model, its labels and input size. Whether it is quantized comes
+   * from the model itself.
+   */
+  public static final class Spec {
+    final String modelFilename;
+    final String labelFilename;
+    final int inputSize;
+    final int maxBatchSize;
+
+    /**
+     * @param maxBatchSize largest batch the leaseholders pass to {@link
+     *     Classifier#recognizeImages}, warmed up when the detector is loaded.
+     */
+    public Spec(
+        final String modelFilename,
+        final String labelFilename,
+        final int inputSize,
+        final int maxBatchSize) {
+      this.modelFilename = modelFilename;
+      this.labelFilename = labelFilename;
+      this.inputSize = inputSize;
+      this.maxBatchSize = maxBatchSize;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+      if (!(o instanceof Spec)) {
+        return false;
+      }
+      final Spec other = (Spec) o;
+      return modelFilename.equals(other.modelFilename)
+          && labelFilename.equals(other.labelFilename)
+          && inputSize == other.inputSize
+          && maxBatchSize == other.maxBatchSize;
+    }
+
+    @Override
+    public int hashCode() {
+      int hash = modelFilename.hashCode();
+      hash = hash * 31 + labelFilename.hashCode();
+      hash = hash * 31 + inputSize;
+      return hash * 31 + maxBatchSize;
+    }
+
+    @Override
+    public String toString() {
+      return modelFilename;
+    }
+  }
+
+  /** Exclusive use of one detector until {@link #release()}. */
+  public final class Lease {
+    private final Spec spec;
+    // Guarded by the registry.
+    private DetectorLoader loader;
+    // A newer model version loading for this lease, see pollSwap().
+    private DetectorLoader pending;
+    private boolean released;
+
+    private Lease(final Spec spec, final DetectorLoader loader) {
+      this.spec = spec;
+      this.loader = loader;
+    }
+
+    /** Blocks until the detector is loaded and warmed up, and returns it. */
+    public Classifier await() throws IOException {
+      final DetectorLoader current;
+      synchronized (DetectorRegistry.this) {
+        current = loader;
+      }
+      return current.await();
+    }
+
+    public boolean isReady() {
+      synchronized (DetectorRegistry.this) {
+        return loader.isDone();
+      }
+    }
+
+    /**
+     * Switches the lease to a newer model version once it is loaded and warmed up. Never blocks.
+     * Call it between frames on the thread that runs the detector, which must use the returned
+     * detector from then on: the previous one is closed before this returns.
+     *
+     * @return the new detector, or null to carry on with the current one.
+     */
+    public Classifier pollSwap() {
+      final DetectorLoader previous;
+      final Classifier next;
+      synchronized (DetectorRegistry.this) {
+        if (pending == null || !pending.isDone()) {
+          return null;
+        }
+        final DetectorLoader update = pending;
+        pending = null;
+        next = loadedDetector(update);
+        if (next == null) {
+          LOGGER.w("Model update of %s failed to load, keeping the current model", spec);
+          return null;
+        }
+        previous = loader;
+        loader = update;
+      }
+      closeWhenLoaded(previous);
+      LOGGER.i("Swapped the detector of %s for the new model version", spec);
+      return next;
+    }
+
+    /**
+     * Hands the detector back to the pool. The holder must have stopped using it. Calling this
+     * more than once has no further effect.
+     */
+    public void release() {
+      synchronized (DetectorRegistry.this) {
+        if (released) {
+          return;
+        }
+        released = true;
+        onReleased(this);
+      }
+    }
+  }
+
+  /** The instances of one spec. */
+  private static final class Pool {
+    // Loaded or still loading, and not leased.
+    final ArrayDeque<DetectorLoader> idle = new ArrayDeque<>();
+    final List<Lease> leases = new ArrayList<>();
+  }
+
+  private final Factory factory;
+  private final Map<Spec, Pool> pools = new HashMap<>();
+
+  /**
+   * Creates a registry that loads the newest good version of each model from {@code store}, or
+   * from the assets of {@code context} if there is none, with the interpreter config {@link
+   * InterpreterTuner} picked for that model on this device. A model without one is benchmarked
+   * when it is first loaded, so every new version gets its own.
+   */
+  public DetectorRegistry(final Context context, final ModelStore store) {
+    this(
+        new Factory() {
+          private final Context appContext = context.getApplicationContext();
+
+          @Override
+          public Classifier create(final Spec spec) throws IOException {
+            final List<ModelStore.Model> stored = store.list(spec.modelFilename);
+            for (int i = stored.size() - 1; i >= 0; --i) {
+              final ModelStore.Model model = stored.get(i);
+              try {
+                final ModelStore.MappedModel mapped = store.map(model);
+                return TFLiteObjectDetectionAPIModel.create(
+                    mapped,
+                    spec.inputSize,
+                    tunedConfig(spec, mapped.getBuffer(), model.getSha256()));
+              } catch (final IOException | RuntimeException e) {
+                LOGGER.w(e, "Cannot load %s, trying an older version", model);
+              }
+            }
+            final MappedByteBuffer asset =
+                TFLiteObjectDetectionAPIModel.loadModelFile(
+                    appContext.getAssets(), spec.modelFilename);
+            return TFLiteObjectDetectionAPIModel.create(
+                appContext.getAssets(),
+                spec.modelFilename,
+                spec.labelFilename,
+                spec.inputSize,
+                tunedConfig(spec, asset, ModelStore.sha256(asset)));
+          }
+
+          /** The config tuned for {@code model}, benchmarking it first if there is none. */
+          private InterpreterConfig tunedConfig(
+              final Spec spec, final MappedByteBuffer model, final String sha256) {
+            final InterpreterTuner tuner =
+                new InterpreterTuner(appContext, spec.modelFilename, sha256);
+            final InterpreterConfig config = tuner.getTunedConfig();
+            return config != null ? config : tuner.tune(model);
+          }
+        });
+    store.addListener(
+        new ModelStore.Listener() {
+          @Override
+          public void onModelInstalled(final ModelStore.Model model) {
+            DetectorRegistry.this.onModelInstalled(model.getName());
+          }
+        });
+  }
+
+  DetectorRegistry(final Factory factory) {
+    this.factory = factory;
+  }
+
+  /**
+   * Starts loading a detector for {@code spec} in the background unless one is already loaded or
+   * loading, so that a later {@link #acquire(Spec)} does not wait.
+   */
+  public synchronized void preload(final Spec spec) {
+    final Pool pool = pool(spec);
+    if (pool.idle.isEmpty() && pool.leases.isEmpty()) {
+      pool.idle.add(load(spec));
+    }
+  }
+
+  /**
+   * Leases a detector for {@code spec}: a pooled one if there is one, otherwise a new one that
+   * starts loading now. Never blocks; {@link Lease#await()} waits for the load.
+   */
+  public synchronized Lease acquire(final Spec spec) {
+    final Pool pool = pool(spec);
+    DetectorLoader loader = pool.idle.poll();
+    if (loader == null) {
+      loader = load(spec);
+    }
+    final Lease lease = new Lease(spec, loader);
+    pool.leases.add(lease);
+    return lease;
+  }
+
+  /**
+   * Replaces the detectors of model file {@code modelFilename} with freshly loaded ones: idle
+   * detectors are closed, and every lease gets a new detector to {@link Lease#pollSwap() swap}
+   * to once it is warmed up. Called when the {@link ModelStore} installs a new version.
+   */
+  synchronized void onModelInstalled(final String modelFilename) {
+    for (final Map.Entry<Spec, Pool> entry : pools.entrySet()) {
+      final Spec spec = entry.getKey();
+      if (!spec.modelFilename.equals(modelFilename)) {
+        continue;
+      }
+      final Pool pool = entry.getValue();
+      for (final DetectorLoader idle : pool.idle) {
+        closeWhenLoaded(idle);
+      }
+      pool.idle.clear();
+      for (final Lease lease : pool.leases) {
+        if (lease.pending != null) {
+          // Superseded before it was swapped in.
+          closeWhenLoaded(lease.pending);
+        }
+        lease.pending = load(spec);
+      }
+      LOGGER.i("Reloading %d leased detectors of %s", pool.leases.size(), spec);
+    }
+  }
+
+  /**
+   * Closes pooled detectors that are not leased if {@code level}, as passed to {@link
+   * ComponentCallbacks2#onTrimMemory(int)}, signals memory pressure. Leased detectors and ones
+   * still loading are kept.
+   *
+   * @return the number of detectors closed.
+   */
+  public synchronized int trimMemory(final int level) {
+    if (!shouldEvict(level)) {
+      return 0;
+    }
+    int closed = 0;
+    for (final Iterator<Pool> pools = this.pools.values().iterator(); pools.hasNext(); ) {
+      final Pool pool = pools.next();
+      for (final Iterator<DetectorLoader> idle = pool.idle.iterator(); idle.hasNext(); ) {
+        final DetectorLoader loader = idle.next();
+        if (!loader.isDone()) {
+          continue;
+        }
+        idle.remove();
+        final Classifier detector = loadedDetector(loader);
+        if (detector != null) {
+          detector.close();
+          ++closed;
+        }
+      }
+      if (pool.idle.isEmpty() && pool.leases.isEmpty()) {
+        pools.remove();
+      }
+    }
+    if (closed > 0) {
+      LOGGER.i("Closed %d idle detectors on memory trim level %d", closed, level);
+    }
+    return closed;
+  }
+
+  /** Number of outstanding leases of {@code spec}. */
+  public synchronized int getLeasedCount(final Spec spec) {
+    final Pool pool = pools.get(spec);
+    return pool == null ? 0 : pool.leases.size();
+  }
+
+  /** Number of detectors of {@code spec} pooled and not leased, loaded or still loading. */
+  public synchronized int getIdleCount(final Spec spec) {
+    final Pool pool = pools.get(spec);
+    return pool == null ? 0 : pool.idle.size();
+  }
+
+  /**
+   * Whether idle detectors go at this trim level. Moderate pressure while running and the UI just
+   * being hidden are not reason enough: the next screen would have to reload the model.
+   */
+  static boolean shouldEvict(final int level) {
+    if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) {
+      return true;
+    }
+    return level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW
+        && level < ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN;
+  }
+
+  private Pool pool(final Spec spec) {
+    Pool pool = pools.get(spec);
+    if (pool == null) {
+      pool = new Pool();
+      pools.put(spec, pool);
+    }
+    return pool;
+  }
+
+  private DetectorLoader load(final Spec spec) {
+    return new DetectorLoader(
+            new DetectorLoader.Factory() {
+              @Override
+              public Classifier create() throws IOException {
+                return factory.create(spec);
+              }
+            },
+            spec.maxBatchSize)
+        .start();
+  }
+
+  private void onReleased(final Lease lease) {
+    final Pool pool = pool(lease.spec);
+    pool.leases.remove(lease);
+    DetectorLoader loader = lease.loader;
+    if (lease.pending != null) {
+      // The model was updated during the lease; pool the new version instead.
+      closeWhenLoaded(loader);
+      loader = lease.pending;
+      lease.pending = null;
+    }
+    if (loader.isDone() && loadedDetector(loader) == null) {
+      // Failed to load; the next lease tries again.
+      return;
+    }
+    pool.idle.push(loader);
+  }
+
+  /** Closes the detector of {@code loader} now, or once it has loaded if it is still loading. */
+  private static void closeWhenLoaded(final DetectorLoader loader) {
+    if (loader.isDone()) {
+      final Classifier detector = loadedDetector(loader);
+      if (detector != null) {
+        detector.close();
+      }
+      return;
+    }
+    new Thread(
+            new Runnable() {
+              @Override
+              public void run() {
+                final Classifier detector = loadedDetector(loader);
+                if (detector != null) {
+                  detector.close();
+                }
+              }
+            },
+            "DetectorCloser")
+        .start();
+  }
+
+  /** The detector of a finished loader, or null if loading failed. */
+  private static Classifier loadedDetector(final DetectorLoader loader) {
+    try {
+      return loader.getFuture().get();
+    } catch (final ExecutionException e) {
+      return null;
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return null;
+    }
+  }
+}
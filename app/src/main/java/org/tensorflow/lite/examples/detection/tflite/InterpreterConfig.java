@@ -0,0 +1,103 @@
+package org.tensorflow.lite.examples.detection.tflite;
+
+import java.util.Locale;
+import org.tensorflow.lite.Interpreter;
+
+/**
+ * How an {@link Interpreter} executes a model: the backend and the number of CPU threads.
+ *
+ * <p>Immutable. {@link #encode()} and {@link #parse(String)} round-trip a config through a string
+ * so that {@link InterpreterTuner} can persist the one it picked.
+ */
+public final class InterpreterConfig {
+  /** Where the model runs. */
+  public enum Backend {
+    /** The built-in CPU kernels. */
+    CPU,
+    /** The XNNPACK delegate, optimized CPU kernels for float models. */
+    XNNPACK,
+    /** Android Neural Networks API; unsupported ops fall back to the CPU threads. */
+    NNAPI
+  }
+
+  /** What the detector used before it was tuned: four CPU threads. */
+  public static final InterpreterConfig DEFAULT = new InterpreterConfig(Backend.CPU, 4);
+
+  private final Backend backend;
+  private final int numThreads;
+
+  public InterpreterConfig(final Backend backend, final int numThreads) {
+    if (backend == null || numThreads < 1) {
+      throw new IllegalArgumentException(
+          "Invalid interpreter config: " + backend + ", " + numThreads);
+    }
+    this.backend = backend;
+    this.numThreads = numThreads;
+  }
+
+  public Backend getBackend() {
+    return backend;
+  }
+
+  public int getNumThreads() {
+    return numThreads;
+  }
+
+  public InterpreterConfig withBackend(final Backend backend) {
+    return new InterpreterConfig(backend, numThreads);
+  }
+
+  public InterpreterConfig withNumThreads(final int numThreads) {
+    return new InterpreterConfig(backend, numThreads);
+  }
+
+  /** Interpreter options that apply this config. */
+  public Interpreter.Options toOptions() {
+    return new Interpreter.Options()
+        .setNumThreads(numThreads)
+        .setUseNNAPI(backend == Backend.NNAPI)
+        .setUseXNNPACK(backend == Backend.XNNPACK);
+  }
+
+  /** A compact string such as {@code "XNNPACK:2"}, read back by {@link #parse(String)}. */
+  public String encode() {
+    return backend.name() + ":" + numThreads;
+  }
+
+  /** Parses the output of {@link #encode()}, returning null if {@code encoded} is not one. */
+  public static InterpreterConfig parse(final String encoded) {
+    if (encoded == null) {
+      return null;
+    }
+    final int colon = encoded.indexOf(':');
+    if (colon < 0) {
+      return null;
+    }
+    try {
+      return new InterpreterConfig(
+          Backend.valueOf(encoded.substring(0, colon)),
+          Integer.parseInt(encoded.substring(colon + 1)));
+    } catch (final IllegalArgumentException e) {
+      return null;
+    }
+  }
+
+  @Override
+  public boolean equals(final Object o) {
+    if (!(o instanceof InterpreterConfig)) {
+      return false;
+    }
+    final InterpreterConfig other = (InterpreterConfig) o;
+    return backend == other.backend && numThreads == other.numThreads;
+  }
+
+  @Override
+  public int hashCode() {
+    return backend.hashCode() * 31 + numThreads;
+  }
+
+  @Override
+  public String toString() {
+    return String.format(Locale.US, "%s, %d threads", backend, numThreads);
+  }
+}
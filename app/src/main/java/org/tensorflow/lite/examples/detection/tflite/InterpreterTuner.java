@@ -0,0 +1,256 @@
+package org.tensorflow.lite.examples.detection.tflite;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Build;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.tensorflow.lite.DataType;
+import org.tensorflow.lite.Interpreter;
+import org.tensorflow.lite.Tensor;
+import org.tensorflow.lite.examples.detection.env.Logger;
+import org.tensorflow.lite.examples.detection.tflite.InterpreterConfig.Backend;
+
+/**
+ * Picks the fastest {@link InterpreterConfig} for a model on this device and remembers it.
+ *
+ * <p>{@link #tune(MappedByteBuffer)} runs the model on a synthetic input under every candidate: one,
+ * two, four... threads up to the core count, each on the plain CPU kernels and on XNNPACK, plus
+ * NNAPI where the OS has it. Every candidate gets a few warm-up runs and is then timed by the
+ * median of several more. The winner is stored per device model, OS version, model file and the
+ * SHA-256 of its contents, so the benchmark only runs on the first launch, after an OS update and
+ * for every new version of the model.
+ *
+ * <p>Tuning takes a few seconds and keeps the CPU busy; call it off the UI thread, and preferably
+ * while nothing else is running inference.
+ */
+public final class InterpreterTuner {
+  private static final Logger LOGGER = new Logger();
+
+  private static final String PREFS_NAME = "interpreter_tuner";
+  // Thread counts beyond this stop paying off even on big.LITTLE parts with more cores.
+  static final int MAX_THREADS = 8;
+  private static final int WARMUP_RUNS = 3;
+  private static final int TIMED_RUNS = 10;
+  // A candidate whose warm-up is this many times slower than the best median is not timed.
+  private static final int ABANDON_FACTOR = 3;
+  // Among candidates within this fraction of the fastest, the cheaper one wins.
+  static final float TOLERANCE = 0.05f;
+
+  private final SharedPreferences preferences;
+  private final String modelFilename;
+  private final String key;
+
+  /**
+   * @param modelFilename the model file, for logging and to tell models apart.
+   * @param modelSha256 the SHA-256 of the model's contents, as {@link ModelStore} records it, so
+   *     that a new version is benchmarked again.
+   */
+  public InterpreterTuner(
+      final Context context, final String modelFilename, final String modelSha256) {
+    this.preferences = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    this.modelFilename = modelFilename;
+    this.key =
+        Build.MANUFACTURER
+            + " "
+            + Build.MODEL
+            + "/"
+            + Build.VERSION.SDK_INT
+            + "/"
+            + modelFilename
+            + "/"
+            + modelSha256;
+  }
+
+  /** The config stored by an earlier {@link #tune(MappedByteBuffer)} on this device, or null. */
+  public InterpreterConfig getTunedConfig() {
+    return InterpreterConfig.parse(preferences.getString(key, null));
+  }
+
+  /** The tuned config if there is one, {@link InterpreterConfig#DEFAULT} otherwise. */
+  public InterpreterConfig getConfigOrDefault() {
+    final InterpreterConfig tuned = getTunedConfig();
+    return tuned != null ? tuned : InterpreterConfig.DEFAULT;
+  }
+
+  /** Forgets the stored config so that the next launch benchmarks again. */
+  public void clear() {
+    preferences.edit().remove(key).apply();
+  }
+
+  /**
+   * Benchmarks every candidate config on {@code model}, the model the tuned config will run,
+   * stores the fastest and returns it. Falls back to {@link InterpreterConfig#DEFAULT}, without
+   * storing it, if no candidate managed to run the model.
+   */
+  public InterpreterConfig tune(final MappedByteBuffer model) {
+    final List<InterpreterConfig> candidates =
+        candidates(
+            Runtime.getRuntime().availableProcessors(),
+            Build.VERSION.SDK_INT >= Build.VERSION_CODES.O_MR1);
+    final long[] medianNanos = new long[candidates.size()];
+    long bestNanos = Long.MAX_VALUE;
+    for (int i = 0; i < candidates.size(); ++i) {
+      medianNanos[i] = benchmark(model, candidates.get(i), bestNanos);
+      if (medianNanos[i] >= 0) {
+        bestNanos = Math.min(bestNanos, medianNanos[i]);
+      }
+      LOGGER.i(
+          "Tuning %s: %s",
+          candidates.get(i),
+          medianNanos[i] >= 0 ? (medianNanos[i] / 1000 / 1000f) + " ms" : "skipped");
+    }
+
+    final InterpreterConfig best = pickFastest(candidates, medianNanos);
+    if (best == null) {
+      LOGGER.w(
+          "No interpreter config could run %s, using %s", modelFilename, InterpreterConfig.DEFAULT);
+      return InterpreterConfig.DEFAULT;
+    }
+    LOGGER.i("Tuned %s for %s: %s", modelFilename, key, best);
+    preferences.edit().putString(key, best.encode()).apply();
+    return best;
+  }
+
+  /**
+   * Candidate configs in order of preference when their speed is the same: fewer threads first,
+   * the CPU kernels before XNNPACK, NNAPI last.
+   */
+  static List<InterpreterConfig> candidates(final int cores, final boolean hasNnapi) {
+    final int maxThreads = Math.max(1, Math.min(cores, MAX_THREADS));
+    final List<Integer> threadCounts = new ArrayList<>();
+    for (int threads = 1; threads < maxThreads; threads *= 2) {
+      threadCounts.add(threads);
+    }
+    threadCounts.add(maxThreads);
+
+    final List<InterpreterConfig> candidates = new ArrayList<>();
+    for (final int threads : threadCounts) {
+      candidates.add(new InterpreterConfig(Backend.CPU, threads));
+      candidates.add(new InterpreterConfig(Backend.XNNPACK, threads));
+    }
+    if (hasNnapi) {
+      // Ops NNAPI does not take run on the CPU, give them all the threads.
+      candidates.add(new InterpreterConfig(Backend.NNAPI, maxThreads));
+    }
+    return candidates;
+  }
+
+  /**
+   * Returns the first of {@code candidates} whose median is within {@link #TOLERANCE} of the
+   * fastest, or null if none ran. A negative entry in {@code medianNanos} marks a candidate that
+   * failed or was abandoned.
+   */
+  static InterpreterConfig pickFastest(
+      final List<InterpreterConfig> candidates, final long[] medianNanos) {
+    long best = Long.MAX_VALUE;
+    for (final long nanos : medianNanos) {
+      if (nanos >= 0) {
+        best = Math.min(best, nanos);
+      }
+    }
+    if (best == Long.MAX_VALUE) {
+      return null;
+    }
+    final long limit = best + (long) (best * TOLERANCE);
+    for (int i = 0; i < candidates.size(); ++i) {
+      if (medianNanos[i] >= 0 && medianNanos[i] <= limit) {
+        return candidates.get(i);
+      }
+    }
+    return null;
+  }
+
+  static long median(final long[] samples) {
+    final long[] sorted = samples.clone();
+    Arrays.sort(sorted);
+    final int middle = sorted.length / 2;
+    return sorted.length % 2 == 1 ? sorted[middle] : (sorted[middle - 1] + sorted[middle]) / 2;
+  }
+
+  /**
+   * Returns the median run time of {@code config} in nanoseconds, or -1 if it cannot run the model
+   * or its warm-up already took more than {@link #ABANDON_FACTOR} times {@code bestNanos}.
+   */
+  private static long benchmark(
+      final MappedByteBuffer model, final InterpreterConfig config, final long bestNanos) {
+    final Interpreter interpreter;
+    try {
+      interpreter = new Interpreter(model, config.toOptions());
+    } catch (final RuntimeException e) {
+      LOGGER.w(e, "Cannot create an interpreter with %s", config);
+      return -1;
+    }
+    try {
+      final Object[] inputs = new Object[interpreter.getInputTensorCount()];
+      final Random random = new Random(0);
+      for (int i = 0; i < inputs.length; ++i) {
+        inputs[i] = syntheticInput(interpreter.getInputTensor(i), random);
+      }
+      final Map<Integer, Object> outputs = new HashMap<>();
+      for (int i = 0; i < interpreter.getOutputTensorCount(); ++i) {
+        outputs.put(i, allocate(interpreter.getOutputTensor(i).numBytes()));
+      }
+
+      long warmupNanos = Long.MAX_VALUE;
+      for (int i = 0; i < WARMUP_RUNS; ++i) {
+        warmupNanos = Math.min(warmupNanos, run(interpreter, inputs, outputs));
+      }
+      if (bestNanos != Long.MAX_VALUE && warmupNanos / ABANDON_FACTOR > bestNanos) {
+        return -1;
+      }
+      final long[] samples = new long[TIMED_RUNS];
+      for (int i = 0; i < TIMED_RUNS; ++i) {
+        samples[i] = run(interpreter, inputs, outputs);
+      }
+      return median(samples);
+    } catch (final RuntimeException e) {
+      LOGGER.w(e, "Cannot run the model with %s", config);
+      return -1;
+    } finally {
+      interpreter.close();
+    }
+  }
+
+  private static long run(
+      final Interpreter interpreter, final Object[] inputs, final Map<Integer, Object> outputs) {
+    for (final Object input : inputs) {
+      ((ByteBuffer) input).rewind();
+    }
+    for (final Object output : outputs.values()) {
+      ((ByteBuffer) output).rewind();
+    }
+    final long startNanos = System.nanoTime();
+    interpreter.runForMultipleInputsOutputs(inputs, outputs);
+    return System.nanoTime() - startNanos;
+  }
+
+  /** Noise in the range a real, normalized camera frame would have. */
+  private static ByteBuffer syntheticInput(final Tensor tensor, final Random random) {
+    final ByteBuffer buffer = allocate(tensor.numBytes());
+    if (tensor.dataType() == DataType.FLOAT32) {
+      while (buffer.remaining() >= 4) {
+        buffer.putFloat(random.nextFloat() * 2 - 1);
+      }
+    } else {
+      final byte[] bytes = new byte[buffer.capacity()];
+      random.nextBytes(bytes);
+      buffer.put(bytes);
+    }
+    buffer.rewind();
+    return buffer;
+  }
+
+  private static ByteBuffer allocate(final int bytes) {
+    final ByteBuffer buffer = ByteBuffer.allocateDirect(bytes);
+    buffer.order(ByteOrder.nativeOrder());
+    return buffer;
+  }
+}
@@ -0,0 +1,73 @@
+package org.tensorflow.lite.examples.detection.tflite;
+
+import java.util.List;
+
+/**
+ * The classes the app acts on, as fixed integer ids, and a model's label file compiled into a
+ * lookup table from its output class index to label and id.
+ *
+ * <p>Compiling once at load means a detection carries its class as an int that the inference
+ * thread can switch on, instead of comparing label strings per result, and a retrained model may
+ * list its labels in any order. Labels the app does not know map to {@link #UNKNOWN}.
+ */
+public final class LabelMap {
+  public static final int UNKNOWN = -1;
+  public static final int FACE = 0;
+  public static final int MOUTH = 1;
+  public static final int HAND = 2;
+  public static final int TABLET = 3;
+  public static final int MEDBOX = 4;
+
+  // Label of each class id.
+  private static final String[] NAMES = {"face", "mouth", "hand", "tablet", "medbox"};
+
+  private final String[] labels;
+  private final int[] classIds;
+
+  private LabelMap(final String[] labels, final int[] classIds) {
+    this.labels = labels;
+    this.classIds = classIds;
+  }
+
+  /** Compiles the lines of a label file, one label per model output class. */
+  public static LabelMap compile(final List<String> labels) {
+    final String[] names = labels.toArray(new String[0]);
+    final int[] ids = new int[names.length];
+    for (int i = 0; i < names.length; ++i) {
+      ids[i] = classIdOf(names[i]);
+    }
+    return new LabelMap(names, ids);
+  }
+
+  /** The class id of label {@code label}, or {@link #UNKNOWN}. */
+  public static int classIdOf(final String label) {
+    if (label != null) {
+      for (int id = 0; id < NAMES.length; ++id) {
+        if (NAMES[id].equals(label)) {
+          return id;
+        }
+      }
+    }
+    return UNKNOWN;
+  }
+
+  /** The label of class id {@code classId}, e.g. for logging; null for {@link #UNKNOWN}. */
+  public static String nameOf(final int classId) {
+    return classId >= 0 && classId < NAMES.length ? NAMES[classId] : null;
+  }
+
+  /** Number of model output classes. */
+  public int size() {
+    return labels.length;
+  }
+
+  /** Label of model output class {@code index}. */
+  public String getLabel(final int index) {
+    return labels[index];
+  }
+
+  /** Class id of model output class {@code index}, {@link #UNKNOWN} if the app does not use it. */
+  public int getClassId(final int index) {
+    return classIds[index];
+  }
+}
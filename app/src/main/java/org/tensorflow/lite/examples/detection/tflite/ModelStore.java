@@ -0,0 +1,393 @@
+package org.tensorflow.lite.examples.detection.tflite;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.tensorflow.lite.examples.detection.env.Logger;
+
+/**
+ * Versioned detection models and their labels in app-private storage, so that a retrained model
+ * can be rolled out without a new APK.
+ *
+ * <p>Each version lives in its own directory, {@code <root>/<name>/<version>/}, holding {@code
+ * model.tflite}, {@code labels.txt} and the model's SHA-256 in {@code model.sha256}. {@link
+ * #install} writes a version next to the others and renames it into place, so a reader never sees
+ * half a model. {@link #map} memory-maps a model and verifies it against its checksum the first
+ * time it is mapped in this process; later maps of the same, unchanged file trust that result.
+ *
+ * <p>All methods are thread-safe. Listeners are called on the thread that installed the model.
+ */
+public final class ModelStore {
+  private static final Logger LOGGER = new Logger();
+
+  static final String MODEL_FILE = "model.tflite";
+  static final String LABELS_FILE = "labels.txt";
+  static final String CHECKSUM_FILE = "model.sha256";
+  private static final String TEMP_PREFIX = ".install-";
+  // Versions kept per model: the newest and the one before, which a session may still run.
+  private static final int KEEP_VERSIONS = 2;
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  /** Told about every newly installed version that became the latest of its model. */
+  public interface Listener {
+    void onModelInstalled(Model model);
+  }
+
+  /** One installed version of a model. */
+  public static final class Model {
+    private final String name;
+    private final int version;
+    private final File dir;
+    private final String sha256;
+
+    Model(final String name, final int version, final File dir, final String sha256) {
+      this.name = name;
+      this.version = version;
+      this.dir = dir;
+      this.sha256 = sha256;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public int getVersion() {
+      return version;
+    }
+
+    public File getModelFile() {
+      return new File(dir, MODEL_FILE);
+    }
+
+    public File getLabelsFile() {
+      return new File(dir, LABELS_FILE);
+    }
+
+    /** Expected SHA-256 of the model file, lower-case hex. */
+    public String getSha256() {
+      return sha256;
+    }
+
+    @Override
+    public String toString() {
+      return name + " v" + version;
+    }
+  }
+
+  /** A verified model file mapped into memory, and its labels. */
+  public static final class MappedModel {
+    private final Model model;
+    private final MappedByteBuffer buffer;
+    private final List<String> labels;
+
+    MappedModel(final Model model, final MappedByteBuffer buffer, final List<String> labels) {
+      this.model = model;
+      this.buffer = buffer;
+      this.labels = labels;
+    }
+
+    public Model getModel() {
+      return model;
+    }
+
+    /** The model file, read-only. Stays valid after a newer version replaces this one. */
+    public MappedByteBuffer getBuffer() {
+      return buffer;
+    }
+
+    public List<String> getLabels() {
+      return labels;
+    }
+  }
+
+  private final File root;
+  private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+  // Model files checked against their checksum in this process, by path, length and mtime.
+  private final Set<String> verified = new HashSet<>();
+  private int verifications;
+
+  public ModelStore(final File root) {
+    this.root = root;
+  }
+
+  public void addListener(final Listener listener) {
+    listeners.add(listener);
+  }
+
+  public void removeListener(final Listener listener) {
+    listeners.remove(listener);
+  }
+
+  /**
+   * Installs version {@code version} of model {@code name}, reading both streams to the end
+   * without closing them. Older versions beyond the previous one are deleted; a running
+   * interpreter keeps its mapping of a deleted file.
+   *
+   * @param sha256 the SHA-256 of the model file as published with it, hex.
+   * @throws IOException if the model does not match {@code sha256}, the version is already
+   *     installed, or the files could not be written. Nothing is installed then.
+   */
+  public Model install(
+      final String name,
+      final int version,
+      final InputStream model,
+      final InputStream labels,
+      final String sha256)
+      throws IOException {
+    checkName(name);
+    if (version < 1) {
+      throw new IllegalArgumentException("Versions start at 1: " + version);
+    }
+    final String expected = sha256.toLowerCase(Locale.US);
+    final File modelDir = new File(root, name);
+    if (!modelDir.isDirectory() && !modelDir.mkdirs()) {
+      throw new IOException("Cannot create " + modelDir);
+    }
+    final File dir = new File(modelDir, Integer.toString(version));
+    if (dir.exists()) {
+      throw new IOException(name + " v" + version + " is already installed");
+    }
+    final File temp = new File(modelDir, TEMP_PREFIX + version);
+    deleteRecursively(temp);
+    if (!temp.mkdir()) {
+      throw new IOException("Cannot create " + temp);
+    }
+    final Model installed;
+    try {
+      final String actual = copy(model, new File(temp, MODEL_FILE), newDigest());
+      if (!actual.equals(expected)) {
+        throw new IOException(
+            String.format("%s v%d has SHA-256 %s, expected %s", name, version, actual, expected));
+      }
+      copy(labels, new File(temp, LABELS_FILE), null);
+      try (Writer writer =
+          new OutputStreamWriter(new FileOutputStream(new File(temp, CHECKSUM_FILE)), UTF_8)) {
+        writer.write(expected);
+      }
+      if (!temp.renameTo(dir)) {
+        throw new IOException("Cannot move " + temp + " to " + dir);
+      }
+      installed = new Model(name, version, dir, expected);
+    } finally {
+      deleteRecursively(temp);
+    }
+    synchronized (this) {
+      // Copied and hashed just now.
+      verified.add(verificationKey(installed.getModelFile()));
+    }
+    LOGGER.i("Installed %s", installed);
+    prune(name);
+
+    final Model latest = latest(name);
+    if (latest != null && latest.getVersion() == version) {
+      for (final Listener listener : listeners) {
+        listener.onModelInstalled(installed);
+      }
+    }
+    return installed;
+  }
+
+  /** The highest installed version of {@code name}, or null if there is none. */
+  public Model latest(final String name) {
+    final List<Model> models = list(name);
+    return models.isEmpty() ? null : models.get(models.size() - 1);
+  }
+
+  /** Every installed version of {@code name}, oldest first. */
+  public List<Model> list(final String name) {
+    checkName(name);
+    final File[] dirs = new File(root, name).listFiles();
+    if (dirs == null) {
+      return Collections.emptyList();
+    }
+    final List<Model> models = new ArrayList<>();
+    for (final File dir : dirs) {
+      final int version = parseVersion(dir.getName());
+      if (version < 1
+          || !new File(dir, MODEL_FILE).isFile()
+          || !new File(dir, LABELS_FILE).isFile()) {
+        continue;
+      }
+      try {
+        models.add(new Model(name, version, dir, readChecksum(new File(dir, CHECKSUM_FILE))));
+      } catch (final IOException e) {
+        LOGGER.w(e, "Ignoring %s without a checksum", dir);
+      }
+    }
+    Collections.sort(
+        models,
+        new Comparator<Model>() {
+          @Override
+          public int compare(final Model a, final Model b) {
+            return Integer.compare(a.getVersion(), b.getVersion());
+          }
+        });
+    return models;
+  }
+
+  /**
+   * Memory-maps {@code model} and reads its labels. The first map of a model file in this process
+   * hashes it, which reads the whole file once.
+   *
+   * @throws IOException if the file does not match its checksum, e.g. it was truncated or
+   *     modified after installation.
+   */
+  public MappedModel map(final Model model) throws IOException {
+    final File file = model.getModelFile();
+    final MappedByteBuffer buffer;
+    try (FileInputStream input = new FileInputStream(file)) {
+      final FileChannel channel = input.getChannel();
+      // The mapping outlives the channel.
+      buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+    final String key = verificationKey(file);
+    final boolean trusted;
+    synchronized (this) {
+      trusted = verified.contains(key);
+    }
+    if (!trusted) {
+      final String actual = sha256(buffer);
+      synchronized (this) {
+        ++verifications;
+      }
+      if (!actual.equals(model.getSha256())) {
+        throw new IOException(
+            String.format(
+                "%s is corrupt: SHA-256 %s, expected %s", model, actual, model.getSha256()));
+      }
+      synchronized (this) {
+        verified.add(key);
+      }
+    }
+    return new MappedModel(model, buffer, readLines(model.getLabelsFile()));
+  }
+
+  /** Number of times {@link #map} hashed a model file. */
+  synchronized int getVerificationCount() {
+    return verifications;
+  }
+
+  private void prune(final String name) {
+    final List<Model> models = list(name);
+    for (int i = 0; i < models.size() - KEEP_VERSIONS; ++i) {
+      final File dir = models.get(i).getModelFile().getParentFile();
+      deleteRecursively(dir);
+      LOGGER.i("Deleted %s", models.get(i));
+    }
+  }
+
+  private static void checkName(final String name) {
+    if (name.isEmpty()
+        || name.startsWith(".")
+        || name.indexOf('/') >= 0
+        || name.indexOf(File.separatorChar) >= 0) {
+      throw new IllegalArgumentException("Invalid model name " + name);
+    }
+  }
+
+  private static int parseVersion(final String dirName) {
+    try {
+      return Integer.parseInt(dirName);
+    } catch (final NumberFormatException e) {
+      return -1;
+    }
+  }
+
+  private static String verificationKey(final File file) {
+    return file.getAbsolutePath() + ":" + file.length() + ":" + file.lastModified();
+  }
+
+  /** Copies {@code in} to {@code file}, returning the hex digest if {@code digest} is given. */
+  private static String copy(final InputStream in, final File file, final MessageDigest digest)
+      throws IOException {
+    final byte[] buffer = new byte[1 << 16];
+    try (FileOutputStream out = new FileOutputStream(file)) {
+      int read;
+      while ((read = in.read(buffer)) != -1) {
+        out.write(buffer, 0, read);
+        if (digest != null) {
+          digest.update(buffer, 0, read);
+        }
+      }
+      // Durable before the rename makes the version visible.
+      out.getFD().sync();
+    }
+    return digest != null ? hex(digest.digest()) : null;
+  }
+
+  private static String readChecksum(final File file) throws IOException {
+    final List<String> lines = readLines(file);
+    if (lines.isEmpty()) {
+      throw new IOException("Empty " + file);
+    }
+    return lines.get(0).trim().toLowerCase(Locale.US);
+  }
+
+  private static List<String> readLines(final File file) throws IOException {
+    final List<String> lines = new ArrayList<>();
+    try (BufferedReader reader =
+        new BufferedReader(new InputStreamReader(new FileInputStream(file), UTF_8))) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        lines.add(line);
+      }
+    }
+    return lines;
+  }
+
+  private static void deleteRecursively(final File file) {
+    final File[] children = file.listFiles();
+    if (children != null) {
+      for (final File child : children) {
+        deleteRecursively(child);
+      }
+    }
+    if (file.exists() && !file.delete()) {
+      LOGGER.w("Cannot delete %s", file);
+    }
+  }
+
+  private static MessageDigest newDigest() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (final NoSuchAlgorithmException e) {
+      // Every Java and Android runtime has it.
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /** The SHA-256 of the remaining bytes of {@code buffer}, hex. Leaves its position as it is. */
+  static String sha256(final ByteBuffer buffer) {
+    final MessageDigest digest = newDigest();
+    digest.update(buffer.duplicate());
+    return hex(digest.digest());
+  }
+
+  static String hex(final byte[] bytes) {
+    final StringBuilder sb = new StringBuilder(bytes.length * 2);
+    for (final byte b : bytes) {
+      sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+    }
+    return sb.toString();
+  }
+}
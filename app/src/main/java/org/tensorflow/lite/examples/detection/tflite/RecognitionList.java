@@ -0,0 +1,94 @@
+package org.tensorflow.lite.examples.detection.tflite;
+
+import android.graphics.RectF;
+import java.util.AbstractList;
+import org.tensorflow.lite.examples.detection.tflite.Classifier.Recognition;
+
+/**
+ * Caller-owned, reusable container for recognition results.
+ *
+ * <p>Holds a fixed pool of {@link Recognition} objects and their location rectangles that are
+ * overwritten in place on every inference, so steady-state recognition does not allocate. Entries
+ * are only valid until the list is passed to the next recognition call; copy anything that must
+ * outlive it. Iterate with {@link #size()} and {@link #get(int)} on hot paths, the for-each
+ * iterator allocates.
+ */
+public final class RecognitionList extends AbstractList<Recognition> {
+  private final Recognition[] recognitions;
+  private final RectF[] locations;
+  private int size;
+
+  public RecognitionList(final int capacity) {
+    recognitions = new Recognition[capacity];
+    locations = new RectF[capacity];
+    for (int i = 0; i < capacity; ++i) {
+      locations[i] = new RectF();
+      recognitions[i] = new Recognition(null, null, LabelMap.UNKNOWN, 0f, locations[i]);
+    }
+  }
+
+  @Override
+  public Recognition get(final int index) {
+    if (index < 0 || index >= size) {
+      throw new IndexOutOfBoundsException("Index " + index + ", size " + size);
+    }
+    return recognitions[index];
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  public int capacity() {
+    return recognitions.length;
+  }
+
+  @Override
+  public void clear() {
+    size = 0;
+  }
+
+  /**
+   * Appends a result by overwriting the next pooled entry, with the class id of {@code title}.
+   * Public so that {@link Classifier} implementations outside this package can fill the list too.
+   *
+   * @return false if the list is already at capacity and the result was dropped.
+   */
+  public boolean add(
+      final String id,
+      final String title,
+      final float confidence,
+      final float left,
+      final float top,
+      final float right,
+      final float bottom) {
+    return add(id, title, LabelMap.classIdOf(title), confidence, left, top, right, bottom);
+  }
+
+  /**
+   * Appends a result by overwriting the next pooled entry.
+   *
+   * @param classId the {@link LabelMap} class id of {@code title}.
+   * @return false if the list is already at capacity and the result was dropped.
+   */
+  public boolean add(
+      final String id,
+      final String title,
+      final int classId,
+      final float confidence,
+      final float left,
+      final float top,
+      final float right,
+      final float bottom) {
+    if (size == recognitions.length) {
+      return false;
+    }
+    // Callers may have swapped the location via setLocation(); always write into our own rect.
+    final RectF location = locations[size];
+    location.set(left, top, right, bottom);
+    recognitions[size].reset(id, title, classId, confidence, location);
+    ++size;
+    return true;
+  }
+}
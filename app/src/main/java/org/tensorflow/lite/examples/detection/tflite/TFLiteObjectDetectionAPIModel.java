@@ -18,7 +18,6 @@ package org.tensorflow.lite.examples.detection.tflite;
 import android.content.res.AssetFileDescriptor;
 import android.content.res.AssetManager;
 import android.graphics.Bitmap;
-import android.graphics.RectF;
 import android.os.Trace;
 import java.io.BufferedReader;
 import java.io.FileInputStream;
@@ -30,11 +29,17 @@ import java.nio.ByteOrder;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Vector;
+import org.tensorflow.lite.DataType;
 import org.tensorflow.lite.Interpreter;
+import org.tensorflow.lite.Tensor;
+import org.tensorflow.lite.examples.detection.env.FrameMetrics;
+import org.tensorflow.lite.examples.detection.env.InputFormat;
+import org.tensorflow.lite.examples.detection.env.InputPacker;
+import org.tensorflow.lite.examples.detection.env.LatencyHistogram;
 import org.tensorflow.lite.examples.detection.env.Logger;
 
 /**
@@ -50,39 +55,66 @@ public class TFLiteObjectDetectionAPIModel implements Classifier {
   private static final Logger LOGGER = new Logger();
 
   // Only return this many results.
-  private static final int NUM_DETECTIONS = 10;
-  // Float model
-  private static final float IMAGE_MEAN = 127.5f;
-  private static final float IMAGE_STD = 127.5f;
-  // Number of threads in the java app
-  private static final int NUM_THREADS = 4;
-  private boolean isModelQuantized;
+  public static final int NUM_DETECTIONS = 10;
+  // With stat logging enabled, dump the metrics every this many interpreter runs.
+  private static final int STATS_LOG_INTERVAL = 100;
+  // Largest number of images recognizeImages() runs in a single interpreter invocation.
+  public static final int MAX_BATCH_SIZE = 4;
+  // Timed runs of each kind, batched and serial, before a batch size settles on the faster one.
+  private static final int CALIBRATION_RUNS = 8;
+  private static final int UNDECIDED = 0;
+  private static final int BATCHED = 1;
+  private static final int SERIAL = 2;
+  // Normalization the float model was trained with; quantized models get it folded into their
+  // input quantization.
+  public static final float IMAGE_MEAN = 127.5f;
+  public static final float IMAGE_STD = 127.5f;
+  // Read from the input tensor: float32, or uint8/int8 with its quantization parameters.
+  private InputFormat inputFormat;
+  // Dequantization of each output tensor, null entries for float outputs.
+  private OutputQuantization[] outputQuantization;
   // Config values.
   private int inputSize;
   // Pre-allocated buffers.
-  private Vector<String> labels = new Vector<String>();
+  // Compiled from the label file.
+  private LabelMap labels;
   private int[] intValues;
-  // outputLocations: array of shape [Batchsize, NUM_DETECTIONS,4]
-  // contains the location of detected boxes
-  private float[][][] outputLocations;
-  // outputClasses: array of shape [Batchsize, NUM_DETECTIONS]
-  // contains the classes of detected boxes
-  private float[][] outputClasses;
-  // outputScores: array of shape [Batchsize, NUM_DETECTIONS]
-  // contains the scores of detected boxes
-  private float[][] outputScores;
-  // numDetections: array of shape [Batchsize]
-  // contains the number of detected boxes
-  private float[] numDetections;
+  private InputPacker inputPacker;
+  // Output buffers per batch size, index 1 is the single image case. Created on first use.
+  private final BatchBuffers[] batchBuffers = new BatchBuffers[MAX_BATCH_SIZE + 1];
+  // One interpreter per batch size, resized and allocated once, so that alternating batch sizes
+  // never reallocates tensors. Index 1 is tfLite; the others are created on first use.
+  private final Interpreter[] batchInterpreters = new Interpreter[MAX_BATCH_SIZE + 1];
+  // Cleared if the model rejects a batch dimension other than 1.
+  private boolean batchingSupported = true;
+  // Per batch size: UNDECIDED while batched and serial runs alternate to be timed against each
+  // other, then the faster of BATCHED and SERIAL.
+  private final int[] batchMode = new int[MAX_BATCH_SIZE + 1];
+  private final int[] calibrationRuns = new int[MAX_BATCH_SIZE + 1];
+  private final long[] batchedCalibrationNanos = new long[MAX_BATCH_SIZE + 1];
+  private final long[] serialCalibrationNanos = new long[MAX_BATCH_SIZE + 1];
 
   private ByteBuffer imgData;
 
+  private final FrameMetrics metrics = new FrameMetrics();
+  private final LatencyHistogram preprocessHistogram = metrics.histogram("preprocess");
+  private final LatencyHistogram inferenceHistogram = metrics.histogram("inference");
+  private final LatencyHistogram batchInferenceHistogram = metrics.histogram("inference_batch");
+  // Whole recognizeImages() calls, feed to decode, by how the batch was run.
+  private final LatencyHistogram batchedCallHistogram = metrics.histogram("batch_batched");
+  private final LatencyHistogram serialCallHistogram = metrics.histogram("batch_serial");
+  private final LatencyHistogram postprocessHistogram = metrics.histogram("postprocess");
+  private boolean logStats = false;
+  private long interpreterRuns;
+
+  private MappedByteBuffer model;
+  private InterpreterConfig interpreterConfig;
   private Interpreter tfLite;
 
   private TFLiteObjectDetectionAPIModel() {}
 
   /** Memory-map the model file in Assets. */
-  private static MappedByteBuffer loadModelFile(AssetManager assets, String modelFilename)
+  static MappedByteBuffer loadModelFile(AssetManager assets, String modelFilename)
       throws IOException {
     AssetFileDescriptor fileDescriptor = assets.openFd(modelFilename);
     FileInputStream inputStream = new FileInputStream(fileDescriptor.getFileDescriptor());
@@ -99,7 +131,8 @@ public class TFLiteObjectDetectionAPIModel implements Classifier {
    * @param modelFilename The filepath of the model GraphDef protocol buffer.
    * @param labelFilename The filepath of label file for classes.
    * @param inputSize The size of image input
-   * @param isQuantized Boolean representing model is quantized or not
+   * @param isQuantized Whether the model is expected to be quantized. The input tensor type decides;
+   *     a mismatch is logged.
    */
   public static Classifier create(
       final AssetManager assetManager,
@@ -108,144 +141,531 @@ public class TFLiteObjectDetectionAPIModel implements Classifier {
       final int inputSize,
       final boolean isQuantized)
       throws IOException {
-    final TFLiteObjectDetectionAPIModel d = new TFLiteObjectDetectionAPIModel();
+    final Classifier d =
+        create(assetManager, modelFilename, labelFilename, inputSize, InterpreterConfig.DEFAULT);
+    if (d.getInputFormat().isQuantized() != isQuantized) {
+      LOGGER.w("%s has %s input, expected it %squantized",
+          modelFilename, d.getInputFormat(), isQuantized ? "" : "not ");
+    }
+    return d;
+  }
 
+  /**
+   * Initializes a detector that runs the model as {@code config} says, typically the config
+   * {@link InterpreterTuner} picked for this device. Whether the model is quantized, and how, is
+   * read from its input and output tensors.
+   */
+  public static Classifier create(
+      final AssetManager assetManager,
+      final String modelFilename,
+      final String labelFilename,
+      final int inputSize,
+      final InterpreterConfig config)
+      throws IOException {
+    final List<String> labels = new ArrayList<>();
     String actualFilename = labelFilename.split("file:///android_asset/")[1];
     InputStream labelsInput = assetManager.open(actualFilename);
     BufferedReader br = new BufferedReader(new InputStreamReader(labelsInput));
     String line;
     while ((line = br.readLine()) != null) {
-      LOGGER.w(line);
-      d.labels.add(line);
+      labels.add(line);
     }
     br.close();
+    LOGGER.i("Loaded %d labels from %s", labels.size(), actualFilename);
+
+    return create(
+        modelFilename, loadModelFile(assetManager, modelFilename), labels, inputSize, config);
+  }
 
+  /**
+   * Initializes a detector for a model version from the {@link ModelStore}, already mapped and
+   * verified, that runs as {@code config} says.
+   */
+  public static Classifier create(
+      final ModelStore.MappedModel model, final int inputSize, final InterpreterConfig config) {
+    return create(
+        model.getModel().toString(), model.getBuffer(), model.getLabels(), inputSize, config);
+  }
+
+  private static Classifier create(
+      final String name,
+      final MappedByteBuffer model,
+      final List<String> labels,
+      final int inputSize,
+      final InterpreterConfig config) {
+    final TFLiteObjectDetectionAPIModel d = new TFLiteObjectDetectionAPIModel();
+    d.labels = LabelMap.compile(labels);
     d.inputSize = inputSize;
 
-    try {
-      d.tfLite = new Interpreter(loadModelFile(assetManager, modelFilename));
-    } catch (Exception e) {
-      throw new RuntimeException(e);
-    }
+    d.model = model;
+    d.setInterpreterConfig(config);
 
-    d.isModelQuantized = isQuantized;
-    // Pre-allocate buffers.
-    int numBytesPerChannel;
-    if (isQuantized) {
-      numBytesPerChannel = 1; // Quantized
-    } else {
-      numBytesPerChannel = 4; // Floating point
+    d.inputFormat = inputFormatOf(d.tfLite.getInputTensor(0));
+    d.outputQuantization = new OutputQuantization[d.tfLite.getOutputTensorCount()];
+    for (int i = 0; i < d.outputQuantization.length; ++i) {
+      d.outputQuantization[i] = OutputQuantization.of(d.tfLite.getOutputTensor(i));
     }
-    d.imgData = ByteBuffer.allocateDirect(1 * d.inputSize * d.inputSize * 3 * numBytesPerChannel);
-    d.imgData.order(ByteOrder.nativeOrder());
+    LOGGER.i("%s input: %s", name, d.inputFormat);
+    // Pre-allocate buffers.
+    d.imgData = d.createInputBuffer();
     d.intValues = new int[d.inputSize * d.inputSize];
+    d.inputPacker = new InputPacker(d.inputSize * d.inputSize, d.inputFormat);
 
-    d.tfLite.setNumThreads(NUM_THREADS);
-    d.outputLocations = new float[1][NUM_DETECTIONS][4];
-    d.outputClasses = new float[1][NUM_DETECTIONS];
-    d.outputScores = new float[1][NUM_DETECTIONS];
-    d.numDetections = new float[1];
+    d.batchBuffers[1] = new BatchBuffers(1, d.imgData.capacity(), d.outputQuantization);
     return d;
   }
 
+  private static InputFormat inputFormatOf(final Tensor input) {
+    final DataType type = input.dataType();
+    if (type == DataType.FLOAT32) {
+      return InputFormat.floats(IMAGE_MEAN, IMAGE_STD);
+    }
+    if (type != DataType.UINT8 && type != DataType.INT8) {
+      throw new IllegalArgumentException("Unsupported input type " + type);
+    }
+    final Tensor.QuantizationParams params = input.quantizationParams();
+    return InputFormat.quantized(
+        IMAGE_MEAN, IMAGE_STD, params.getScale(), params.getZeroPoint(), type == DataType.INT8);
+  }
+
   @Override
   public List<Recognition> recognizeImage(final Bitmap bitmap) {
+    final RecognitionList results = new RecognitionList(NUM_DETECTIONS);
+    recognizeImage(bitmap, results);
+    return results;
+  }
+
+  @Override
+  public List<Recognition> recognizeImage(final ByteBuffer input) {
+    final RecognitionList results = new RecognitionList(NUM_DETECTIONS);
+    recognizeImage(input, results);
+    return results;
+  }
+
+  @Override
+  public void recognizeImage(final Bitmap bitmap, final RecognitionList results) {
     // Log this method so that it can be analyzed with systrace.
     Trace.beginSection("recognizeImage");
 
+    fillInput(bitmap, imgData);
+    runInference(imgData, results);
+    Trace.endSection(); // "recognizeImage"
+  }
+
+  @Override
+  public ByteBuffer createInputBuffer() {
+    // 1 byte per channel for quantized models, 4 for floating point.
+    final ByteBuffer buffer =
+        ByteBuffer.allocateDirect(inputSize * inputSize * 3 * inputFormat.getBytesPerChannel());
+    buffer.order(ByteOrder.nativeOrder());
+    return buffer;
+  }
+
+  @Override
+  public void fillInput(final Bitmap bitmap, final ByteBuffer input) {
     Trace.beginSection("preprocessBitmap");
-    // Preprocess the image data from 0-255 int to normalized float based
-    // on the provided parameters.
+    final long startNanos = System.nanoTime();
+    // Preprocess the image data from 0-255 int to normalized float or quantized bytes, based
+    // on the input tensor.
     bitmap.getPixels(intValues, 0, bitmap.getWidth(), 0, 0, bitmap.getWidth(), bitmap.getHeight());
+    inputPacker.pack(intValues, input);
+    preprocessHistogram.recordNanos(System.nanoTime() - startNanos);
+    Trace.endSection(); // preprocessBitmap
+  }
 
-    imgData.rewind();
-    for (int i = 0; i < inputSize; ++i) {
-      for (int j = 0; j < inputSize; ++j) {
-        int pixelValue = intValues[i * inputSize + j];
-        if (isModelQuantized) {
-          // Quantized model
-          imgData.put((byte) ((pixelValue >> 16) & 0xFF));
-          imgData.put((byte) ((pixelValue >> 8) & 0xFF));
-          imgData.put((byte) (pixelValue & 0xFF));
-        } else { // Float model
-          imgData.putFloat((((pixelValue >> 16) & 0xFF) - IMAGE_MEAN) / IMAGE_STD);
-          imgData.putFloat((((pixelValue >> 8) & 0xFF) - IMAGE_MEAN) / IMAGE_STD);
-          imgData.putFloat(((pixelValue & 0xFF) - IMAGE_MEAN) / IMAGE_STD);
-        }
+  @Override
+  public void recognizeImage(final ByteBuffer input, final RecognitionList results) {
+    checkInput(input);
+    Trace.beginSection("recognizeImage");
+    input.rewind();
+    runInference(input, results);
+    Trace.endSection(); // "recognizeImage"
+  }
+
+  @Override
+  public void recognizeImages(
+      final ByteBuffer[] inputs, final int count, final RecognitionList[] results) {
+    if (count < 1 || count > inputs.length || count > results.length) {
+      throw new IllegalArgumentException("Invalid batch size " + count);
+    }
+    if (count == 1 || count > MAX_BATCH_SIZE || !batchingSupported) {
+      recognizeSerially(inputs, count, results);
+      return;
+    }
+    final long startNanos = System.nanoTime();
+    if (batchMode[count] == SERIAL
+        || (batchMode[count] == UNDECIDED && calibrationRuns[count] % 2 == 1)) {
+      recognizeSerially(inputs, count, results);
+      final long nanos = System.nanoTime() - startNanos;
+      serialCallHistogram.recordNanos(nanos);
+      calibrate(count, false, nanos);
+      return;
+    }
+    Trace.beginSection("recognizeImages");
+
+    // Stack the images into one [count, inputSize, inputSize, 3] tensor.
+    Trace.beginSection("feed");
+    final BatchBuffers batch = getBatchBuffers(count);
+    batch.input.rewind();
+    for (int i = 0; i < count; ++i) {
+      checkInput(inputs[i]);
+      inputs[i].rewind();
+      batch.input.put(inputs[i]);
+      inputs[i].rewind();
+    }
+    batch.input.rewind();
+    batch.inputArray[0] = batch.input;
+    Trace.endSection();
+
+    Trace.beginSection("run");
+    final long runStartNanos = System.nanoTime();
+    try {
+      getBatchInterpreter(count).runForMultipleInputsOutputs(batch.inputArray, batch.outputMap);
+    } catch (final IllegalArgumentException | IllegalStateException e) {
+      // Some converted SSD graphs (and the detection post-processing op in older runtimes) only
+      // accept a batch of one. Remember that and run the images one after another instead.
+      LOGGER.w(e, "Model does not support a batch of %d, falling back to serial runs", count);
+      batchingSupported = false;
+      closeBatchInterpreters();
+      Trace.endSection(); // run
+      Trace.endSection(); // recognizeImages
+      recognizeSerially(inputs, count, results);
+      return;
+    }
+    final long decodeStartNanos = System.nanoTime();
+    batchInferenceHistogram.recordNanos(decodeStartNanos - runStartNanos);
+    Trace.endSection();
+    batch.dequantize();
+
+    for (int i = 0; i < count; ++i) {
+      DetectionDecoder.decode(
+          batch.locations[i],
+          batch.classes[i],
+          batch.scores[i],
+          batch.numDetections[i],
+          labels,
+          inputSize,
+          results[i]);
+    }
+    final long endNanos = System.nanoTime();
+    postprocessHistogram.recordNanos(endNanos - decodeStartNanos);
+    batchedCallHistogram.recordNanos(endNanos - startNanos);
+    calibrate(count, true, endNanos - startNanos);
+    onInterpreterRun();
+    Trace.endSection(); // "recognizeImages"
+  }
+
+  /**
+   * Records a calibration run of a batch of {@code count} and, after the last one, settles the
+   * batch size on whichever way ran it faster. The first run of each kind allocates tensors and is
+   * left out.
+   */
+  private void calibrate(final int count, final boolean batched, final long nanos) {
+    if (batchMode[count] != UNDECIDED) {
+      return;
+    }
+    final int run = calibrationRuns[count]++;
+    if (run < 2) {
+      return;
+    }
+    if (batched) {
+      batchedCalibrationNanos[count] += nanos;
+    } else {
+      serialCalibrationNanos[count] += nanos;
+    }
+    if (calibrationRuns[count] == 2 + 2 * CALIBRATION_RUNS) {
+      final boolean faster = batchedCalibrationNanos[count] < serialCalibrationNanos[count];
+      batchMode[count] = faster ? BATCHED : SERIAL;
+      LOGGER.i(
+          "Batch of %d: %.2f ms batched, %.2f ms serial per call; running it %s",
+          count,
+          batchedCalibrationNanos[count] / 1e6f / CALIBRATION_RUNS,
+          serialCalibrationNanos[count] / 1e6f / CALIBRATION_RUNS,
+          faster ? "batched" : "serially");
+    }
+  }
+
+  private void recognizeSerially(
+      final ByteBuffer[] inputs, final int count, final RecognitionList[] results) {
+    for (int i = 0; i < count; ++i) {
+      recognizeImage(inputs[i], results[i]);
+    }
+  }
+
+  private void checkInput(final ByteBuffer input) {
+    if (input.capacity() != imgData.capacity()) {
+      throw new IllegalArgumentException(
+          "Input has " + input.capacity() + " bytes, model expects " + imgData.capacity());
+    }
+  }
+
+  private BatchBuffers getBatchBuffers(final int batchSize) {
+    if (batchBuffers[batchSize] == null) {
+      batchBuffers[batchSize] =
+          new BatchBuffers(batchSize, imgData.capacity(), outputQuantization);
+    }
+    return batchBuffers[batchSize];
+  }
+
+  private Interpreter getBatchInterpreter(final int batchSize) {
+    Interpreter interpreter = batchInterpreters[batchSize];
+    if (interpreter == null) {
+      interpreter = new Interpreter(model, interpreterConfig.toOptions());
+      try {
+        interpreter.resizeInput(0, new int[] {batchSize, inputSize, inputSize, 3});
+        interpreter.allocateTensors();
+      } catch (final IllegalArgumentException | IllegalStateException e) {
+        interpreter.close();
+        throw e;
       }
+      batchInterpreters[batchSize] = interpreter;
     }
-    Trace.endSection(); // preprocessBitmap
+    return interpreter;
+  }
 
-    // Copy the input data into TensorFlow.
+  private void closeBatchInterpreters() {
+    for (int i = 2; i < batchInterpreters.length; ++i) {
+      if (batchInterpreters[i] != null) {
+        batchInterpreters[i].close();
+        batchInterpreters[i] = null;
+      }
+    }
+  }
+
+  private void runInference(final ByteBuffer input, final RecognitionList results) {
+    // Copy the input data into TensorFlow. The output arrays and map are allocated once and
+    // overwritten by every run.
     Trace.beginSection("feed");
-    outputLocations = new float[1][NUM_DETECTIONS][4];
-    outputClasses = new float[1][NUM_DETECTIONS];
-    outputScores = new float[1][NUM_DETECTIONS];
-    numDetections = new float[1];
-
-    Object[] inputArray = {imgData};
-    Map<Integer, Object> outputMap = new HashMap<>();
-    outputMap.put(0, outputLocations);
-    outputMap.put(1, outputClasses);
-    outputMap.put(2, outputScores);
-    outputMap.put(3, numDetections);
+    final BatchBuffers single = batchBuffers[1];
+    single.inputArray[0] = input;
     Trace.endSection();
 
     // Run the inference call.
     Trace.beginSection("run");
-    tfLite.runForMultipleInputsOutputs(inputArray, outputMap);
+    final long runStartNanos = System.nanoTime();
+    tfLite.runForMultipleInputsOutputs(single.inputArray, single.outputMap);
+    final long decodeStartNanos = System.nanoTime();
+    inferenceHistogram.recordNanos(decodeStartNanos - runStartNanos);
     Trace.endSection();
+    single.dequantize();
+
+    DetectionDecoder.decode(
+        single.locations[0],
+        single.classes[0],
+        single.scores[0],
+        single.numDetections[0],
+        labels,
+        inputSize,
+        results);
+    postprocessHistogram.recordNanos(System.nanoTime() - decodeStartNanos);
+    onInterpreterRun();
+  }
 
-    // Show the best detections.
-    // after scaling them back to the input size.
-      
-    // You need to use the number of detections from the output and not the NUM_DETECTONS variable declared on top
-      // because on some models, they don't always output the same total number of detections
-      // For example, your model's NUM_DETECTIONS = 20, but sometimes it only outputs 16 predictions
-      // If you don't use the output's numDetections, you'll get nonsensical data
-    int numDetectionsOutput = Math.min(NUM_DETECTIONS, (int) numDetections[0]); // cast from float to integer, use min for safety
-      
-    final ArrayList<Recognition> recognitions = new ArrayList<>(numDetectionsOutput);
-    for (int i = 0; i < numDetectionsOutput; ++i) {
-      final RectF detection =
-          new RectF(
-                  (1 -outputLocations[0][i][1]) * inputSize,
-                  (outputLocations[0][i][0]) * inputSize,
-                  (1 - outputLocations[0][i][3]) * inputSize,
-                  (outputLocations[0][i][2]) * inputSize);
-//      System.out.println("********" + inputSize + "#######" + outputLocations[0][i]);
-      // SSD Mobilenet V1 Model assumes class 0 is background class
-      // in label file and class labels start from 1 to number_of_classes+1,
-      // while outputClasses correspond to class index from 0 to number_of_classes
-      int labelOffset = 0;
-      recognitions.add(
-          new Recognition(
-              "" + i,
-              labels.get((int) outputClasses[0][i] + labelOffset),
-              outputScores[0][i],
-              detection));
+  private void onInterpreterRun() {
+    if (logStats && ++interpreterRuns % STATS_LOG_INTERVAL == 0) {
+      LOGGER.i("Detector stats:\n%s", getStatString());
     }
-    Trace.endSection(); // "recognizeImage"
-    return recognitions;
   }
 
   @Override
-  public void enableStatLogging(final boolean logStats) {}
+  public void enableStatLogging(final boolean logStats) {
+    this.logStats = logStats;
+  }
 
   @Override
   public String getStatString() {
-    return "";
+    return metrics.getStatString();
   }
 
   @Override
-  public void close() {}
+  public FrameMetrics getMetrics() {
+    return metrics;
+  }
+
+  /**
+   * Closes the interpreter and drops the model mapping and tensor buffers. The detector cannot be
+   * used afterwards.
+   */
+  @Override
+  public void close() {
+    if (tfLite != null) {
+      tfLite.close();
+      tfLite = null;
+    }
+    closeBatchInterpreters();
+    model = null;
+    imgData = null;
+    intValues = null;
+    inputPacker = null;
+    Arrays.fill(batchBuffers, null);
+  }
 
   public void setNumThreads(int num_threads) {
-    if (tfLite != null) tfLite.setNumThreads(num_threads);
+    setInterpreterConfig(interpreterConfig.withNumThreads(num_threads));
   }
 
   @Override
   public void setUseNNAPI(boolean isChecked) {
-    if (tfLite != null) tfLite.setUseNNAPI(isChecked);
+    setInterpreterConfig(
+        interpreterConfig.withBackend(
+            isChecked ? InterpreterConfig.Backend.NNAPI : InterpreterConfig.Backend.CPU));
+  }
+
+  @Override
+  public InputFormat getInputFormat() {
+    return inputFormat;
+  }
+
+  @Override
+  public InterpreterConfig getInterpreterConfig() {
+    return interpreterConfig;
+  }
+
+  /**
+   * Replaces the interpreter with one built for {@code config}. Options are fixed once an
+   * interpreter exists, so this reloads the model; do not call it concurrently with recognition. A
+   * delegate the device cannot apply falls back to the CPU kernels with the same thread count.
+   */
+  @Override
+  public void setInterpreterConfig(final InterpreterConfig config) {
+    if (config.equals(interpreterConfig)) {
+      return;
+    }
+    InterpreterConfig applied = config;
+    Interpreter interpreter;
+    try {
+      interpreter = new Interpreter(model, config.toOptions());
+    } catch (final IllegalArgumentException | IllegalStateException e) {
+      if (config.getBackend() == InterpreterConfig.Backend.CPU) {
+        throw e;
+      }
+      LOGGER.w(e, "Cannot use %s, falling back to the CPU", config);
+      applied = config.withBackend(InterpreterConfig.Backend.CPU);
+      interpreter = new Interpreter(model, applied.toOptions());
+    }
+    if (tfLite != null) {
+      tfLite.close();
+    }
+    tfLite = interpreter;
+    interpreterConfig = applied;
+    // Batch interpreters are rebuilt with the new options, and timed again.
+    closeBatchInterpreters();
+    Arrays.fill(batchMode, UNDECIDED);
+    Arrays.fill(calibrationRuns, 0);
+    Arrays.fill(batchedCalibrationNanos, 0);
+    Arrays.fill(serialCalibrationNanos, 0);
+    LOGGER.i("Interpreter running with %s", applied);
+  }
+
+  /** Input and output tensors for one batch size, allocated once and reused by every run. */
+  private static final class BatchBuffers {
+    // Stacked input images. Unused for a batch of one, where the caller's buffer is fed directly.
+    final ByteBuffer input;
+    // locations: array of shape [Batchsize, NUM_DETECTIONS,4]
+    // contains the location of detected boxes
+    final float[][][] locations;
+    // classes: array of shape [Batchsize, NUM_DETECTIONS]
+    // contains the classes of detected boxes
+    final float[][] classes;
+    // scores: array of shape [Batchsize, NUM_DETECTIONS]
+    // contains the scores of detected boxes
+    final float[][] scores;
+    // numDetections: array of shape [Batchsize]
+    // contains the number of detected boxes
+    final float[] numDetections;
+    final Object[] inputArray = new Object[1];
+    final Map<Integer, Object> outputMap = new HashMap<>();
+    // Raw bytes of the quantized outputs, null entries for float outputs.
+    private final ByteBuffer[] quantizedOutputs = new ByteBuffer[4];
+    private final OutputQuantization[] quantization;
+
+    BatchBuffers(
+        final int batchSize, final int bytesPerImage, final OutputQuantization[] quantization) {
+      if (batchSize > 1) {
+        input = ByteBuffer.allocateDirect(batchSize * bytesPerImage);
+        input.order(ByteOrder.nativeOrder());
+      } else {
+        input = null;
+      }
+      locations = new float[batchSize][NUM_DETECTIONS][4];
+      classes = new float[batchSize][NUM_DETECTIONS];
+      scores = new float[batchSize][NUM_DETECTIONS];
+      numDetections = new float[batchSize];
+      outputMap.put(0, locations);
+      outputMap.put(1, classes);
+      outputMap.put(2, scores);
+      outputMap.put(3, numDetections);
+      this.quantization = quantization;
+      final int[] elements = {
+        batchSize * NUM_DETECTIONS * 4, batchSize * NUM_DETECTIONS, batchSize * NUM_DETECTIONS,
+        batchSize
+      };
+      for (int i = 0; i < quantizedOutputs.length; ++i) {
+        if (i < quantization.length && quantization[i] != null) {
+          quantizedOutputs[i] = ByteBuffer.allocateDirect(elements[i]);
+          outputMap.put(i, quantizedOutputs[i]);
+        }
+      }
+    }
+
+    /** Fills the float arrays from the raw bytes of quantized outputs after a run. */
+    void dequantize() {
+      if (quantizedOutputs[0] != null) {
+        quantizedOutputs[0].rewind();
+        for (final float[][] image : locations) {
+          for (final float[] box : image) {
+            quantization[0].dequantize(quantizedOutputs[0], box);
+          }
+        }
+      }
+      if (quantizedOutputs[1] != null) {
+        quantizedOutputs[1].rewind();
+        for (final float[] image : classes) {
+          quantization[1].dequantize(quantizedOutputs[1], image);
+        }
+      }
+      if (quantizedOutputs[2] != null) {
+        quantizedOutputs[2].rewind();
+        for (final float[] image : scores) {
+          quantization[2].dequantize(quantizedOutputs[2], image);
+        }
+      }
+      if (quantizedOutputs[3] != null) {
+        quantizedOutputs[3].rewind();
+        quantization[3].dequantize(quantizedOutputs[3], numDetections);
+      }
+    }
+  }
+
+  /** Scale and zero point of a uint8 or int8 output tensor. */
+  static final class OutputQuantization {
+    final float scale;
+    final int zeroPoint;
+    final boolean signed;
+
+    OutputQuantization(final float scale, final int zeroPoint, final boolean signed) {
+      this.scale = scale;
+      this.zeroPoint = zeroPoint;
+      this.signed = signed;
+    }
+
+    /** Null for float outputs, which need no dequantization. */
+    static OutputQuantization of(final Tensor output) {
+      final DataType type = output.dataType();
+      if (type != DataType.UINT8 && type != DataType.INT8) {
+        return null;
+      }
+      final Tensor.QuantizationParams params = output.quantizationParams();
+      return new OutputQuantization(
+          params.getScale(), params.getZeroPoint(), type == DataType.INT8);
+    }
+
+    /** Reads {@code values.length} bytes from {@code raw} and writes their real values. */
+    void dequantize(final ByteBuffer raw, final float[] values) {
+      for (int i = 0; i < values.length; ++i) {
+        final byte q = raw.get();
+        values[i] = ((signed ? q : q & 0xFF) - zeroPoint) * scale;
+      }
+    }
   }
 }
@@ -0,0 +1,126 @@
+package org.tensorflow.lite.examples.detection.tracking;
+
+/**
+ * Kalman filter over a box moving at constant velocity.
+ *
+ * <p>The state is the centre, width and height of the box and their rates of change per second.
+ * The four coordinates are filtered independently, each with a position/velocity pair and its 2x2
+ * covariance; that is the block-diagonal form of the full constant-velocity filter and costs a few
+ * multiplications per update. Noise is relative to the box size, so the filter behaves the same in
+ * any coordinate space.
+ */
+final class BoxFilter {
+  // Standard deviation of a measured coordinate, as a fraction of the box size.
+  private static final float MEASUREMENT_STD = 0.05f;
+  // Standard deviation of the acceleration, in box sizes per second squared.
+  private static final float ACCELERATION_STD = 1.0f;
+  // Initial velocity uncertainty, in box sizes per second.
+  private static final float INITIAL_VELOCITY_STD = 1.0f;
+  private static final float MIN_SIZE = 1e-3f;
+
+  private final Axis centerX = new Axis();
+  private final Axis centerY = new Axis();
+  private final Axis width = new Axis();
+  private final Axis height = new Axis();
+
+  BoxFilter(final float left, final float top, final float right, final float bottom) {
+    final float size = size(right - left, bottom - top);
+    final float positionVariance = square(MEASUREMENT_STD * size);
+    final float velocityVariance = square(INITIAL_VELOCITY_STD * size);
+    centerX.reset((left + right) / 2, positionVariance, velocityVariance);
+    centerY.reset((top + bottom) / 2, positionVariance, velocityVariance);
+    width.reset(right - left, positionVariance, velocityVariance);
+    height.reset(bottom - top, positionVariance, velocityVariance);
+  }
+
+  /** Moves the state {@code seconds} ahead, growing its uncertainty. */
+  void predict(final float seconds) {
+    if (seconds <= 0) {
+      return;
+    }
+    final float accelerationVariance = square(ACCELERATION_STD * size(width.x, height.x));
+    centerX.predict(seconds, accelerationVariance);
+    centerY.predict(seconds, accelerationVariance);
+    width.predict(seconds, accelerationVariance);
+    height.predict(seconds, accelerationVariance);
+  }
+
+  /** Corrects the predicted state with a measured box. */
+  void update(final float left, final float top, final float right, final float bottom) {
+    final float measurementVariance = square(MEASUREMENT_STD * size(right - left, bottom - top));
+    centerX.update((left + right) / 2, measurementVariance);
+    centerY.update((top + bottom) / 2, measurementVariance);
+    width.update(right - left, measurementVariance);
+    height.update(bottom - top, measurementVariance);
+  }
+
+  /**
+   * Writes the box expected {@code seconds} after the last predict or update as left, top, right,
+   * bottom into {@code out}, without changing the state.
+   */
+  void extrapolate(final float seconds, final float[] out) {
+    final float cx = centerX.x + centerX.v * seconds;
+    final float cy = centerY.x + centerY.v * seconds;
+    final float w = Math.max(MIN_SIZE, width.x + width.v * seconds);
+    final float h = Math.max(MIN_SIZE, height.x + height.v * seconds);
+    out[0] = cx - w / 2;
+    out[1] = cy - h / 2;
+    out[2] = cx + w / 2;
+    out[3] = cy + h / 2;
+  }
+
+  /** Velocity of the centre, in coordinate units per second, into {@code out[0..1]}. */
+  void velocity(final float[] out) {
+    out[0] = centerX.v;
+    out[1] = centerY.v;
+  }
+
+  private static float size(final float width, final float height) {
+    return Math.max(MIN_SIZE, Math.max(Math.abs(width), Math.abs(height)));
+  }
+
+  private static float square(final float value) {
+    return value * value;
+  }
+
+  /** Position and velocity of one coordinate with their covariance. */
+  private static final class Axis {
+    float x;
+    float v;
+    // Covariance [[pxx, pxv], [pxv, pvv]].
+    float pxx;
+    float pxv;
+    float pvv;
+
+    void reset(final float x, final float positionVariance, final float velocityVariance) {
+      this.x = x;
+      v = 0;
+      pxx = positionVariance;
+      pxv = 0;
+      pvv = velocityVariance;
+    }
+
+    void predict(final float dt, final float accelerationVariance) {
+      x += v * dt;
+      // P = F P F' + Q, F = [[1, dt], [0, 1]], Q the white-noise acceleration model.
+      final float dt2 = dt * dt;
+      pxx += 2 * dt * pxv + dt2 * pvv + accelerationVariance * dt2 * dt2 / 4;
+      pxv += dt * pvv + accelerationVariance * dt2 * dt / 2;
+      pvv += accelerationVariance * dt2;
+    }
+
+    void update(final float z, final float measurementVariance) {
+      final float innovation = z - x;
+      final float s = pxx + measurementVariance;
+      final float kx = pxx / s;
+      final float kv = pxv / s;
+      x += kx * innovation;
+      v += kv * innovation;
+      // P = (I - K H) P, H = [1, 0].
+      final float newPxv = pxv - kx * pxv;
+      pvv -= kv * pxv;
+      pxx -= kx * pxx;
+      pxv = newPxv;
+    }
+  }
+}
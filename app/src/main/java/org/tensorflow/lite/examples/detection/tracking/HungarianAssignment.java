@@ -0,0 +1,101 @@
+package org.tensorflow.lite.examples.detection.tracking;
+
+import java.util.Arrays;
+
+/**
+ * Minimum-cost assignment of rows to columns (Kuhn-Munkres with potentials), O(n^2 m) for n rows
+ * and m columns. Rectangular matrices are fine; the smaller side is matched completely.
+ */
+final class HungarianAssignment {
+  private HungarianAssignment() {}
+
+  /**
+   * @param cost {@code cost[row][column]}, all rows of the same length.
+   * @return the column assigned to each row, or -1 for rows left over when there are more rows
+   *     than columns.
+   */
+  static int[] solve(final float[][] cost) {
+    final int rows = cost.length;
+    final int columns = rows == 0 ? 0 : cost[0].length;
+    final int[] assignment = new int[rows];
+    Arrays.fill(assignment, -1);
+    if (rows == 0 || columns == 0) {
+      return assignment;
+    }
+    if (rows <= columns) {
+      final int[] columnOfRow = solveWide(cost, rows, columns, false);
+      System.arraycopy(columnOfRow, 0, assignment, 0, rows);
+    } else {
+      // Match every column to a row instead.
+      final int[] rowOfColumn = solveWide(cost, columns, rows, true);
+      for (int column = 0; column < columns; ++column) {
+        assignment[rowOfColumn[column]] = column;
+      }
+    }
+    return assignment;
+  }
+
+  /**
+   * Assigns each of {@code n} rows to one of {@code m >= n} columns. With {@code transposed} the
+   * rows are the columns of {@code cost}.
+   */
+  private static int[] solveWide(
+      final float[][] cost, final int n, final int m, final boolean transposed) {
+    // 1-based, index 0 is the virtual start; doubles keep the potentials exact enough.
+    final double[] u = new double[n + 1];
+    final double[] v = new double[m + 1];
+    final int[] rowOfColumn = new int[m + 1];
+    final int[] way = new int[m + 1];
+    final double[] minSlack = new double[m + 1];
+    final boolean[] used = new boolean[m + 1];
+    for (int row = 1; row <= n; ++row) {
+      rowOfColumn[0] = row;
+      int column0 = 0;
+      Arrays.fill(minSlack, Double.POSITIVE_INFINITY);
+      Arrays.fill(used, false);
+      do {
+        used[column0] = true;
+        final int row0 = rowOfColumn[column0];
+        double delta = Double.POSITIVE_INFINITY;
+        int column1 = 0;
+        for (int column = 1; column <= m; ++column) {
+          if (used[column]) {
+            continue;
+          }
+          final float c =
+              transposed ? cost[column - 1][row0 - 1] : cost[row0 - 1][column - 1];
+          final double slack = c - u[row0] - v[column];
+          if (slack < minSlack[column]) {
+            minSlack[column] = slack;
+            way[column] = column0;
+          }
+          if (minSlack[column] < delta) {
+            delta = minSlack[column];
+            column1 = column;
+          }
+        }
+        for (int column = 0; column <= m; ++column) {
+          if (used[column]) {
+            u[rowOfColumn[column]] += delta;
+            v[column] -= delta;
+          } else {
+            minSlack[column] -= delta;
+          }
+        }
+        column0 = column1;
+      } while (rowOfColumn[column0] != 0);
+      do {
+        final int column1 = way[column0];
+        rowOfColumn[column0] = rowOfColumn[column1];
+        column0 = column1;
+      } while (column0 != 0);
+    }
+    final int[] columnOfRow = new int[n];
+    for (int column = 1; column <= m; ++column) {
+      if (rowOfColumn[column] != 0) {
+        columnOfRow[rowOfColumn[column] - 1] = column - 1;
+      }
+    }
+    return columnOfRow;
+  }
+}
@@ -18,26 +18,36 @@ package org.tensorflow.lite.examples.detection.tracking;
 import android.content.Context;
 import android.graphics.Canvas;
 import android.graphics.Color;
-import android.graphics.Matrix;
 import android.graphics.Paint;
 import android.graphics.Paint.Cap;
 import android.graphics.Paint.Join;
 import android.graphics.Paint.Style;
 import android.graphics.RectF;
-import android.text.TextUtils;
-import android.util.Pair;
 import android.util.TypedValue;
 
 import java.util.ArrayList;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.Queue;
+import org.tensorflow.lite.examples.detection.env.Affine;
 import org.tensorflow.lite.examples.detection.env.BorderedText;
-import org.tensorflow.lite.examples.detection.env.ImageUtils;
+import org.tensorflow.lite.examples.detection.env.CoordinateSpaces;
 import org.tensorflow.lite.examples.detection.env.Logger;
+import org.tensorflow.lite.examples.detection.pipeline.TripleBuffer;
 import org.tensorflow.lite.examples.detection.tflite.Classifier.Recognition;
 
-/** A tracker that handles non-max suppression and matches existing objects to new detections. */
+/**
+ * A tracker that matches existing objects to new detections and draws them.
+ *
+ * <p>Full-frame objects, pills in the mouth crop and pills in the hand crop are tracked separately.
+ * Full-frame objects are tracked in detection coordinates and hand pills in those of the fixed hand
+ * crop. The mouth crop follows the mouth, so its pills are mapped to frame coordinates first and
+ * are tracked where they are in the frame, not where they are in the crop. Boxes are drawn where the tracks expect the
+ * objects at drawing time, so they move smoothly between inference frames. Boxes are mapped to the
+ * canvas through the maps of a {@link CoordinateSpaces}, composed once per canvas size.
+ *
+ * <p>The trackers belong to the inference side. After every update it publishes a {@link
+ * TrackSnapshot} through a {@link TripleBuffer}, and {@link #draw} renders the latest snapshot on
+ * the UI thread without taking the tracker's lock or allocating.
+ */
 public class MultiBoxTracker {
   private static final float TEXT_SIZE_DIP = 18;
   private static final float MIN_SIZE = 16.0f;
@@ -58,217 +68,244 @@ public class MultiBoxTracker {
           Color.parseColor("#AA33AA"),
           Color.parseColor("#0D0068")
   };
-  final List<Pair<Float, RectF>> screenRects = new LinkedList<Pair<Float, RectF>>();
   private final Logger logger = new Logger();
-  private final Queue<Integer> availableColors = new LinkedList<Integer>();
   private final Paint boxPaint = new Paint();
-  private final Paint paint = new Paint();
+  private final Paint debugPaint = new Paint();
   private final float textSizePx;
   private final BorderedText borderedText;
-  private Matrix frameToCanvasMatrix;
-  private int frameWidth;
-  private int frameHeight;
-  private int sensorOrientation;
-
-  private List<RectF> face_hands_medbox_rect = new ArrayList<>();
-  private List<RectF> tablet_mouth_rect = new ArrayList<>();
-  private List<RectF> tablet_hand_rect = new ArrayList<>();
-
+  private volatile CoordinateSpaces spaces;
+  // The hand crop, left, top, width and height in frame coordinates.
+  private final float[] handRegion = new float[4];
+
+  // Inference side, guarded by this.
+  private final ObjectTracker objectTracker = new ObjectTracker(COLORS);
+  private final ObjectTracker mouthPillTracker = new ObjectTracker(COLORS);
+  private final ObjectTracker handPillTracker = new ObjectTracker(COLORS);
+  private final float[] roi = new float[4];
+  private final float[] mouthToFrame = new float[Affine.SIZE];
+  private final float[] mouthBox = new float[4];
+  private final RectF mouthPillLocation = new RectF();
+  private final TripleBuffer<TrackSnapshot> snapshots =
+      new TripleBuffer<>(new TrackSnapshot(), new TrackSnapshot(), new TrackSnapshot());
+
+  // Drawing side, only touched on the UI thread. Maps to the canvas are composed when its size or
+  // the configuration changes.
+  private CoordinateSpaces canvasSpaces;
+  private int canvasWidth = -1;
+  private int canvasHeight = -1;
+  private final float[] frameToCanvas = new float[Affine.SIZE];
+  private final float[] detectionToCanvas = new float[Affine.SIZE];
+  private final float[] handToCanvas = new float[Affine.SIZE];
+  private final float[] box = new float[4];
+  private final RectF canvasRect = new RectF();
 
   public MultiBoxTracker(final Context context) {
-    for (final int color : COLORS) {
-      availableColors.add(color);
-    }
-
     boxPaint.setColor(Color.RED);
     boxPaint.setStyle(Style.STROKE);
-    boxPaint.setStrokeWidth(10.0f);
+    boxPaint.setStrokeWidth(8.0f);
     boxPaint.setStrokeCap(Cap.ROUND);
     boxPaint.setStrokeJoin(Join.ROUND);
     boxPaint.setStrokeMiter(100);
 
+    debugPaint.setColor(Color.RED);
+    debugPaint.setAlpha(200);
+    debugPaint.setStyle(Style.STROKE);
+
     textSizePx =
             TypedValue.applyDimension(
                     TypedValue.COMPLEX_UNIT_DIP, TEXT_SIZE_DIP, context.getResources().getDisplayMetrics());
     borderedText = new BorderedText(textSizePx);
   }
 
-  public synchronized void setFrameConfiguration(
-          final int width, final int height, final int sensorOrientation) {
-    frameWidth = width;
-    frameHeight = height;
-    this.sensorOrientation = sensorOrientation;
+  /** Sets the coordinate spaces of the preview. Call on the UI thread. */
+  public void setFrameConfiguration(final CoordinateSpaces spaces) {
+    this.spaces = spaces;
   }
 
-  public synchronized void drawDebug(final Canvas canvas) {
-    final Paint textPaint = new Paint();
-    textPaint.setColor(Color.WHITE);
-    textPaint.setTextSize(60.0f);
-
-    final Paint boxPaint = new Paint();
-    boxPaint.setColor(Color.RED);
-    boxPaint.setAlpha(200);
-    boxPaint.setStyle(Style.STROKE);
-
-    for (final Pair<Float, RectF> detection : screenRects) {
-      final RectF rect = detection.second;
-      canvas.drawRect(rect, boxPaint);
-      canvas.drawText("" + detection.first, rect.left, rect.top, textPaint);
-      borderedText.drawText(canvas, rect.centerX(), rect.centerY(), "" + detection.first);
-    }
+  /** Sets the frame region the hand crop is sampled from, in frame coordinates. UI thread. */
+  public void setHandRegion(
+      final float left, final float top, final float width, final float height) {
+    handRegion[0] = left;
+    handRegion[1] = top;
+    handRegion[2] = width;
+    handRegion[3] = height;
+    canvasSpaces = null;
   }
 
-  public synchronized void trackResults(final List<Recognition> results, final List<Recognition> results_mouth, final List<Recognition> results_hand, final long timestamp) {
-    logger.i("Processing %d results from %d", results.size(), timestamp);
-    processResults(results, results_mouth, results_hand);
+  /** Outlines the full-frame tracks where they were last detected, before extrapolation. */
+  public void drawDebug(final Canvas canvas) {
+    if (!prepareCanvas(canvas)) {
+      return;
+    }
+    final TrackSnapshot.Layer objects = snapshots.latest().objects;
+    for (int i = 0; i < objects.size(); ++i) {
+      objects.getUpdated(i, box);
+      drawBox(canvas, detectionToCanvas, debugPaint);
+    }
   }
 
-  private Matrix getFrameToCanvasMatrix() {
-    return frameToCanvasMatrix;
+  /**
+   * Updates the tracks with the detections of one frame and publishes them for drawing. A null
+   * list means that detector did not run on this frame, and leaves its tracks as they are.
+   *
+   * @param mouthLocation the mouth detection, in full-frame detection coordinates, whose crop
+   *     {@code results_mouth} were found in; null if the mouth crop was not detected, in which
+   *     case no mouth pill can be placed and their tracks miss.
+   * @param timestamp the frame counter, for logging.
+   * @param takenNanos when the frame was taken, on the {@link System#nanoTime} clock. The tracks
+   *     are dated to it, so drawing and predictions do not lag by the inference latency.
+   */
+  public synchronized void trackResults(
+      final List<Recognition> results,
+      final List<Recognition> results_mouth,
+      final List<Recognition> results_hand,
+      final RectF mouthLocation,
+      final long timestamp,
+      final long takenNanos) {
+    logger.i("Processing %d results from %d", results != null ? results.size() : 0, timestamp);
+    processResults(results, results_mouth, results_hand, mouthLocation, takenNanos);
+    snapshots.getBack().fill(objectTracker, mouthPillTracker, handPillTracker);
+    snapshots.publish();
   }
 
-  public synchronized void draw(final Canvas canvas, RectF current_mouth_pos_on_screen) {
-    final boolean rotated = sensorOrientation % 180 == -90;
-    final float multiplier =
-            Math.min(
-                    canvas.getHeight() / (float) (rotated ? frameWidth : frameHeight),
-                    canvas.getWidth() / (float) (rotated ? frameHeight : frameWidth));
-    frameToCanvasMatrix =
-            ImageUtils.getTransformationMatrix(
-                    frameWidth,
-                    frameHeight,
-                    (int) (multiplier * (rotated ? frameHeight : frameWidth)),
-                    (int) (multiplier * (rotated ? frameWidth : frameHeight)),
-                    sensorOrientation,
-                    false);
-
-    draw_face_rect(canvas, face_hands_medbox_rect);
-    if (current_mouth_pos_on_screen != null){
-      current_mouth_pos_on_screen = single_mouth_rect(canvas, current_mouth_pos_on_screen);
-      draw_detected_parts(tablet_mouth_rect, canvas, current_mouth_pos_on_screen, "mouth_pill");
+  /**
+   * Predicts the crop region of the full-frame object of class {@code classId} at {@code nanos}, in
+   * detection coordinates. See {@link RoiPredictor#predict}.
+   */
+  public synchronized boolean predictRoi(
+      final RoiPredictor predictor, final int classId, final long nanos, final RectF out) {
+    if (!predictor.predict(objectTracker.getTracks(), classId, nanos, roi)) {
+      return false;
     }
-
-    final RectF hand = new RectF(60, 370, 180, 470);
-    RectF hand2 = new RectF(60, 370, 180, 470);
-   // drawsub_areas(canvas, hand);
-//    hand2 = current_mouth_pos_on_screen;
-
-    draw_detected_parts(tablet_hand_rect, canvas, hand2, "hand_pill");
-
-    final RectF medbox = new RectF(60, 50, 210, 350);
-    final RectF medbox2 = new RectF(60, 50, 210, 350);
-   // drawsub_areas(canvas, medbox);
-//    draw_detected_parts(tablet_hand_rect, canvas, medbox2, "medbox");
+    out.left = roi[0];
+    out.top = roi[1];
+    out.right = roi[2];
+    out.bottom = roi[3];
+    return true;
   }
 
-  private void draw_face_rect(Canvas canvas, List<RectF> rects) {
-    if (rects != null) {
-      for (final RectF rect : rects) {
-        float y_min = (300 - rect.top) * (640 / 300f);
-        float x_min = rect.left * (480 / 300f);
-        float y_max = (300 - rect.bottom) * (640 / 300f);
-        float x_max = rect.right * (480 / 300f);
-        RectF trackedPosface = new RectF(y_min, x_min, y_max, x_max);//y_min, x_min, y_max, x_max  右上角为原点
-        getFrameToCanvasMatrix().mapRect(trackedPosface);
-//        trackedPosface = boundary_check(trackedPosface);
-//        System.out.println("********" + rect);
-        boxPaint.setColor(Color.BLUE);
-        boxPaint.setStrokeWidth(8.0f);
-        canvas.drawRoundRect(trackedPosface, 4, 4, boxPaint);
-//        final String labelString = !TextUtils.isEmpty(recognition.title) ? String.format("%s %.2f", recognition.title, (100 * recognition.detectionConfidence)) : String.format("%.2f", (100 * recognition.detectionConfidence));
-//        borderedText.drawText(canvas, trackedPos.left + cornerSize, trackedPos.top, "1" + "%", boxPaint);
-      }
+  /**
+   * Draws the latest published tracks where they are expected now: full-frame objects in their
+   * colors, and the pills in red within the crops they were found in. Call on the UI thread.
+   */
+  public void draw(final Canvas canvas) {
+    if (!prepareCanvas(canvas)) {
+      return;
     }
+    final TrackSnapshot snapshot = snapshots.latest();
+    final long nowNanos = System.nanoTime();
+    draw_layer(canvas, snapshot.objects, true, detectionToCanvas, nowNanos);
+    draw_layer(canvas, snapshot.mouthPills, false, frameToCanvas, nowNanos);
+    draw_layer(canvas, snapshot.handPills, false, handToCanvas, nowNanos);
   }
 
-  private void drawsub_areas(Canvas canvas, RectF rect) {
-    boxPaint.setColor(Color.RED);
-    boxPaint.setStyle(Style.STROKE);
-    boxPaint.setStrokeWidth(20.0f);
-    getFrameToCanvasMatrix().mapRect(rect);
-//    rect = boundary_check(rect);
-    float cornerSize = Math.min(rect.width(), rect.height()) / 8.0f;
-    canvas.drawRoundRect(rect, cornerSize, cornerSize, boxPaint);
+  /**
+   * Composes the maps to {@code canvas} if its size or the configuration changed.
+   *
+   * @return false if there is no configuration to draw in yet.
+   */
+  private boolean prepareCanvas(final Canvas canvas) {
+    final CoordinateSpaces spaces = this.spaces;
+    if (spaces == null) {
+      return false;
+    }
+    if (spaces != canvasSpaces
+        || canvas.getWidth() != canvasWidth
+        || canvas.getHeight() != canvasHeight) {
+      canvasSpaces = spaces;
+      canvasWidth = canvas.getWidth();
+      canvasHeight = canvas.getHeight();
+      spaces.getFrameToCanvas(canvasWidth, canvasHeight, frameToCanvas);
+      spaces.getDetectionToFrame(detectionToCanvas);
+      Affine.concat(detectionToCanvas, frameToCanvas, detectionToCanvas);
+      spaces.regionDetectionToFrame(
+          handRegion[0], handRegion[1], handRegion[2], handRegion[3], handToCanvas);
+      Affine.concat(handToCanvas, frameToCanvas, handToCanvas);
+    }
+    return true;
   }
 
-  private void draw_detected_parts(List<RectF> rects, Canvas canvas, RectF rect_screen, String mode) {
-    if (rects != null) {
-      float y_min = 0f;
-      float y_max = 0f;
-      float x_min = 0f;
-      float x_max = 0f;
-      for (final RectF rect : rects) {
-        if(mode.equals("hand_pill") || mode.equals("medbox")) {
-          y_min = (300 - rect.top) * ((rect_screen.right - rect_screen.left) / 300f) + rect_screen.left;
-          y_max = (300 - rect.bottom) * ((rect_screen.right - rect_screen.left) / 300f) + rect_screen.left;
-          x_min = rect.left * ((rect_screen.bottom - rect_screen.top) / 300f) + rect_screen.top;
-          x_max = rect.right * ((rect_screen.bottom - rect_screen.top) / 300f) + rect_screen.top;
-        }
-        if(mode.equals("mouth_pill")){
-          y_min = (rect.top) * ((rect_screen.right - rect_screen.left) / 300f) + rect_screen.left;
-          y_max = (rect.bottom) * ((rect_screen.right - rect_screen.left) / 300f) + rect_screen.left;
-          x_min = (300 - rect.left) * ((rect_screen.bottom - rect_screen.top) / 300f) + rect_screen.top;
-          x_max = (300 - rect.right) * ((rect_screen.bottom - rect_screen.top) / 300f) + rect_screen.top;
-        }
-
-//        System.out.println("********" + (rect_screen.right - rect_screen.left) / 300f + "********" + 150 / 300f);
-        RectF trackedPosPH = new RectF(y_min, x_min, y_max, x_max);//y_min, x_min, y_max, x_max  右上角为原点
-        getFrameToCanvasMatrix().mapRect(trackedPosPH);
-//        trackedPosPH = boundary_check(trackedPosPH);
-        boxPaint.setColor(Color.RED);
-        boxPaint.setStrokeWidth(8.0f);
-        canvas.drawRoundRect(trackedPosPH, 4, 4, boxPaint);
-//        final String labelString = !TextUtils.isEmpty(recognition.title) ? String.format("%s %.2f", recognition.title, (100 * recognition.detectionConfidence)) : String.format("%.2f", (100 * recognition.detectionConfidence));
-//        borderedText.drawText(canvas, trackedPos.left + cornerSize, trackedPos.top, "1" + "%", boxPaint);
-      }
+  /**
+   * Draws the tracks of {@code layer} expected at {@code nanos}, mapped to the canvas by {@code
+   * toCanvas}, in their own colors or in red.
+   */
+  private void draw_layer(
+      final Canvas canvas,
+      final TrackSnapshot.Layer layer,
+      final boolean trackColors,
+      final float[] toCanvas,
+      final long nanos) {
+    for (int i = 0; i < layer.size(); ++i) {
+      layer.locate(i, nanos, box);
+      boxPaint.setColor(trackColors ? layer.getColor(i) : Color.RED);
+      drawBox(canvas, toCanvas, boxPaint);
     }
   }
-  
-  private RectF single_mouth_rect(Canvas canvas, RectF rect) {
-    float x_min = rect.left * (480 / 300f);
-    float y_min =  (300 - rect.top) * (640 / 300f);
-    float x_max =  rect.right * (480 / 300f);
-    float y_max =  (300 - rect.bottom) * (640 / 300f);
-    RectF trackedPosface = new RectF(y_min, x_min, y_max, x_max);//y_min, x_min, y_max, x_max  右上角为原点
-//    System.out.println("********########" + trackedPosface);
-    getFrameToCanvasMatrix().mapRect(trackedPosface);
-//    System.out.println("********" + trackedPosface);
-//    trackedPosface = boundary_check(trackedPosface);
-    System.out.println("********" + trackedPosface);
-//    boxPaint.setColor(Color.GREEN);
-//    boxPaint.setStrokeWidth(8.0f);
-//    canvas.drawRoundRect(trackedPosface, 4, 4, boxPaint);
-    return new RectF(y_min, x_min, y_max, x_max);
-  }
 
-  private RectF boundary_check(RectF rect){
-    float x_min = Math.max(0f, rect.left);
-    float y_min = Math.max(0f, rect.top);
-    float x_max = Math.min(479f, rect.right);
-    float y_max = Math.min(639f, rect.bottom);
-    return new RectF(x_min, y_min, x_max, y_max);
+  /** Draws {@link #box}, mapped to the canvas by {@code toCanvas}. */
+  private void drawBox(final Canvas canvas, final float[] toCanvas, final Paint paint) {
+    Affine.mapRects(toCanvas, box, 0, 1);
+    canvasRect.set(box[0], box[1], box[2], box[3]);
+    canvas.drawRoundRect(canvasRect, 4, 4, paint);
   }
 
-  private void processResults(final List<Recognition> results, final List<Recognition> results_mouth, final List<Recognition> results_hand) {
-    face_hands_medbox_rect.clear();
-    tablet_mouth_rect.clear();
-    tablet_hand_rect.clear();
-    screenRects.clear();
-
-    for (final Recognition result : results) {
-//        System.out.println("********" + result.getLocation());
-        face_hands_medbox_rect.add(result.getLocation());
+  private void processResults(
+      final List<Recognition> results,
+      final List<Recognition> results_mouth,
+      final List<Recognition> results_hand,
+      final RectF mouthLocation,
+      final long nanos) {
+    if (results != null) {
+      objectTracker.update(results, nanos);
     }
-
-    for (final Recognition result : results_mouth) {
-//        System.out.println("********" + result.getLocation());
-      tablet_mouth_rect.add(result.getLocation());
+    if (results_mouth != null) {
+      mouthPillTracker.updateDetections(mouthPillsToFrame(results_mouth, mouthLocation), nanos);
     }
-
-    for (final Recognition result : results_hand) {
-//        System.out.println("********" + result.getLocation());
-      tablet_hand_rect.add(result.getLocation());
+    if (results_hand != null) {
+      handPillTracker.update(results_hand, nanos);
     }
+  }
 
+  /**
+   * Maps the pills found in the mouth crop at {@code mouthLocation}, a full-frame detection, to
+   * frame coordinates through the map the crop was sampled with. Empty without a crop to map from.
+   */
+  private List<ObjectTracker.Detection> mouthPillsToFrame(
+      final List<Recognition> results_mouth, final RectF mouthLocation) {
+    final List<ObjectTracker.Detection> detections = new ArrayList<>(results_mouth.size());
+    final CoordinateSpaces spaces = this.spaces;
+    if (spaces == null || mouthLocation == null) {
+      return detections;
+    }
+    mouthBox[0] = mouthLocation.left;
+    mouthBox[1] = mouthLocation.top;
+    mouthBox[2] = mouthLocation.right;
+    mouthBox[3] = mouthLocation.bottom;
+    spaces.detectionsToFrame(mouthBox, 0, 1);
+    spaces.regionDetectionToFrame(
+        mouthBox[0], mouthBox[1], mouthBox[2] - mouthBox[0], mouthBox[3] - mouthBox[1],
+        mouthToFrame);
+    for (int i = 0; i < results_mouth.size(); ++i) {
+      final Recognition recognition = results_mouth.get(i);
+      final RectF location = mouthPillLocation;
+      if (!recognition.getLocation(location)) {
+        continue;
+      }
+      mouthBox[0] = location.left;
+      mouthBox[1] = location.top;
+      mouthBox[2] = location.right;
+      mouthBox[3] = location.bottom;
+      Affine.mapRects(mouthToFrame, mouthBox, 0, 1);
+      detections.add(
+          new ObjectTracker.Detection(
+              recognition.getTitle(),
+              recognition.getClassId(),
+              recognition.getConfidence(),
+              mouthBox[0],
+              mouthBox[1],
+              mouthBox[2],
+              mouthBox[3]));
+    }
+    return detections;
   }
 }
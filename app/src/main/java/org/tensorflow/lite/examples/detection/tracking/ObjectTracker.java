@@ -0,0 +1,353 @@
+package org.tensorflow.lite.examples.detection.tracking;
+
+import android.graphics.RectF;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import org.tensorflow.lite.examples.detection.tflite.Classifier.Recognition;
+import org.tensorflow.lite.examples.detection.tflite.LabelMap;
+
+/**
+ * Follows detected objects across inference frames.
+ *
+ * <p>Every {@link #update} predicts each track to the time of the new detections, then associates
+ * tracks and detections of the same class by maximum total IoU (Hungarian assignment on {@code 1 -
+ * IoU}, pairs below {@link #MIN_IOU} are not matched). A matched track corrects its Kalman filter
+ * with the detection; an unmatched detection starts a new track; a track that keeps going
+ * unmatched is dropped after {@link #MAX_MISSES} updates, or after one if it was never confirmed.
+ * Each track keeps its id and color for its whole life, and its location can be extrapolated to
+ * any time, so boxes can be drawn between inference frames.
+ *
+ * <p>Coordinates are whatever the detections use. Boxes may be mirrored, e.g. left greater than
+ * right as the detector writes them; they are filtered as ordinary boxes and reported in the
+ * orientation of the last matched detection. Not thread-safe.
+ */
+public final class ObjectTracker {
+  /** Overlap a track and a detection need to be associated. */
+  public static final float MIN_IOU = 0.3f;
+  /** Updates a confirmed track survives without a matching detection. */
+  public static final int MAX_MISSES = 3;
+  /** Matched detections before a track is confirmed. */
+  public static final int MIN_HITS = 2;
+  // Extrapolating further only adds error; a missed track stays where it was last expected.
+  static final long MAX_EXTRAPOLATION_NANOS = 500_000_000L;
+  // Cost of a pair that must not be matched; above any 1 - IoU.
+  private static final float NO_MATCH = 2f;
+
+  /** A detection to track: its title, confidence and box as the detector wrote it. */
+  static final class Detection {
+    final String title;
+    final int classId;
+    final float confidence;
+    // Left <= right and top <= bottom.
+    final float[] box = new float[4];
+    final boolean mirroredX;
+    final boolean mirroredY;
+
+    Detection(
+        final String title,
+        final float confidence,
+        final float left,
+        final float top,
+        final float right,
+        final float bottom) {
+      this(title, LabelMap.classIdOf(title), confidence, left, top, right, bottom);
+    }
+
+    Detection(
+        final String title,
+        final int classId,
+        final float confidence,
+        final float left,
+        final float top,
+        final float right,
+        final float bottom) {
+      this.title = title;
+      this.classId = classId;
+      this.confidence = confidence;
+      box[0] = Math.min(left, right);
+      box[1] = Math.min(top, bottom);
+      box[2] = Math.max(left, right);
+      box[3] = Math.max(top, bottom);
+      mirroredX = left > right;
+      mirroredY = top > bottom;
+    }
+  }
+
+  /** One tracked object. */
+  public static final class Track {
+    private final int id;
+    private final int color;
+    // False for a color shared by id because the pool was empty.
+    private final boolean pooledColor;
+    private final BoxFilter filter;
+    private final float[] box = new float[4];
+    private final String title;
+    private final int classId;
+    private float confidence;
+    private boolean mirroredX;
+    private boolean mirroredY;
+    private int hits = 1;
+    private int misses;
+    private long updateNanos;
+
+    private Track(
+        final int id,
+        final int color,
+        final boolean pooledColor,
+        final Detection detection,
+        final long nanos) {
+      this.id = id;
+      this.color = color;
+      this.pooledColor = pooledColor;
+      final float[] box = detection.box;
+      filter = new BoxFilter(box[0], box[1], box[2], box[3]);
+      title = detection.title;
+      classId = detection.classId;
+      updateNanos = nanos;
+      matched(detection);
+    }
+
+    private void matched(final Detection detection) {
+      confidence = detection.confidence;
+      mirroredX = detection.mirroredX;
+      mirroredY = detection.mirroredY;
+    }
+
+    public int getId() {
+      return id;
+    }
+
+    public int getColor() {
+      return color;
+    }
+
+    public String getTitle() {
+      return title;
+    }
+
+    /** {@link LabelMap} class id of the tracked object. */
+    public int getClassId() {
+      return classId;
+    }
+
+    /** Whether {@code detection} is of this track's class; titles decide between unknown ones. */
+    boolean isSameClass(final Detection detection) {
+      return classId == detection.classId
+          && (classId != LabelMap.UNKNOWN || title.equals(detection.title));
+    }
+
+    /** Confidence of the last matched detection. */
+    public float getConfidence() {
+      return confidence;
+    }
+
+    /** Consecutive updates without a matching detection. */
+    public int getMisses() {
+      return misses;
+    }
+
+    public boolean isConfirmed() {
+      return hits >= MIN_HITS;
+    }
+
+    /** Confirmed, or just detected: a box worth drawing. */
+    public boolean isVisible() {
+      return isConfirmed() || misses == 0;
+    }
+
+    /** Time of the last update, from which the location is extrapolated. */
+    long getUpdateNanos() {
+      return updateNanos;
+    }
+
+    /** Writes the expected location at {@code nanos} as left, top, right, bottom. */
+    public void getLocation(final long nanos, final float[] out) {
+      final long ahead = Math.max(0, Math.min(MAX_EXTRAPOLATION_NANOS, nanos - updateNanos));
+      filter.extrapolate(ahead / 1e9f, out);
+      if (mirroredX) {
+        swap(out, 0, 2);
+      }
+      if (mirroredY) {
+        swap(out, 1, 3);
+      }
+    }
+
+    /** Expected location at {@code nanos}. */
+    public void getLocation(final long nanos, final RectF out) {
+      getLocation(nanos, box);
+      out.left = box[0];
+      out.top = box[1];
+      out.right = box[2];
+      out.bottom = box[3];
+    }
+
+    /** Centre velocity in coordinate units per second, into {@code out[0..1]}. */
+    public void getVelocity(final float[] out) {
+      filter.velocity(out);
+    }
+
+    @Override
+    public String toString() {
+      return "#" + id + " " + title + (isConfirmed() ? "" : " (tentative)");
+    }
+  }
+
+  private final List<Track> tracks = new ArrayList<>();
+  private final List<Track> unmodifiableTracks = Collections.unmodifiableList(tracks);
+  private final Queue<Integer> availableColors = new ArrayDeque<>();
+  private final int[] colors;
+  private final float[] box = new float[4];
+  private final RectF location = new RectF();
+  private int nextId = 1;
+
+  /**
+   * @param colors handed to tracks in turn and taken back when they are dropped. If more tracks
+   *     are alive than there are colors, the extra ones share colors by id.
+   */
+  public ObjectTracker(final int[] colors) {
+    this.colors = colors.clone();
+    for (final int color : colors) {
+      availableColors.add(color);
+    }
+  }
+
+  /**
+   * Associates the detections of one inference frame with the tracks.
+   *
+   * @param detections detections to track; those without a location are ignored. Not retained.
+   * @param nanos time of the frame, on the clock later passed to {@link Track#getLocation}.
+   */
+  public void update(final List<Recognition> detections, final long nanos) {
+    final List<Detection> located = new ArrayList<>(detections.size());
+    for (final Recognition recognition : detections) {
+      if (recognition.getLocation(location)) {
+        located.add(
+            new Detection(
+                recognition.getTitle(),
+                recognition.getClassId(),
+                recognition.getConfidence(),
+                location.left,
+                location.top,
+                location.right,
+                location.bottom));
+      }
+    }
+    updateDetections(located, nanos);
+  }
+
+  void updateDetections(final List<Detection> detections, final long nanos) {
+    final float[][] cost = new float[tracks.size()][detections.size()];
+    for (int t = 0; t < tracks.size(); ++t) {
+      final Track track = tracks.get(t);
+      track.filter.predict((nanos - track.updateNanos) / 1e9f);
+      track.updateNanos = nanos;
+      track.filter.extrapolate(0, box);
+      for (int d = 0; d < detections.size(); ++d) {
+        final Detection detection = detections.get(d);
+        final float iou = track.isSameClass(detection) ? iou(box, detection.box) : 0f;
+        cost[t][d] = iou >= MIN_IOU ? 1f - iou : NO_MATCH;
+      }
+    }
+
+    final int[] assignment = HungarianAssignment.solve(cost);
+    final boolean[] matched = new boolean[detections.size()];
+    for (int t = 0; t < tracks.size(); ++t) {
+      final Track track = tracks.get(t);
+      final int d = assignment[t];
+      if (d >= 0 && cost[t][d] < NO_MATCH) {
+        matched[d] = true;
+        final Detection detection = detections.get(d);
+        track.filter.update(detection.box[0], detection.box[1], detection.box[2], detection.box[3]);
+        track.matched(detection);
+        ++track.hits;
+        track.misses = 0;
+      } else {
+        ++track.misses;
+      }
+    }
+
+    for (final Iterator<Track> it = tracks.iterator(); it.hasNext(); ) {
+      final Track track = it.next();
+      if (track.misses > MAX_MISSES || (track.misses > 0 && !track.isConfirmed())) {
+        it.remove();
+        releaseColor(track);
+      }
+    }
+
+    for (int d = 0; d < detections.size(); ++d) {
+      if (!matched[d]) {
+        final int id = nextId++;
+        final Integer color = availableColors.poll();
+        tracks.add(
+            color != null
+                ? new Track(id, color, true, detections.get(d), nanos)
+                : new Track(id, colors[id % colors.length], false, detections.get(d), nanos));
+      }
+    }
+  }
+
+  /** Live tracks, oldest first. Valid until the next {@link #update} or {@link #clear()}. */
+  public List<Track> getTracks() {
+    return unmodifiableTracks;
+  }
+
+  /** Drops every track. */
+  public void clear() {
+    for (final Track track : tracks) {
+      releaseColor(track);
+    }
+    tracks.clear();
+  }
+
+  private void releaseColor(final Track track) {
+    if (track.pooledColor) {
+      availableColors.add(track.color);
+    }
+  }
+
+  /** IoU of two boxes with left <= right and top <= bottom, as left, top, right, bottom. */
+  static float iou(final float[] a, final float[] b) {
+    final float overlapWidth = Math.min(a[2], b[2]) - Math.max(a[0], b[0]);
+    final float overlapHeight = Math.min(a[3], b[3]) - Math.max(a[1], b[1]);
+    if (overlapWidth <= 0 || overlapHeight <= 0) {
+      return 0f;
+    }
+    final float overlap = overlapWidth * overlapHeight;
+    final float union = (a[2] - a[0]) * (a[3] - a[1]) + (b[2] - b[0]) * (b[3] - b[1]) - overlap;
+    return union <= 0 ? 0f : overlap / union;
+  }
+
+  /**
+   * IoU of two boxes as left, top, right, bottom whose sides may come in either order, as in the
+   * boxes the detector reports mirrored on x. The arrays are left as they are.
+   */
+  public static float unorderedIou(final float[] a, final float[] b) {
+    final float aLeft = Math.min(a[0], a[2]);
+    final float aRight = Math.max(a[0], a[2]);
+    final float aTop = Math.min(a[1], a[3]);
+    final float aBottom = Math.max(a[1], a[3]);
+    final float bLeft = Math.min(b[0], b[2]);
+    final float bRight = Math.max(b[0], b[2]);
+    final float bTop = Math.min(b[1], b[3]);
+    final float bBottom = Math.max(b[1], b[3]);
+    final float overlapWidth = Math.min(aRight, bRight) - Math.max(aLeft, bLeft);
+    final float overlapHeight = Math.min(aBottom, bBottom) - Math.max(aTop, bTop);
+    if (overlapWidth <= 0 || overlapHeight <= 0) {
+      return 0f;
+    }
+    final float overlap = overlapWidth * overlapHeight;
+    final float union =
+        (aRight - aLeft) * (aBottom - aTop) + (bRight - bLeft) * (bBottom - bTop) - overlap;
+    return union <= 0 ? 0f : overlap / union;
+  }
+
+  private static void swap(final float[] values, final int i, final int j) {
+    final float value = values[i];
+    values[i] = values[j];
+    values[j] = value;
+  }
+}
@@ -0,0 +1,80 @@
+package org.tensorflow.lite.examples.detection.tracking;
+
+import java.util.List;
+
+/**
+ * Predicts where to crop for a tracked object on a frame that is not run through the full-frame
+ * detector.
+ *
+ * <p>The region is the object's track extrapolated to the frame time, widened by a margin for the
+ * size error and by the distance its motion covers in {@link #LOOKAHEAD_SECONDS}, and clipped to
+ * the frame. Coordinates and orientation are those of the tracked detections.
+ */
+public final class RoiPredictor {
+  /** Margin added on every side, as a fraction of the object's size. */
+  static final float MARGIN = 0.25f;
+  /** Motion the region allows for on top of the extrapolation, in seconds. */
+  static final float LOOKAHEAD_SECONDS = 0.1f;
+  // Regions smaller than this after clipping are not worth a crop.
+  private static final float MIN_SIZE = 8f;
+
+  private final float width;
+  private final float height;
+  private final float[] box = new float[4];
+  private final float[] velocity = new float[2];
+
+  /**
+   * @param width width of the frame the regions are clipped to.
+   * @param height height of the frame the regions are clipped to.
+   */
+  public RoiPredictor(final float width, final float height) {
+    this.width = width;
+    this.height = height;
+  }
+
+  /**
+   * Writes the region for the most confident visible track of class {@code classId} at {@code
+   * nanos} into {@code out} as left, top, right, bottom.
+   *
+   * @return false if there is no such track, or its region falls outside the frame.
+   */
+  public boolean predict(
+      final List<ObjectTracker.Track> tracks,
+      final int classId,
+      final long nanos,
+      final float[] out) {
+    ObjectTracker.Track best = null;
+    for (final ObjectTracker.Track track : tracks) {
+      if (track.isVisible()
+          && track.getClassId() == classId
+          && (best == null || track.getConfidence() > best.getConfidence())) {
+        best = track;
+      }
+    }
+    if (best == null) {
+      return false;
+    }
+    best.getLocation(nanos, box);
+    best.getVelocity(velocity);
+    final boolean mirroredX = box[0] > box[2];
+    final boolean mirroredY = box[1] > box[3];
+    final float left = Math.min(box[0], box[2]);
+    final float top = Math.min(box[1], box[3]);
+    final float right = Math.max(box[0], box[2]);
+    final float bottom = Math.max(box[1], box[3]);
+    final float marginX = MARGIN * (right - left) + Math.abs(velocity[0]) * LOOKAHEAD_SECONDS;
+    final float marginY = MARGIN * (bottom - top) + Math.abs(velocity[1]) * LOOKAHEAD_SECONDS;
+    final float roiLeft = Math.max(0f, left - marginX);
+    final float roiTop = Math.max(0f, top - marginY);
+    final float roiRight = Math.min(width, right + marginX);
+    final float roiBottom = Math.min(height, bottom + marginY);
+    if (roiRight - roiLeft < MIN_SIZE || roiBottom - roiTop < MIN_SIZE) {
+      return false;
+    }
+    out[0] = mirroredX ? roiRight : roiLeft;
+    out[1] = mirroredY ? roiBottom : roiTop;
+    out[2] = mirroredX ? roiLeft : roiRight;
+    out[3] = mirroredY ? roiTop : roiBottom;
+    return true;
+  }
+}
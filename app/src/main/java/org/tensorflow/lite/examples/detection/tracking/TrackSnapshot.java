@@ -0,0 +1,103 @@
+package org.tensorflow.lite.examples.detection.tracking;
+
+import java.util.List;
+
+/**
+ * What the overlay draws after one tracker update: the visible tracks of the full-frame, mouth pill
+ * and hand pill trackers, each in the coordinates it is tracked in.
+ *
+ * <p>Each track is stored as its box at the update and the box it is expected at {@link
+ * ObjectTracker#MAX_EXTRAPOLATION_NANOS} later. The filters move boxes at constant velocity, so
+ * the box at any time in between is interpolated without touching the tracker, the same box
+ * {@link ObjectTracker.Track#getLocation} gives.
+ *
+ * <p>Filled on the inference thread and read on the drawing thread, never both at once; see
+ * {@link MultiBoxTracker}. Arrays grow with the number of tracks and are reused.
+ */
+final class TrackSnapshot {
+  final Layer objects = new Layer();
+  final Layer mouthPills = new Layer();
+  final Layer handPills = new Layer();
+
+  /** Records the visible tracks of the trackers. */
+  void fill(
+      final ObjectTracker objectTracker,
+      final ObjectTracker mouthPillTracker,
+      final ObjectTracker handPillTracker) {
+    objects.fill(objectTracker);
+    mouthPills.fill(mouthPillTracker);
+    handPills.fill(handPillTracker);
+  }
+
+  /** The visible tracks of one tracker. */
+  static final class Layer {
+    private int count;
+    private float[] start = new float[0];
+    private float[] end = new float[0];
+    private long[] startNanos = new long[0];
+    private int[] colors = new int[0];
+    private final float[] box = new float[4];
+
+    void fill(final ObjectTracker tracker) {
+      final List<ObjectTracker.Track> tracks = tracker.getTracks();
+      count = 0;
+      for (int i = 0; i < tracks.size(); ++i) {
+        final ObjectTracker.Track track = tracks.get(i);
+        if (!track.isVisible()) {
+          continue;
+        }
+        if (count == colors.length) {
+          grow();
+        }
+        final long nanos = track.getUpdateNanos();
+        track.getLocation(nanos, box);
+        System.arraycopy(box, 0, start, 4 * count, 4);
+        track.getLocation(nanos + ObjectTracker.MAX_EXTRAPOLATION_NANOS, box);
+        System.arraycopy(box, 0, end, 4 * count, 4);
+        startNanos[count] = nanos;
+        colors[count] = track.getColor();
+        ++count;
+      }
+    }
+
+    int size() {
+      return count;
+    }
+
+    int getColor(final int i) {
+      return colors[i];
+    }
+
+    /** Writes where track {@code i} was at the update into {@code out}. */
+    void getUpdated(final int i, final float[] out) {
+      System.arraycopy(start, 4 * i, out, 0, 4);
+    }
+
+    /** Writes where track {@code i} is expected at {@code nanos} into {@code out}. */
+    void locate(final int i, final long nanos, final float[] out) {
+      final long ahead =
+          Math.max(0, Math.min(ObjectTracker.MAX_EXTRAPOLATION_NANOS, nanos - startNanos[i]));
+      final float t = ahead / (float) ObjectTracker.MAX_EXTRAPOLATION_NANOS;
+      for (int k = 0; k < 4; ++k) {
+        final float from = start[4 * i + k];
+        out[k] = from + (end[4 * i + k] - from) * t;
+      }
+    }
+
+    private void grow() {
+      final int capacity = Math.max(8, 2 * colors.length);
+      final float[] newStart = new float[4 * capacity];
+      final float[] newEnd = new float[4 * capacity];
+      final long[] newStartNanos = new long[capacity];
+      final int[] newColors = new int[capacity];
+      System.arraycopy(start, 0, newStart, 0, start.length);
+      System.arraycopy(end, 0, newEnd, 0, end.length);
+      System.arraycopy(startNanos, 0, newStartNanos, 0, startNanos.length);
+      System.arraycopy(colors, 0, newColors, 0, colors.length);
+      start = newStart;
+      end = newEnd;
+      startNanos = newStartNanos;
+      colors = newColors;
+    }
+  }
+}
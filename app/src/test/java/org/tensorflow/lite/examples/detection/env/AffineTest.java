@@ -0,0 +1,61 @@
+package org.tensorflow.lite.examples.detection.env;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class AffineTest {
+  @Test
+  public void concatAppliesFirstThenSecond() {
+    final float[] scale = {2f, 0f, 0f, 0f, 3f, 0f};
+    final float[] shift = {1f, 0f, 10f, 0f, 1f, 20f};
+    final float[] both = new float[Affine.SIZE];
+    Affine.concat(scale, shift, both);
+    final float[] point = {1f, 1f};
+    Affine.mapPoints(both, point, 0, 1);
+    assertArrayEquals(new float[] {12f, 23f}, point, 0f);
+
+    // In place, as the chains are composed.
+    Affine.concat(shift, scale, shift);
+    assertArrayEquals(new float[] {2f, 0f, 20f, 0f, 3f, 60f}, shift, 0f);
+  }
+
+  @Test
+  public void invertUndoesTheMap() {
+    final float[] m = new float[Affine.SIZE];
+    Affine.rotateAndFit(640, 480, 300, 300, -90, false, m);
+    final float[] inverse = new float[Affine.SIZE];
+    assertTrue(Affine.invert(m, inverse));
+    final float[] roundTrip = new float[Affine.SIZE];
+    Affine.concat(m, inverse, roundTrip);
+    assertArrayEquals(Affine.identity(), roundTrip, 1e-5f);
+
+    final float[] singular = {1f, 2f, 0f, 2f, 4f, 0f};
+    assertFalse(Affine.invert(singular, inverse));
+  }
+
+  @Test
+  public void rotateAndFitMatchesTheMatrixConstruction() {
+    // Matrix: translate by minus the source centre, rotate, scale, translate to the dst centre.
+    final float[] m = new float[Affine.SIZE];
+    Affine.rotateAndFit(640, 480, 300, 300, -90, false, m);
+    final float[] points = {0f, 0f, 640f, 480f, 320f, 240f};
+    Affine.mapPoints(m, points, 0, 3);
+    // Turned by -90 degrees, the frame's top left corner ends up at the bottom left.
+    assertArrayEquals(new float[] {0f, 300f, 300f, 0f, 150f, 150f}, points, 1e-4f);
+
+    Affine.rotateAndFit(640, 480, 320, 320, 0, true, m);
+    assertArrayEquals(new float[] {2f / 3f, 0f, 0f, 0f, 2f / 3f, 0f}, m, 1e-6f);
+  }
+
+  @Test
+  public void mapRectsBoundsBoxesWithSidesInEitherOrder() {
+    final float[] quarterTurn = {0f, -1f, 100f, 2f, 0f, 0f};
+    final float[] rects = {99f, 99f, 99f, 99f, 30f, 10f, 10f, 40f, 10f, 40f, 30f, 10f};
+    Affine.mapRects(quarterTurn, rects, 4, 2);
+    assertArrayEquals(
+        new float[] {99f, 99f, 99f, 99f, 60f, 20f, 90f, 60f, 60f, 20f, 90f, 60f}, rects, 1e-5f);
+  }
+}
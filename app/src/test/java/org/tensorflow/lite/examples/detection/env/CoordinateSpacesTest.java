@@ -0,0 +1,90 @@
+package org.tensorflow.lite.examples.detection.env;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * Checks the maps against the arithmetic the app used to spell out for its 640x480 preview, 300
+ * pixel input and -90 degree turn.
+ */
+public class CoordinateSpacesTest {
+  private static final float EPSILON = 1e-3f;
+  private final CoordinateSpaces spaces = new CoordinateSpaces(640, 480, 300, -90, true);
+  // A mouth detection: mirrored on x, so its left side is right of its right side.
+  private final float[] mouth = {200f, 120f, 150f, 180f};
+
+  @Test
+  public void detectionMapsToTheFrameRegionItWasFoundIn() {
+    final float[] region = mouth.clone();
+    spaces.detectionsToFrame(region, 0, 1);
+    final float left = (300f - mouth[3]) * (640 / 300f);
+    final float top = (300f - mouth[0]) * (480 / 300f);
+    final float width = (mouth[3] - mouth[1]) * (640 / 300f);
+    final float height = (mouth[0] - mouth[2]) * (480 / 300f);
+    assertArrayEquals(
+        new float[] {left, top, left + width, top + height}, region, EPSILON);
+  }
+
+  @Test
+  public void detectionMapsToThePreviewMirroredOnY() {
+    final float[] detectionToPreview = new float[Affine.SIZE];
+    final float[] frameToPreview = new float[Affine.SIZE];
+    spaces.getDetectionToFrame(detectionToPreview);
+    spaces.getFrameToPreview(frameToPreview);
+    Affine.concat(detectionToPreview, frameToPreview, detectionToPreview);
+    final float[] point = {mouth[0], mouth[1]};
+    Affine.mapPoints(detectionToPreview, point, 0, 1);
+    assertEquals((300 - mouth[1]) * (640 / 300f), point[0], EPSILON);
+    assertEquals(mouth[0] * (480 / 300f), point[1], EPSILON);
+  }
+
+  @Test
+  public void regionDetectionsMapThroughTheCrop() {
+    final float[] region = mouth.clone();
+    spaces.detectionsToFrame(region, 0, 1);
+    final float[] pillToFrame = new float[Affine.SIZE];
+    spaces.regionDetectionToFrame(
+        region[0], region[1], region[2] - region[0], region[3] - region[1], pillToFrame);
+    final float[] pill = {100f, 30f};
+    Affine.mapPoints(pillToFrame, pill, 0, 1);
+    // The crop is turned like the frame: its input rows run right to left along the frame.
+    assertEquals(region[2] - 30f * (region[2] - region[0]) / 300f, pill[0], EPSILON);
+    assertEquals(region[1] + (300f - 100f) * (region[3] - region[1]) / 300f, pill[1], EPSILON);
+
+    // The hand crop the overlay used to spell out as (60, 370, 180, 470) in the preview.
+    spaces.regionDetectionToFrame(60, 10, 120, 100, pillToFrame);
+    final float[] handPill = {100f, 30f};
+    Affine.mapPoints(pillToFrame, handPill, 0, 1);
+    assertEquals((300 - 30f) * (120 / 300f) + 60, handPill[0], EPSILON);
+    assertEquals(480 - (100f * (100 / 300f) + 370), handPill[1], EPSILON);
+  }
+
+  @Test
+  public void frameToCanvasFitsTheUprightPreview() {
+    final float[] frameToCanvas = new float[Affine.SIZE];
+    // 2.25 canvas pixels per frame pixel either way.
+    spaces.getFrameToCanvas(1080, 1600, frameToCanvas);
+    final float[] corners = {0f, 0f, 640f, 480f};
+    Affine.mapPoints(frameToCanvas, corners, 0, 2);
+    // Mirrored and turned, the frame's top left corner is drawn at the bottom right.
+    assertArrayEquals(new float[] {1080f, 1440f, 0f, 0f}, corners, EPSILON);
+  }
+
+  @Test
+  public void inputToFrameInvertsTheFrameToInputMatrix() {
+    final float[] frameToInput = new float[Affine.SIZE];
+    Affine.rotateAndFit(640, 480, 300, 300, -90, false, frameToInput);
+    final float[] inputToFrame = new float[Affine.SIZE];
+    spaces.getInputToFrame(inputToFrame);
+    final float[] roundTrip = new float[Affine.SIZE];
+    Affine.concat(inputToFrame, frameToInput, roundTrip);
+    assertArrayEquals(Affine.identity(), roundTrip, 1e-5f);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void onlyQuarterTurnsAreSupported() {
+    new CoordinateSpaces(640, 480, 300, 30, false);
+  }
+}
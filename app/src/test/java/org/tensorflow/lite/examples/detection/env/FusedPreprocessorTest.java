@@ -0,0 +1,159 @@
+package org.tensorflow.lite.examples.detection.env;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * Compares {@link FusedPreprocessor} with the chain it replaces: full-frame ARGB conversion,
+ * nearest-neighbour sampling through the crop transform, then per-pixel normalization.
+ */
+public class FusedPreprocessorTest {
+  private static final int FRAME_WIDTH = 640;
+  private static final int FRAME_HEIGHT = 480;
+  private static final int INPUT_SIZE = 300;
+  private static final float MEAN = 127.5f;
+  private static final float STD = 127.5f;
+
+  private final Random random = new Random(7);
+
+  @Test
+  public void floatInputMatchesBitmapChain() {
+    final byte[] nv21 = randomBytes(ImageUtils.getYUVByteSize(FRAME_WIDTH, FRAME_HEIGHT));
+    final float[] transform = rotatedCropToFrame();
+
+    final FusedPreprocessor preprocessor = new FusedPreprocessor(INPUT_SIZE, false, MEAN, STD);
+    preprocessor.setTransform(transform, FRAME_WIDTH, FRAME_HEIGHT);
+    final FloatBuffer actual =
+        preprocessor.processNV21(nv21, FRAME_WIDTH, FRAME_HEIGHT).asFloatBuffer();
+
+    final int[] expected = referenceChain(nv21, transform);
+    for (int i = 0; i < expected.length; ++i) {
+      final int pixel = expected[i];
+      assertEquals((((pixel >> 16) & 0xFF) - MEAN) / STD, actual.get(i * 3), 0f);
+      assertEquals((((pixel >> 8) & 0xFF) - MEAN) / STD, actual.get(i * 3 + 1), 0f);
+      assertEquals(((pixel & 0xFF) - MEAN) / STD, actual.get(i * 3 + 2), 0f);
+    }
+  }
+
+  @Test
+  public void siblingSharesTransformButNotBuffer() {
+    final byte[] nv21 = randomBytes(ImageUtils.getYUVByteSize(FRAME_WIDTH, FRAME_HEIGHT));
+    final FusedPreprocessor preprocessor = new FusedPreprocessor(INPUT_SIZE, false, MEAN, STD);
+    final FusedPreprocessor sibling = preprocessor.newSibling();
+    preprocessor.setTransform(rotatedCropToFrame(), FRAME_WIDTH, FRAME_HEIGHT);
+
+    final ByteBuffer first = preprocessor.processNV21(nv21, FRAME_WIDTH, FRAME_HEIGHT);
+    final ByteBuffer second = sibling.processNV21(nv21, FRAME_WIDTH, FRAME_HEIGHT);
+
+    assertNotSame(first, second);
+    assertEquals(first, second);
+  }
+
+  @Test
+  public void quantizedInputMatchesBitmapChain() {
+    final byte[] nv21 = randomBytes(ImageUtils.getYUVByteSize(FRAME_WIDTH, FRAME_HEIGHT));
+    final float[] transform = rotatedCropToFrame();
+
+    final FusedPreprocessor preprocessor = new FusedPreprocessor(INPUT_SIZE, true, MEAN, STD);
+    preprocessor.setTransform(transform, FRAME_WIDTH, FRAME_HEIGHT);
+    final ByteBuffer actual = preprocessor.processNV21(nv21, FRAME_WIDTH, FRAME_HEIGHT);
+
+    final int[] expected = referenceChain(nv21, transform);
+    for (int i = 0; i < expected.length; ++i) {
+      final int pixel = expected[i];
+      assertEquals((pixel >> 16) & 0xFF, actual.get(i * 3) & 0xFF);
+      assertEquals((pixel >> 8) & 0xFF, actual.get(i * 3 + 1) & 0xFF);
+      assertEquals(pixel & 0xFF, actual.get(i * 3 + 2) & 0xFF);
+    }
+  }
+
+  @Test
+  public void planarInputMatchesSemiPlanar() {
+    final byte[] nv21 = randomBytes(ImageUtils.getYUVByteSize(FRAME_WIDTH, FRAME_HEIGHT));
+    // Split the interleaved VU plane into separate planes with a pixel stride of 1.
+    final int chromaSize = (FRAME_WIDTH / 2) * (FRAME_HEIGHT / 2);
+    final byte[] y = new byte[FRAME_WIDTH * FRAME_HEIGHT];
+    final byte[] u = new byte[chromaSize];
+    final byte[] v = new byte[chromaSize];
+    System.arraycopy(nv21, 0, y, 0, y.length);
+    for (int i = 0; i < chromaSize; ++i) {
+      v[i] = nv21[y.length + 2 * i];
+      u[i] = nv21[y.length + 2 * i + 1];
+    }
+
+    final FusedPreprocessor semiPlanar = new FusedPreprocessor(INPUT_SIZE, true, MEAN, STD);
+    final FusedPreprocessor planar = new FusedPreprocessor(INPUT_SIZE, true, MEAN, STD);
+    semiPlanar.setTransform(rotatedCropToFrame(), FRAME_WIDTH, FRAME_HEIGHT);
+    planar.setTransform(rotatedCropToFrame(), FRAME_WIDTH, FRAME_HEIGHT);
+
+    assertEquals(
+        semiPlanar.processNV21(nv21, FRAME_WIDTH, FRAME_HEIGHT),
+        planar.processYUV420(y, u, v, FRAME_WIDTH, FRAME_WIDTH / 2, 1));
+  }
+
+  @Test
+  public void directPlanesMatchArrays() {
+    final int yRowStride = FRAME_WIDTH + 32;
+    final int uvRowStride = FRAME_WIDTH + 32;
+    final byte[] y = randomBytes(yRowStride * FRAME_HEIGHT);
+    final byte[] u = randomBytes(uvRowStride * FRAME_HEIGHT / 2);
+    final byte[] v = randomBytes(uvRowStride * FRAME_HEIGHT / 2);
+
+    final FusedPreprocessor arrays = new FusedPreprocessor(INPUT_SIZE, false, MEAN, STD);
+    final FusedPreprocessor buffers = arrays.newSibling();
+    arrays.setTransform(rotatedCropToFrame(), FRAME_WIDTH, FRAME_HEIGHT);
+
+    assertEquals(
+        arrays.processYUV420(y, u, v, yRowStride, uvRowStride, 2),
+        buffers.processYUV420(direct(y), direct(u), direct(v), yRowStride, uvRowStride, 2));
+  }
+
+  private static ByteBuffer direct(final byte[] bytes) {
+    final ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+    buffer.put(bytes);
+    buffer.rewind();
+    return buffer;
+  }
+
+  // Inverse of ImageUtils.getTransformationMatrix(640, 480, 300, 300, -90, false), which is what
+  // DetectorActivity uses for the full-frame crop.
+  private static float[] rotatedCropToFrame() {
+    final float scaleX = INPUT_SIZE / (float) FRAME_HEIGHT;
+    final float scaleY = INPUT_SIZE / (float) FRAME_WIDTH;
+    final float half = INPUT_SIZE / 2f;
+    return new float[] {
+      0f, -1f / scaleY, FRAME_WIDTH / 2f + half / scaleY,
+      1f / scaleX, 0f, FRAME_HEIGHT / 2f - half / scaleX,
+      0f, 0f, 1f
+    };
+  }
+
+  private static int[] referenceChain(final byte[] nv21, final float[] m) {
+    final int[] frame = new int[FRAME_WIDTH * FRAME_HEIGHT];
+    new YuvToRgbConverter(null, 2).convertYUV420SP(nv21, FRAME_WIDTH, FRAME_HEIGHT, frame);
+    final int[] cropped = new int[INPUT_SIZE * INPUT_SIZE];
+    for (int y = 0; y < INPUT_SIZE; ++y) {
+      for (int x = 0; x < INPUT_SIZE; ++x) {
+        final float cx = x + 0.5f;
+        final float cy = y + 0.5f;
+        int sx = (int) Math.floor(m[0] * cx + m[1] * cy + m[2]);
+        int sy = (int) Math.floor(m[3] * cx + m[4] * cy + m[5]);
+        sx = Math.max(0, Math.min(FRAME_WIDTH - 1, sx));
+        sy = Math.max(0, Math.min(FRAME_HEIGHT - 1, sy));
+        cropped[y * INPUT_SIZE + x] = frame[sy * FRAME_WIDTH + sx];
+      }
+    }
+    return cropped;
+  }
+
+  private byte[] randomBytes(final int length) {
+    final byte[] bytes = new byte[length];
+    random.nextBytes(bytes);
+    return bytes;
+  }
+}
@@ -0,0 +1,68 @@
+package org.tensorflow.lite.examples.detection.env;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class InputFormatTest {
+  private static final float MEAN = 127.5f;
+  private static final float STD = 127.5f;
+
+  @Test
+  public void uint8WithTheUsualParametersKeepsTheChannelValue() {
+    // A [-1, 1] input quantized with scale 1/128 and zero point 128 is the channel value again,
+    // up to rounding at the middle.
+    final InputFormat format = InputFormat.quantized(MEAN, STD, 1f / 128, 128, false);
+    assertTrue(format.isQuantized());
+    assertEquals(1, format.getBytesPerChannel());
+    for (int c = 0; c < 256; ++c) {
+      assertEquals(c, format.quantize(c) & 0xFF, 1);
+    }
+  }
+
+  @Test
+  public void int8IsShiftedAndClamped() {
+    final InputFormat format = InputFormat.quantized(MEAN, STD, 1f / 128, 0, true);
+    assertEquals(-128, format.quantize(0));
+    assertEquals(0, format.quantize(128), 1);
+    assertEquals(127, format.quantize(255));
+    // Twice the range only fits half of it.
+    final InputFormat narrow = InputFormat.quantized(MEAN, STD, 1f / 256, 0, true);
+    assertEquals(-128, narrow.quantize(10));
+    assertEquals(127, narrow.quantize(250));
+  }
+
+  @Test
+  public void missingQuantizationParametersWriteRawValues() {
+    final InputFormat uint8 = InputFormat.quantized(MEAN, STD, 0f, 0, false);
+    final InputFormat int8 = InputFormat.quantized(MEAN, STD, 0f, 0, true);
+    for (int c = 0; c < 256; ++c) {
+      assertEquals(c, uint8.quantize(c) & 0xFF);
+      assertEquals(c - 128, int8.quantize(c));
+    }
+  }
+
+  @Test
+  public void floatTableNormalizes() {
+    final InputFormat format = InputFormat.floats(MEAN, STD);
+    assertFalse(format.isQuantized());
+    assertEquals(4, format.getBytesPerChannel());
+    for (int c = 0; c < 256; ++c) {
+      assertEquals((c - MEAN) / STD, format.normalize(c), 0f);
+    }
+  }
+
+  @Test
+  public void formatsCompareByTheirParameters() {
+    assertEquals(
+        InputFormat.quantized(MEAN, STD, 0.5f, 3, true),
+        InputFormat.quantized(MEAN, STD, 0.5f, 3, true));
+    assertNotEquals(
+        InputFormat.quantized(MEAN, STD, 0.5f, 3, true),
+        InputFormat.quantized(MEAN, STD, 0.5f, 3, false));
+    assertNotEquals(InputFormat.floats(MEAN, STD), InputFormat.floats(0f, 255f));
+  }
+}
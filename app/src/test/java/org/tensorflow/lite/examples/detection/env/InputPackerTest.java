@@ -0,0 +1,86 @@
+package org.tensorflow.lite.examples.detection.env;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+import org.junit.Test;
+
+/** Compares {@link InputPacker} with the per-channel {@code putFloat}/{@code put} loop. */
+public class InputPackerTest {
+  private static final int PIXELS = 300 * 300;
+  private static final float MEAN = 127.5f;
+  private static final float STD = 127.5f;
+
+  private final Random random = new Random(13);
+
+  @Test
+  public void floatsMatchSequentialPuts() {
+    final InputFormat format = InputFormat.floats(MEAN, STD);
+    final int[] argb = randomPixels();
+    final ByteBuffer expected = buffer(format);
+    for (final int pixel : argb) {
+      expected.putFloat((((pixel >> 16) & 0xFF) - MEAN) / STD);
+      expected.putFloat((((pixel >> 8) & 0xFF) - MEAN) / STD);
+      expected.putFloat(((pixel & 0xFF) - MEAN) / STD);
+    }
+    expected.rewind();
+
+    final InputPacker packer = new InputPacker(PIXELS, format);
+    final ByteBuffer actual = buffer(format);
+    // Left at the end, as after an interpreter run.
+    actual.position(actual.limit());
+    packer.pack(argb, actual);
+    assertEquals(0, actual.position());
+    assertEquals(expected, actual);
+  }
+
+  @Test
+  public void quantizedMatchesTableLookup() {
+    final InputFormat format = InputFormat.quantized(MEAN, STD, 1f / 128, 0, true);
+    final int[] argb = randomPixels();
+    final ByteBuffer expected = buffer(format);
+    for (final int pixel : argb) {
+      expected.put(format.quantize((pixel >> 16) & 0xFF));
+      expected.put(format.quantize((pixel >> 8) & 0xFF));
+      expected.put(format.quantize(pixel & 0xFF));
+    }
+    expected.rewind();
+
+    final ByteBuffer actual = buffer(format);
+    new InputPacker(PIXELS, format).pack(argb, actual);
+    assertEquals(0, actual.position());
+    assertEquals(expected, actual);
+  }
+
+  @Test
+  public void alternatingBuffersEachGetTheirOwnImage() {
+    final InputFormat format = InputFormat.floats(MEAN, STD);
+    final InputPacker packer = new InputPacker(PIXELS, format);
+    final int[] first = randomPixels();
+    final int[] second = randomPixels();
+    final ByteBuffer firstBuffer = buffer(format);
+    final ByteBuffer secondBuffer = buffer(format);
+    packer.pack(first, firstBuffer);
+    packer.pack(second, secondBuffer);
+    final ByteBuffer reference = buffer(format);
+    packer.pack(first, reference);
+    assertEquals(reference, firstBuffer);
+    packer.pack(second, reference);
+    assertEquals(reference, secondBuffer);
+  }
+
+  private int[] randomPixels() {
+    final int[] argb = new int[PIXELS];
+    for (int i = 0; i < argb.length; ++i) {
+      argb[i] = random.nextInt();
+    }
+    return argb;
+  }
+
+  private static ByteBuffer buffer(final InputFormat format) {
+    return ByteBuffer.allocateDirect(PIXELS * 3 * format.getBytesPerChannel())
+        .order(ByteOrder.nativeOrder());
+  }
+}
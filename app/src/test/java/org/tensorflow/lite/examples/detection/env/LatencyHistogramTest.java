@@ -0,0 +1,76 @@
+package org.tensorflow.lite.examples.detection.env;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+  @Test
+  public void bucketsAreContiguousAndCoverEveryValue() {
+    int previous = -1;
+    for (long micros = 0; micros < 1 << 22; ++micros) {
+      final int index = LatencyHistogram.bucketIndex(micros);
+      assertTrue("index went backwards at " + micros, index == previous || index == previous + 1);
+      assertTrue(micros <= LatencyHistogram.highestEquivalentValue(index));
+      if (index != previous && index > 0) {
+        assertEquals(micros - 1, LatencyHistogram.highestEquivalentValue(index - 1));
+      }
+      previous = index;
+    }
+  }
+
+  @Test
+  public void hugeValuesAreClamped() {
+    assertEquals(
+        LatencyHistogram.BUCKET_COUNT - 1, LatencyHistogram.bucketIndex(Long.MAX_VALUE / 2));
+    final LatencyHistogram histogram = new LatencyHistogram("test");
+    histogram.recordMicros(Long.MAX_VALUE / 2);
+    assertEquals(1, histogram.getCount());
+  }
+
+  @Test
+  public void smallValuesAreExact() {
+    final LatencyHistogram histogram = new LatencyHistogram("test");
+    for (int micros = 1; micros <= 100; ++micros) {
+      histogram.recordMicros(micros);
+    }
+    assertEquals(0.050f, histogram.getPercentileMs(50), 0f);
+    assertEquals(0.095f, histogram.getPercentileMs(95), 0f);
+    assertEquals(0.099f, histogram.getPercentileMs(99), 0f);
+    assertEquals(0.100f, histogram.getPercentileMs(100), 0f);
+    assertEquals(0.0505f, histogram.getMeanMs(), 1e-6f);
+  }
+
+  @Test
+  public void percentilesStayWithinBucketPrecision() {
+    final Random random = new Random(3);
+    final long[] samples = new long[100_000];
+    final LatencyHistogram histogram = new LatencyHistogram("test");
+    for (int i = 0; i < samples.length; ++i) {
+      // Log-normal-ish spread from tens of microseconds to a few hundred milliseconds.
+      samples[i] = (long) Math.exp(4 + 8 * random.nextDouble());
+      histogram.recordNanos(samples[i] * 1000);
+    }
+    Arrays.sort(samples);
+    for (final double percentile : new double[] {50, 90, 95, 99, 99.9}) {
+      final long exact = samples[(int) Math.ceil(percentile / 100 * samples.length) - 1];
+      final float reported = histogram.getPercentileMs(percentile) * 1000;
+      assertTrue(percentile + ": " + reported + " < " + exact, reported >= exact);
+      assertTrue(percentile + ": " + reported + " >> " + exact, reported <= exact * 1.016 + 1);
+    }
+    assertEquals(samples[samples.length - 1] / 1000f, histogram.getMaxMs(), 0f);
+  }
+
+  @Test
+  public void resetClearsEverything() {
+    final LatencyHistogram histogram = new LatencyHistogram("test");
+    histogram.recordMicros(1234);
+    histogram.reset();
+    assertEquals(0, histogram.getCount());
+    assertEquals(0f, histogram.getPercentileMs(99), 0f);
+    assertEquals(0f, histogram.getMaxMs(), 0f);
+  }
+}
@@ -0,0 +1,143 @@
+package org.tensorflow.lite.examples.detection.env;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.Test;
+
+public class ResamplerTest {
+  private final Random random = new Random(11);
+
+  @Test
+  public void sameSizeRegionIsCopiedByEveryFilter() {
+    final int[] argb = randomArgb(40 * 30);
+    for (final Resampler.Filter filter : Resampler.Filter.values()) {
+      final Resampler resampler = new Resampler(20, 10, filter, null, 4);
+      final int[] out = new int[20 * 10];
+      resampler.resample(argb, 40, 30, 5, 7, 20, 10, 0, out);
+      for (int y = 0; y < 10; ++y) {
+        for (int x = 0; x < 20; ++x) {
+          assertEquals(filter.name(), argb[(y + 7) * 40 + x + 5], out[y * 20 + x]);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void bilinearInterpolatesBetweenPixelCentres() {
+    // Stride 3: the last byte of each row is padding.
+    final byte[] plane = {0, (byte) 255, 99, 0, (byte) 255, 99};
+    final byte[] out = new byte[4];
+    new Resampler(4, 1, Resampler.Filter.BILINEAR, null, 64)
+        .resample(plane, 2, 2, 3, 0, 0, 2, 1, 0, out);
+    // Centres at -0.25, 0.25, 0.75 and 1.25 source pixels, clamped to the edge.
+    assertArrayEquals(new int[] {0, 64, 191, 255}, unsigned(out));
+  }
+
+  @Test
+  public void areaAveragesTheCoveredPixels() {
+    final byte[] plane = {0, 90, (byte) 180};
+    final byte[] out = new byte[2];
+    new Resampler(2, 1, Resampler.Filter.AREA, null, 64)
+        .resample(plane, 3, 1, 3, 0, 0, 3, 1, 0, out);
+    // Each output pixel covers one and a half source pixels.
+    assertArrayEquals(new int[] {30, 150}, unsigned(out));
+
+    final byte[] square = {10, 20, 30, 40, 50, 60, 70, 80, 90};
+    final byte[] mean = new byte[1];
+    new Resampler(1, 1, Resampler.Filter.AREA, null, 64)
+        .resample(square, 3, 3, 3, 0, 0, 3, 3, 0, mean);
+    assertEquals(50, mean[0] & 0xff);
+  }
+
+  @Test
+  public void turnsPermuteTheUnturnedOutput() {
+    final int size = 16;
+    final int[] argb = randomArgb(50 * 40);
+    final int[] unturned = new int[size * size];
+    final Resampler resampler = new Resampler(size, size, Resampler.Filter.BILINEAR, null, 5);
+    resampler.resample(argb, 50, 40, 3.5f, 2f, 30f, 25f, 0, unturned);
+    final int[] turned = new int[size * size];
+    for (final int rotation : new int[] {90, 180, -90, 270, -180}) {
+      resampler.resample(argb, 50, 40, 3.5f, 2f, 30f, 25f, rotation, turned);
+      final int turn = ((rotation % 360) + 360) % 360;
+      for (int y = 0; y < size; ++y) {
+        for (int x = 0; x < size; ++x) {
+          final int expected = unturned[y * size + x];
+          final int row;
+          final int column;
+          if (turn == 90) {
+            row = x;
+            column = size - 1 - y;
+          } else if (turn == 180) {
+            row = size - 1 - y;
+            column = size - 1 - x;
+          } else {
+            row = size - 1 - x;
+            column = y;
+          }
+          assertEquals("rotation " + rotation, expected, turned[row * size + column]);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void parallelBandsMatchTheCallingThread() {
+    final int[] argb = randomArgb(640 * 480);
+    final ForkJoinPool pool = new ForkJoinPool(3);
+    try {
+      for (final Resampler.Filter filter : Resampler.Filter.values()) {
+        final int[] serial = new int[300 * 300];
+        final int[] parallel = new int[300 * 300];
+        new Resampler(300, 300, filter, null, 64)
+            .resample(argb, 640, 480, 0, 0, 640, 480, -90, serial);
+        final Resampler banded = new Resampler(300, 300, filter, pool, 7);
+        // Twice, so the second run reuses the bands' scratch rows.
+        banded.resample(argb, 640, 480, 0, 0, 640, 480, -90, parallel);
+        banded.resample(argb, 640, 480, 0, 0, 640, 480, -90, parallel);
+        assertArrayEquals(filter.name(), serial, parallel);
+      }
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  @Test
+  public void planeMatchesTheChannelsOfAGrayFrame() {
+    final byte[] plane = new byte[64 * 48];
+    random.nextBytes(plane);
+    final int[] gray = new int[plane.length];
+    for (int i = 0; i < plane.length; ++i) {
+      final int v = plane[i] & 0xff;
+      gray[i] = 0xff000000 | (v << 16) | (v << 8) | v;
+    }
+    final Resampler resampler = new Resampler(30, 20, Resampler.Filter.AREA, null, 64);
+    final byte[] planeOut = new byte[30 * 20];
+    final int[] grayOut = new int[30 * 20];
+    resampler.resample(plane, 64, 48, 64, 1.5f, 2.5f, 60f, 41f, 0, planeOut);
+    resampler.resample(gray, 64, 48, 1.5f, 2.5f, 60f, 41f, 0, grayOut);
+    for (int i = 0; i < planeOut.length; ++i) {
+      final int v = planeOut[i] & 0xff;
+      assertEquals(0xff000000 | (v << 16) | (v << 8) | v, grayOut[i]);
+    }
+  }
+
+  private int[] randomArgb(final int pixels) {
+    final int[] argb = new int[pixels];
+    for (int i = 0; i < pixels; ++i) {
+      argb[i] = 0xff000000 | random.nextInt(1 << 24);
+    }
+    return argb;
+  }
+
+  private static int[] unsigned(final byte[] bytes) {
+    final int[] values = new int[bytes.length];
+    for (int i = 0; i < bytes.length; ++i) {
+      values[i] = bytes[i] & 0xff;
+    }
+    return values;
+  }
+}
@@ -0,0 +1,76 @@
+package org.tensorflow.lite.examples.detection.env;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import org.junit.Test;
+
+/**
+ * Compares {@link RoiSampler} with the bitmap chain it replaces: crop the region, turn it a
+ * quarter and scale it to the input without filtering.
+ */
+public class RoiSamplerTest {
+  private static final int FRAME_WIDTH = 200;
+  private static final int FRAME_HEIGHT = 150;
+  private static final int INPUT_SIZE = 300;
+  // Raw channel values, so each input pixel tells which frame pixel it read.
+  private static final InputFormat RAW = InputFormat.floats(0f, 1f);
+
+  // Red is the frame column, green the row.
+  private final int[] frame = coordinateFrame();
+
+  @Test
+  public void quarterTurnMatchesBitmapChain() {
+    final int left = 50;
+    final int top = 20;
+    final int width = 90;
+    final int height = 75;
+    final RoiSampler sampler = new RoiSampler(INPUT_SIZE, -90, RAW);
+    final ByteBuffer input = sampler.createInputBuffer();
+    sampler.sample(frame, FRAME_WIDTH, FRAME_HEIGHT, left, top, width, height, input);
+
+    final FloatBuffer actual = input.asFloatBuffer();
+    for (int y = 0; y < INPUT_SIZE; ++y) {
+      for (int x = 0; x < INPUT_SIZE; ++x) {
+        // Turned by -90 degrees the crop is height wide: its column x is crop row x, its row y
+        // crop column width - 1 - y.
+        final int rotatedX = (int) ((x + 0.5) * height / INPUT_SIZE);
+        final int rotatedY = (int) ((y + 0.5) * width / INPUT_SIZE);
+        final int i = (y * INPUT_SIZE + x) * 3;
+        assertEquals(left + width - 1 - rotatedY, actual.get(i), 0f);
+        assertEquals(top + rotatedX, actual.get(i + 1), 0f);
+      }
+    }
+  }
+
+  @Test
+  public void regionOutsideTheFrameIsClamped() {
+    final RoiSampler sampler = new RoiSampler(INPUT_SIZE, 0, RAW);
+    final ByteBuffer input = sampler.createInputBuffer();
+    sampler.sample(frame, FRAME_WIDTH, FRAME_HEIGHT, -50, 100, 300, 100, input);
+
+    final FloatBuffer actual = input.asFloatBuffer();
+    final int topLeft = 0;
+    final int bottomRight = (INPUT_SIZE * INPUT_SIZE - 1) * 3;
+    assertEquals(0f, actual.get(topLeft), 0f);
+    assertEquals(100f, actual.get(topLeft + 1), 0f);
+    assertEquals(FRAME_WIDTH - 1, actual.get(bottomRight), 0f);
+    assertEquals(FRAME_HEIGHT - 1, actual.get(bottomRight + 1), 0f);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void onlyQuarterTurnsAreSupported() {
+    new RoiSampler(INPUT_SIZE, 45, RAW);
+  }
+
+  private static int[] coordinateFrame() {
+    final int[] argb = new int[FRAME_WIDTH * FRAME_HEIGHT];
+    for (int y = 0; y < FRAME_HEIGHT; ++y) {
+      for (int x = 0; x < FRAME_WIDTH; ++x) {
+        argb[y * FRAME_WIDTH + x] = 0xff000000 | (x << 16) | (y << 8);
+      }
+    }
+    return argb;
+  }
+}
@@ -0,0 +1,179 @@
+package org.tensorflow.lite.examples.detection.env;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.Test;
+
+/** Checks {@link YuvToRgbConverter} bit for bit against the original per-pixel conversion. */
+public class YuvToRgbConverterTest {
+  private static final int[][] SIZES = {{640, 480}, {300, 300}, {7, 5}, {2, 2}, {1, 1}, {33, 130}};
+
+  private final Random random = new Random(42);
+
+  @Test
+  public void nv21MatchesReference() {
+    for (int[] size : SIZES) {
+      final int width = size[0];
+      final int height = size[1];
+      final byte[] input = randomBytes(width * height + ((height + 1) / 2) * width + 2);
+
+      final int[] expected = new int[width * height];
+      referenceYUV420SP(input, width, height, expected);
+
+      assertArrayEquals(expected, convertSP(new YuvToRgbConverter(null, 64), input, width, height));
+      assertArrayEquals(
+          expected, convertSP(new YuvToRgbConverter(new ForkJoinPool(4), 2), input, width, height));
+    }
+  }
+
+  @Test
+  public void yuv420MatchesReferenceWithStrides() {
+    for (int[] size : SIZES) {
+      final int width = size[0];
+      final int height = size[1];
+      final int yRowStride = width + 16;
+      final int uvPixelStride = 2;
+      final int uvRowStride = ((width + 1) / 2) * uvPixelStride + 8;
+      final byte[] y = randomBytes(yRowStride * height);
+      final byte[] u = randomBytes(uvRowStride * ((height + 1) / 2));
+      final byte[] v = randomBytes(uvRowStride * ((height + 1) / 2));
+
+      final int[] expected = new int[width * height];
+      referenceYUV420(y, u, v, width, height, yRowStride, uvRowStride, uvPixelStride, expected);
+
+      final int[] actual = new int[width * height];
+      new YuvToRgbConverter(new ForkJoinPool(3), 4)
+          .convertYUV420(y, u, v, width, height, yRowStride, uvRowStride, uvPixelStride, actual);
+      assertArrayEquals(expected, actual);
+    }
+  }
+
+  @Test
+  public void directPlanesMatchArrays() {
+    // Interleaved chroma as most devices deliver it: U and V are views of one buffer, V one byte
+    // ahead, both with a pixel stride of 2.
+    final int width = 33;
+    final int height = 130;
+    final int yRowStride = width + 3;
+    final int uvRowStride = width + 5;
+    final byte[] y = randomBytes(yRowStride * height);
+    final byte[] uv = randomBytes(uvRowStride * ((height + 1) / 2) + 1);
+    final byte[] u = java.util.Arrays.copyOfRange(uv, 0, uv.length - 1);
+    final byte[] v = java.util.Arrays.copyOfRange(uv, 1, uv.length);
+    final ByteBuffer yBuffer = direct(y);
+    final ByteBuffer uvBuffer = direct(uv);
+    final ByteBuffer uBuffer = uvBuffer.duplicate();
+    uvBuffer.position(1);
+    final ByteBuffer vBuffer = uvBuffer.slice();
+
+    final int[] expected = new int[width * height];
+    referenceYUV420(y, u, v, width, height, yRowStride, uvRowStride, 2, expected);
+
+    final int[] actual = new int[width * height];
+    new YuvToRgbConverter(new ForkJoinPool(3), 4)
+        .convertYUV420(
+            yBuffer, uBuffer, vBuffer, width, height, yRowStride, uvRowStride, 2, actual);
+    assertArrayEquals(expected, actual);
+    // The planes are read in place, not consumed.
+    assertEquals(0, yBuffer.position());
+    assertEquals(0, uBuffer.position());
+  }
+
+  @Test
+  public void extremeValuesAreClamped() {
+    final int width = 4;
+    final int height = 4;
+    for (int value : new int[] {0, 16, 128, 235, 255}) {
+      final byte[] input = new byte[ImageUtils.getYUVByteSize(width, height)];
+      java.util.Arrays.fill(input, (byte) value);
+      final int[] expected = new int[width * height];
+      referenceYUV420SP(input, width, height, expected);
+      assertArrayEquals(expected, convertSP(new YuvToRgbConverter(null, 2), input, width, height));
+    }
+  }
+
+  private static int[] convertSP(
+      final YuvToRgbConverter converter, final byte[] input, final int width, final int height) {
+    final int[] output = new int[width * height];
+    converter.convertYUV420SP(input, width, height, output);
+    return output;
+  }
+
+  private static ByteBuffer direct(final byte[] bytes) {
+    final ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+    buffer.put(bytes);
+    buffer.rewind();
+    return buffer;
+  }
+
+  private byte[] randomBytes(final int length) {
+    final byte[] bytes = new byte[length];
+    random.nextBytes(bytes);
+    return bytes;
+  }
+
+  // The conversion routines as they were before YuvToRgbConverter replaced them.
+
+  private static void referenceYUV420SP(byte[] input, int width, int height, int[] output) {
+    final int frameSize = width * height;
+    for (int j = 0, yp = 0; j < height; j++) {
+      int uvp = frameSize + (j >> 1) * width;
+      int u = 0;
+      int v = 0;
+
+      for (int i = 0; i < width; i++, yp++) {
+        int y = 0xff & input[yp];
+        if ((i & 1) == 0) {
+          v = 0xff & input[uvp++];
+          u = 0xff & input[uvp++];
+        }
+
+        output[yp] = referenceYUV2RGB(y, u, v);
+      }
+    }
+  }
+
+  private static void referenceYUV420(
+      byte[] yData,
+      byte[] uData,
+      byte[] vData,
+      int width,
+      int height,
+      int yRowStride,
+      int uvRowStride,
+      int uvPixelStride,
+      int[] out) {
+    int yp = 0;
+    for (int j = 0; j < height; j++) {
+      int pY = yRowStride * j;
+      int pUV = uvRowStride * (j >> 1);
+
+      for (int i = 0; i < width; i++) {
+        int uvOffset = pUV + (i >> 1) * uvPixelStride;
+        out[yp++] =
+            referenceYUV2RGB(0xff & yData[pY + i], 0xff & uData[uvOffset], 0xff & vData[uvOffset]);
+      }
+    }
+  }
+
+  private static int referenceYUV2RGB(int y, int u, int v) {
+    y = (y - 16) < 0 ? 0 : (y - 16);
+    u -= 128;
+    v -= 128;
+
+    int y1192 = 1192 * y;
+    int r = (y1192 + 1634 * v);
+    int g = (y1192 - 833 * v - 400 * u);
+    int b = (y1192 + 2066 * u);
+
+    r = r > 262143 ? 262143 : (r < 0 ? 0 : r);
+    g = g > 262143 ? 262143 : (g < 0 ? 0 : g);
+    b = b > 262143 ? 262143 : (b < 0 ? 0 : b);
+
+    return 0xff000000 | ((r << 6) & 0xff0000) | ((g >> 2) & 0xff00) | ((b >> 10) & 0xff);
+  }
+}
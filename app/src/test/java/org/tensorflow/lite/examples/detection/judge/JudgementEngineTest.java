@@ -0,0 +1,175 @@
+package org.tensorflow.lite.examples.detection.judge;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import org.junit.Test;
+
+public class JudgementEngineTest {
+  private static final long SECOND = 1_000_000_000L;
+  private static final Executor DIRECT =
+      new Executor() {
+        @Override
+        public void execute(final Runnable command) {
+          command.run();
+        }
+      };
+
+  private final List<JudgementEngine.StageEvent> events = new ArrayList<>();
+  private final JudgementEngine engine =
+      new JudgementEngine(
+          DIRECT,
+          new JudgementEngine.Listener() {
+            @Override
+            public void onStageChanged(final JudgementEngine.StageEvent event) {
+              events.add(event);
+            }
+          });
+
+  @Test
+  public void wholeDoseIsJudgedInOrder() {
+    replay(engine, 30, 30 * SECOND);
+    assertEquals(4, events.size());
+    assertEquals(JudgementEngine.Stage.MEDBOX, events.get(0).getPrevious());
+    assertEquals(JudgementEngine.Stage.HAND_PILL, events.get(0).getStage());
+    assertEquals(JudgementEngine.Stage.MOUTH_PILL, events.get(1).getStage());
+    assertEquals(JudgementEngine.Stage.SWALLOW, events.get(2).getStage());
+    assertEquals(JudgementEngine.Stage.DONE, events.get(3).getStage());
+    assertEquals(JudgementEngine.Stage.DONE, engine.getStage());
+  }
+
+  @Test
+  public void transitionsTakeTheSameTimeAtAnyFrameRate() {
+    replay(engine, 30, 30 * SECOND);
+    final List<JudgementEngine.StageEvent> fast = new ArrayList<>(events);
+    events.clear();
+    final JudgementEngine slowEngine =
+        new JudgementEngine(
+            DIRECT,
+            new JudgementEngine.Listener() {
+              @Override
+              public void onStageChanged(final JudgementEngine.StageEvent event) {
+                events.add(event);
+              }
+            });
+    replay(slowEngine, 10, 30 * SECOND);
+
+    assertEquals(fast.size(), events.size());
+    long fastStart = 0;
+    long slowStart = 0;
+    for (int i = 0; i < fast.size(); ++i) {
+      // Each stage lasts as long within a frame or two of the slower rate; a per-frame count
+      // would take three times as long at 10 fps.
+      final long fastEnd = fast.get(i).getNanos();
+      final long slowEnd = events.get(i).getNanos();
+      assertEquals(fastEnd - fastStart, slowEnd - slowStart, 0.2 * SECOND);
+      fastStart = fastEnd;
+      slowStart = slowEnd;
+    }
+  }
+
+  @Test
+  public void singleLuckyFrameDoesNotPass() {
+    final Observation observation = new Observation();
+    // One frame every two seconds: every sample has the full weight, but never enough of them.
+    for (long nanos = 0; nanos < 20 * SECOND; nanos += 2 * SECOND) {
+      engine.onObservation(nanos, observation.reset().setMedbox(nanos == 0 ? 0f : 0.9f));
+    }
+    assertEquals(JudgementEngine.Stage.MEDBOX, engine.getStage());
+    assertTrue(events.isEmpty());
+  }
+
+  @Test
+  public void unseenEvidenceNeitherHelpsNorHurts() {
+    final Observation observation = new Observation();
+    long nanos = 0;
+    for (; nanos < SECOND / 2; nanos += SECOND / 10) {
+      engine.onObservation(nanos, observation.reset().setMedbox(0.9f));
+    }
+    // Crop-only frames say nothing about the medicine box.
+    for (; nanos < 10 * SECOND; nanos += SECOND / 10) {
+      engine.onObservation(nanos, observation.reset().setMouthPill(0f, true));
+    }
+    assertEquals(JudgementEngine.Stage.MEDBOX, engine.getStage());
+    // The score picks up where it was; the positives in the window have to be collected again.
+    for (int i = 0; i < 3; ++i) {
+      engine.onObservation(nanos, observation.reset().setMedbox(0.9f));
+      nanos += SECOND / 10;
+    }
+    assertEquals(JudgementEngine.Stage.HAND_PILL, engine.getStage());
+  }
+
+  @Test
+  public void swallowNeedsAVisibleEmptyMouth() {
+    final Observation observation = new Observation();
+    long nanos = 0;
+    for (final JudgementEngine.Stage stage :
+        new JudgementEngine.Stage[] {
+          JudgementEngine.Stage.MEDBOX,
+          JudgementEngine.Stage.HAND_PILL,
+          JudgementEngine.Stage.MOUTH_PILL
+        }) {
+      while (engine.getStage() == stage) {
+        engine.onObservation(nanos, seen(observation.reset(), stage));
+        nanos += SECOND / 10;
+      }
+    }
+    assertEquals(JudgementEngine.Stage.SWALLOW, engine.getStage());
+    final long end = nanos + 20 * SECOND;
+    for (; nanos < end; nanos += SECOND / 10) {
+      // No mouth in the frame: the tablet is not seen, which says nothing about swallowing.
+      engine.onObservation(nanos, observation.reset().setMouthPill(0f, false));
+    }
+    assertEquals(JudgementEngine.Stage.SWALLOW, engine.getStage());
+  }
+
+  @Test
+  public void resetStartsOver() {
+    replay(engine, 30, 30 * SECOND);
+    engine.reset();
+    assertEquals(JudgementEngine.Stage.MEDBOX, engine.getStage());
+    assertEquals(4, events.size());
+  }
+
+  /**
+   * Replays a user going through a dose at {@code fps}, each step shown as soon as it is asked
+   * for, with the detector missing a quarter of the time.
+   */
+  private static void replay(final JudgementEngine engine, final int fps, final long duration) {
+    final Observation observation = new Observation();
+    final long frameNanos = SECOND / fps;
+    // Misses depend on time, not on the frame index, so both rates see the same scene.
+    for (long nanos = 0; nanos < duration; nanos += frameNanos) {
+      final JudgementEngine.Stage stage = engine.getStage();
+      if (stage == JudgementEngine.Stage.DONE) {
+        break;
+      }
+      final boolean missed = (nanos / (SECOND / 4)) % 4 == 3;
+      observation.reset();
+      if (missed) {
+        observation.setMedbox(0f).setHandPill(0f).setMouthPill(0f, false);
+      } else {
+        seen(observation, stage);
+      }
+      engine.onObservation(nanos, observation);
+    }
+  }
+
+  /** Sets what the user shows in {@code stage}, fully in view. */
+  private static Observation seen(
+      final Observation observation, final JudgementEngine.Stage stage) {
+    switch (stage) {
+      case MEDBOX:
+        return observation.setMedbox(0.8f).setMouthPill(0f, false);
+      case HAND_PILL:
+        return observation.setMedbox(0f).setHandPill(0.7f).setMouthPill(0f, false);
+      case MOUTH_PILL:
+        return observation.setMedbox(0f).setHandPill(0f).setMouthPill(0.7f, true);
+      default:
+        return observation.setMedbox(0f).setHandPill(0f).setMouthPill(0f, true);
+    }
+  }
+}
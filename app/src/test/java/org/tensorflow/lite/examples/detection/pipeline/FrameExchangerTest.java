@@ -0,0 +1,183 @@
+package org.tensorflow.lite.examples.detection.pipeline;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import org.junit.Test;
+
+/** Checks that every offered frame is consumed or recycled exactly once, also under contention. */
+public class FrameExchangerTest {
+  private static final int FRAMES_PER_PRODUCER = 200_000;
+
+  /** A frame is identified by its index; the arrays count what happened to each index. */
+  private static final class Ledger implements FrameExchanger.Recycler<Integer> {
+    final AtomicIntegerArray consumed;
+    final AtomicIntegerArray recycled;
+
+    Ledger(final int frames) {
+      consumed = new AtomicIntegerArray(frames);
+      recycled = new AtomicIntegerArray(frames);
+    }
+
+    @Override
+    public void recycle(final Integer frame) {
+      recycled.incrementAndGet(frame);
+    }
+
+    void assertEachFrameHandledOnce() {
+      for (int i = 0; i < consumed.length(); ++i) {
+        assertEquals("frame " + i, 1, consumed.get(i) + recycled.get(i));
+      }
+    }
+  }
+
+  @Test
+  public void pollReturnsLatestAndRecyclesReplaced() {
+    final List<Integer> recycled = new ArrayList<>();
+    final FrameExchanger<Integer> exchanger =
+        new FrameExchanger<>(
+            new FrameExchanger.Recycler<Integer>() {
+              @Override
+              public void recycle(final Integer frame) {
+                recycled.add(frame);
+              }
+            });
+
+    assertNull(exchanger.poll());
+    exchanger.offer(1);
+    exchanger.offer(2);
+    exchanger.offer(3);
+    assertEquals(Integer.valueOf(3), exchanger.poll());
+    assertNull(exchanger.poll());
+    assertEquals(2, recycled.size());
+    assertSame(1, recycled.get(0));
+    assertSame(2, recycled.get(1));
+
+    exchanger.offer(4);
+    exchanger.clear();
+    assertNull(exchanger.poll());
+    assertEquals(Integer.valueOf(4), recycled.get(2));
+    assertEquals(4, exchanger.getOfferedCount());
+    assertEquals(2, exchanger.getSupersededCount());
+  }
+
+  @Test
+  public void singleProducerConsumerSeesIncreasingFrames() throws InterruptedException {
+    final Ledger ledger = new Ledger(FRAMES_PER_PRODUCER);
+    final FrameExchanger<Integer> exchanger = new FrameExchanger<>(ledger);
+    final AtomicBoolean producing = new AtomicBoolean(true);
+    final AtomicBoolean outOfOrder = new AtomicBoolean();
+
+    final Thread consumer =
+        new Thread(
+            new Runnable() {
+              @Override
+              public void run() {
+                int last = -1;
+                while (true) {
+                  final boolean mayStop = !producing.get();
+                  final Integer frame = exchanger.poll();
+                  if (frame == null) {
+                    if (mayStop) {
+                      return;
+                    }
+                    continue;
+                  }
+                  if (frame <= last) {
+                    outOfOrder.set(true);
+                  }
+                  last = frame;
+                  ledger.consumed.incrementAndGet(frame);
+                }
+              }
+            });
+    consumer.start();
+    for (int i = 0; i < FRAMES_PER_PRODUCER; ++i) {
+      exchanger.offer(i);
+    }
+    producing.set(false);
+    consumer.join();
+
+    assertTrue("consumer went back in time", !outOfOrder.get());
+    ledger.assertEachFrameHandledOnce();
+    // Nothing was offered after the last frame, so it cannot have been recycled.
+    assertEquals(1, ledger.consumed.get(FRAMES_PER_PRODUCER - 1));
+    long recycledCount = 0;
+    for (int i = 0; i < FRAMES_PER_PRODUCER; ++i) {
+      recycledCount += ledger.recycled.get(i);
+    }
+    assertEquals(exchanger.getSupersededCount(), recycledCount);
+  }
+
+  @Test
+  public void contendedProducersAndConsumersLoseNothing() throws InterruptedException {
+    final int producers = 4;
+    final int consumers = 4;
+    final Ledger ledger = new Ledger(producers * FRAMES_PER_PRODUCER);
+    final FrameExchanger<Integer> exchanger = new FrameExchanger<>(ledger);
+    final CountDownLatch start = new CountDownLatch(1);
+    final CountDownLatch producersDone = new CountDownLatch(producers);
+    final List<Thread> threads = new ArrayList<>();
+
+    for (int p = 0; p < producers; ++p) {
+      final int base = p * FRAMES_PER_PRODUCER;
+      threads.add(
+          new Thread(
+              new Runnable() {
+                @Override
+                public void run() {
+                  awaitQuietly(start);
+                  for (int i = 0; i < FRAMES_PER_PRODUCER; ++i) {
+                    exchanger.offer(base + i);
+                  }
+                  producersDone.countDown();
+                }
+              }));
+    }
+    for (int c = 0; c < consumers; ++c) {
+      threads.add(
+          new Thread(
+              new Runnable() {
+                @Override
+                public void run() {
+                  awaitQuietly(start);
+                  while (producersDone.getCount() > 0) {
+                    final Integer frame = exchanger.poll();
+                    if (frame != null) {
+                      ledger.consumed.incrementAndGet(frame);
+                    }
+                  }
+                }
+              }));
+    }
+    for (final Thread thread : threads) {
+      thread.start();
+    }
+    start.countDown();
+    for (final Thread thread : threads) {
+      thread.join();
+    }
+    final Integer leftover = exchanger.poll();
+    if (leftover != null) {
+      ledger.consumed.incrementAndGet(leftover);
+    }
+
+    ledger.assertEachFrameHandledOnce();
+    assertEquals(producers * FRAMES_PER_PRODUCER, exchanger.getOfferedCount());
+  }
+
+  private static void awaitQuietly(final CountDownLatch latch) {
+    try {
+      latch.await();
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
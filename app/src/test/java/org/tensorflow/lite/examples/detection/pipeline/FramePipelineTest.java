@@ -0,0 +1,224 @@
+package org.tensorflow.lite.examples.detection.pipeline;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Test;
+
+public class FramePipelineTest {
+  private static final class TestFrame extends PipelineFrame {
+    int value;
+    int recycled;
+
+    @Override
+    protected void onRecycled() {
+      ++recycled;
+    }
+  }
+
+  private FramePipeline<TestFrame> pipeline;
+
+  @After
+  public void tearDown() {
+    if (pipeline != null) {
+      pipeline.shutdown();
+    }
+  }
+
+  @Test
+  public void framesPassEveryStageInOrder() throws InterruptedException {
+    final int frameCount = 200;
+    final List<Integer> completed = Collections.synchronizedList(new ArrayList<Integer>());
+    final CountDownLatch done = new CountDownLatch(frameCount);
+    pipeline =
+        new FramePipeline<>("test", Arrays.asList(new TestFrame(), new TestFrame()))
+            .addStage(
+                "double",
+                new FramePipeline.Stage<TestFrame>() {
+                  @Override
+                  public void process(final TestFrame frame) {
+                    frame.value *= 2;
+                  }
+                })
+            .addStage(
+                "collect",
+                new FramePipeline.Stage<TestFrame>() {
+                  @Override
+                  public void process(final TestFrame frame) {
+                    completed.add(frame.value);
+                    done.countDown();
+                  }
+                })
+            .start();
+
+    int submitted = 0;
+    while (submitted < frameCount) {
+      final TestFrame frame = pipeline.acquireFrame();
+      if (frame == null) {
+        Thread.yield();
+        continue;
+      }
+      frame.value = submitted++;
+      pipeline.submit(frame);
+    }
+
+    assertTrue(done.await(10, TimeUnit.SECONDS));
+    for (int i = 0; i < frameCount; ++i) {
+      assertEquals(2 * i, (int) completed.get(i));
+    }
+    waitForCompletions(frameCount);
+    assertEquals(frameCount, pipeline.getStats().getCompletedFrames());
+    assertTrue(pipeline.getStats().getMeanLatencyMs() >= 0f);
+  }
+
+  @Test
+  public void dropsFramesWhenAllSlotsAreInFlight() throws InterruptedException {
+    final CountDownLatch release = new CountDownLatch(1);
+    pipeline =
+        new FramePipeline<>("test", Arrays.asList(new TestFrame(), new TestFrame()))
+            .addStage(
+                "block",
+                new FramePipeline.Stage<TestFrame>() {
+                  @Override
+                  public void process(final TestFrame frame) {
+                    try {
+                      release.await();
+                    } catch (final InterruptedException e) {
+                      Thread.currentThread().interrupt();
+                    }
+                  }
+                })
+            .start();
+
+    pipeline.submit(pipeline.acquireFrame());
+    pipeline.submit(pipeline.acquireFrame());
+    assertNull(pipeline.acquireFrame());
+    assertEquals(1, pipeline.getStats().getDroppedFrames());
+
+    release.countDown();
+    waitForCompletions(2);
+    assertNotNull(pipeline.acquireFrame());
+  }
+
+  @Test
+  public void failingStageReturnsTheSlot() throws InterruptedException {
+    pipeline =
+        new FramePipeline<>("test", Collections.singletonList(new TestFrame()))
+            .addStage(
+                "fail",
+                new FramePipeline.Stage<TestFrame>() {
+                  @Override
+                  public void process(final TestFrame frame) {
+                    if (frame.value == 0) {
+                      throw new IllegalStateException("expected");
+                    }
+                  }
+                })
+            .start();
+
+    final TestFrame frame = pipeline.acquireFrame();
+    frame.value = 0;
+    pipeline.submit(frame);
+
+    TestFrame next = null;
+    for (int i = 0; i < 1000 && next == null; ++i) {
+      next = pipeline.acquireFrame();
+      Thread.sleep(1);
+    }
+    assertNotNull(next);
+    assertEquals(1, pipeline.getStats().getFailedFrames());
+    assertEquals(0, pipeline.getStats().getCompletedFrames());
+  }
+
+  @Test
+  public void stageThrowingErrorReturnsTheSlot() throws InterruptedException {
+    final TestFrame slot = new TestFrame();
+    pipeline =
+        new FramePipeline<>("test", Collections.singletonList(slot))
+            .addStage(
+                "fail",
+                new FramePipeline.Stage<TestFrame>() {
+                  @Override
+                  public void process(final TestFrame frame) {
+                    throw new AssertionError("expected");
+                  }
+                })
+            .start();
+
+    pipeline.submit(pipeline.acquireFrame());
+
+    TestFrame next = null;
+    for (int i = 0; i < 1000 && next == null; ++i) {
+      next = pipeline.acquireFrame();
+      Thread.sleep(1);
+    }
+    assertNotNull(next);
+    assertEquals(1, slot.recycled);
+    assertEquals(1, pipeline.getStats().getFailedFrames());
+  }
+
+  @Test
+  public void skippedFramesSkipRemainingStages() throws InterruptedException {
+    final AtomicInteger reachedSecondStage = new AtomicInteger();
+    final TestFrame slot = new TestFrame();
+    pipeline =
+        new FramePipeline<>("test", Collections.singletonList(slot))
+            .addStage(
+                "take",
+                new FramePipeline.Stage<TestFrame>() {
+                  @Override
+                  public void process(final TestFrame frame) {
+                    if (frame.value % 2 == 1) {
+                      frame.skip();
+                    }
+                  }
+                })
+            .addStage(
+                "count",
+                new FramePipeline.Stage<TestFrame>() {
+                  @Override
+                  public void process(final TestFrame frame) {
+                    reachedSecondStage.incrementAndGet();
+                  }
+                })
+            .start();
+
+    for (int i = 0; i < 10; ++i) {
+      TestFrame frame = null;
+      for (int tries = 0; tries < 1000 && frame == null; ++tries) {
+        frame = pipeline.acquireFrame();
+        if (frame == null) {
+          Thread.sleep(1);
+        }
+      }
+      assertNotNull(frame);
+      frame.value = i;
+      pipeline.submit(frame);
+    }
+    waitForCompletions(5);
+    for (int i = 0; i < 1000 && slot.recycled < 10; ++i) {
+      Thread.sleep(1);
+    }
+
+    assertEquals(5, reachedSecondStage.get());
+    assertEquals(5, pipeline.getStats().getCompletedFrames());
+    assertEquals(5, pipeline.getStats().getSkippedFrames());
+    assertEquals(10, slot.recycled);
+  }
+
+  private void waitForCompletions(final long count) throws InterruptedException {
+    for (int i = 0; i < 1000 && pipeline.getStats().getCompletedFrames() < count; ++i) {
+      Thread.sleep(1);
+    }
+  }
+}
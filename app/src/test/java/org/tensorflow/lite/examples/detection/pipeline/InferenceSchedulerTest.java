@@ -0,0 +1,119 @@
+package org.tensorflow.lite.examples.detection.pipeline;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import org.junit.Test;
+
+public class InferenceSchedulerTest {
+  private static final int WIDTH = 64;
+  private static final int HEIGHT = 48;
+
+  private final Random random = new Random(11);
+
+  @Test
+  public void staticSceneBacksOffExponentially() {
+    final InferenceScheduler scheduler = new InferenceScheduler(4, 5f, 4);
+    final byte[] frame = randomFrame();
+
+    final StringBuilder pattern = new StringBuilder();
+    for (int i = 0; i < 20; ++i) {
+      pattern.append(scheduler.shouldInfer(frame, WIDTH, HEIGHT, WIDTH) ? 'I' : '.');
+    }
+    // First frame, then refreshes after 0, 1, 2, 4, 4... skipped frames.
+    assertEquals("II.I..I....I....I...", pattern.toString());
+    assertEquals(6, scheduler.getInferredFrames());
+    assertEquals(14, scheduler.getSkippedFrames());
+  }
+
+  @Test
+  public void motionInfersEveryFrameAndResetsBackOff() {
+    final InferenceScheduler scheduler = new InferenceScheduler(4, 5f, 8);
+    final byte[] still = randomFrame();
+    for (int i = 0; i < 20; ++i) {
+      scheduler.shouldInfer(still, WIDTH, HEIGHT, WIDTH);
+    }
+    for (int i = 0; i < 5; ++i) {
+      assertTrue(scheduler.shouldInfer(randomFrame(), WIDTH, HEIGHT, WIDTH));
+      assertTrue(scheduler.getLastMotionScore() >= 5f);
+    }
+    // The back-off starts over once the scene settles.
+    final byte[] settled = randomFrame();
+    assertTrue(scheduler.shouldInfer(settled, WIDTH, HEIGHT, WIDTH));
+    assertTrue(scheduler.shouldInfer(settled, WIDTH, HEIGHT, WIDTH));
+    assertFalse(scheduler.shouldInfer(settled, WIDTH, HEIGHT, WIDTH));
+  }
+
+  @Test
+  public void sensorNoiseIsNotMotion() {
+    final InferenceScheduler scheduler = new InferenceScheduler(4, 5f, 8);
+    final byte[] frame = randomFrame();
+    scheduler.shouldInfer(frame, WIDTH, HEIGHT, WIDTH);
+    scheduler.shouldInfer(frame, WIDTH, HEIGHT, WIDTH);
+
+    final byte[] noisy = frame.clone();
+    for (int i = 0; i < noisy.length; ++i) {
+      final int value = (noisy[i] & 0xFF) + random.nextInt(5) - 2;
+      noisy[i] = (byte) Math.max(0, Math.min(255, value));
+    }
+    assertFalse(scheduler.shouldInfer(noisy, WIDTH, HEIGHT, WIDTH));
+    assertTrue(scheduler.getLastMotionScore() < 5f);
+  }
+
+  @Test
+  public void requestedInferenceOverridesBackOff() {
+    final InferenceScheduler scheduler = new InferenceScheduler(4, 5f, 8);
+    final byte[] frame = randomFrame();
+    scheduler.shouldInfer(frame, WIDTH, HEIGHT, WIDTH);
+    scheduler.shouldInfer(frame, WIDTH, HEIGHT, WIDTH);
+    assertFalse(scheduler.shouldInfer(frame, WIDTH, HEIGHT, WIDTH));
+
+    scheduler.requestInference();
+    assertTrue(scheduler.shouldInfer(frame, WIDTH, HEIGHT, WIDTH));
+  }
+
+  @Test
+  public void rowStridePaddingIsIgnored() {
+    final int stride = WIDTH + 16;
+    final InferenceScheduler scheduler = new InferenceScheduler(4, 5f, 8);
+    final byte[] frame = new byte[stride * HEIGHT];
+    scheduler.shouldInfer(frame, WIDTH, HEIGHT, stride);
+    scheduler.shouldInfer(frame, WIDTH, HEIGHT, stride);
+
+    // Garbage in the padding bytes only.
+    for (int y = 0; y < HEIGHT; ++y) {
+      for (int x = WIDTH; x < stride; ++x) {
+        frame[y * stride + x] = (byte) 255;
+      }
+    }
+    assertFalse(scheduler.shouldInfer(frame, WIDTH, HEIGHT, stride));
+    assertEquals(0f, scheduler.getLastMotionScore(), 0f);
+  }
+
+  @Test
+  public void directPlaneMatchesArray() {
+    final InferenceScheduler arrays = new InferenceScheduler(4, 5f, 4);
+    final InferenceScheduler buffers = new InferenceScheduler(4, 5f, 4);
+    final byte[] still = randomFrame();
+    for (int i = 0; i < 30; ++i) {
+      final byte[] frame = i % 10 < 7 ? still : randomFrame();
+      final ByteBuffer plane = ByteBuffer.allocateDirect(frame.length);
+      // Left positioned at its end: the plane has to be read by absolute index.
+      plane.put(frame);
+      assertEquals(
+          arrays.shouldInfer(frame, WIDTH, HEIGHT, WIDTH),
+          buffers.shouldInfer(plane, WIDTH, HEIGHT, WIDTH));
+      assertEquals(arrays.getLastMotionScore(), buffers.getLastMotionScore(), 0f);
+    }
+    assertEquals(arrays.getSkippedFrames(), buffers.getSkippedFrames());
+  }
+
+  private byte[] randomFrame() {
+    final byte[] frame = new byte[WIDTH * HEIGHT];
+    random.nextBytes(frame);
+    return frame;
+  }
+}
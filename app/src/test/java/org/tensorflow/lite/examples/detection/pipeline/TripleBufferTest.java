@@ -0,0 +1,82 @@
+package org.tensorflow.lite.examples.detection.pipeline;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.Test;
+
+public class TripleBufferTest {
+  /** A published value written in two halves, so a torn read shows. */
+  private static final class Value {
+    volatile boolean reading;
+    long first;
+    long second;
+  }
+
+  @Test
+  public void consumerSeesTheLatestPublished() {
+    final Value a = new Value();
+    final Value b = new Value();
+    final Value c = new Value();
+    final TripleBuffer<Value> buffer = new TripleBuffer<>(a, b, c);
+    assertSame(c, buffer.latest());
+
+    buffer.getBack().first = 1;
+    Value back = buffer.publish();
+    back.first = 2;
+    back = buffer.publish();
+    // The first publication was replaced before it was read and is written again.
+    assertEquals(1, back.first);
+    assertEquals(2, buffer.latest().first);
+    // Nothing new: the same buffer again.
+    assertSame(buffer.latest(), buffer.latest());
+    assertNotSame(back, buffer.latest());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void buffersMustBeDistinct() {
+    final Value a = new Value();
+    new TripleBuffer<>(a, new Value(), a);
+  }
+
+  @Test
+  public void producerNeverWritesWhatTheConsumerReads() throws InterruptedException {
+    final TripleBuffer<Value> buffer = new TripleBuffer<>(new Value(), new Value(), new Value());
+    final long publications = 200_000;
+    final AtomicBoolean overwroteRead = new AtomicBoolean();
+    final Thread producer =
+        new Thread(
+            new Runnable() {
+              @Override
+              public void run() {
+                Value back = buffer.getBack();
+                for (long i = 1; i <= publications; ++i) {
+                  if (back.reading) {
+                    overwroteRead.set(true);
+                  }
+                  back.first = i;
+                  back.second = i;
+                  back = buffer.publish();
+                }
+              }
+            });
+    producer.start();
+    long last = 0;
+    while (last < publications) {
+      final Value front = buffer.latest();
+      front.reading = true;
+      final long first = front.first;
+      Thread.yield();
+      assertEquals(first, front.second);
+      assertTrue(first >= last);
+      last = first;
+      front.reading = false;
+    }
+    producer.join();
+    assertFalse(overwroteRead.get());
+  }
+}
@@ -0,0 +1,112 @@
+package org.tensorflow.lite.examples.detection.replay;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import org.junit.Test;
+
+public class FrameRecorderTest {
+  private static final int WIDTH = 8;
+  private static final int HEIGHT = 4;
+
+  @Test
+  public void nv21FramesReadBackAsRecorded() throws IOException {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    final byte[] nv21 = frame(WIDTH * HEIGHT * 3 / 2, 1);
+    try (FrameRecorder recorder = new FrameRecorder(bytes, RecordedFrame.NV21, WIDTH, HEIGHT)) {
+      assertTrue(recorder.recordNV21(1000L, nv21, WIDTH));
+      // The recorder copied the buffer; the camera may reuse it right away.
+      Arrays.fill(nv21, (byte) 0);
+      assertTrue(recorder.recordNV21(2000L, frame(WIDTH * HEIGHT * 3 / 2, 2), WIDTH));
+    }
+
+    final FrameReader reader = new FrameReader(new ByteArrayInputStream(bytes.toByteArray()));
+    assertEquals(RecordedFrame.NV21, reader.getFormat());
+    assertEquals(WIDTH, reader.getWidth());
+    assertEquals(HEIGHT, reader.getHeight());
+    final RecordedFrame frame = new RecordedFrame();
+    assertTrue(reader.next(frame));
+    assertEquals(1000L, frame.getTimestampNanos());
+    assertEquals(WIDTH, frame.getYRowStride());
+    assertEquals(WIDTH * HEIGHT * 3 / 2, frame.getPlaneLength(0));
+    assertArrayEquals(frame(WIDTH * HEIGHT * 3 / 2, 1), frame.getPlane(0));
+    assertTrue(reader.next(frame));
+    assertEquals(2000L, frame.getTimestampNanos());
+    assertArrayEquals(frame(WIDTH * HEIGHT * 3 / 2, 2), frame.getPlane(0));
+    assertFalse(reader.next(frame));
+  }
+
+  @Test
+  public void yuv420PlanesKeepTheirStrides() throws IOException {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    final ByteBuffer y = ByteBuffer.wrap(frame(WIDTH * HEIGHT, 3));
+    final ByteBuffer u = ByteBuffer.wrap(frame(WIDTH * HEIGHT / 2 - 1, 4));
+    final ByteBuffer v = ByteBuffer.wrap(frame(WIDTH * HEIGHT / 2 - 1, 5));
+    try (FrameRecorder recorder =
+        new FrameRecorder(bytes, RecordedFrame.YUV_420_888, WIDTH, HEIGHT)) {
+      assertTrue(recorder.recordYUV420(5L, y, u, v, WIDTH, WIDTH, 2));
+    }
+    assertEquals(0, y.position());
+
+    final FrameReader reader = new FrameReader(new ByteArrayInputStream(bytes.toByteArray()));
+    final RecordedFrame frame = new RecordedFrame();
+    assertTrue(reader.next(frame));
+    assertEquals(RecordedFrame.YUV_420_888, frame.getFormat());
+    assertEquals(WIDTH, frame.getUvRowStride());
+    assertEquals(2, frame.getUvPixelStride());
+    assertArrayEquals(frame(WIDTH * HEIGHT, 3), frame.getPlane(0));
+    assertArrayEquals(frame(WIDTH * HEIGHT / 2 - 1, 5), frame.getPlane(2));
+    assertFalse(reader.next(frame));
+  }
+
+  @Test
+  public void truncatedRecordingFailsInsideTheFrame() throws IOException {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (FrameRecorder recorder = new FrameRecorder(bytes, RecordedFrame.NV21, WIDTH, HEIGHT)) {
+      recorder.recordNV21(1L, frame(WIDTH * HEIGHT * 3 / 2, 1), WIDTH);
+    }
+    final byte[] recording = bytes.toByteArray();
+    final FrameReader reader =
+        new FrameReader(
+            new ByteArrayInputStream(Arrays.copyOf(recording, recording.length / 2)));
+    try {
+      reader.next(new RecordedFrame());
+      fail("Read a truncated frame");
+    } catch (final EOFException expected) {
+    }
+  }
+
+  @Test(expected = IOException.class)
+  public void otherFilesAreRejected() throws IOException {
+    new FrameReader(new ByteArrayInputStream(new byte[] {'G', 'I', 'F', '8', '9', 'a'}));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void formatMustMatchTheRecording() throws IOException {
+    final FrameRecorder recorder =
+        new FrameRecorder(new ByteArrayOutputStream(), RecordedFrame.NV21, WIDTH, HEIGHT);
+    try {
+      recorder.recordYUV420(
+          0L, ByteBuffer.allocate(1), ByteBuffer.allocate(1), ByteBuffer.allocate(1), 1, 1, 1);
+    } finally {
+      recorder.close();
+    }
+  }
+
+  private static byte[] frame(final int length, final int seed) {
+    final byte[] bytes = new byte[length];
+    for (int i = 0; i < length; ++i) {
+      bytes[i] = (byte) (i * 31 + seed);
+    }
+    return bytes;
+  }
+}
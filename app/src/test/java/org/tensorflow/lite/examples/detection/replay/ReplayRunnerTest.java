@@ -0,0 +1,192 @@
+package org.tensorflow.lite.examples.detection.replay;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import android.graphics.Bitmap;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+import org.tensorflow.lite.examples.detection.env.FrameMetrics;
+import org.tensorflow.lite.examples.detection.env.InputFormat;
+import org.tensorflow.lite.examples.detection.judge.JudgementEngine;
+import org.tensorflow.lite.examples.detection.tflite.Classifier;
+import org.tensorflow.lite.examples.detection.tflite.InterpreterConfig;
+import org.tensorflow.lite.examples.detection.tflite.RecognitionList;
+
+public class ReplayRunnerTest {
+  private static final int WIDTH = 64;
+  private static final int HEIGHT = 48;
+  private static final long SECOND = 1_000_000_000L;
+  // Luma of the recorded scenes: medicine box, tablet in hand, tablet in mouth, empty mouth.
+  private static final int[] SCENE_LUMA = {40, 90, 140, 190};
+  private static final String[][] SCENE_TITLES = {
+    {"medbox"}, {"tablet"}, {"mouth", "tablet"}, {"mouth"}
+  };
+
+  @Test
+  public void recordedDoseIsJudgedDone() throws IOException {
+    // Three seconds of each scene at 10 fps, then the empty mouth until the end.
+    final ReplayReport report = replay(new long[] {3, 6, 9, 20}, 10);
+
+    assertEquals(200, report.getFrames().size());
+    assertEquals(JudgementEngine.Stage.DONE, report.getFinalStage());
+    final List<JudgementEngine.StageEvent> events = report.getEvents();
+    assertEquals(4, events.size());
+    // A step passes about a second after it is shown, the swallow check about two.
+    assertEquals(1 * SECOND, events.get(0).getNanos(), 0.2 * SECOND);
+    assertEquals(4 * SECOND, events.get(1).getNanos(), 0.2 * SECOND);
+    assertEquals(7 * SECOND, events.get(2).getNanos(), 0.2 * SECOND);
+    assertEquals(11 * SECOND, events.get(3).getNanos(), 0.3 * SECOND);
+    assertEquals(200, report.getMetrics().histogram("replay.frame").getCount());
+  }
+
+  @Test
+  public void judgementFollowsTheRecordedClockNotTheFrameCount() throws IOException {
+    final ReplayReport fast = replay(new long[] {3, 6, 9, 20}, 30);
+    final ReplayReport slow = replay(new long[] {3, 6, 9, 20}, 10);
+    assertEquals(3 * slow.getFrames().size(), fast.getFrames().size());
+    for (int i = 0; i < 4; ++i) {
+      assertEquals(
+          slow.getEvents().get(i).getNanos(), fast.getEvents().get(i).getNanos(), 0.3 * SECOND);
+    }
+  }
+
+  @Test
+  public void inputToFrameInvertsTheAppTransform() {
+    // A quarter turn back: input column x reads frame row x, input row y frame column W - y.
+    final float[] m = ReplayRunner.inputToFrame(WIDTH, HEIGHT, 24, -90);
+    final float[] frame = map(m, 0.5f, 0.5f);
+    assertEquals(WIDTH - 0.5f * WIDTH / 24f, frame[0], 1e-4f);
+    assertEquals(0.5f * HEIGHT / 24f, frame[1], 1e-4f);
+    final float[] identity = ReplayRunner.inputToFrame(WIDTH, HEIGHT, 16, 0);
+    assertArrayEquals(new float[] {WIDTH / 16f, 0, 0, 0, HEIGHT / 16f, 0}, identity, 1e-6f);
+  }
+
+  /**
+   * Records scene {@code i} until second {@code sceneEnds[i]} at {@code fps} and replays it with
+   * a detector that recognizes the scenes by their brightness.
+   */
+  private static ReplayReport replay(final long[] sceneEnds, final int fps) throws IOException {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    final byte[] nv21 = new byte[WIDTH * HEIGHT * 3 / 2];
+    try (FrameRecorder recorder = new FrameRecorder(bytes, RecordedFrame.NV21, WIDTH, HEIGHT)) {
+      int scene = 0;
+      final long frames = sceneEnds[sceneEnds.length - 1] * fps;
+      for (long frame = 0; frame < frames; ++frame) {
+        final long nanos = frame * SECOND / fps;
+        while (nanos >= sceneEnds[scene] * SECOND) {
+          ++scene;
+        }
+        Arrays.fill(nv21, 0, WIDTH * HEIGHT, (byte) SCENE_LUMA[scene]);
+        Arrays.fill(nv21, WIDTH * HEIGHT, nv21.length, (byte) 128);
+        while (!recorder.recordNV21(nanos, nv21, WIDTH)) {
+          // The writer is behind; a test recording must not lose frames.
+          Thread.yield();
+        }
+      }
+    }
+    final FrameReader reader = new FrameReader(new ByteArrayInputStream(bytes.toByteArray()));
+    return new ReplayRunner(new SceneClassifier(), 16, -90, 0.5f).run(reader);
+  }
+
+  private static float[] map(final float[] m, final float x, final float y) {
+    return new float[] {m[0] * x + m[1] * y + m[2], m[3] * x + m[4] * y + m[5]};
+  }
+
+  /** Recognizes the scene from the first input channel, raw 0-255 floats. */
+  private static final class SceneClassifier implements Classifier {
+    private final FrameMetrics metrics = new FrameMetrics();
+
+    @Override
+    public void recognizeImage(final ByteBuffer input, final RecognitionList results) {
+      results.clear();
+      final float gray = input.getFloat(0);
+      int scene = 0;
+      for (int i = 1; i < SCENE_LUMA.length; ++i) {
+        // The gray of luma y is about 1.164 * (y - 16).
+        if (Math.abs(gray - 1.164f * (SCENE_LUMA[i] - 16))
+            < Math.abs(gray - 1.164f * (SCENE_LUMA[scene] - 16))) {
+          scene = i;
+        }
+      }
+      for (final String title : SCENE_TITLES[scene]) {
+        results.add(null, title, 0.8f, 0, 0, 1, 1);
+      }
+    }
+
+    @Override
+    public InputFormat getInputFormat() {
+      return InputFormat.floats(0f, 1f);
+    }
+
+    @Override
+    public List<Recognition> recognizeImage(final Bitmap bitmap) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public List<Recognition> recognizeImage(final ByteBuffer input) {
+      final RecognitionList results = new RecognitionList(2);
+      recognizeImage(input, results);
+      return results;
+    }
+
+    @Override
+    public void recognizeImage(final Bitmap bitmap, final RecognitionList results) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void recognizeImages(
+        final ByteBuffer[] inputs, final int count, final RecognitionList[] results) {
+      for (int i = 0; i < count; ++i) {
+        recognizeImage(inputs[i], results[i]);
+      }
+    }
+
+    @Override
+    public ByteBuffer createInputBuffer() {
+      return ByteBuffer.allocateDirect(16 * 16 * 3 * 4);
+    }
+
+    @Override
+    public void fillInput(final Bitmap bitmap, final ByteBuffer input) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void enableStatLogging(final boolean debug) {}
+
+    @Override
+    public String getStatString() {
+      return metrics.getStatString();
+    }
+
+    @Override
+    public FrameMetrics getMetrics() {
+      return metrics;
+    }
+
+    @Override
+    public void close() {}
+
+    @Override
+    public void setNumThreads(final int num_threads) {}
+
+    @Override
+    public void setUseNNAPI(final boolean isChecked) {}
+
+    @Override
+    public void setInterpreterConfig(final InterpreterConfig config) {}
+
+    @Override
+    public InterpreterConfig getInterpreterConfig() {
+      return InterpreterConfig.DEFAULT;
+    }
+  }
+}
@@ -0,0 +1,93 @@
+package org.tensorflow.lite.examples.detection.tflite;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import org.junit.Test;
+
+public class DetectionDecoderTest {
+  private static final int INPUT_SIZE = 300;
+  private static final LabelMap LABELS =
+      LabelMap.compile(Arrays.asList("face", "medbox", "hand", "mouth", "tablet"));
+
+  private final float[][] locations = new float[TFLiteObjectDetectionAPIModel.NUM_DETECTIONS][4];
+  private final float[] classes = new float[TFLiteObjectDetectionAPIModel.NUM_DETECTIONS];
+  private final float[] scores = new float[TFLiteObjectDetectionAPIModel.NUM_DETECTIONS];
+
+  @Test
+  public void decodeReusesPooledRecognitions() {
+    classes[0] = 4;
+    scores[0] = 0.9f;
+    classes[1] = 0;
+    scores[1] = 0.6f;
+    final RecognitionList results =
+        new RecognitionList(TFLiteObjectDetectionAPIModel.NUM_DETECTIONS);
+
+    DetectionDecoder.decode(
+        locations, classes, scores, 2f, LABELS, INPUT_SIZE, results);
+    assertEquals(2, results.size());
+    final Classifier.Recognition first = results.get(0);
+    assertEquals("0", first.getId());
+    assertEquals("tablet", first.getTitle());
+    assertEquals(0.9f, first.getConfidence(), 0f);
+    assertEquals("face", results.get(1).getTitle());
+
+    classes[0] = 3;
+    DetectionDecoder.decode(
+        locations, classes, scores, 1f, LABELS, INPUT_SIZE, results);
+    assertEquals(1, results.size());
+    assertSame(first, results.get(0));
+    assertEquals("mouth", first.getTitle());
+    assertEquals(LabelMap.MOUTH, first.getClassId());
+  }
+
+  @Test
+  public void decodeClampsToCapacityAndOutputSize() {
+    final RecognitionList results = new RecognitionList(3);
+    DetectionDecoder.decode(
+        locations, classes, scores, 100f, LABELS, INPUT_SIZE, results);
+    assertEquals(3, results.size());
+  }
+
+  @Test
+  public void steadyStateDecodeDoesNotAllocate() {
+    final com.sun.management.ThreadMXBean threads =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    final long threadId = Thread.currentThread().getId();
+    final RecognitionList results =
+        new RecognitionList(TFLiteObjectDetectionAPIModel.NUM_DETECTIONS);
+    for (int i = 0; i < classes.length; ++i) {
+      classes[i] = i % LABELS.size();
+      scores[i] = 0.5f;
+    }
+
+    // Warm up so class loading and JIT compilation are out of the measured window.
+    for (int i = 0; i < 20_000; ++i) {
+      decodeAll(results);
+    }
+
+    // Cost of the measurement itself, subtracted from the result.
+    final long emptyStart = threads.getThreadAllocatedBytes(threadId);
+    final long overhead = threads.getThreadAllocatedBytes(threadId) - emptyStart;
+
+    final long start = threads.getThreadAllocatedBytes(threadId);
+    for (int i = 0; i < 10_000; ++i) {
+      decodeAll(results);
+    }
+    final long allocated = threads.getThreadAllocatedBytes(threadId) - start - overhead;
+    assertEquals("bytes allocated by 10000 decodes", 0, allocated);
+  }
+
+  private void decodeAll(final RecognitionList results) {
+    DetectionDecoder.decode(
+        locations,
+        classes,
+        scores,
+        TFLiteObjectDetectionAPIModel.NUM_DETECTIONS,
+        LABELS,
+        INPUT_SIZE,
+        results);
+  }
+}
@@ -0,0 +1,269 @@
+package org.tensorflow.lite.examples.detection.tflite;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import android.content.ComponentCallbacks2;
+import android.graphics.Bitmap;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import org.tensorflow.lite.examples.detection.env.FrameMetrics;
+import org.tensorflow.lite.examples.detection.env.InputFormat;
+
+public class DetectorRegistryTest {
+  private static final DetectorRegistry.Spec SPEC =
+      new DetectorRegistry.Spec("model.tflite", "labels.txt", 4, 2);
+
+  private final AtomicInteger created = new AtomicInteger();
+  private final DetectorRegistry registry =
+      new DetectorRegistry(
+          new DetectorRegistry.Factory() {
+            @Override
+            public Classifier create(final DetectorRegistry.Spec spec) {
+              created.incrementAndGet();
+              return new FakeClassifier();
+            }
+          });
+
+  @Test
+  public void releasedDetectorIsReusedWithoutReloading() throws IOException {
+    final DetectorRegistry.Lease first = registry.acquire(SPEC);
+    final Classifier detector = first.await();
+    assertEquals(1, registry.getLeasedCount(SPEC));
+    first.release();
+    first.release();
+    assertEquals(0, registry.getLeasedCount(SPEC));
+    assertEquals(1, registry.getIdleCount(SPEC));
+
+    final DetectorRegistry.Lease second = registry.acquire(SPEC);
+    assertSame(detector, second.await());
+    assertEquals(1, created.get());
+    assertFalse(((FakeClassifier) detector).closed);
+  }
+
+  @Test
+  public void concurrentLeasesGetTheirOwnDetector() throws IOException {
+    final DetectorRegistry.Lease first = registry.acquire(SPEC);
+    final DetectorRegistry.Lease second = registry.acquire(SPEC);
+    assertNotSame(first.await(), second.await());
+    assertEquals(2, registry.getLeasedCount(SPEC));
+  }
+
+  @Test
+  public void preloadedDetectorIsLeased() throws IOException {
+    registry.preload(SPEC);
+    registry.preload(SPEC);
+    assertEquals(1, registry.getIdleCount(SPEC));
+    registry.acquire(SPEC).await();
+    assertEquals(1, created.get());
+    assertEquals(0, registry.getIdleCount(SPEC));
+  }
+
+  @Test
+  public void memoryPressureClosesOnlyIdleDetectors() throws IOException {
+    final DetectorRegistry.Lease kept = registry.acquire(SPEC);
+    final DetectorRegistry.Lease released = registry.acquire(SPEC);
+    final FakeClassifier keptDetector = (FakeClassifier) kept.await();
+    final FakeClassifier releasedDetector = (FakeClassifier) released.await();
+    released.release();
+
+    assertEquals(0, registry.trimMemory(ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN));
+    assertEquals(0, registry.trimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE));
+    assertFalse(releasedDetector.closed);
+
+    assertEquals(1, registry.trimMemory(ComponentCallbacks2.TRIM_MEMORY_BACKGROUND));
+    assertTrue(releasedDetector.closed);
+    assertFalse(keptDetector.closed);
+    assertEquals(0, registry.getIdleCount(SPEC));
+    assertEquals(1, registry.getLeasedCount(SPEC));
+  }
+
+  @Test
+  public void failedLoadIsRetriedByTheNextLease() throws IOException {
+    final DetectorRegistry failing =
+        new DetectorRegistry(
+            new DetectorRegistry.Factory() {
+              @Override
+              public Classifier create(final DetectorRegistry.Spec spec) throws IOException {
+                if (created.getAndIncrement() == 0) {
+                  throw new IOException("missing model");
+                }
+                return new FakeClassifier();
+              }
+            });
+    final DetectorRegistry.Lease lease = failing.acquire(SPEC);
+    try {
+      lease.await();
+      fail();
+    } catch (final IOException expected) {
+    }
+    lease.release();
+    assertEquals(0, failing.getIdleCount(SPEC));
+    failing.acquire(SPEC).await();
+    assertEquals(2, created.get());
+  }
+
+  @Test
+  public void leaseholderSwapsToTheInstalledVersion() throws IOException {
+    final DetectorRegistry.Lease lease = registry.acquire(SPEC);
+    final FakeClassifier old = (FakeClassifier) lease.await();
+    assertNull(lease.pollSwap());
+
+    registry.onModelInstalled(SPEC.modelFilename);
+    final Classifier updated = awaitSwap(lease);
+    assertNotSame(old, updated);
+    assertTrue(old.closed);
+    assertSame(updated, lease.await());
+    assertNull(lease.pollSwap());
+
+    lease.release();
+    assertSame(updated, registry.acquire(SPEC).await());
+    assertEquals(2, created.get());
+  }
+
+  @Test
+  public void installClosesIdleDetectorsOfTheOldVersion() throws IOException {
+    final DetectorRegistry.Lease lease = registry.acquire(SPEC);
+    final FakeClassifier old = (FakeClassifier) lease.await();
+    lease.release();
+
+    registry.onModelInstalled("other.tflite");
+    assertEquals(1, registry.getIdleCount(SPEC));
+    registry.onModelInstalled(SPEC.modelFilename);
+    assertEquals(0, registry.getIdleCount(SPEC));
+    assertTrue(old.closed);
+  }
+
+  @Test
+  public void updateArrivingDuringTheLeaseIsPooledOnRelease() throws IOException {
+    final DetectorRegistry.Lease lease = registry.acquire(SPEC);
+    final FakeClassifier old = (FakeClassifier) lease.await();
+    registry.onModelInstalled(SPEC.modelFilename);
+    lease.release();
+    assertEquals(1, registry.getIdleCount(SPEC));
+
+    final Classifier pooled = registry.acquire(SPEC).await();
+    assertNotSame(old, pooled);
+    assertTrue(old.closed);
+    assertEquals(2, created.get());
+  }
+
+  @Test
+  public void evictionLevels() {
+    assertFalse(DetectorRegistry.shouldEvict(ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE));
+    assertTrue(DetectorRegistry.shouldEvict(ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW));
+    assertTrue(DetectorRegistry.shouldEvict(ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL));
+    assertFalse(DetectorRegistry.shouldEvict(ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN));
+    assertTrue(DetectorRegistry.shouldEvict(ComponentCallbacks2.TRIM_MEMORY_BACKGROUND));
+    assertTrue(DetectorRegistry.shouldEvict(ComponentCallbacks2.TRIM_MEMORY_COMPLETE));
+  }
+
+  /** Polls {@code lease} until the update loaded in the background is swapped in. */
+  private static Classifier awaitSwap(final DetectorRegistry.Lease lease) {
+    final long deadline = System.nanoTime() + 5_000_000_000L;
+    while (System.nanoTime() < deadline) {
+      final Classifier swapped = lease.pollSwap();
+      if (swapped != null) {
+        return swapped;
+      }
+      Thread.yield();
+    }
+    throw new AssertionError("The update was not swapped in");
+  }
+
+  /** Detects nothing; only remembers whether it was closed. */
+  private static final class FakeClassifier implements Classifier {
+    private final FrameMetrics metrics = new FrameMetrics();
+    private InterpreterConfig config = InterpreterConfig.DEFAULT;
+    volatile boolean closed;
+
+    @Override
+    public List<Recognition> recognizeImage(final Bitmap bitmap) {
+      return new RecognitionList(0);
+    }
+
+    @Override
+    public List<Recognition> recognizeImage(final ByteBuffer input) {
+      return new RecognitionList(0);
+    }
+
+    @Override
+    public void recognizeImage(final Bitmap bitmap, final RecognitionList results) {
+      results.clear();
+    }
+
+    @Override
+    public void recognizeImage(final ByteBuffer input, final RecognitionList results) {
+      results.clear();
+    }
+
+    @Override
+    public void recognizeImages(
+        final ByteBuffer[] inputs, final int count, final RecognitionList[] results) {
+      for (int i = 0; i < count; ++i) {
+        results[i].clear();
+      }
+    }
+
+    @Override
+    public InputFormat getInputFormat() {
+      return InputFormat.quantized(0f, 1f, 0f, 0, false);
+    }
+
+    @Override
+    public ByteBuffer createInputBuffer() {
+      return ByteBuffer.allocateDirect(4 * 4 * 3);
+    }
+
+    @Override
+    public void fillInput(final Bitmap bitmap, final ByteBuffer input) {}
+
+    @Override
+    public void enableStatLogging(final boolean debug) {}
+
+    @Override
+    public String getStatString() {
+      return metrics.getStatString();
+    }
+
+    @Override
+    public FrameMetrics getMetrics() {
+      return metrics;
+    }
+
+    @Override
+    public void close() {
+      closed = true;
+    }
+
+    @Override
+    public void setNumThreads(final int num_threads) {
+      config = config.withNumThreads(num_threads);
+    }
+
+    @Override
+    public void setUseNNAPI(final boolean isChecked) {
+      config =
+          config.withBackend(
+              isChecked ? InterpreterConfig.Backend.NNAPI : InterpreterConfig.Backend.CPU);
+    }
+
+    @Override
+    public void setInterpreterConfig(final InterpreterConfig config) {
+      this.config = config;
+    }
+
+    @Override
+    public InterpreterConfig getInterpreterConfig() {
+      return config;
+    }
+  }
+}
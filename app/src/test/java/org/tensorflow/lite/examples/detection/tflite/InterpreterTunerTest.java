@@ -0,0 +1,72 @@
+package org.tensorflow.lite.examples.detection.tflite;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+import org.tensorflow.lite.examples.detection.tflite.InterpreterConfig.Backend;
+
+public class InterpreterTunerTest {
+  @Test
+  public void candidatesCoverPowersOfTwoUpToTheCoreCount() {
+    assertEquals(
+        Arrays.asList(
+            new InterpreterConfig(Backend.CPU, 1),
+            new InterpreterConfig(Backend.XNNPACK, 1),
+            new InterpreterConfig(Backend.CPU, 2),
+            new InterpreterConfig(Backend.XNNPACK, 2),
+            new InterpreterConfig(Backend.CPU, 4),
+            new InterpreterConfig(Backend.XNNPACK, 4),
+            new InterpreterConfig(Backend.CPU, 6),
+            new InterpreterConfig(Backend.XNNPACK, 6),
+            new InterpreterConfig(Backend.NNAPI, 6)),
+        InterpreterTuner.candidates(6, true));
+    assertEquals(
+        Arrays.asList(
+            new InterpreterConfig(Backend.CPU, 1), new InterpreterConfig(Backend.XNNPACK, 1)),
+        InterpreterTuner.candidates(1, false));
+    assertEquals(
+        new InterpreterConfig(Backend.XNNPACK, InterpreterTuner.MAX_THREADS),
+        InterpreterTuner.candidates(16, false).get(7));
+  }
+
+  @Test
+  public void fastestWinsUnlessACheaperCandidateIsWithinTolerance() {
+    final List<InterpreterConfig> candidates = InterpreterTuner.candidates(4, true);
+    // CPU:1 XNNPACK:1 CPU:2 XNNPACK:2 CPU:4 XNNPACK:4 NNAPI:4
+    assertEquals(
+        new InterpreterConfig(Backend.XNNPACK, 4),
+        InterpreterTuner.pickFastest(candidates, new long[] {90, 60, 50, 35, 32, 20, 40}));
+    // XNNPACK:2 is within 5% of XNNPACK:4 and uses half the threads.
+    assertEquals(
+        new InterpreterConfig(Backend.XNNPACK, 2),
+        InterpreterTuner.pickFastest(
+            candidates, new long[] {9000, 6000, 5000, 1040, 3200, 1000, 1100}));
+    // Failed and abandoned candidates are ignored.
+    assertEquals(
+        new InterpreterConfig(Backend.NNAPI, 4),
+        InterpreterTuner.pickFastest(candidates, new long[] {90, -1, 50, -1, 32, -1, 10}));
+    assertNull(InterpreterTuner.pickFastest(candidates, new long[] {-1, -1, -1, -1, -1, -1, -1}));
+  }
+
+  @Test
+  public void medianOfOddAndEvenSamples() {
+    assertEquals(3, InterpreterTuner.median(new long[] {9, 1, 3}));
+    assertEquals(4, InterpreterTuner.median(new long[] {9, 1, 3, 5}));
+    assertEquals(7, InterpreterTuner.median(new long[] {7}));
+  }
+
+  @Test
+  public void configsRoundTripThroughTheirEncoding() {
+    for (final Backend backend : Backend.values()) {
+      final InterpreterConfig config = new InterpreterConfig(backend, 3);
+      assertEquals(config, InterpreterConfig.parse(config.encode()));
+    }
+    assertNull(InterpreterConfig.parse(null));
+    assertNull(InterpreterConfig.parse("GPU:2"));
+    assertNull(InterpreterConfig.parse("CPU:0"));
+    assertNull(InterpreterConfig.parse("CPU"));
+  }
+}
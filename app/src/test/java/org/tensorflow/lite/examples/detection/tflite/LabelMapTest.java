@@ -0,0 +1,34 @@
+package org.tensorflow.lite.examples.detection.tflite;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Arrays;
+import org.junit.Test;
+
+public class LabelMapTest {
+  @Test
+  public void labelsMapToTheirClassIdsInAnyOrder() {
+    final LabelMap labels =
+        LabelMap.compile(Arrays.asList("tablet", "hand", "medbox", "mouth", "face"));
+    assertEquals(5, labels.size());
+    assertEquals(LabelMap.TABLET, labels.getClassId(0));
+    assertEquals(LabelMap.HAND, labels.getClassId(1));
+    assertEquals(LabelMap.MEDBOX, labels.getClassId(2));
+    assertEquals(LabelMap.MOUTH, labels.getClassId(3));
+    assertEquals(LabelMap.FACE, labels.getClassId(4));
+    assertEquals("medbox", labels.getLabel(2));
+  }
+
+  @Test
+  public void unknownLabelsKeepTheirTextButNoClass() {
+    final LabelMap labels = LabelMap.compile(Arrays.asList("???", "cup", "tablet"));
+    assertEquals(LabelMap.UNKNOWN, labels.getClassId(0));
+    assertEquals(LabelMap.UNKNOWN, labels.getClassId(1));
+    assertEquals("cup", labels.getLabel(1));
+    assertEquals(LabelMap.TABLET, labels.getClassId(2));
+    assertEquals(LabelMap.UNKNOWN, LabelMap.classIdOf(null));
+    assertNull(LabelMap.nameOf(LabelMap.UNKNOWN));
+    assertEquals("tablet", LabelMap.nameOf(LabelMap.TABLET));
+  }
+}
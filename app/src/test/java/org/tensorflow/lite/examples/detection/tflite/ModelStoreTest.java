@@ -0,0 +1,142 @@
+package org.tensorflow.lite.examples.detection.tflite;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ModelStoreTest {
+  private static final String NAME = "pills.tflite";
+
+  @Rule public final TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void installedModelIsMappedWithItsLabels() throws IOException {
+    final ModelStore store = new ModelStore(folder.getRoot());
+    assertNull(store.latest(NAME));
+    install(store, 1, model(1));
+
+    final ModelStore.Model latest = store.latest(NAME);
+    assertEquals(1, latest.getVersion());
+    final ModelStore.MappedModel mapped = store.map(latest);
+    assertArrayEquals(model(1), bytes(mapped.getBuffer()));
+    assertEquals(Arrays.asList("medbox", "tablet"), mapped.getLabels());
+    // Hashed while installing, so mapping it does not read it again.
+    assertEquals(0, store.getVerificationCount());
+  }
+
+  @Test
+  public void modelNotMatchingItsChecksumIsNotInstalled() throws IOException {
+    final ModelStore store = new ModelStore(folder.getRoot());
+    try {
+      store.install(
+          NAME,
+          1,
+          new ByteArrayInputStream(model(1)),
+          new ByteArrayInputStream(new byte[0]),
+          sha256(model(2)));
+      fail("Installed a model with the wrong checksum");
+    } catch (final IOException expected) {
+    }
+    assertNull(store.latest(NAME));
+    assertEquals(0, new File(folder.getRoot(), NAME).list().length);
+  }
+
+  @Test
+  public void modelIsVerifiedOnceAndCorruptionIsCaught() throws IOException {
+    install(new ModelStore(folder.getRoot()), 1, model(1));
+    install(new ModelStore(folder.getRoot()), 2, model(2));
+
+    // A new process trusts nothing it has not hashed itself.
+    final ModelStore store = new ModelStore(folder.getRoot());
+    final List<ModelStore.Model> models = store.list(NAME);
+    store.map(models.get(1));
+    store.map(models.get(1));
+    assertEquals(1, store.getVerificationCount());
+
+    try (RandomAccessFile file = new RandomAccessFile(models.get(0).getModelFile(), "rw")) {
+      file.write(42);
+    }
+    try {
+      store.map(models.get(0));
+      fail("Mapped a corrupt model");
+    } catch (final IOException expected) {
+    }
+  }
+
+  @Test
+  public void newLatestVersionsAreAnnouncedAndOldOnesPruned() throws IOException {
+    final ModelStore store = new ModelStore(folder.getRoot());
+    final List<Integer> announced = new ArrayList<>();
+    store.addListener(
+        new ModelStore.Listener() {
+          @Override
+          public void onModelInstalled(final ModelStore.Model model) {
+            announced.add(model.getVersion());
+          }
+        });
+    install(store, 1, model(1));
+    install(store, 3, model(3));
+    install(store, 2, model(2));
+    install(store, 4, model(4));
+
+    assertEquals(Arrays.asList(1, 3, 4), announced);
+    final List<ModelStore.Model> kept = store.list(NAME);
+    assertEquals(2, kept.size());
+    assertEquals(3, kept.get(0).getVersion());
+    assertEquals(4, kept.get(1).getVersion());
+  }
+
+  @Test(expected = IOException.class)
+  public void versionsAreNotOverwritten() throws IOException {
+    final ModelStore store = new ModelStore(folder.getRoot());
+    install(store, 1, model(1));
+    install(store, 1, model(2));
+  }
+
+  private static void install(final ModelStore store, final int version, final byte[] model)
+      throws IOException {
+    store.install(
+        NAME,
+        version,
+        new ByteArrayInputStream(model),
+        new ByteArrayInputStream("medbox\ntablet\n".getBytes("UTF-8")),
+        sha256(model).toUpperCase());
+  }
+
+  private static byte[] model(final int version) {
+    final byte[] model = new byte[100_000];
+    for (int i = 0; i < model.length; ++i) {
+      model[i] = (byte) (i * 7 + version);
+    }
+    return model;
+  }
+
+  private static byte[] bytes(final MappedByteBuffer buffer) {
+    final byte[] bytes = new byte[buffer.remaining()];
+    buffer.duplicate().get(bytes);
+    return bytes;
+  }
+
+  private static String sha256(final byte[] bytes) {
+    try {
+      return ModelStore.hex(MessageDigest.getInstance("SHA-256").digest(bytes));
+    } catch (final NoSuchAlgorithmException e) {
+      throw new AssertionError(e);
+    }
+  }
+}
@@ -0,0 +1,157 @@
+package org.tensorflow.lite.examples.detection.tracking;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Test;
+
+public class ObjectTrackerTest {
+  private static final long FRAME_NANOS = 100_000_000L;
+  private static final int[] COLORS = {1, 2, 3};
+
+  private final ObjectTracker tracker = new ObjectTracker(COLORS);
+
+  @Test
+  public void assignmentMinimizesTotalCost() {
+    // Greedy would take 0 -> 0 (cost 1) and leave row 1 with cost 10.
+    assertArrayEquals(
+        new int[] {1, 0}, HungarianAssignment.solve(new float[][] {{1, 2}, {2, 10}}));
+    // More rows than columns: one row stays unassigned.
+    assertArrayEquals(
+        new int[] {-1, 0, 1},
+        HungarianAssignment.solve(new float[][] {{5, 5}, {1, 9}, {9, 1}}));
+    assertArrayEquals(new int[] {2}, HungarianAssignment.solve(new float[][] {{3, 2, 1}}));
+    assertArrayEquals(new int[0], HungarianAssignment.solve(new float[0][0]));
+  }
+
+  @Test
+  public void detectionsKeepTheirTrackAcrossFrames() {
+    tracker.updateDetections(
+        Arrays.asList(detection("face", 0, 0), detection("medbox", 200, 0)), 0);
+    final List<ObjectTracker.Track> tracks = tracker.getTracks();
+    assertEquals(2, tracks.size());
+    final int faceId = tracks.get(0).getId();
+    final int medboxId = tracks.get(1).getId();
+    assertNotEquals(tracks.get(0).getColor(), tracks.get(1).getColor());
+
+    tracker.updateDetections(
+        Arrays.asList(detection("medbox", 205, 0), detection("face", 5, 0)), FRAME_NANOS);
+    assertEquals(2, tracks.size());
+    assertEquals(faceId, tracks.get(0).getId());
+    assertEquals(medboxId, tracks.get(1).getId());
+    assertTrue(tracks.get(0).isConfirmed());
+  }
+
+  @Test
+  public void differentTitlesAreNotAssociated() {
+    tracker.updateDetections(Collections.singletonList(detection("face", 0, 0)), 0);
+    tracker.updateDetections(Collections.singletonList(detection("mouth", 0, 0)), FRAME_NANOS);
+    // The unconfirmed face track is dropped after one miss.
+    assertEquals(1, tracker.getTracks().size());
+    assertEquals("mouth", tracker.getTracks().get(0).getTitle());
+  }
+
+  @Test
+  public void confirmedTrackCoastsThenAges() {
+    long nanos = 0;
+    for (int i = 0; i < 3; ++i) {
+      tracker.updateDetections(Collections.singletonList(detection("face", 0, 0)), nanos);
+      nanos += FRAME_NANOS;
+    }
+    final ObjectTracker.Track track = tracker.getTracks().get(0);
+    for (int miss = 1; miss <= ObjectTracker.MAX_MISSES; ++miss) {
+      tracker.updateDetections(Collections.<ObjectTracker.Detection>emptyList(), nanos);
+      nanos += FRAME_NANOS;
+      assertEquals(miss, track.getMisses());
+      assertTrue(track.isVisible());
+    }
+    tracker.updateDetections(Collections.<ObjectTracker.Detection>emptyList(), nanos);
+    assertTrue(tracker.getTracks().isEmpty());
+  }
+
+  @Test
+  public void motionIsExtrapolatedBetweenFrames() {
+    // Moves 10 units right per frame, i.e. 100 per second.
+    long nanos = 0;
+    for (int i = 0; i < 10; ++i) {
+      tracker.updateDetections(Collections.singletonList(detection("face", i * 10, 0)), nanos);
+      nanos += FRAME_NANOS;
+    }
+    final ObjectTracker.Track track = tracker.getTracks().get(0);
+    final float[] velocity = new float[2];
+    track.getVelocity(velocity);
+    assertEquals(100f, velocity[0], 10f);
+    assertEquals(0f, velocity[1], 1f);
+
+    // Half a frame after the last detection at x = 90.
+    final float[] box = new float[4];
+    track.getLocation(nanos - FRAME_NANOS / 2, box);
+    assertEquals(95f, box[0], 2f);
+    assertEquals(0f, box[1], 1f);
+    assertEquals(50f, box[2] - box[0], 1f);
+  }
+
+  @Test
+  public void mirroredBoxesAreTrackedAndReportedMirrored() {
+    // The detector writes x flipped: left > right.
+    tracker.updateDetections(Collections.singletonList(mirrored("face", 0, 0)), 0);
+    tracker.updateDetections(Collections.singletonList(mirrored("face", 5, 0)), FRAME_NANOS);
+    assertEquals(1, tracker.getTracks().size());
+    final ObjectTracker.Track track = tracker.getTracks().get(0);
+    assertTrue(track.isConfirmed());
+    final float[] box = new float[4];
+    track.getLocation(FRAME_NANOS, box);
+    assertEquals(50f, box[0] - box[2], 1f);
+    assertEquals(50f, box[3] - box[1], 1f);
+  }
+
+  @Test
+  public void unorderedIouHandlesMirroredBoxes() {
+    // The same boxes as {0, 0, 10, 10} and {5, 0, 15, 10}, with x flipped as the detector writes.
+    final float[] a = {10, 0, 0, 10};
+    final float[] b = {15, 0, 5, 10};
+    assertEquals(50f / 150f, ObjectTracker.unorderedIou(a, b), 1e-6f);
+    assertEquals(1f, ObjectTracker.unorderedIou(a, new float[] {0, 10, 10, 0}), 1e-6f);
+    assertEquals(0f, ObjectTracker.unorderedIou(a, new float[] {30, 0, 20, 10}), 0f);
+    // Left as they were.
+    assertArrayEquals(new float[] {10, 0, 0, 10}, a, 0f);
+  }
+
+  @Test
+  public void colorsReturnToThePool() {
+    tracker.updateDetections(
+        Arrays.asList(
+            detection("a", 0, 0),
+            detection("a", 100, 0),
+            detection("a", 200, 0),
+            detection("a", 300, 0)),
+        0);
+    final List<ObjectTracker.Track> tracks = tracker.getTracks();
+    assertEquals(4, tracks.size());
+    // The fourth shares a color.
+    assertEquals(COLORS[tracks.get(3).getId() % COLORS.length], tracks.get(3).getColor());
+    final int firstColor = tracks.get(0).getColor();
+    tracker.clear();
+    tracker.updateDetections(Collections.singletonList(detection("a", 0, 0)), FRAME_NANOS);
+    assertEquals(firstColor, tracker.getTracks().get(0).getColor());
+    assertFalse(tracker.getTracks().get(0).isConfirmed());
+  }
+
+  /** A 50x50 detection at ({@code left}, {@code top}). */
+  private static ObjectTracker.Detection detection(
+      final String title, final float left, final float top) {
+    return new ObjectTracker.Detection(title, 0.9f, left, top, left + 50, top + 50);
+  }
+
+  /** The same, with x flipped as the detector writes it. */
+  private static ObjectTracker.Detection mirrored(
+      final String title, final float left, final float top) {
+    return new ObjectTracker.Detection(title, 0.9f, left + 50, top, left, top + 50);
+  }
+}
@@ -0,0 +1,79 @@
+package org.tensorflow.lite.examples.detection.tracking;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import org.junit.Test;
+import org.tensorflow.lite.examples.detection.tflite.LabelMap;
+
+public class RoiPredictorTest {
+  private static final long FRAME_NANOS = 100_000_000L;
+
+  private final ObjectTracker tracker = new ObjectTracker(new int[] {1});
+  private final RoiPredictor predictor = new RoiPredictor(300, 300);
+  private final float[] roi = new float[4];
+
+  @Test
+  public void regionAddsTheMarginAroundTheTrack() {
+    track(new ObjectTracker.Detection("mouth", 0.9f, 100, 100, 140, 120));
+    assertTrue(predictor.predict(tracker.getTracks(), LabelMap.MOUTH, 0, roi));
+    assertEquals(90f, roi[0], 0.01f);
+    assertEquals(95f, roi[1], 0.01f);
+    assertEquals(150f, roi[2], 0.01f);
+    assertEquals(125f, roi[3], 0.01f);
+  }
+
+  @Test
+  public void regionKeepsTheMirroringAndIsClipped() {
+    track(new ObjectTracker.Detection("mouth", 0.9f, 40, 280, 0, 300));
+    assertTrue(predictor.predict(tracker.getTracks(), LabelMap.MOUTH, 0, roi));
+    assertEquals(50f, roi[0], 0.01f);
+    assertEquals(275f, roi[1], 0.01f);
+    assertEquals(0f, roi[2], 0.01f);
+    assertEquals(300f, roi[3], 0.01f);
+  }
+
+  @Test
+  public void mostConfidentTrackOfTheTitleWins() {
+    tracker.updateDetections(
+        Arrays.asList(
+            new ObjectTracker.Detection("face", 0.99f, 0, 0, 100, 100),
+            new ObjectTracker.Detection("mouth", 0.6f, 200, 200, 240, 220),
+            new ObjectTracker.Detection("mouth", 0.8f, 20, 200, 60, 220)),
+        0);
+    assertTrue(predictor.predict(tracker.getTracks(), LabelMap.MOUTH, 0, roi));
+    assertEquals(10f, roi[0], 0.01f);
+    assertFalse(predictor.predict(tracker.getTracks(), LabelMap.MEDBOX, 0, roi));
+  }
+
+  @Test
+  public void regionLeadsAMovingTrack() {
+    long nanos = 0;
+    for (int i = 0; i < 10; ++i) {
+      // 10 units right per frame: 100 per second.
+      track(new ObjectTracker.Detection("mouth", 0.9f, i * 10, 100, i * 10 + 40, 120), nanos);
+      nanos += FRAME_NANOS;
+    }
+    assertTrue(predictor.predict(tracker.getTracks(), LabelMap.MOUTH, nanos, roi));
+    // Extrapolated to x = 100..140, plus 10 margin and about 10 for the motion.
+    assertEquals(80f, roi[0], 3f);
+    assertEquals(160f, roi[2], 3f);
+  }
+
+  @Test
+  public void regionOutsideTheFrameIsRejected() {
+    track(new ObjectTracker.Detection("mouth", 0.9f, 320, 100, 360, 120));
+    assertFalse(predictor.predict(tracker.getTracks(), LabelMap.MOUTH, 0, roi));
+  }
+
+  private void track(final ObjectTracker.Detection detection) {
+    track(detection, 0);
+  }
+
+  private void track(final ObjectTracker.Detection detection, final long nanos) {
+    tracker.updateDetections(Collections.singletonList(detection), nanos);
+  }
+}
@@ -0,0 +1,57 @@
+package org.tensorflow.lite.examples.detection.tracking;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+public class TrackSnapshotTest {
+  private static final long FRAME_NANOS = 100_000_000L;
+
+  private final ObjectTracker tracker = new ObjectTracker(new int[] {1, 2, 3});
+  private final ObjectTracker empty = new ObjectTracker(new int[] {1});
+  private final TrackSnapshot snapshot = new TrackSnapshot();
+
+  @Test
+  public void interpolatesWhereTheTracksExtrapolate() {
+    // Ten boxes, mirrored like detections, moving right at different speeds.
+    for (int frame = 0; frame < 4; ++frame) {
+      final List<ObjectTracker.Detection> detections = new ArrayList<>();
+      for (int i = 0; i < 10; ++i) {
+        final float left = 100 * i + frame * i;
+        detections.add(new ObjectTracker.Detection("face", 0.9f, left + 40, 20, left, 60));
+      }
+      tracker.updateDetections(detections, frame * FRAME_NANOS);
+    }
+    snapshot.fill(tracker, empty, empty);
+
+    assertEquals(10, snapshot.objects.size());
+    assertEquals(0, snapshot.mouthPills.size());
+    final float[] expected = new float[4];
+    final float[] actual = new float[4];
+    final long updateNanos = 3 * FRAME_NANOS;
+    // Before the update, in between and beyond the extrapolation limit.
+    final long[] times = {
+      0, updateNanos, updateNanos + FRAME_NANOS / 3, updateNanos + 10 * FRAME_NANOS
+    };
+    for (int i = 0; i < 10; ++i) {
+      final ObjectTracker.Track track = tracker.getTracks().get(i);
+      assertEquals(track.getColor(), snapshot.objects.getColor(i));
+      for (final long nanos : times) {
+        track.getLocation(nanos, expected);
+        snapshot.objects.locate(i, nanos, actual);
+        assertArrayEquals(expected, actual, 1e-3f);
+      }
+      track.getLocation(updateNanos, expected);
+      snapshot.objects.getUpdated(i, actual);
+      assertArrayEquals(expected, actual, 0f);
+    }
+
+    // Refilling reuses the arrays; tracks dropped since are gone.
+    tracker.clear();
+    snapshot.fill(tracker, empty, empty);
+    assertEquals(0, snapshot.objects.size());
+  }
+}
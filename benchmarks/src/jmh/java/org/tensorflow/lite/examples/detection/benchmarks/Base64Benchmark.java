@@ -0,0 +1,39 @@
+package org.tensorflow.lite.examples.detection.benchmarks;
+
+import com.baidu.idl.face.platform.utils.Base64Utils;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Encoding a face image for upload, about the size of a compressed face crop and a frame. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class Base64Benchmark {
+  @Param({"16384", "131072"})
+  public int size;
+
+  private byte[] image;
+
+  @Setup
+  public void setUp() {
+    image = Frames.chroma(size, 5);
+  }
+
+  @Benchmark
+  public byte[] encode() {
+    return Base64Utils.encode(image, Base64Utils.NO_WRAP);
+  }
+}
@@ -0,0 +1,52 @@
+package org.tensorflow.lite.examples.detection.benchmarks;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.tensorflow.lite.examples.detection.tflite.DetectionDecoder;
+import org.tensorflow.lite.examples.detection.tflite.LabelMap;
+import org.tensorflow.lite.examples.detection.tflite.RecognitionList;
+
+/** Decoding the ten SSD detections of one image into the pooled results. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DetectionDecodeBenchmark {
+  private static final int NUM_DETECTIONS = 10;
+  // The labels file is read into a Vector in the app.
+  private static final LabelMap LABELS =
+      LabelMap.compile(Arrays.asList("face", "medbox", "hand", "mouth", "tablet"));
+
+  private final float[][] locations = new float[NUM_DETECTIONS][4];
+  private final float[] classes = new float[NUM_DETECTIONS];
+  private final float[] scores = new float[NUM_DETECTIONS];
+  private final RecognitionList results = new RecognitionList(NUM_DETECTIONS);
+
+  public DetectionDecodeBenchmark() {
+    for (int i = 0; i < NUM_DETECTIONS; ++i) {
+      locations[i][0] = 0.05f * i;
+      locations[i][1] = 0.04f * i;
+      locations[i][2] = locations[i][0] + 0.3f;
+      locations[i][3] = locations[i][1] + 0.2f;
+      classes[i] = i % LABELS.size();
+      scores[i] = 0.9f - 0.08f * i;
+    }
+  }
+
+  @Benchmark
+  public RecognitionList decode() {
+    DetectionDecoder.decode(locations, classes, scores, NUM_DETECTIONS, LABELS, 300, results);
+    return results;
+  }
+}
@@ -0,0 +1,43 @@
+package org.tensorflow.lite.examples.detection.benchmarks;
+
+import android.graphics.Rect;
+import com.baidu.idl.face.platform.model.FaceExtInfo;
+import com.baidu.idl.facesdk.FaceInfo;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** The per-frame check of the face liveness flow for landmarks outside the detection frame. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FaceExtInfoBenchmark {
+  // 72 landmarks on a ring around a face at (240, 320), partly outside the detection frame.
+  private final FaceExtInfo face;
+  private final Rect detectRect = new Rect(120, 200, 330, 440);
+
+  public FaceExtInfoBenchmark() {
+    final int[] landmarks = new int[144];
+    for (int i = 0; i < 72; ++i) {
+      final double angle = 2 * Math.PI * i / 72;
+      landmarks[2 * i] = 240 + (int) (100 * Math.cos(angle));
+      landmarks[2 * i + 1] = 320 + (int) (130 * Math.sin(angle));
+    }
+    face = new FaceExtInfo(new FaceInfo(200, 0, 320, 240, 0.95f, 1, landmarks));
+  }
+
+  @Benchmark
+  public int getLandmarksOutOfDetectCount() {
+    return face.getLandmarksOutOfDetectCount(detectRect);
+  }
+}
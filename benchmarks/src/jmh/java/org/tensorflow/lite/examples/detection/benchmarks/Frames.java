@@ -0,0 +1,46 @@
+package org.tensorflow.lite.examples.detection.benchmarks;
+
+/** Deterministic frame content, so every run converts the same pixels. */
+final class Frames {
+  private Frames() {}
+
+  /** A luma plane with a diagonal gradient and some texture. */
+  static byte[] luma(final int width, final int height) {
+    final byte[] y = new byte[width * height];
+    for (int row = 0; row < height; ++row) {
+      for (int col = 0; col < width; ++col) {
+        y[row * width + col] = (byte) (16 + (row + col) % 220 + ((row * 7 + col * 13) & 15));
+      }
+    }
+    return y;
+  }
+
+  /** A chroma plane of {@code length} bytes around the neutral 128. */
+  static byte[] chroma(final int length, final int seed) {
+    final byte[] c = new byte[length];
+    for (int i = 0; i < length; ++i) {
+      c[i] = (byte) (128 + ((i * 31 + seed * 17) % 64) - 32);
+    }
+    return c;
+  }
+
+  /** An NV21 frame: {@link #luma} followed by interleaved V/U. */
+  static byte[] nv21(final int width, final int height) {
+    final byte[] frame = new byte[width * height * 3 / 2];
+    System.arraycopy(luma(width, height), 0, frame, 0, width * height);
+    final byte[] vu = chroma(width * height / 2, 3);
+    System.arraycopy(vu, 0, frame, width * height, vu.length);
+    return frame;
+  }
+
+  /** ARGB pixels with the same content as {@link #luma}, in gray. */
+  static int[] argb(final int width, final int height) {
+    final byte[] y = luma(width, height);
+    final int[] argb = new int[y.length];
+    for (int i = 0; i < y.length; ++i) {
+      final int gray = y[i] & 0xff;
+      argb[i] = 0xff000000 | gray << 16 | (gray * 3 / 4) << 8 | gray / 2;
+    }
+    return argb;
+  }
+}
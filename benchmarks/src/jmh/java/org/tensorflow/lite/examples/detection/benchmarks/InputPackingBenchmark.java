@@ -0,0 +1,86 @@
+package org.tensorflow.lite.examples.detection.benchmarks;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.tensorflow.lite.examples.detection.env.FusedPreprocessor;
+import org.tensorflow.lite.examples.detection.env.InputFormat;
+import org.tensorflow.lite.examples.detection.env.InputPacker;
+import org.tensorflow.lite.examples.detection.env.Resampler;
+import org.tensorflow.lite.examples.detection.env.RoiSampler;
+import org.tensorflow.lite.examples.detection.replay.ReplayRunner;
+
+/**
+ * Filling the 300x300 model input of {@code recognizeImage}: packing the pixels of a cropped
+ * bitmap, sampling the preview frame straight from its NV21 planes, and sampling a crop region
+ * straight from the ARGB frame.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class InputPackingBenchmark {
+  private static final int INPUT_SIZE = 300;
+  private static final int WIDTH = 640;
+  private static final int HEIGHT = 480;
+
+  /** "float" for the float detector, "uint8" for a quantized one. */
+  @Param({"float", "uint8"})
+  public String format;
+
+  private final int[] argb = Frames.argb(INPUT_SIZE, INPUT_SIZE);
+  private final byte[] nv21 = Frames.nv21(WIDTH, HEIGHT);
+  private final int[] frame = Frames.argb(WIDTH, HEIGHT);
+  private InputPacker packer;
+  private ByteBuffer input;
+  private FusedPreprocessor preprocessor;
+  private RoiSampler sampler;
+
+  @Setup
+  public void setUp() {
+    final InputFormat inputFormat =
+        "uint8".equals(format)
+            ? InputFormat.quantized(128f, 128f, 0f, 0, false)
+            : InputFormat.floats(128f, 128f);
+    packer = new InputPacker(INPUT_SIZE * INPUT_SIZE, inputFormat);
+    input =
+        ByteBuffer.allocateDirect(INPUT_SIZE * INPUT_SIZE * 3 * inputFormat.getBytesPerChannel())
+            .order(ByteOrder.nativeOrder());
+    preprocessor = new FusedPreprocessor(INPUT_SIZE, inputFormat);
+    preprocessor.setTransform(
+        ReplayRunner.inputToFrame(WIDTH, HEIGHT, INPUT_SIZE, 90), WIDTH, HEIGHT);
+    // The filter DetectorActivity samples its crops with.
+    sampler = new RoiSampler(INPUT_SIZE, -90, inputFormat, Resampler.Filter.NEAREST);
+  }
+
+  @Benchmark
+  public ByteBuffer packArgb() {
+    packer.pack(argb, input);
+    return input;
+  }
+
+  @Benchmark
+  public ByteBuffer processNV21() {
+    return preprocessor.processNV21(nv21, WIDTH, HEIGHT);
+  }
+
+  /** The app's hand crop. */
+  @Benchmark
+  public ByteBuffer sampleRoi() {
+    sampler.sample(frame, WIDTH, HEIGHT, 60, 10, 120, 100, input);
+    return input;
+  }
+}
@@ -0,0 +1,67 @@
+package org.tensorflow.lite.examples.detection.benchmarks;
+
+import com.baidu.idl.face.platform.FaceStatusEnum;
+import com.baidu.idl.face.platform.common.ConstantHelper;
+import com.baidu.idl.face.platform.common.LogHelper;
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Building the statistics message of one face session. {@code getLog} empties the log it reads,
+ * so every call first records a session's worth of entries, as the detect strategy does.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class LogHelperBenchmark {
+  private static final FaceStatusEnum[] TIPS = {
+    FaceStatusEnum.Detect_NoFace,
+    FaceStatusEnum.Detect_FaceZoomIn,
+    FaceStatusEnum.Detect_PoorIllumintion,
+    FaceStatusEnum.Detect_FaceZoomIn,
+    FaceStatusEnum.Detect_OccMouth,
+    FaceStatusEnum.Detect_PitchOutOfUpMaxRange,
+  };
+
+  // Private in the SDK; sendLog() would also post the message over the network.
+  private Method getLog;
+
+  @Setup
+  public void setUp() throws NoSuchMethodException {
+    getLog = LogHelper.class.getDeclaredMethod("getLog");
+    getLog.setAccessible(true);
+  }
+
+  @Benchmark
+  public Object getLog() throws ReflectiveOperationException {
+    LogHelper.addLog(ConstantHelper.LOG_CATE, "FaceSDK3.3.0.0");
+    LogHelper.addLog(ConstantHelper.LOG_OS, 28);
+    LogHelper.addLog(ConstantHelper.LOG_VS, "3.3.0.0");
+    LogHelper.addLog(ConstantHelper.LOG_DE, "Pixel 3 Google");
+    LogHelper.addLog(ConstantHelper.LOG_APPID, "org.tensorflow.lite.examples.detection");
+    LogHelper.addLog(ConstantHelper.LOG_STM, 1600000000000L);
+    LogHelper.addLogWithKey(ConstantHelper.LOG_FTM, 1600000000400L);
+    LogHelper.addLogWithKey(ConstantHelper.LOG_BTM, 1600000001200L);
+    LogHelper.addLogWithKey(ConstantHelper.LOG_ETM, 1600000003500L);
+    for (int i = 0; i < 3; ++i) {
+      LogHelper.addLivenessLog(i);
+    }
+    for (final FaceStatusEnum tip : TIPS) {
+      LogHelper.addTipsLogWithKey(tip.name());
+    }
+    return getLog.invoke(null);
+  }
+}
@@ -0,0 +1,80 @@
+package org.tensorflow.lite.examples.detection.benchmarks;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.tensorflow.lite.examples.detection.env.Resampler;
+
+/**
+ * Resampling to the 300x300 model input, turned a quarter as the app does: the whole 640x480
+ * preview frame, scaled down, and the hand crop, scaled up.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ResamplerBenchmark {
+  private static final int INPUT_SIZE = 300;
+  private static final int WIDTH = 640;
+  private static final int HEIGHT = 480;
+
+  @Param({"NEAREST", "BILINEAR", "AREA"})
+  public Resampler.Filter filter;
+
+  /** "serial" resamples on the benchmark thread, "parallel" on a pool of one thread per core. */
+  @Param({"serial", "parallel"})
+  public String mode;
+
+  private ForkJoinPool pool;
+  private Resampler resampler;
+  private final int[] argb = Frames.argb(WIDTH, HEIGHT);
+  private final byte[] luma = Frames.luma(WIDTH, HEIGHT);
+  private final int[] out = new int[INPUT_SIZE * INPUT_SIZE];
+  private final byte[] lumaOut = new byte[INPUT_SIZE * INPUT_SIZE];
+
+  @Setup
+  public void setUp() {
+    if ("parallel".equals(mode)) {
+      pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+    }
+    resampler = new Resampler(INPUT_SIZE, INPUT_SIZE, filter, pool, 64);
+  }
+
+  @TearDown
+  public void tearDown() {
+    if (pool != null) {
+      pool.shutdown();
+    }
+  }
+
+  @Benchmark
+  public int[] frame() {
+    resampler.resample(argb, WIDTH, HEIGHT, 0, 0, WIDTH, HEIGHT, -90, out);
+    return out;
+  }
+
+  @Benchmark
+  public int[] handCrop() {
+    resampler.resample(argb, WIDTH, HEIGHT, 60, 10, 120, 100, -90, out);
+    return out;
+  }
+
+  @Benchmark
+  public byte[] lumaFrame() {
+    resampler.resample(luma, WIDTH, HEIGHT, WIDTH, 0, 0, WIDTH, HEIGHT, -90, lumaOut);
+    return lumaOut;
+  }
+}
@@ -0,0 +1,61 @@
+package org.tensorflow.lite.examples.detection.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.tensorflow.lite.examples.detection.tflite.RecognitionList;
+import org.tensorflow.lite.examples.detection.tracking.ObjectTracker;
+
+/**
+ * What {@code MultiBoxTracker.processResults} does with one frame of detections: update the
+ * full-frame, mouth pill and hand pill trackers. The objects drift a little every frame, as a
+ * hand-held camera sees them.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TrackerBenchmark {
+  private static final int[] COLORS = {0xff0000ff, 0xffff0000, 0xff00ff00, 0xff00ffff};
+  private static final String[] TITLES = {"face", "hand", "medbox", "mouth"};
+  // 10 fps inference.
+  private static final long FRAME_NANOS = 100_000_000L;
+
+  private final ObjectTracker objectTracker = new ObjectTracker(COLORS);
+  private final ObjectTracker mouthPillTracker = new ObjectTracker(COLORS);
+  private final ObjectTracker handPillTracker = new ObjectTracker(COLORS);
+  private final RecognitionList results = new RecognitionList(10);
+  private final RecognitionList mouthResults = new RecognitionList(10);
+  private final RecognitionList handResults = new RecognitionList(10);
+  private long frame;
+
+  @Benchmark
+  public ObjectTracker processResults() {
+    final float drift = 4f * (float) Math.sin(frame * 0.3);
+    results.clear();
+    for (int i = 0; i < TITLES.length; ++i) {
+      // Detector boxes are mirrored on x.
+      final float left = 80f * i + 60f + drift;
+      results.add(null, TITLES[i], 0.8f, left, 40f + 50f * i, left - 50f, 100f + 50f * i);
+    }
+    mouthResults.clear();
+    mouthResults.add(null, "tablet", 0.7f, 40f + drift, 40f, 25f + drift, 52f);
+    handResults.clear();
+    handResults.add(null, "tablet", 0.6f, 70f - drift, 80f, 50f - drift, 95f);
+
+    final long nanos = ++frame * FRAME_NANOS;
+    objectTracker.update(results, nanos);
+    mouthPillTracker.update(mouthResults, nanos);
+    handPillTracker.update(handResults, nanos);
+    return objectTracker;
+  }
+}
@@ -0,0 +1,67 @@
+package org.tensorflow.lite.examples.detection.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.tensorflow.lite.examples.detection.env.Affine;
+import org.tensorflow.lite.examples.detection.env.CoordinateSpaces;
+import org.tensorflow.lite.examples.detection.env.FusedPreprocessor;
+import org.tensorflow.lite.examples.detection.env.InputFormat;
+import org.tensorflow.lite.examples.detection.replay.ReplayRunner;
+
+/**
+ * What the app does with {@code ImageUtils.getTransformationMatrix}: invert the frame-to-crop
+ * matrix and bake it into the preprocessor's sampling table. The {@code android.graphics.Matrix}
+ * arithmetic itself is native on the device, so the pure-Java inverse used for replays stands in
+ * for it.
+ *
+ * <p>{@code mapBoxes} is the overlay's per-draw share: a detection's worth of boxes through the
+ * detection-to-canvas map composed once per canvas size.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TransformBenchmark {
+  private final FusedPreprocessor preprocessor =
+      new FusedPreprocessor(300, InputFormat.floats(128f, 128f));
+  private final float[] detectionToCanvas = new float[Affine.SIZE];
+  private final float[] boxes = new float[10 * 4];
+
+  @Setup
+  public void setUp() {
+    final CoordinateSpaces spaces = new CoordinateSpaces(640, 480, 300, -90, true);
+    final float[] frameToCanvas = new float[Affine.SIZE];
+    spaces.getFrameToCanvas(1080, 1920, frameToCanvas);
+    spaces.getDetectionToFrame(detectionToCanvas);
+    Affine.concat(detectionToCanvas, frameToCanvas, detectionToCanvas);
+  }
+
+  @Benchmark
+  public FusedPreprocessor setTransform() {
+    preprocessor.setTransform(ReplayRunner.inputToFrame(640, 480, 300, 90), 640, 480);
+    return preprocessor;
+  }
+
+  @Benchmark
+  public float[] mapBoxes() {
+    for (int i = 0; i < boxes.length; i += 4) {
+      boxes[i] = 200f;
+      boxes[i + 1] = 120f + i;
+      boxes[i + 2] = 150f;
+      boxes[i + 3] = 180f + i;
+    }
+    Affine.mapRects(detectionToCanvas, boxes, 0, boxes.length / 4);
+    return boxes;
+  }
+}
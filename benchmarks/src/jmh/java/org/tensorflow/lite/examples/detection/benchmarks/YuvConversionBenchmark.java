@@ -0,0 +1,103 @@
+package org.tensorflow.lite.examples.detection.benchmarks;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.tensorflow.lite.examples.detection.env.YuvToRgbConverter;
+
+/** ARGB conversion of one 640x480 preview frame, from both camera APIs. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class YuvConversionBenchmark {
+  private static final int WIDTH = 640;
+  private static final int HEIGHT = 480;
+
+  /** "serial" converts on the benchmark thread, "parallel" on a pool of one thread per core. */
+  @Param({"serial", "parallel"})
+  public String mode;
+
+  private ForkJoinPool pool;
+  private YuvToRgbConverter converter;
+  private final byte[] nv21 = Frames.nv21(WIDTH, HEIGHT);
+  private final byte[] y = Frames.luma(WIDTH, HEIGHT);
+  // Semi-planar YUV_420_888 as most devices deliver it: chroma pixel stride 2.
+  private final byte[] u = Frames.chroma(WIDTH * HEIGHT / 2 - 1, 1);
+  private final byte[] v = Frames.chroma(WIDTH * HEIGHT / 2 - 1, 2);
+  // The same planes as the direct buffers of a Camera2 image, read in place.
+  private final ByteBuffer yPlane = direct(y);
+  private final ByteBuffer uPlane = direct(u);
+  private final ByteBuffer vPlane = direct(v);
+  // Arrays the planes are copied into before converting, reused across frames.
+  private final byte[] yCopy = new byte[y.length];
+  private final byte[] uCopy = new byte[u.length];
+  private final byte[] vCopy = new byte[v.length];
+  private final int[] argb = new int[WIDTH * HEIGHT];
+
+  @Setup
+  public void setUp() {
+    if ("parallel".equals(mode)) {
+      pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+      converter = new YuvToRgbConverter(pool, 64);
+    } else {
+      converter = new YuvToRgbConverter(null, 64);
+    }
+  }
+
+  @TearDown
+  public void tearDown() {
+    if (pool != null) {
+      pool.shutdown();
+    }
+  }
+
+  @Benchmark
+  public int[] nv21() {
+    converter.convertYUV420SP(nv21, WIDTH, HEIGHT, argb);
+    return argb;
+  }
+
+  @Benchmark
+  public int[] yuv420() {
+    converter.convertYUV420(y, u, v, WIDTH, HEIGHT, WIDTH, WIDTH, 2, argb);
+    return argb;
+  }
+
+  @Benchmark
+  public int[] yuv420Direct() {
+    converter.convertYUV420(yPlane, uPlane, vPlane, WIDTH, HEIGHT, WIDTH, WIDTH, 2, argb);
+    return argb;
+  }
+
+  /** The planes copied out of the direct buffers first, then converted from the arrays. */
+  @Benchmark
+  public int[] yuv420Copy() {
+    yPlane.duplicate().get(yCopy);
+    uPlane.duplicate().get(uCopy);
+    vPlane.duplicate().get(vCopy);
+    converter.convertYUV420(yCopy, uCopy, vCopy, WIDTH, HEIGHT, WIDTH, WIDTH, 2, argb);
+    return argb;
+  }
+
+  private static ByteBuffer direct(final byte[] bytes) {
+    final ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+    buffer.put(bytes);
+    buffer.rewind();
+    return buffer;
+  }
+}
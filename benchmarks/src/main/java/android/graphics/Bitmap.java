@@ -0,0 +1,6 @@
+package android.graphics;
+
+/** Type-only stand-in: the benchmarks never create bitmaps, they feed the YUV planes directly. */
+public final class Bitmap {
+  private Bitmap() {}
+}
@@ -0,0 +1,14 @@
+package android.graphics;
+
+/** Pure-Java stand-in for the framework class. */
+public class Point {
+  public int x;
+  public int y;
+
+  public Point() {}
+
+  public Point(final int x, final int y) {
+    this.x = x;
+    this.y = y;
+  }
+}
@@ -0,0 +1,32 @@
+package android.graphics;
+
+/** Pure-Java stand-in for the framework class, with its containment rules. */
+public final class Rect {
+  public int left;
+  public int top;
+  public int right;
+  public int bottom;
+
+  public Rect() {}
+
+  public Rect(final int left, final int top, final int right, final int bottom) {
+    this.left = left;
+    this.top = top;
+    this.right = right;
+    this.bottom = bottom;
+  }
+
+  /** True if {@code (x, y)} is inside, the right and bottom edges excluded. */
+  public boolean contains(final int x, final int y) {
+    return left < right && top < bottom && x >= left && x < right && y >= top && y < bottom;
+  }
+
+  public boolean contains(final Rect r) {
+    return left < right
+        && top < bottom
+        && left <= r.left
+        && top <= r.top
+        && right >= r.right
+        && bottom >= r.bottom;
+  }
+}
@@ -0,0 +1,39 @@
+package android.graphics;
+
+/** Pure-Java stand-in for the framework class: the fields and methods the benchmarked code uses. */
+public class RectF {
+  public float left;
+  public float top;
+  public float right;
+  public float bottom;
+
+  public RectF() {}
+
+  public RectF(final float left, final float top, final float right, final float bottom) {
+    this.left = left;
+    this.top = top;
+    this.right = right;
+    this.bottom = bottom;
+  }
+
+  public RectF(final RectF r) {
+    if (r != null) {
+      set(r.left, r.top, r.right, r.bottom);
+    }
+  }
+
+  public void set(final float left, final float top, final float right, final float bottom) {
+    this.left = left;
+    this.top = top;
+    this.right = right;
+    this.bottom = bottom;
+  }
+
+  public final float width() {
+    return right - left;
+  }
+
+  public final float height() {
+    return bottom - top;
+  }
+}
@@ -0,0 +1,14 @@
+package android.text;
+
+/** Pure-Java stand-in for the framework class. */
+public final class TextUtils {
+  private TextUtils() {}
+
+  public static boolean isEmpty(final CharSequence str) {
+    return str == null || str.length() == 0;
+  }
+
+  public static boolean equals(final CharSequence a, final CharSequence b) {
+    return a == b || (a != null && b != null && a.toString().equals(b.toString()));
+  }
+}
@@ -0,0 +1,23 @@
+package org.tensorflow.lite;
+
+/**
+ * Type-only stand-in for the TensorFlow Lite interpreter, which ships as an Android archive and
+ * cannot be used by a JVM module. Only {@code InterpreterConfig#toOptions} refers to it.
+ */
+public final class Interpreter {
+  private Interpreter() {}
+
+  public static final class Options {
+    public Options setNumThreads(final int numThreads) {
+      return this;
+    }
+
+    public Options setUseNNAPI(final boolean useNNAPI) {
+      return this;
+    }
+
+    public Options setUseXNNPACK(final boolean useXNNPACK) {
+      return this;
+    }
+  }
+}